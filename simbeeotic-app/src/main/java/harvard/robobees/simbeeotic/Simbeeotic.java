@@ -32,15 +32,17 @@
 package harvard.robobees.simbeeotic;
 
 
-import harvard.robobees.simbeeotic.util.DocUtil;
 import harvard.robobees.simbeeotic.util.JaxbHelper;
 import harvard.robobees.simbeeotic.configuration.scenario.Scenario;
 import harvard.robobees.simbeeotic.configuration.world.World;
+import harvard.robobees.simbeeotic.environment.CompiledWorld;
+import harvard.robobees.simbeeotic.trace.JfrTracer;
+import harvard.robobees.simbeeotic.trace.LogTracer;
+import harvard.robobees.simbeeotic.trace.SimTrace;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
-import org.w3c.dom.Document;
 
 import javax.xml.bind.JAXBException;
 import java.io.File;
@@ -62,6 +64,10 @@ public class Simbeeotic {
     private static final String OPTION_WORLD = "world";
     private static final String OPTION_SCALE = "real-time-scale";
     private static final String OPTION_PAUSED = "paused";
+    private static final String OPTION_INIT_THREADS = "init-threads";
+    private static final String OPTION_PROFILE = "profile";
+    private static final String OPTION_TRACE = "trace";
+    private static final String OPTION_TRACER = "tracer";
     private static final String OPTION_LOG = "log";
     private static final String OPTION_HELP = "help";
 
@@ -75,7 +81,7 @@ public class Simbeeotic {
                 .withRequiredArg()
                 .ofType(File.class);
 
-        parser.accepts(OPTION_WORLD, "World XML file.")
+        parser.accepts(OPTION_WORLD, "World XML file (or compiled world file).")
                 .withRequiredArg()
                 .ofType(File.class);
 
@@ -85,6 +91,23 @@ public class Simbeeotic {
 
         parser.accepts(OPTION_PAUSED, "Start in a paused state.");
 
+        parser.accepts(OPTION_INIT_THREADS, "Number of threads used to initialize models (optional).")
+                .withRequiredArg()
+                .ofType(Integer.class);
+
+        parser.accepts(OPTION_PROFILE, "Directory in which to write a phase profile for each variation (optional).")
+                .withRequiredArg()
+                .ofType(File.class);
+
+        parser.accepts(OPTION_TRACE, "Operations to trace, with optional thresholds in microseconds " +
+                                     "(e.g. event-dispatch=500,physics-step,sensor-ray-cast=20 or all) (optional).")
+                .withRequiredArg()
+                .ofType(String.class);
+
+        parser.accepts(OPTION_TRACER, "Destination of traces: jfr (flight recorder, the default) or log (optional).")
+                .withRequiredArg()
+                .ofType(String.class);
+
         parser.accepts(OPTION_LOG, "Log4j properties file (optional).")
                 .withRequiredArg()
                 .ofType(File.class);
@@ -131,16 +154,18 @@ public class Simbeeotic {
             PropertyConfigurator.configure(logProps);
         }
 
+        // time spent before the simulation starts (reported by the profiler, if enabled)
+        PhaseProfiler startup = new PhaseProfiler();
+        long start;
+
         // load scenario
-        Document scenarioDoc = null;
+        InputStream scenarioStream = null;
 
         if (opts.has(OPTION_SCENARIO)) {
 
             try {
 
-                InputStream stream = new FileInputStream((File)opts.valueOf(OPTION_SCENARIO));
-
-                scenarioDoc = DocUtil.getDocumentFromXml(stream);
+                scenarioStream = new FileInputStream((File)opts.valueOf(OPTION_SCENARIO));
             }
             catch(FileNotFoundException fnf) {
 
@@ -149,22 +174,27 @@ public class Simbeeotic {
             }
         }
 
-        if (scenarioDoc == null) {
+        if (scenarioStream == null) {
 
             logger.fatal("Must supply a scenario XML file.");
             return;
         }
 
         // load the world description
-        Document worldDoc = null;
+        InputStream worldStream = null;
+        CompiledWorld compiledWorld = null;
 
-        if (opts.has(OPTION_WORLD)) {
+        if (opts.has(OPTION_WORLD) && CompiledWorld.isCompiled((File)opts.valueOf(OPTION_WORLD))) {
+            start = System.nanoTime();
+            compiledWorld = CompiledWorld.load((File)opts.valueOf(OPTION_WORLD));
 
-            try {
+            startup.record(System.nanoTime() - start, "compiled-world-load");
+        }
+        else if (opts.has(OPTION_WORLD)) {
 
-                InputStream stream = new FileInputStream((File)opts.valueOf(OPTION_WORLD));
+            try {
 
-                worldDoc = DocUtil.getDocumentFromXml(stream);
+                worldStream = new FileInputStream((File)opts.valueOf(OPTION_WORLD));
             }
             catch(FileNotFoundException fnf) {
 
@@ -173,7 +203,7 @@ public class Simbeeotic {
             }
         }
 
-        if (worldDoc == null) {
+        if ((worldStream == null) && (compiledWorld == null)) {
 
             logger.fatal("Must supply a world XML file.");
             return;
@@ -183,11 +213,25 @@ public class Simbeeotic {
         Scenario scenario;
         World world;
 
-        // parse the scenario and world documents
+        // parse and validate the scenario and world documents as they are read
         try {
 
-            scenario = JaxbHelper.objectFromNode(scenarioDoc, Scenario.class);
-            world = JaxbHelper.objectFromNode(worldDoc, World.class);
+            // parsing and binding are a single streaming pass, so they are reported together
+            start = System.nanoTime();
+            scenario = JaxbHelper.objectFromStream(scenarioStream, Scenario.class);
+
+            startup.record(System.nanoTime() - start, "xml-parse-bind", "scenario");
+
+            if (compiledWorld != null) {
+                world = compiledWorld.getWorld();
+            }
+            else {
+
+                start = System.nanoTime();
+                world = JaxbHelper.objectFromStream(worldStream, World.class);
+
+                startup.record(System.nanoTime() - start, "xml-parse-bind", "world");
+            }
         }
         catch(JAXBException je) {
             throw new RuntimeException("Could not parse the given scenario or world file.", je);
@@ -204,7 +248,52 @@ public class Simbeeotic {
 
         SimController sim = new SimController();
 
-        if (noSim) {
+        if (opts.has(OPTION_INIT_THREADS)) {
+            sim.setInitThreads((Integer)opts.valueOf(OPTION_INIT_THREADS));
+        }
+
+        if (opts.has(OPTION_PROFILE)) {
+
+            File profileDir = (File)opts.valueOf(OPTION_PROFILE);
+
+            profileDir.mkdirs();
+            sim.setProfiling(profileDir, startup);
+        }
+
+        if (opts.has(OPTION_TRACE)) {
+
+            String tracer = opts.has(OPTION_TRACER) ? (String)opts.valueOf(OPTION_TRACER) : "jfr";
+
+            if (tracer.equals("jfr") && JfrTracer.isAvailable()) {
+                SimTrace.setTracer(new JfrTracer());
+            }
+            else if (tracer.equals("jfr") || tracer.equals("log")) {
+
+                if (tracer.equals("jfr")) {
+                    logger.warn("The flight recorder is not available in this JVM, traces will be logged instead.");
+                }
+
+                SimTrace.setTracer(new LogTracer());
+            }
+            else {
+
+                logger.fatal("Unknown tracer: '" + tracer + "'.");
+                return;
+            }
+
+            SimTrace.configure((String)opts.valueOf(OPTION_TRACE));
+        }
+
+        if (compiledWorld != null) {
+
+            if (noSim) {
+                sim.runComponents(scenario, compiledWorld);
+            }
+            else {
+                sim.runSim(scenario, compiledWorld, scale, opts.has(OPTION_PAUSED));
+            }
+        }
+        else if (noSim) {
             sim.runComponents(scenario, world);
         }
         else {
@@ -57,6 +57,7 @@ public class ClockControl {
     private long epoch = 0;   // ms since standard epoch
     private SimTime currTime;
     private SimTime endTime;
+    private long physicsSteps = 0;
     private Set<ClockListener> listeners = new HashSet<ClockListener>();
 
     private Logger logger = Logger.getLogger(ClockControl.class);
@@ -162,6 +163,25 @@ public class ClockControl {
     }
 
 
+    /**
+     * Records that the physics engine has stepped the world forward, so bodies may have moved.
+     */
+    public void physicsStepped() {
+        physicsSteps++;
+    }
+
+
+    /**
+     * Gets the number of times the physics engine has stepped the world forward. Anything
+     * derived from the positions or orientations of bodies can be cached until it changes.
+     *
+     * @return The number of physics steps taken so far.
+     */
+    public long getPhysicsSteps() {
+        return physicsSteps;
+    }
+
+
     /**
      * Gets the date that is associated with the current virtual time. Since the units
      * of the date are less precise than the units of virtual time, multiple
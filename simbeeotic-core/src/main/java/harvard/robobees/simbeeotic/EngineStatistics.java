@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.util.LatencyHistogram;
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Statistics about the events processed by the sim engine in a scenario variation.
+ * The wall clock time taken to process each event is kept in a {@link LatencyHistogram}
+ * for each type of model and each type of event. The length of the event queue and the
+ * lead time of each scheduled event (the amount of simulated time between the current
+ * time and the time of the event) are also tracked. The statistics are cheap enough to
+ * be gathered for every event, and can be watched while the simulation runs by
+ * registering them with the platform MBean server.
+ * <p/>
+ * Statistics are recorded by the thread that runs the simulation. Values that are read
+ * from another thread (e.g. through JMX) while the simulation runs are approximate.
+ *
+ * @author bkate
+ */
+public class EngineStatistics implements EngineStatisticsMBean {
+
+    private int variation;
+
+    private Map<Class<?>, LatencyHistogram> modelLatency = new ConcurrentHashMap<Class<?>, LatencyHistogram>();
+    private Map<Class<?>, LatencyHistogram> eventLatency = new ConcurrentHashMap<Class<?>, LatencyHistogram>();
+    private LatencyHistogram leadTime = new LatencyHistogram();
+
+    private volatile long eventCount = 0;
+    private volatile int queueLength = 0;
+    private volatile int peakQueueLength = 0;
+
+    private ObjectName registeredName = null;
+
+    private static final String DOMAIN = "harvard.robobees.simbeeotic";
+
+    private static Logger logger = Logger.getLogger(EngineStatistics.class);
+
+
+    public EngineStatistics(int variation) {
+        this.variation = variation;
+    }
+
+
+    /**
+     * Records the processing of an event.
+     *
+     * @param modelClass The type of model that processed the event.
+     * @param eventClass The type of event that was processed.
+     * @param nanos The wall clock time taken to process the event (in nanoseconds).
+     * @param queueLength The number of events remaining in the queue.
+     */
+    public void recordEvent(Class<?> modelClass, Class<?> eventClass, long nanos, int queueLength) {
+
+        getHistogram(modelLatency, modelClass).record(nanos);
+        getHistogram(eventLatency, eventClass).record(nanos);
+
+        eventCount++;
+        this.queueLength = queueLength;
+    }
+
+
+    /**
+     * Records the addition of an event to the queue.
+     *
+     * @param lead The amount of simulated time between the current time and the time
+     *             of the scheduled event (in nanoseconds).
+     * @param queueLength The number of events in the queue, including the new event.
+     */
+    public void recordSchedule(long lead, int queueLength) {
+
+        leadTime.record(lead);
+
+        this.queueLength = queueLength;
+
+        if (queueLength > peakQueueLength) {
+            peakQueueLength = queueLength;
+        }
+    }
+
+
+    /**
+     * Registers these statistics with the platform MBean server, using the name
+     * {@code harvard.robobees.simbeeotic:type=SimEngine,variation=N}. A failure
+     * to register is logged, but is otherwise ignored.
+     */
+    public void register() {
+
+        try {
+
+            ObjectName name = new ObjectName(DOMAIN + ":type=SimEngine,variation=" + variation);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            server.registerMBean(this, name);
+            registeredName = name;
+        }
+        catch(JMException e) {
+            logger.warn("Could not register the sim engine statistics with JMX.", e);
+        }
+    }
+
+
+    /**
+     * Removes these statistics from the platform MBean server, if they were registered.
+     */
+    public void unregister() {
+
+        if (registeredName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        }
+        catch(JMException e) {
+            logger.warn("Could not unregister the sim engine statistics from JMX.", e);
+        }
+
+        registeredName = null;
+    }
+
+
+    /**
+     * Gets a summary of the statistics, one line per entry, that is suitable for logging.
+     *
+     * @return The lines of the summary.
+     */
+    public List<String> getSummary() {
+
+        List<String> lines = new ArrayList<String>();
+
+        lines.add("  peak queue length: " + peakQueueLength);
+        lines.add(String.format("     lead time (s): mean %.6f, p50 %.6f, p99 %.6f, max %.6f",
+                                toSeconds(leadTime.getMean()), toSeconds(leadTime.getPercentile(50)),
+                                toSeconds(leadTime.getPercentile(99)), toSeconds(leadTime.getMax())));
+        lines.add("");
+        lines.add(String.format("%-40s %10s %10s %10s %10s %10s %10s", "model (latency in usec)",
+                                "count", "mean", "p50", "p90", "p99", "max"));
+
+        lines.addAll(format(modelLatency));
+
+        lines.add("");
+        lines.add(String.format("%-40s %10s %10s %10s %10s %10s %10s", "event (latency in usec)",
+                                "count", "mean", "p50", "p90", "p99", "max"));
+
+        lines.addAll(format(eventLatency));
+
+        return lines;
+    }
+
+
+    /**
+     * Gets the latency histogram for a type of model.
+     *
+     * @param modelClass The type of model.
+     *
+     * @return The histogram of event processing times for the model type, or {@code null}
+     *         if no events have been processed by models of that type.
+     */
+    public LatencyHistogram getModelLatency(Class<?> modelClass) {
+        return modelLatency.get(modelClass);
+    }
+
+
+    /**
+     * Gets the latency histogram for a type of event.
+     *
+     * @param eventClass The type of event.
+     *
+     * @return The histogram of processing times for the event type, or {@code null}
+     *         if no events of that type have been processed.
+     */
+    public LatencyHistogram getEventLatency(Class<?> eventClass) {
+        return eventLatency.get(eventClass);
+    }
+
+
+    public LatencyHistogram getLeadTime() {
+        return leadTime;
+    }
+
+
+    /** {@inheritDoc} */
+    public int getVariation() {
+        return variation;
+    }
+
+
+    /** {@inheritDoc} */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+
+    /** {@inheritDoc} */
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+
+    /** {@inheritDoc} */
+    public int getPeakQueueLength() {
+        return peakQueueLength;
+    }
+
+
+    /** {@inheritDoc} */
+    public double getMeanLeadTime() {
+        return toSeconds(leadTime.getMean());
+    }
+
+
+    /** {@inheritDoc} */
+    public double getMedianLeadTime() {
+        return toSeconds(leadTime.getPercentile(50));
+    }
+
+
+    /** {@inheritDoc} */
+    public double getMaxLeadTime() {
+        return toSeconds(leadTime.getMax());
+    }
+
+
+    /** {@inheritDoc} */
+    public String[] getModelLatencies() {
+
+        List<String> lines = format(modelLatency);
+
+        return lines.toArray(new String[lines.size()]);
+    }
+
+
+    /** {@inheritDoc} */
+    public String[] getEventLatencies() {
+
+        List<String> lines = format(eventLatency);
+
+        return lines.toArray(new String[lines.size()]);
+    }
+
+
+    private static LatencyHistogram getHistogram(Map<Class<?>, LatencyHistogram> histograms, Class<?> type) {
+
+        LatencyHistogram histogram = histograms.get(type);
+
+        if (histogram == null) {
+
+            histogram = new LatencyHistogram();
+            histograms.put(type, histogram);
+        }
+
+        return histogram;
+    }
+
+
+    /**
+     * Formats a set of histograms, one per line, with the histogram that has the greatest
+     * total time first.
+     *
+     * @param histograms The histograms to format, by type.
+     *
+     * @return The formatted lines.
+     */
+    private static List<String> format(Map<Class<?>, LatencyHistogram> histograms) {
+
+        List<Map.Entry<Class<?>, LatencyHistogram>> entries = new ArrayList<Map.Entry<Class<?>, LatencyHistogram>>(histograms.entrySet());
+        List<String> lines = new ArrayList<String>();
+
+        Collections.sort(entries, new Comparator<Map.Entry<Class<?>, LatencyHistogram>>() {
+
+            public int compare(Map.Entry<Class<?>, LatencyHistogram> e1, Map.Entry<Class<?>, LatencyHistogram> e2) {
+                return Long.valueOf(e2.getValue().getTotal()).compareTo(e1.getValue().getTotal());
+            }
+        });
+
+        for (Map.Entry<Class<?>, LatencyHistogram> entry : entries) {
+
+            LatencyHistogram histogram = entry.getValue();
+
+            lines.add(String.format("%-40s %10d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                                    PhaseProfiler.getName(entry.getKey()), histogram.getCount(),
+                                    toMicros(histogram.getMean()), toMicros(histogram.getPercentile(50)),
+                                    toMicros(histogram.getPercentile(90)), toMicros(histogram.getPercentile(99)),
+                                    toMicros(histogram.getMax())));
+        }
+
+        return lines;
+    }
+
+
+    private static double toMicros(double nanos) {
+        return nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+
+    private static double toSeconds(double nanos) {
+        return nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Accumulates the wall clock time spent in the phases of a simulation (e.g. building the world,
+ * initializing models, stepping the physics engine) so that the cost of each can be compared.
+ * Phases are organized as a tree, where each phase is identified by a path of names. Time that
+ * is recorded for a path is added to every phase along the path, so a parent phase holds the
+ * total of its children (e.g. {@code event-dispatch} and {@code event-dispatch / SimpleBee /
+ * TimerEvent}).
+ * <p/>
+ * Times recorded from more than one thread are summed, so a phase that runs in parallel may
+ * report more time than elapsed on the wall clock. This class is thread safe.
+ *
+ * @author bkate
+ */
+public class PhaseProfiler {
+
+    private Phase root = new Phase();
+
+    private static final Map<Class<?>, String> names = new ConcurrentHashMap<Class<?>, String>();
+
+    // the number of child phases listed for each phase in the summary
+    private static final int SUMMARY_CHILDREN = 10;
+
+    private static Logger logger = Logger.getLogger(PhaseProfiler.class);
+
+
+    /**
+     * Adds time to a phase.
+     *
+     * @param nanos The amount of time spent in the phase (in nanoseconds).
+     * @param path The names that identify the phase, starting from the top level phase.
+     */
+    public synchronized void record(long nanos, String... path) {
+
+        Phase phase = root;
+
+        for (String name : path) {
+
+            Phase child = phase.children.get(name);
+
+            if (child == null) {
+
+                child = new Phase();
+                phase.children.put(name, child);
+            }
+
+            child.time += nanos;
+            child.count++;
+
+            phase = child;
+        }
+    }
+
+
+    /**
+     * Gets the total time recorded for a phase.
+     *
+     * @param path The names that identify the phase, starting from the top level phase.
+     *
+     * @return The total time spent in the phase (in nanoseconds), or zero if nothing was recorded.
+     */
+    public synchronized long getTime(String... path) {
+
+        Phase phase = root;
+
+        for (String name : path) {
+
+            phase = phase.children.get(name);
+
+            if (phase == null) {
+                return 0;
+            }
+        }
+
+        return phase.time;
+    }
+
+
+    /**
+     * Writes a JSON report of the recorded phases. The report holds the recorded phases of
+     * this profiler and, optionally, the phases of a profiler that measured the startup of
+     * the simulation (which are shared by all variations).
+     *
+     * @param file The file to write.
+     * @param variation The number of the scenario variation being reported.
+     * @param startup The phases measured before the variation was run (may be {@code null}).
+     */
+    public void writeReport(File file, int variation, PhaseProfiler startup) {
+
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\n");
+        json.append("  \"variation\": ").append(variation).append(",\n");
+
+        if (startup != null) {
+
+            json.append("  \"startup\": ");
+            startup.appendJson(json, "  ");
+            json.append(",\n");
+        }
+
+        json.append("  \"phases\": ");
+        appendJson(json, "  ");
+        json.append("\n}\n");
+
+        try {
+
+            BufferedWriter out = new BufferedWriter(new FileWriter(file));
+
+            try {
+                out.write(json.toString());
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch(IOException ioe) {
+            logger.warn("Could not write the profile report: " + file, ioe);
+        }
+    }
+
+
+    /**
+     * Gets a human readable summary of the recorded phases, with the most expensive child
+     * phases listed under each phase.
+     *
+     * @return The summary, with one phase per line.
+     */
+    public synchronized List<String> getSummary() {
+
+        List<String> lines = new ArrayList<String>();
+
+        long total = 0;
+
+        for (Phase phase : root.children.values()) {
+            total += phase.time;
+        }
+
+        appendSummary(lines, root, "", total);
+
+        return lines;
+    }
+
+
+    /**
+     * Gets a short name for a class that can be used to identify a phase (e.g. the class of model
+     * being initialized). Anonymous classes are named by their binary name.
+     *
+     * @param type The class in question.
+     *
+     * @return The simple name of the class.
+     */
+    public static String getName(Class<?> type) {
+
+        String name = names.get(type);
+
+        if (name == null) {
+
+            name = type.getSimpleName();
+
+            if (name.length() == 0) {
+                name = type.getName().substring(type.getName().lastIndexOf('.') + 1);
+            }
+
+            names.put(type, name);
+        }
+
+        return name;
+    }
+
+
+    private void appendSummary(List<String> lines, Phase parent, String indent, long total) {
+
+        List<Map.Entry<String, Phase>> children = new ArrayList<Map.Entry<String, Phase>>(parent.children.entrySet());
+
+        // top level phases are listed in the order they ran, the rest by cost
+        if (parent != root) {
+
+            Collections.sort(children, new Comparator<Map.Entry<String, Phase>>() {
+
+                public int compare(Map.Entry<String, Phase> a, Map.Entry<String, Phase> b) {
+                    return Long.valueOf(b.getValue().time).compareTo(a.getValue().time);
+                }
+            });
+        }
+
+        int listed = 0;
+
+        for (Map.Entry<String, Phase> entry : children) {
+
+            if ((parent != root) && (listed++ == SUMMARY_CHILDREN)) {
+
+                lines.add(indent + "... " + (children.size() - SUMMARY_CHILDREN) + " more");
+                break;
+            }
+
+            Phase phase = entry.getValue();
+            double millis = (double)phase.time / TimeUnit.MILLISECONDS.toNanos(1);
+            double percent = (total > 0) ? (100.0 * phase.time / total) : 0;
+
+            lines.add(String.format("%s%-" + Math.max(1, 40 - indent.length()) + "s %12.3f ms %6.2f%% %10d",
+                                    indent, entry.getKey(), millis, percent, phase.count));
+
+            appendSummary(lines, phase, indent + "  ", total);
+        }
+    }
+
+
+    private synchronized void appendJson(StringBuilder json, String indent) {
+        appendJson(json, root.children, indent);
+    }
+
+
+    private void appendJson(StringBuilder json, Map<String, Phase> phases, String indent) {
+
+        json.append("{");
+
+        boolean first = true;
+
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+
+            Phase phase = entry.getValue();
+
+            json.append(first ? "\n" : ",\n");
+            json.append(indent).append("  \"").append(escape(entry.getKey())).append("\": {");
+            json.append("\"time\": ").append(phase.time).append(", ");
+            json.append("\"count\": ").append(phase.count);
+
+            if (!phase.children.isEmpty()) {
+
+                json.append(", \"phases\": ");
+                appendJson(json, phase.children, indent + "  ");
+            }
+
+            json.append("}");
+
+            first = false;
+        }
+
+        if (!first) {
+            json.append("\n").append(indent);
+        }
+
+        json.append("}");
+    }
+
+
+    private static String escape(String str) {
+
+        StringBuilder escaped = new StringBuilder();
+
+        for (char c : str.toCharArray()) {
+
+            if ((c == '"') || (c == '\\')) {
+                escaped.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                escaped.append(String.format("\\u%04x", (int)c));
+            }
+            else {
+                escaped.append(c);
+            }
+        }
+
+        return escaped.toString();
+    }
+
+
+    /**
+     * The time spent in a phase and its child phases.
+     */
+    private static final class Phase {
+
+        public long time = 0;
+        public long count = 0;
+        public Map<String, Phase> children = new LinkedHashMap<String, Phase>();
+    }
+}
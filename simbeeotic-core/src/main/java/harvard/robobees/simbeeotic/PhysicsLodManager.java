@@ -0,0 +1,646 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.util.ObjectArrayList;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import harvard.robobees.simbeeotic.model.PhysicalEntity;
+import org.apache.log4j.Logger;
+
+import javax.vecmath.Vector3f;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * A manager that reduces the fidelity of the physics simulation for dynamic bodies that
+ * are far away from any {@link InterestPoint}. Interest points can be static regions
+ * (configured with the {@code physics-lod-regions} world property), models that are
+ * named as agents of interest ({@code physics-lod-agents}), or any other object that
+ * registers itself with the manager (e.g. the camera of a visualization component).
+ * <p/>
+ * Bodies that are outside of the radius of every interest point are removed from the
+ * normal physics step and are instead integrated with a single explicit step once every
+ * {@code physics-lod-coarse-factor} physics steps. Forces applied to coarse bodies between
+ * these steps are averaged over the interval. Coarse bodies do not generate contacts with
+ * other inactive or static bodies, so they may pass through terrain while coarse. A body is
+ * promoted back to full fidelity (after being brought up to date) as soon as it comes within
+ * the radius of an interest point.
+ * <p/>
+ * The discretization error introduced by the coarse integrator is estimated for each coarse
+ * step as the difference in displacement between a single step and the equivalent sequence
+ * of physics substeps under the same (constant) acceleration, |a| h (h - dt) / 2. These
+ * estimates are accumulated per body so that studies can bound the error introduced.
+ *
+ * @author bkate
+ */
+public class PhysicsLodManager {
+
+    private DiscreteDynamicsWorld world;
+    private float substep;
+
+    private List<InterestPoint> interestPoints = new CopyOnWriteArrayList<InterestPoint>();
+    private Set<String> agentNames = new HashSet<String>();
+    private Map<RigidBody, CoarseState> coarseBodies = new IdentityHashMap<RigidBody, CoarseState>();
+    private Map<RigidBody, Float> errorBounds = new IdentityHashMap<RigidBody, Float>();
+
+    // scratch space to avoid allocation during each step
+    private float[] interestCache = new float[0];
+    private Vector3f tmpPos = new Vector3f();
+    private Vector3f tmpVec = new Vector3f();
+    private Transform tmpTrans = new Transform();
+
+    private long stepCount = 0;
+
+    // instrumentation
+    private long instrFullBodySteps = 0;
+    private long instrCoarseBodySteps = 0;
+    private long instrCoarseIntegrations = 0;
+    private long instrDemotions = 0;
+    private long instrPromotions = 0;
+    private double instrTotalError = 0;
+    private double instrMaxError = 0;
+
+    // parameters
+    private boolean enabled = false;
+    private float defaultRadius = 50;   // m
+    private float hysteresis = 5;       // m
+    private int coarseFactor = 10;
+
+    private static Logger logger = Logger.getLogger(PhysicsLodManager.class);
+
+
+    /**
+     * Creates a manager for the given physics world.
+     *
+     * @param world The physics world containing the bodies to be managed.
+     * @param substep The fixed substep (s) used when stepping the physics world at full fidelity.
+     */
+    public PhysicsLodManager(final DiscreteDynamicsWorld world, final float substep) {
+
+        this.world = world;
+        this.substep = substep;
+    }
+
+
+    /**
+     * Adds a point of interest, around which bodies will be simulated at full fidelity.
+     *
+     * @param point The point to add.
+     */
+    public void addInterestPoint(final InterestPoint point) {
+        interestPoints.add(point);
+    }
+
+
+    /**
+     * Removes a point of interest.
+     *
+     * @param point The point to remove.
+     */
+    public void removeInterestPoint(final InterestPoint point) {
+        interestPoints.remove(point);
+    }
+
+
+    /**
+     * Registers a model as a point of interest if it was named as an agent of interest
+     * in the {@code physics-lod-agents} world property.
+     *
+     * @param name The name of the model.
+     * @param entity The physical entity that is the model.
+     *
+     * @return True if the entity was added as a point of interest, false otherwise.
+     */
+    public boolean addAgent(final String name, final PhysicalEntity entity) {
+
+        if (!agentNames.contains(name)) {
+            return false;
+        }
+
+        addInterestPoint(new InterestPoint() {
+
+            public Vector3f getInterestPosition(Vector3f out) {
+
+                out.set(entity.getTruthPosition());
+
+                return out;
+            }
+
+
+            public float getInterestRadius() {
+                return -1;
+            }
+        });
+
+        return true;
+    }
+
+
+    /**
+     * Updates the fidelity of all dynamic bodies in the physics world. This method
+     * must be called immediately before each step of the physics world.
+     *
+     * @param step The length of the upcoming physics step (s).
+     */
+    public void update(final float step) {
+
+        if (!enabled) {
+            return;
+        }
+
+        // with nothing to focus on, keep everything at full fidelity
+        if (interestPoints.isEmpty()) {
+
+            promoteAll();
+            return;
+        }
+
+        stepCount++;
+
+        cacheInterestPoints();
+
+        ObjectArrayList<CollisionObject> objects = world.getCollisionObjectArray();
+
+        for (int i = 0; i < objects.size(); i++) {
+
+            RigidBody body = RigidBody.upcast(objects.getQuick(i));
+
+            if ((body == null) || body.isStaticOrKinematicObject()) {
+                continue;
+            }
+
+            body.getCenterOfMassPosition(tmpPos);
+
+            float slack = distanceOutside(tmpPos);
+            CoarseState state = coarseBodies.get(body);
+
+            if (state == null) {
+
+                // sleeping bodies already cost nothing
+                if ((slack > hysteresis) && body.isActive()) {
+                    demote(body);
+                }
+                else {
+                    instrFullBodySteps++;
+                }
+
+                continue;
+            }
+
+            state.lastSeen = stepCount;
+            state.elapsed += step;
+
+            // forces are cleared after each physics step, so accumulate them here
+            tmpVec.set(body.getTotalForce());
+            tmpVec.scale(step);
+            state.impulse.add(tmpVec);
+
+            tmpVec.set(body.getTotalTorque());
+            tmpVec.scale(step);
+            state.torqueImpulse.add(tmpVec);
+
+            if (slack <= 0) {
+
+                // catch up and resume normal simulation
+                integrate(body, state);
+                promote(body, state);
+                coarseBodies.remove(body);
+
+                instrFullBodySteps++;
+            }
+            else {
+
+                if (++state.steps >= coarseFactor) {
+                    integrate(body, state);
+                }
+
+                instrCoarseBodySteps++;
+            }
+        }
+
+        // forget about bodies that have left the world
+        if ((stepCount % coarseFactor) == 0) {
+
+            Iterator<Map.Entry<RigidBody, CoarseState>> it = coarseBodies.entrySet().iterator();
+
+            while(it.hasNext()) {
+
+                if (it.next().getValue().lastSeen != stepCount) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns all bodies to full fidelity. Coarse bodies are brought up to date
+     * before they are promoted.
+     */
+    public void promoteAll() {
+
+        for (Map.Entry<RigidBody, CoarseState> entry : coarseBodies.entrySet()) {
+
+            integrate(entry.getKey(), entry.getValue());
+            promote(entry.getKey(), entry.getValue());
+        }
+
+        coarseBodies.clear();
+    }
+
+
+    /**
+     * Indicates if a body is currently being simulated at reduced fidelity.
+     *
+     * @param body The body in question.
+     *
+     * @return True if the body is coarse, false otherwise.
+     */
+    public boolean isCoarse(final RigidBody body) {
+        return coarseBodies.containsKey(body);
+    }
+
+
+    /**
+     * Gets the accumulated bound on the position error introduced into a body by
+     * the coarse integrator.
+     *
+     * @param body The body in question.
+     *
+     * @return The estimated error (m), zero if the body has never been coarse.
+     */
+    public float getErrorBound(final RigidBody body) {
+
+        Float bound = errorBounds.get(body);
+
+        return (bound == null) ? 0 : bound;
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    public long getInstrumentedFullBodySteps() {
+        return instrFullBodySteps;
+    }
+
+
+    public long getInstrumentedCoarseBodySteps() {
+        return instrCoarseBodySteps;
+    }
+
+
+    public long getInstrumentedCoarseIntegrations() {
+        return instrCoarseIntegrations;
+    }
+
+
+    public long getInstrumentedDemotions() {
+        return instrDemotions;
+    }
+
+
+    public long getInstrumentedPromotions() {
+        return instrPromotions;
+    }
+
+
+    /**
+     * Gets the sum of all per-step error estimates introduced by coarse integration.
+     *
+     * @return The total estimated error (m).
+     */
+    public double getInstrumentedTotalError() {
+        return instrTotalError;
+    }
+
+
+    /**
+     * Gets the largest accumulated error estimate of any single body.
+     *
+     * @return The maximum estimated error (m).
+     */
+    public double getInstrumentedMaxError() {
+        return instrMaxError;
+    }
+
+
+    private void cacheInterestPoints() {
+
+        int num = interestPoints.size();
+
+        if (interestCache.length < num * 4) {
+            interestCache = new float[num * 4];
+        }
+
+        int i = 0;
+
+        for (InterestPoint point : interestPoints) {
+
+            if (i >= interestCache.length) {
+                break;
+            }
+
+            point.getInterestPosition(tmpPos);
+
+            float radius = point.getInterestRadius();
+
+            interestCache[i++] = tmpPos.x;
+            interestCache[i++] = tmpPos.y;
+            interestCache[i++] = tmpPos.z;
+            interestCache[i++] = (radius > 0) ? radius : defaultRadius;
+        }
+
+        // the list may have shrunk while iterating
+        for (; i < interestCache.length; i += 4) {
+            interestCache[i + 3] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+
+    /**
+     * Finds how far a position is outside of the nearest region of interest.
+     *
+     * @return The distance (m) outside of the closest region, negative if inside.
+     */
+    private float distanceOutside(final Vector3f pos) {
+
+        float best = Float.POSITIVE_INFINITY;
+
+        for (int i = 0; i < interestCache.length; i += 4) {
+
+            float radius = interestCache[i + 3];
+
+            if (radius == Float.NEGATIVE_INFINITY) {
+                continue;
+            }
+
+            float dx = pos.x - interestCache[i];
+            float dy = pos.y - interestCache[i + 1];
+            float dz = pos.z - interestCache[i + 2];
+
+            float slack = (float)Math.sqrt(dx * dx + dy * dy + dz * dz) - radius;
+
+            if (slack < best) {
+                best = slack;
+            }
+        }
+
+        return best;
+    }
+
+
+    private void demote(final RigidBody body) {
+
+        CoarseState state = new CoarseState(body.getActivationState());
+
+        state.lastSeen = stepCount;
+
+        // stagger the coarse steps so that they are not all taken at once
+        state.steps = (int)(instrDemotions % coarseFactor);
+
+        body.forceActivationState(CollisionObject.DISABLE_SIMULATION);
+        coarseBodies.put(body, state);
+
+        instrDemotions++;
+    }
+
+
+    private void promote(final RigidBody body, final CoarseState state) {
+
+        int prev = state.prevActivationState;
+
+        if ((prev == CollisionObject.ISLAND_SLEEPING) || (prev == CollisionObject.DISABLE_SIMULATION)) {
+            prev = CollisionObject.ACTIVE_TAG;
+        }
+
+        body.forceActivationState(prev);
+        body.setDeactivationTime(0);
+
+        instrPromotions++;
+    }
+
+
+    /**
+     * Advances a coarse body over the time that has elapsed since it was last
+     * integrated, using the rigid body's own (semi-implicit Euler) integrator.
+     */
+    private void integrate(final RigidBody body, final CoarseState state) {
+
+        float h = state.elapsed;
+
+        if (h <= 0) {
+            return;
+        }
+
+        // apply the average force over the interval
+        body.clearForces();
+
+        tmpVec.scale(1 / h, state.impulse);
+        body.applyCentralForce(tmpVec);
+
+        tmpVec.scale(1 / h, state.torqueImpulse);
+        body.applyTorque(tmpVec);
+
+        body.applyGravity();
+
+        // |a| h (h - dt) / 2 is the displacement difference from stepping at the substep rate
+        if (h > substep) {
+
+            float error = body.getTotalForce().length() * body.getInvMass() * h * (h - substep) / 2;
+
+            Float bound = errorBounds.get(body);
+            float total = ((bound == null) ? 0 : bound) + error;
+
+            errorBounds.put(body, total);
+
+            instrTotalError += error;
+            instrMaxError = Math.max(instrMaxError, total);
+        }
+
+        body.integrateVelocities(h);
+        body.applyDamping(h);
+        body.predictIntegratedTransform(h, tmpTrans);
+        body.proceedToTransform(tmpTrans);
+        body.clearForces();
+
+        if (body.getMotionState() != null) {
+            body.getMotionState().setWorldTransform(tmpTrans);
+        }
+
+        world.updateSingleAabb(body);
+
+        state.elapsed = 0;
+        state.steps = 0;
+        state.impulse.set(0, 0, 0);
+        state.torqueImpulse.set(0, 0, 0);
+
+        instrCoarseIntegrations++;
+    }
+
+
+    @Inject(optional = true)
+    public final void setEnabled(@Named("physics-lod-enabled") final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+
+    @Inject(optional = true)
+    public final void setDefaultRadius(@Named("physics-lod-radius") final float radius) {
+        this.defaultRadius = radius;
+    }
+
+
+    @Inject(optional = true)
+    public final void setHysteresis(@Named("physics-lod-hysteresis") final float hysteresis) {
+        this.hysteresis = hysteresis;
+    }
+
+
+    @Inject(optional = true)
+    public final void setCoarseFactor(@Named("physics-lod-coarse-factor") final int factor) {
+
+        if (factor < 1) {
+            throw new RuntimeException("The physics LOD coarse factor must be at least 1.");
+        }
+
+        this.coarseFactor = factor;
+    }
+
+
+    /**
+     * Sets static regions of interest, given as a semicolon separated list of
+     * regions. Each region is defined as a comma separated list of the center
+     * (x, y, z) and radius, for example: {@code "0,0,0,20; 100,50,0,10"}.
+     *
+     * @param regions The regions of interest.
+     */
+    @Inject(optional = true)
+    public final void setRegions(@Named("physics-lod-regions") final String regions) {
+
+        for (String region : regions.split(";")) {
+
+            if (region.trim().length() == 0) {
+                continue;
+            }
+
+            String[] parts = region.split(",");
+
+            if (parts.length != 4) {
+                throw new RuntimeException("A physics LOD region must be defined as 'x,y,z,radius': " + region);
+            }
+
+            final Vector3f center;
+            final float radius;
+
+            try {
+
+                center = new Vector3f(Float.parseFloat(parts[0].trim()),
+                                      Float.parseFloat(parts[1].trim()),
+                                      Float.parseFloat(parts[2].trim()));
+
+                radius = Float.parseFloat(parts[3].trim());
+            }
+            catch(NumberFormatException nfe) {
+                throw new RuntimeException("Could not parse physics LOD region: " + region, nfe);
+            }
+
+            addInterestPoint(new InterestPoint() {
+
+                public Vector3f getInterestPosition(Vector3f out) {
+
+                    out.set(center);
+
+                    return out;
+                }
+
+
+                public float getInterestRadius() {
+                    return radius;
+                }
+            });
+
+            logger.debug("Added physics LOD region at " + center + " with radius " + radius + ".");
+        }
+    }
+
+
+    /**
+     * Sets the names of the models that are considered agents of interest, as a comma
+     * separated list.
+     *
+     * @param names The model names.
+     */
+    @Inject(optional = true)
+    public final void setAgentNames(@Named("physics-lod-agents") final String names) {
+
+        for (String name : names.split(",")) {
+
+            if (name.trim().length() > 0) {
+                agentNames.add(name.trim());
+            }
+        }
+    }
+
+
+    /**
+     * The bookkeeping for a body that is being simulated at reduced fidelity.
+     */
+    private static class CoarseState {
+
+        public int prevActivationState;
+        public int steps = 0;
+        public long lastSeen = 0;
+        public float elapsed = 0;
+        public Vector3f impulse = new Vector3f();
+        public Vector3f torqueImpulse = new Vector3f();
+
+
+        public CoarseState(int prevActivationState) {
+            this.prevActivationState = prevActivationState;
+        }
+    }
+}
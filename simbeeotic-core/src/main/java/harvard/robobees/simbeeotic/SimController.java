@@ -39,16 +39,24 @@ import com.bulletphysics.collision.dispatch.CollisionConfiguration;
 import com.bulletphysics.collision.dispatch.CollisionDispatcher;
 import com.bulletphysics.collision.dispatch.CollisionObject;
 import com.bulletphysics.collision.dispatch.CollisionWorld;
+import com.bulletphysics.collision.broadphase.Dispatcher;
 import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
 import com.bulletphysics.collision.narrowphase.ManifoldPoint;
 import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import com.bulletphysics.dynamics.ActionInterface;
 import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.dynamics.constraintsolver.ConstraintSolver;
+import com.bulletphysics.dynamics.constraintsolver.TypedConstraint;
 import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
 import com.google.inject.AbstractModule;
+import com.google.inject.Binder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.ScopeAnnotation;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
@@ -65,7 +73,11 @@ import harvard.robobees.simbeeotic.configuration.scenario.CustomClass;
 import harvard.robobees.simbeeotic.configuration.world.Meta;
 import harvard.robobees.simbeeotic.configuration.world.World;
 import static harvard.robobees.simbeeotic.environment.PhysicalConstants.EARTH_GRAVITY;
+import harvard.robobees.simbeeotic.environment.CompiledWorld;
+import harvard.robobees.simbeeotic.environment.ShapeRegistry;
 import harvard.robobees.simbeeotic.environment.WorldMap;
+import harvard.robobees.simbeeotic.environment.WorldTemplate;
+import harvard.robobees.simbeeotic.model.ConcurrentInitialization;
 import harvard.robobees.simbeeotic.model.Contact;
 import harvard.robobees.simbeeotic.model.EntityInfo;
 import harvard.robobees.simbeeotic.model.ExternalStateSync;
@@ -74,8 +86,12 @@ import harvard.robobees.simbeeotic.model.Event;
 import harvard.robobees.simbeeotic.model.PhysicalEntity;
 import harvard.robobees.simbeeotic.model.CollisionEvent;
 import harvard.robobees.simbeeotic.model.MotionRecorder;
+import harvard.robobees.simbeeotic.model.SharedStateBuffer;
+import harvard.robobees.simbeeotic.trace.SimTrace;
+import harvard.robobees.simbeeotic.trace.TraceType;
 import harvard.robobees.simbeeotic.model.sensor.AbstractSensor;
 import harvard.robobees.simbeeotic.util.DocUtil;
+import harvard.robobees.simbeeotic.model.comms.AntennaGainTable;
 import harvard.robobees.simbeeotic.model.comms.AntennaPattern;
 import harvard.robobees.simbeeotic.model.comms.IsotropicAntenna;
 import harvard.robobees.simbeeotic.model.comms.AbstractRadio;
@@ -84,7 +100,9 @@ import org.apache.log4j.Logger;
 import org.w3c.dom.Document;
 
 import javax.vecmath.Vector3f;
+import java.lang.annotation.Annotation;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.util.HashSet;
 import java.util.Properties;
@@ -96,8 +114,15 @@ import java.util.Queue;
 import java.util.PriorityQueue;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -117,6 +142,11 @@ public class SimController {
 
     private static Logger logger = Logger.getLogger(SimController.class);
 
+    private int initThreads = 1;
+
+    private File profileDir = null;
+    private PhaseProfiler startupProfile = null;
+
     
     /**
      * Runs all simulation variations of a given scenario. Each variation
@@ -148,10 +178,55 @@ public class SimController {
      *
      */
     public void runSim(final Scenario scenario, final World world, double realTimeScale, boolean startPaused) {
+        runSim(scenario, world, null, realTimeScale, startPaused);
+    }
+
+
+    /**
+     * Behaves identically to {@link #runSim(Scenario, World, double, boolean)} with the exception
+     * that the world has been compiled ahead of time. The static bodies of the world are read
+     * from the compiled form in each variation instead of being rebuilt from the world description.
+     *
+     * @param scenario The scenario, describing the models to execute.
+     * @param world The compiled world in which the models operate.
+     * @param realTimeScale The scale factor for constraining real time (see {@link #runSim(Scenario, World, double, boolean)}).
+     * @param startPaused Indicates that the clock controlling each scenario variation should start
+     *                    in a paused state and wait to be started.
+     */
+    public void runSim(final Scenario scenario, final CompiledWorld world, double realTimeScale, boolean startPaused) {
+        runSim(scenario, world.getWorld(), world, realTimeScale, startPaused);
+    }
+
+
+    private void runSim(final Scenario scenario, final World world, final CompiledWorld compiledWorld,
+                        double realTimeScale, boolean startPaused) {
+
+        // the shapes are kept for the whole sweep, so that every variation sees the same shape ids
+        ShapeRegistry.retainShapes();
+
+        try {
+            runVariations(scenario, world, compiledWorld, realTimeScale, startPaused);
+        }
+        finally {
+            ShapeRegistry.releaseShapes();
+        }
+    }
+
+
+    private void runVariations(final Scenario scenario, final World world, final CompiledWorld compiledWorld,
+                               double realTimeScale, boolean startPaused) {
 
         int currVariation = 0;
+        PhaseProfiler startup = (startupProfile != null) ? startupProfile : new PhaseProfiler();
+
+        long instrPhaseTime = System.nanoTime();
         VariationIterator variations = new VariationIterator(scenario);
 
+        startup.record(System.nanoTime() - instrPhaseTime, "variation-generation");
+
+        // the static part of the world, shared by all variations (if enabled)
+        WorldTemplate worldTemplate = null;
+
         // todo: parallelize the running of variations
         for (final Variation variation : variations) {
 
@@ -160,6 +235,8 @@ public class SimController {
             long instrPhysicsTime = 0;
             long instrRunTime = 0;
 
+            final PhaseProfiler profile = new PhaseProfiler();
+
             final int varId = ++currVariation;
 
             logger.info("");
@@ -172,8 +249,11 @@ public class SimController {
             final AtomicInteger nextMotionId = new AtomicInteger(0);
             final Random variationSeedGenerator = new Random(variation.getSeed());
 
-            // sim engine setup
-            final SimEngineImpl simEngine = new SimEngineImpl(realTimeScale);
+            // sim engine setup (the event statistics can be watched over JMX while the variation runs)
+            final EngineStatistics engineStats = new EngineStatistics(varId);
+            final SimEngineImpl simEngine = new SimEngineImpl(realTimeScale, engineStats);
+
+            engineStats.register();
             final ClockControl clockControl = new ClockControl(new SimTime((long)scenario.getSimulation().getEndTime() * TimeUnit.SECONDS.toMillis(1)),
                                                                (scenario.getSimulation().getEpoch() != null) ? scenario.getSimulation().getEpoch() : TimeUnit.HOURS.toMillis(8));
 
@@ -187,7 +267,7 @@ public class SimController {
             BroadphaseInterface broadphase = new DbvtBroadphase();
             SequentialImpulseConstraintSolver solver = new SequentialImpulseConstraintSolver();
 
-            final DiscreteDynamicsWorld dynamicsWorld = new DiscreteDynamicsWorld(dispatcher, broadphase,
+            final DiscreteDynamicsWorld dynamicsWorld = new BufferedDynamicsWorld(dispatcher, broadphase,
                                                                                   solver, collisionConfiguration);
 
             dynamicsWorld.setGravity(new Vector3f(0, 0, (float)EARTH_GRAVITY));
@@ -195,6 +275,27 @@ public class SimController {
             final MotionRecorder motionRecorder = new MotionRecorder();
             final ExternalStateSync externalSync = new ExternalStateSync();
 
+            // world properties (used to configure the world and physics)
+            final Properties worldProps = new Properties();
+
+            if (world.getProperties() != null) {
+
+                for (Meta.Prop prop : world.getProperties().getProp()) {
+                    worldProps.setProperty(prop.getName(), prop.getValue());
+                }
+            }
+
+            // physics level of detail
+            final PhysicsLodManager lodManager = new PhysicsLodManager(dynamicsWorld, (float)DEFAULT_SUBSTEP);
+
+            Guice.createInjector(new AbstractModule() {
+
+                @Override
+                protected void configure() {
+                    Names.bindProperties(binder(), worldProps);
+                }
+            }).injectMembers(lodManager);
+
 
             // top level guice injector - all others are derived from this
             Module baseModule = new AbstractModule() {
@@ -221,6 +322,9 @@ public class SimController {
 
                     // external synchronizer
                     bind(ExternalStateSync.class).annotatedWith(GlobalScope.class).toInstance(externalSync);
+
+                    // physics level of detail
+                    bind(PhysicsLodManager.class).annotatedWith(GlobalScope.class).toInstance(lodManager);
                 }
 
                 // todo: figure out how to get these providers to not be called for each child injector?
@@ -231,12 +335,18 @@ public class SimController {
                 }
             };
 
+            instrPhaseTime = System.nanoTime();
+
             Injector baseInjector = Guice.createInjector(baseModule);
 
+            profile.record(System.nanoTime() - instrPhaseTime, "injector-creation");
+
 
             // establish components
             final List<VariationComponent> varComponents = new LinkedList<VariationComponent>();
 
+            instrPhaseTime = System.nanoTime();
+
             if (scenario.getComponents() != null) {
 
                 for (CustomClass config : scenario.getComponents().getVariation()) {
@@ -280,16 +390,13 @@ public class SimController {
                 }
             }
 
+            profile.record(System.nanoTime() - instrPhaseTime, "component-setup");
+
 
             // setup the simulated world (obstacle, flowers, etc)
-            final Properties worldProps = new Properties();
+            final WorldTemplate varTemplate = worldTemplate;
 
-            if (world.getProperties() != null) {
-
-                for (Meta.Prop prop : world.getProperties().getProp()) {
-                    worldProps.setProperty(prop.getName(), prop.getValue());
-                }
-            }
+            instrPhaseTime = System.nanoTime();
 
             baseInjector = baseInjector.createChildInjector(new AbstractModule() {
 
@@ -301,12 +408,28 @@ public class SimController {
                     bind(WorldMap.class);
                     bind(World.class).toInstance(world);
                     bind(AtomicInteger.class).annotatedWith(Names.named("next-id")).toInstance(nextMotionId);
+
+                    if (compiledWorld != null) {
+                        bind(CompiledWorld.class).toInstance(compiledWorld);
+                    }
+
+                    if (varTemplate != null) {
+                        bind(WorldTemplate.class).toInstance(varTemplate);
+                    }
                 }
             });
 
+            profile.record(System.nanoTime() - instrPhaseTime, "injector-creation");
+            instrPhaseTime = System.nanoTime();
+
             final WorldMap map = baseInjector.getInstance(WorldMap.class);
             map.initialize();
 
+            worldTemplate = map.getTemplate();
+
+            profile.record(System.nanoTime() - instrPhaseTime, "world-build");
+            instrPhaseTime = System.nanoTime();
+
             baseInjector = baseInjector.createChildInjector(new AbstractModule() {
 
                 @Override
@@ -317,10 +440,14 @@ public class SimController {
                 }
             });
 
+            profile.record(System.nanoTime() - instrPhaseTime, "injector-creation");
+
 
             // parse model definitions
             final List<Model> models = new LinkedList<Model>();
 
+            instrPhaseTime = System.nanoTime();
+
             if (scenario.getModels() != null) {
                 
                 for (ModelConfig config : scenario.getModels().getModel()) {
@@ -332,9 +459,20 @@ public class SimController {
                 simEngine.addModel(model);
             }
 
+            profile.record(System.nanoTime() - instrPhaseTime, "model-construction");
+
             // initialize all models
-            for (Model model : models) {
-                model.initialize();
+            initializeModels(models, profile);
+
+            // agents of interest keep the physics around them at full fidelity
+            if (lodManager.isEnabled()) {
+
+                for (Model model : models) {
+
+                    if (model instanceof PhysicalEntity) {
+                        lodManager.addAgent(model.getName(), (PhysicalEntity)model);
+                    }
+                }
             }
 
 
@@ -395,10 +533,17 @@ public class SimController {
             double step;
             long updatedTime;
             long instrStartTime;
+            long instrStepTime;
+            boolean contact;
             SimTime lastSimTime = new SimTime(0);
             SimTime nextSimTime = simEngine.getNextEventTime();
             SimTime endTime = clockControl.getEndTime();
 
+            // events are only broken down by model and type on request, since it is done for every event
+            if (profileDir != null) {
+                simEngine.setProfiler(profile);
+            }
+
             instrInitTime = System.nanoTime() - instrInitTime;
             instrRunTime = System.nanoTime();
 
@@ -419,23 +564,39 @@ public class SimController {
                         externalSync.updateStates();
 
                         step = Math.min(DEFAULT_STEP, diff);
+
+                        SimTrace.Span span = SimTrace.begin(TraceType.PHYSICS_STEP);
                         instrStartTime = System.nanoTime();
 
+                        lodManager.update((float)step);
+
                         dynamicsWorld.stepSimulation((float)step,
                                                      (int)Math.ceil(step / DEFAULT_SUBSTEP),
                                                      (float)DEFAULT_SUBSTEP);
 
+                        clockControl.physicsStepped();
+
+                        instrStepTime = System.nanoTime();
+
+                        if (span != null) {
+                            SimTrace.end(span, lastSimTime.getTime() + updatedTime, step,
+                                         (int)Math.ceil(step / DEFAULT_SUBSTEP));
+                        }
+                        profile.record(instrStepTime - instrStartTime, "physics-step");
+
                         // keep track of how far ahead the physics engine is getting from the last processed event time
                         updatedTime += (long)(step * NANOS_IN_SEC);
 
                         // update collisions
-                        if (contactHandler.update(lastSimTime, updatedTime)) {
+                        contact = contactHandler.update(lastSimTime, updatedTime);
+
+                        profile.record(System.nanoTime() - instrStepTime, "contact-handling");
+                        instrPhysicsTime += (System.nanoTime() - instrStartTime);
 
-                            instrPhysicsTime += (System.nanoTime() - instrStartTime);
+                        if (contact) {
                             break;
                         }
 
-                        instrPhysicsTime += (System.nanoTime() - instrStartTime);
                         diff -= DEFAULT_STEP;
                     }
 
@@ -454,9 +615,15 @@ public class SimController {
             instrRunTime = System.nanoTime() - instrRunTime;
 
             // cleanup
+            instrPhaseTime = System.nanoTime();
+
             hook.run();
             Runtime.getRuntime().removeShutdownHook(hook);
 
+            profile.record(System.nanoTime() - instrPhaseTime, "shutdown");
+
+            engineStats.unregister();
+
             logger.info("");
             logger.info("--------------------------------------------");
             logger.info("Scenario variation " + currVariation + " executed in " +
@@ -468,11 +635,77 @@ public class SimController {
             logger.info("  physics time: " + instrPhysicsTime + " nanos");
             logger.info("      run time: " + instrRunTime + " nanos");
             logger.info("    total time: " + (instrInitTime + instrRunTime) + " nanos");
+
+            if (lodManager.isEnabled()) {
+
+                logger.info("");
+                logger.info("   full body steps: " + lodManager.getInstrumentedFullBodySteps());
+                logger.info(" coarse body steps: " + lodManager.getInstrumentedCoarseBodySteps());
+                logger.info("  coarse integrals: " + lodManager.getInstrumentedCoarseIntegrations());
+                logger.info("  demote / promote: " + lodManager.getInstrumentedDemotions() + " / " +
+                            lodManager.getInstrumentedPromotions());
+                logger.info("   lod total error: " + lodManager.getInstrumentedTotalError() + " m");
+                logger.info("     lod max error: " + lodManager.getInstrumentedMaxError() + " m");
+            }
+
+            logger.info("");
+
+            for (String line : engineStats.getSummary()) {
+                logger.info(line);
+            }
+
+            if (profileDir != null) {
+
+                File report = new File(profileDir, "profile-variation-" + varId + ".json");
+
+                profile.writeReport(report, varId, startup);
+
+                logger.info("");
+                logger.info(String.format("%-40s %15s %7s %10s", "phase", "time", "share", "count"));
+
+                for (String line : profile.getSummary()) {
+                    logger.info(line);
+                }
+
+                logger.info("");
+                logger.info("Wrote profile report to " + report + ".");
+            }
+
             logger.info("--------------------------------------------");
         }
     }
 
 
+    /**
+     * Sets the number of threads used to initialize models. When more than one thread
+     * is used, the models that declare {@link ConcurrentInitialization} are initialized
+     * concurrently before the remaining models are initialized serially. The default is
+     * to initialize all models serially.
+     *
+     * @param threads The number of initialization threads.
+     */
+    public void setInitThreads(int threads) {
+        initThreads = threads;
+    }
+
+
+    /**
+     * Enables the phase profiler. The time spent in each phase of a scenario variation
+     * (e.g. building the world, initializing models, stepping the physics engine and
+     * dispatching events to each type of model) is written as a JSON report for every
+     * variation, and a summary is logged.
+     *
+     * @param reportDir The directory in which the reports are written ({@code profile-variation-N.json}).
+     * @param startup The phases measured before the simulation was started (e.g. loading the scenario),
+     *                which are included in each report. May be {@code null}.
+     */
+    public void setProfiling(File reportDir, PhaseProfiler startup) {
+
+        profileDir = reportDir;
+        startupProfile = startup;
+    }
+
+
     /**
      * Creates a virtual world and the components specified in the scenario, but does not
      * create any models or start a simulation engine. This method allows users to
@@ -486,6 +719,23 @@ public class SimController {
      * @param world The world in which the models operate.
      */
     public void runComponents(final Scenario scenario, final World world) {
+        runComponents(scenario, world, null);
+    }
+
+
+    /**
+     * Behaves identically to {@link #runComponents(Scenario, World)} with the exception
+     * that the world has been compiled ahead of time.
+     *
+     * @param scenario The scenario, describing the models to execute.
+     * @param world The compiled world in which the models operate.
+     */
+    public void runComponents(final Scenario scenario, final CompiledWorld world) {
+        runComponents(scenario, world.getWorld(), world);
+    }
+
+
+    private void runComponents(final Scenario scenario, final World world, final CompiledWorld compiledWorld) {
 
         VariationIterator variations = new VariationIterator(scenario);
 
@@ -610,6 +860,10 @@ public class SimController {
                 bind(WorldMap.class);
                 bind(World.class).toInstance(world);
                 bind(AtomicInteger.class).annotatedWith(Names.named("next-id")).toInstance(nextMotionId);
+
+                if (compiledWorld != null) {
+                    bind(CompiledWorld.class).toInstance(compiledWorld);
+                }
             }
         });
 
@@ -638,6 +892,108 @@ public class SimController {
     }
 
 
+    /**
+     * Initializes the models of a variation. Models that declare {@link ConcurrentInitialization}
+     * are initialized on a pool of threads (if enabled), each with its own {@link SharedStateBuffer}.
+     * Once they are all done, the models are visited in order - the buffer of each concurrent model
+     * is committed and each remaining model is initialized. The state of the simulation is therefore
+     * the same as if every model had been initialized serially, no matter how the work was scheduled.
+     *
+     * @param models The models to initialize.
+     * @param profile The profiler that records the time spent initializing each type of model.
+     */
+    private void initializeModels(List<Model> models, final PhaseProfiler profile) {
+
+        Map<Model, SharedStateBuffer> buffers = new IdentityHashMap<Model, SharedStateBuffer>();
+        List<Callable<Object>> tasks = new LinkedList<Callable<Object>>();
+
+        for (final Model model : models) {
+
+            if ((initThreads <= 1) || !model.getClass().isAnnotationPresent(ConcurrentInitialization.class)) {
+                continue;
+            }
+
+            final SharedStateBuffer buffer = new SharedStateBuffer();
+
+            buffers.put(model, buffer);
+
+            tasks.add(new Callable<Object>() {
+
+                public Object call() {
+
+                    long start = System.nanoTime();
+
+                    buffer.open();
+
+                    try {
+                        model.initialize();
+                    }
+                    finally {
+                        buffer.close();
+                    }
+
+                    profile.record(System.nanoTime() - start, "model-initialize", PhaseProfiler.getName(model.getClass()));
+
+                    return null;
+                }
+            });
+        }
+
+        if (!tasks.isEmpty()) {
+
+            ExecutorService executor = Executors.newFixedThreadPool(initThreads);
+
+            try {
+
+                for (Future<Object> result : executor.invokeAll(tasks)) {
+                    result.get();
+                }
+            }
+            catch(InterruptedException ie) {
+                throw new RuntimeException("Interrupted while initializing models.", ie);
+            }
+            catch(ExecutionException ee) {
+
+                if (ee.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)ee.getCause();
+                }
+
+                throw new RuntimeException("Could not initialize a model.", ee.getCause());
+            }
+            finally {
+                executor.shutdown();
+            }
+
+            logger.info("Initialized " + tasks.size() + " models on " + initThreads + " threads.");
+        }
+
+        long commitTime = 0;
+
+        for (Model model : models) {
+
+            SharedStateBuffer buffer = buffers.get(model);
+            long start = System.nanoTime();
+
+            if (buffer != null) {
+
+                buffer.commit();
+
+                commitTime += System.nanoTime() - start;
+            }
+            else {
+
+                model.initialize();
+
+                profile.record(System.nanoTime() - start, "model-initialize", PhaseProfiler.getName(model.getClass()));
+            }
+        }
+
+        if (!buffers.isEmpty()) {
+            profile.record(commitTime, "model-initialize", "shared-state-commit");
+        }
+    }
+
+
     /**
      * Parses model definitions and returns the corresponding models. This is a
      * recursive call, allowing nested models to be instantiated. The entire model
@@ -714,201 +1070,238 @@ public class SimController {
         }
 
 
+        // the values that differ between instances are set just before each instance is created, so
+        // the bindings of the model, sensors and radio are resolved once for all instances of this config
+        final InstanceValues values = new InstanceValues();
+
         // model injection config
-        for (int i = 0; i < config.getCount(); i++) {
+        InstanceFactory<Model> modelFactory = new InstanceFactory<Model>(injector, Model.class, modelClass,
+                                                                         new AbstractModule() {
 
-            Injector modelInjector = injector.createChildInjector(new AbstractModule() {
+            protected void configure() {
 
-                protected void configure() {
+                values.bindModelId(binder(), modelProps);
+                values.bindObjectId(binder(), modelProps);
+                bindConstant().annotatedWith(Names.named("model-name")).to(config.getName());
 
-                    bindConstant().annotatedWith(Names.named("model-id")).to(nextModelId.getAndIncrement());
-                    bindConstant().annotatedWith(Names.named("object-id")).to(nextMotionId.getAndIncrement());
-                    bindConstant().annotatedWith(Names.named("model-name")).to(config.getName());
+                bind(Vector3f.class).annotatedWith(Names.named("start-position")).toInstance(starting);
 
-                    bind(Vector3f.class).annotatedWith(Names.named("start-position")).toInstance(starting);
+                Names.bindProperties(binder(), modelProps);
 
-                    Names.bindProperties(binder(), modelProps);
+                // model class
+                bind(Model.class).to(modelClass);
 
-                    // model class
-                    bind(Model.class).to(modelClass);
+                // a workaround for guice issue 282
+                bind(modelClass);
+            }
+        });
 
-                    // a workaround for guice issue 282
-                    bind(modelClass);
+        // sensors
+        List<InstanceFactory<Model>> sensorFactories = new LinkedList<InstanceFactory<Model>>();
+
+        for (final SensorConfig sensorConfig : config.getSensor()) {
+
+            final Class sensorClass;
+
+            try {
+
+                sensorClass = Class.forName(sensorConfig.getJavaClass());
+
+                if (!Model.class.isAssignableFrom(sensorClass)) {
+                    throw new RuntimeException("The sensor implementation must implement Model.");
                 }
-            });
+                else if (!AbstractSensor.class.isAssignableFrom(sensorClass)) {
+                    throw new RuntimeException("The sensor implementation must extend from AbstractSensor.");
+                }
+            }
+            catch(ClassNotFoundException cnf) {
+                throw new RuntimeException("Could not locate the sensor class: " +
+                                           config.getJavaClass(), cnf);
+            }
 
-            // instantiate the model
-            final Model m = modelInjector.getInstance(Model.class);
+            final Properties sensorProps = loadConfigProps(sensorConfig.getProperties(), variation);
+            final Vector3f offset = new Vector3f();
+            final Vector3f pointing = new Vector3f();
 
-            if (parent != null) {
+            if (sensorConfig.getOffset() != null) {
 
-                m.setParentModel(parent);
-                parent.addChildModel(m);
+                offset.set(sensorConfig.getOffset().getX(),
+                           sensorConfig.getOffset().getY(),
+                           sensorConfig.getOffset().getZ());
             }
 
-            models.add(m);
+            if (sensorConfig.getPointing() != null) {
 
-            m.setCustomConfig(optionalDoc);
+                pointing.set(sensorConfig.getPointing().getX(),
+                             sensorConfig.getPointing().getY(),
+                             sensorConfig.getPointing().getZ());
+            }
 
-            // sensors
-            for (final SensorConfig sensorConfig : config.getSensor()) {
+            sensorFactories.add(new InstanceFactory<Model>(injector, Model.class, sensorClass, new AbstractModule() {
 
-                // sensors must be attached to physical entities because they rely on
-                // their position and orientation information
-                if (!(m instanceof PhysicalEntity)) {
-                    throw new InvalidScenarioException("Sensor being attached to a model that is not a PhysicalEntity.");
+                protected void configure() {
+
+                    Names.bindProperties(binder(), sensorProps);
+
+                    values.bindModelId(binder(), sensorProps);
+                    bindConstant().annotatedWith(Names.named("model-name")).to(sensorConfig.getName());
+
+                    // each sensor gets its own copy of the vectors
+                    bind(Vector3f.class).annotatedWith(Names.named("offset")).toProvider(new VectorProvider(offset));
+                    bind(Vector3f.class).annotatedWith(Names.named("pointing")).toProvider(new VectorProvider(pointing));
+
+                    bind(Model.class).to(sensorClass);
+
+                    // a workaround for guice issue 282
+                    bind(sensorClass);
                 }
+            }));
+        }
 
-                final Class sensorClass;
+        // radio
+        InstanceFactory<AntennaPattern> patternFactory = null;
+        AntennaPattern patternTable = null;
+        InstanceFactory<Model> radioFactory = null;
 
-                try {
+        if (config.getRadio() != null) {
 
-                    sensorClass = Class.forName(sensorConfig.getJavaClass());
+            final RadioConfig radioConfig = config.getRadio();
+            final Class radioClass;
 
-                    if (!Model.class.isAssignableFrom(sensorClass)) {
-                        throw new RuntimeException("The sensor implementation must implement Model.");
-                    }
-                    else if (!AbstractSensor.class.isAssignableFrom(sensorClass)) {
-                        throw new RuntimeException("The sensor implementation must extend from AbstractSensor.");
-                    }
+            final Properties radioProps = loadConfigProps(radioConfig.getProperties(), variation);
+
+            try {
+
+                radioClass = Class.forName(radioConfig.getJavaClass());
+
+                if (!Model.class.isAssignableFrom(radioClass)) {
+                    throw new RuntimeException("The radio implementation must implement Model.");                        
                 }
-                catch(ClassNotFoundException cnf) {
-                    throw new RuntimeException("Could not locate the sensor class: " +
-                                               config.getJavaClass(), cnf);
+                else if (!AbstractRadio.class.isAssignableFrom(radioClass)) {
+                    throw new RuntimeException("The radio implementation must implement AbstractRadio.");
                 }
+            }
+            catch(ClassNotFoundException cnf) {
+                throw new RuntimeException("Could not locate the radio class: " +
+                                           radioConfig.getJavaClass(), cnf);
+            }
 
-                final Properties sensorProps = loadConfigProps(sensorConfig.getProperties(), variation);
-                final Vector3f offset = new Vector3f();
-                final Vector3f pointing = new Vector3f();
+            if (config.getRadio().getAntennaPattern() != null) {
 
-                if (sensorConfig.getOffset() != null) {
+                final Class patternClass;
+                final Properties patternProps = loadConfigProps(radioConfig.getAntennaPattern().getProperties(),
+                                                                variation);
 
-                    offset.set(sensorConfig.getOffset().getX(),
-                               sensorConfig.getOffset().getY(),
-                               sensorConfig.getOffset().getZ());
-                }
+                try {
 
-                if (sensorConfig.getPointing() != null) {
+                    patternClass = Class.forName(radioConfig.getAntennaPattern().getJavaClass());
 
-                    pointing.set(sensorConfig.getPointing().getX(),
-                                 sensorConfig.getPointing().getY(),
-                                 sensorConfig.getPointing().getZ());
+                    if (!AntennaPattern.class.isAssignableFrom(patternClass)) {
+                        throw new RuntimeException("The antenna pattern implementation must implement AntennaPattern.");
+                    }
+                }
+                catch(ClassNotFoundException cnf) {
+                    throw new RuntimeException("Could not locate the antenna pattern class: " +
+                                               radioConfig.getAntennaPattern().getJavaClass(), cnf);
                 }
 
-                Injector sensorInjector = injector.createChildInjector(new AbstractModule() {
+                patternFactory = new InstanceFactory<AntennaPattern>(injector, AntennaPattern.class, patternClass,
+                                                                     new AbstractModule() {
 
                     protected void configure() {
 
-                        Names.bindProperties(binder(), sensorProps);
-
-                        bindConstant().annotatedWith(Names.named("model-id")).to(nextModelId.getAndIncrement());
-                        bindConstant().annotatedWith(Names.named("model-name")).to(sensorConfig.getName());
-
-                        bind(Vector3f.class).annotatedWith(Names.named("offset")).toInstance(offset);
-                        bind(Vector3f.class).annotatedWith(Names.named("pointing")).toInstance(pointing);
+                        Names.bindProperties(binder(), patternProps);
 
-                        bind(Model.class).to(sensorClass);
+                        bind(AntennaPattern.class).to(patternClass);
 
                         // a workaround for guice issue 282
-                        bind(sensorClass);
+                        bind(patternClass);
                     }
                 });
 
-                Model sensor = sensorInjector.getInstance(Model.class);
+                // every radio in this config has the same pattern, so they can share one precomputed table
+                if (patternProps.getProperty("gain-table-resolution") != null) {
 
-                models.add(sensor);
+                    double resolution = Double.parseDouble(patternProps.getProperty("gain-table-resolution"));
 
-                sensor.setParentModel(m);
-                m.addChildModel(sensor);
+                    patternTable = new AntennaGainTable(patternFactory.create(), Math.toRadians(resolution));
+                }
             }
 
-            // radio
-            if (config.getRadio() != null) {
+            radioFactory = new InstanceFactory<Model>(injector, Model.class, radioClass, new AbstractModule() {
 
-                // radios must be attached to physical entities because they rely on
-                // their position and orientation information
-                if (!(m instanceof PhysicalEntity)) {
-                    throw new InvalidScenarioException("Radio being attached to a model that is not a PhysicalEntity.");
-                }
+                protected void configure() {
 
-                final RadioConfig radioConfig = config.getRadio();
-                final Class radioClass;
-                final AntennaPattern pattern;
+                    Names.bindProperties(binder(), radioProps);
 
-                final Properties radioProps = loadConfigProps(radioConfig.getProperties(), variation);
+                    values.bindModelId(binder(), radioProps);
+                    bindConstant().annotatedWith(Names.named("model-name")).to(radioConfig.getName());
 
-                try {
+                    bind(AntennaPattern.class).toProvider(values.getPattern());
+                    bind(Model.class).to(radioClass);
 
-                    radioClass = Class.forName(radioConfig.getJavaClass());
-
-                    if (!Model.class.isAssignableFrom(radioClass)) {
-                        throw new RuntimeException("The radio implementation must implement Model.");                        
-                    }
-                    else if (!AbstractRadio.class.isAssignableFrom(radioClass)) {
-                        throw new RuntimeException("The radio implementation must implement AbstractRadio.");
-                    }
-                }
-                catch(ClassNotFoundException cnf) {
-                    throw new RuntimeException("Could not locate the radio class: " +
-                                               radioConfig.getJavaClass(), cnf);
+                    // a workaround for guice issue 282
+                    bind(radioClass);
                 }
+            });
+        }
 
-                if (config.getRadio().getAntennaPattern() != null) {
-
-                    final Class patternClass;
-                    final Properties patternProps = loadConfigProps(radioConfig.getAntennaPattern().getProperties(),
-                                                                    variation);
 
-                    try {
+        for (int i = 0; i < config.getCount(); i++) {
 
-                        patternClass = Class.forName(radioConfig.getAntennaPattern().getJavaClass());
+            values.setModelId(nextModelId.getAndIncrement());
+            values.setObjectId(nextMotionId.getAndIncrement());
 
-                        if (!AntennaPattern.class.isAssignableFrom(patternClass)) {
-                            throw new RuntimeException("The antenna pattern implementation must implement AntennaPattern.");
-                        }
-                    }
-                    catch(ClassNotFoundException cnf) {
-                        throw new RuntimeException("Could not locate the antenna pattern class: " +
-                                                   radioConfig.getAntennaPattern().getJavaClass(), cnf);
-                    }
+            // instantiate the model
+            final Model m = modelFactory.create();
 
-                    Injector patternInjector = injector.createChildInjector(new AbstractModule() {
+            if (parent != null) {
 
-                        protected void configure() {
+                m.setParentModel(parent);
+                parent.addChildModel(m);
+            }
 
-                            Names.bindProperties(binder(), patternProps);
+            models.add(m);
 
-                            bind(AntennaPattern.class).to(patternClass);
+            m.setCustomConfig(optionalDoc);
 
-                            // a workaround for guice issue 282
-                            bind(patternClass);
-                        }
-                    });
+            // sensors
+            for (InstanceFactory<Model> sensorFactory : sensorFactories) {
 
-                    pattern = patternInjector.getInstance(AntennaPattern.class);
-                }
-                else {
-                    pattern = new IsotropicAntenna();
+                // sensors must be attached to physical entities because they rely on
+                // their position and orientation information
+                if (!(m instanceof PhysicalEntity)) {
+                    throw new InvalidScenarioException("Sensor being attached to a model that is not a PhysicalEntity.");
                 }
 
-                Injector radioInjector = injector.createChildInjector(new AbstractModule() {
+                values.setModelId(nextModelId.getAndIncrement());
 
-                    protected void configure() {
+                Model sensor = sensorFactory.create();
 
-                        Names.bindProperties(binder(), radioProps);
+                models.add(sensor);
 
-                        bindConstant().annotatedWith(Names.named("model-id")).to(nextModelId.getAndIncrement());
-                        bindConstant().annotatedWith(Names.named("model-name")).to(radioConfig.getName());
+                sensor.setParentModel(m);
+                m.addChildModel(sensor);
+            }
 
-                        bind(AntennaPattern.class).toInstance(pattern);
-                        bind(Model.class).to(radioClass);
+            // radio
+            if (radioFactory != null) {
 
-                        // a workaround for guice issue 282
-                        bind(radioClass);
-                    }
-                });
+                // radios must be attached to physical entities because they rely on
+                // their position and orientation information
+                if (!(m instanceof PhysicalEntity)) {
+                    throw new InvalidScenarioException("Radio being attached to a model that is not a PhysicalEntity.");
+                }
 
-                Model radio = radioInjector.getInstance(Model.class);
+                if (patternTable != null) {
+                    values.setPattern(patternTable);
+                }
+                else {
+                    values.setPattern((patternFactory != null) ? patternFactory.create() : new IsotropicAntenna());
+                }
+                values.setModelId(nextModelId.getAndIncrement());
+
+                Model radio = radioFactory.create();
 
                 models.add(radio);
 
@@ -974,6 +1367,254 @@ public class SimController {
     }
 
 
+    /**
+     * Creates instances of a configured class from a single child injector. The injector
+     * is created the first time an instance is needed and reused for every instance after
+     * that, because creating a child injector per instance dominates the startup of large
+     * swarms. Classes that carry a scope annotation (e.g. {@code @Singleton}) get a new
+     * child injector per instance, as before, so that each instance is still distinct.
+     */
+    private static final class InstanceFactory<T> {
+
+        private Injector parent;
+        private Class<T> type;
+        private Module module;
+        private boolean shared;
+
+        private Provider<T> provider = null;
+
+
+        public InstanceFactory(Injector parent, Class<T> type, Class impl, Module module) {
+
+            this.parent = parent;
+            this.type = type;
+            this.module = module;
+
+            shared = true;
+
+            for (Annotation annotation : impl.getAnnotations()) {
+
+                if (annotation.annotationType().isAnnotationPresent(ScopeAnnotation.class)) {
+                    shared = false;
+                }
+            }
+        }
+
+
+        public T create() {
+
+            if ((provider == null) || !shared) {
+                provider = parent.createChildInjector(module).getProvider(type);
+            }
+
+            return provider.get();
+        }
+    }
+
+
+    /**
+     * The values that are unique to the instance that is being created by an {@link InstanceFactory}.
+     */
+    private static final class InstanceValues {
+
+        private int modelId;
+        private int objectId;
+        private AntennaPattern pattern;
+
+
+        public void setModelId(int id) {
+            modelId = id;
+        }
+
+
+        public void setObjectId(int id) {
+            objectId = id;
+        }
+
+
+        public void setPattern(AntennaPattern pattern) {
+            this.pattern = pattern;
+        }
+
+
+        public void bindModelId(Binder binder, Properties props) {
+
+            bindId(binder, "model-id", props, new Provider<Integer>() {
+
+                public Integer get() {
+                    return modelId;
+                }
+            });
+        }
+
+
+        public void bindObjectId(Binder binder, Properties props) {
+
+            bindId(binder, "object-id", props, new Provider<Integer>() {
+
+                public Integer get() {
+                    return objectId;
+                }
+            });
+        }
+
+
+        /**
+         * Binds an identifier to a provider of its current value, so that it can be injected
+         * as an {@code int}, {@code long} or {@code String} like any other constant. The
+         * {@code String} binding is left out if the properties already define the name, since
+         * they are bound as strings.
+         *
+         * @param binder The binder of the module being configured.
+         * @param name The name of the identifier.
+         * @param props The properties that are bound in the same module.
+         * @param id The provider of the identifier's current value.
+         */
+        private static void bindId(Binder binder, String name, Properties props, final Provider<Integer> id) {
+
+            Named named = Names.named(name);
+
+            binder.bind(Integer.class).annotatedWith(named).toProvider(id);
+
+            binder.bind(Long.class).annotatedWith(named).toProvider(new Provider<Long>() {
+
+                public Long get() {
+                    return id.get().longValue();
+                }
+            });
+
+            if (props.getProperty(name) == null) {
+
+                binder.bind(String.class).annotatedWith(named).toProvider(new Provider<String>() {
+
+                    public String get() {
+                        return id.get().toString();
+                    }
+                });
+            }
+        }
+
+
+        public Provider<AntennaPattern> getPattern() {
+
+            return new Provider<AntennaPattern>() {
+
+                public AntennaPattern get() {
+                    return pattern;
+                }
+            };
+        }
+    }
+
+
+    /**
+     * Provides a new copy of a vector each time it is called.
+     */
+    private static final class VectorProvider implements Provider<Vector3f> {
+
+        private Vector3f vec;
+
+
+        public VectorProvider(Vector3f vec) {
+            this.vec = vec;
+        }
+
+
+        public Vector3f get() {
+            return new Vector3f(vec);
+        }
+    }
+
+
+    /**
+     * A dynamics world that holds the objects added by a model in the model's
+     * {@link SharedStateBuffer} while it is initialized concurrently.
+     */
+    private static final class BufferedDynamicsWorld extends DiscreteDynamicsWorld {
+
+        public BufferedDynamicsWorld(Dispatcher dispatcher, BroadphaseInterface broadphase,
+                                     ConstraintSolver solver, CollisionConfiguration config) {
+
+            super(dispatcher, broadphase, solver, config);
+        }
+
+
+        @Override
+        public void addCollisionObject(final CollisionObject obj, final short group, final short mask) {
+
+            if (!SharedStateBuffer.defer(new Runnable() {
+
+                public void run() {
+                    addCollisionObject(obj, group, mask);
+                }
+            })) {
+
+                super.addCollisionObject(obj, group, mask);
+            }
+        }
+
+
+        @Override
+        public void addRigidBody(final RigidBody body) {
+
+            if (!SharedStateBuffer.defer(new Runnable() {
+
+                public void run() {
+                    addRigidBody(body);
+                }
+            })) {
+
+                super.addRigidBody(body);
+            }
+        }
+
+
+        @Override
+        public void addRigidBody(final RigidBody body, final short group, final short mask) {
+
+            if (!SharedStateBuffer.defer(new Runnable() {
+
+                public void run() {
+                    addRigidBody(body, group, mask);
+                }
+            })) {
+
+                super.addRigidBody(body, group, mask);
+            }
+        }
+
+
+        @Override
+        public void addConstraint(final TypedConstraint constraint, final boolean disableCollisions) {
+
+            if (!SharedStateBuffer.defer(new Runnable() {
+
+                public void run() {
+                    addConstraint(constraint, disableCollisions);
+                }
+            })) {
+
+                super.addConstraint(constraint, disableCollisions);
+            }
+        }
+
+
+        @Override
+        public void addAction(final ActionInterface action) {
+
+            if (!SharedStateBuffer.defer(new Runnable() {
+
+                public void run() {
+                    addAction(action);
+                }
+            })) {
+
+                super.addAction(action);
+            }
+        }
+    }
+
+
     /**
      * A class that iterates through contacts and informs each object of its contact.
      */
@@ -1002,6 +1643,8 @@ public class SimController {
          */
         public boolean update(SimTime lastSimTime, long updatedTime) {
 
+            SimTrace.Span span = SimTrace.begin(TraceType.CONTACT_UPDATE);
+
             // remove old contacts
             for (CollisionObject obj : contactMap.keySet()) {
                 ((EntityInfo)obj.getUserPointer()).getContactPoints().clear();
@@ -1026,13 +1669,17 @@ public class SimController {
 
                     ManifoldPoint point = manifold.getContactPoint(j);
 
+                    // only the concave side of a contact reports a triangle, which
+                    // identifies the touched part of a body with merged geometry
+                    int part = Math.max(point.index0, point.index1);
+
                     Contact contactA = new Contact(point.localPointA,
                                                    point.getPositionWorldOnA(new Vector3f()),
-                                                   ((EntityInfo)objectB.getUserPointer()).getMetadata());
+                                                   infoB.getPart(part).getMetadata());
 
                     Contact contactB = new Contact(point.localPointB,
                                                    point.getPositionWorldOnB(new Vector3f()),
-                                                   ((EntityInfo)objectA.getUserPointer()).getMetadata());
+                                                   infoA.getPart(part).getMetadata());
 
                     // add the contact points to the objects
                     infoA.getContactPoints().add(contactA);
@@ -1082,6 +1729,10 @@ public class SimController {
 
             contactMap = newContacts;
 
+            if (span != null) {
+                SimTrace.end(span, lastSimTime.getTime() + updatedTime, numManifolds, scheduledEvent);
+            }
+
             return scheduledEvent;
         }
     }
@@ -1093,7 +1744,10 @@ public class SimController {
      *
      * <br/>
      * This class is not thread safe, so it would need to be updated if
-     * multiple models are allowed to execute in parallel in the future.
+     * multiple models are allowed to execute in parallel in the future. The
+     * only exception is the concurrent initialization of models, during which
+     * events are numbered immediately but queued when the model's
+     * {@link SharedStateBuffer} is committed.
      */
     private static final class SimEngineImpl implements SimEngine {
 
@@ -1104,17 +1758,21 @@ public class SimController {
 
         private SimTime processing = null;
         private SimTime lastProcessed = null;
-        private long nextEventId = 1;
+        private AtomicLong nextEventId = new AtomicLong(1);
         private boolean terminated = false;
 
         private double realTimeScale = 1;
         private long firstEventRealTime = -1;
         private long instrEventTime = 0;
         private long instrEventCount = 0;
+        private PhaseProfiler profiler = null;
+        private EngineStatistics statistics;
+
 
+        public SimEngineImpl(double realTimeScale, EngineStatistics statistics) {
 
-        public SimEngineImpl(double realTimeScale) {
             this.realTimeScale = realTimeScale;
+            this.statistics = statistics;
         }
 
 
@@ -1152,17 +1810,45 @@ public class SimController {
                 throw new ModelNotFoundException();
             }
 
-            long eventId = nextEventId++;
+            long eventId = nextEventId.getAndIncrement();
+            final ScheduledEvent scheduled = new ScheduledEvent(eventId, time, event, model);
+            final long lead = (minTime != null) ? time.getTime() - minTime.getTime() : time.getTime();
 
-            // add it to the queue
-            eventQ.add(new ScheduledEvent(eventId, time, event, model));
+            // add it to the queue (once the model is initialized, if it is being done concurrently)
+            if (!SharedStateBuffer.defer(new Runnable() {
+
+                public void run() {
+                    enqueue(scheduled, lead);
+                }
+            })) {
+
+                enqueue(scheduled, lead);
+            }
 
             return eventId;
         }
 
 
+        private void enqueue(ScheduledEvent scheduled, long lead) {
+
+            eventQ.add(scheduled);
+            statistics.recordSchedule(lead, eventQ.size());
+        }
+
+
         /** {@inheritDoc} */
-        public void cancelEvent(long eventId) {
+        public void cancelEvent(final long eventId) {
+
+            // the event may not be queued yet
+            if (SharedStateBuffer.defer(new Runnable() {
+
+                public void run() {
+                    cancelEvent(eventId);
+                }
+            })) {
+
+                return;
+            }
 
             // todo: do this better
             ScheduledEvent toRemove = null;
@@ -1248,7 +1934,7 @@ public class SimController {
 
 
         /** {@inheritDoc} */
-        public <T> List<T> findModelsByType(Class<T> type) {
+        public synchronized <T> List<T> findModelsByType(Class<T> type) {
 
             if (!modelTypeMap.containsKey(type)) {
 
@@ -1328,12 +2014,30 @@ public class SimController {
                 }
 
                 processing = next.time;
+
+                SimTrace.Span span = SimTrace.begin(TraceType.EVENT_DISPATCH);
                 long start = System.nanoTime();
 
                 next.model.processEvent(next.time, next.event);
 
-                instrEventTime += (System.nanoTime() - start);
+                long elapsed = System.nanoTime() - start;
+
+                if (span != null) {
+
+                    SimTrace.end(span, next.time.getTime(), next.model.getModelId(),
+                                 next.model.getClass().getName(), next.event.getClass().getName());
+                }
+
+                instrEventTime += elapsed;
                 ++instrEventCount;
+
+                statistics.recordEvent(next.model.getClass(), next.event.getClass(), elapsed, eventQ.size());
+
+                if (profiler != null) {
+
+                    profiler.record(elapsed, "event-dispatch", PhaseProfiler.getName(next.model.getClass()),
+                                    PhaseProfiler.getName(next.event.getClass()));
+                }
             }
 
             lastProcessed = processing;
@@ -1365,6 +2069,16 @@ public class SimController {
         }
 
 
+        /**
+         * Sets the profiler that records the time spent processing each type of event on each type of model.
+         *
+         * @param profiler The profiler to use, or {@code null} to stop profiling events.
+         */
+        public void setProfiler(PhaseProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+
         public long getInstrumentedEventTime() {
             return instrEventTime;
         }
@@ -36,6 +36,7 @@ import harvard.robobees.simbeeotic.model.MotionRecorder;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
 import harvard.robobees.simbeeotic.configuration.Variation;
 import harvard.robobees.simbeeotic.ClockControl;
+import harvard.robobees.simbeeotic.PhysicsLodManager;
 import harvard.robobees.simbeeotic.SimEngine;
 
 import com.google.inject.Inject;
@@ -68,6 +69,10 @@ public class VariationContext {
     @GlobalScope
     private SimEngine simEngine;
 
+    @Inject(optional = true)
+    @GlobalScope
+    private PhysicsLodManager lodManager;
+
 
     /**
      * Gets the scenario variation number.
@@ -117,4 +122,14 @@ public class VariationContext {
     public SimEngine getSimEngine() {
         return simEngine;
     }
+
+
+    /**
+     * Gets the physics level of detail manager, which can be used to register points of interest.
+     *
+     * @return The physics LOD manager in use for this variation, or {@code null} if there is none.
+     */
+    public PhysicsLodManager getPhysicsLodManager() {
+        return lodManager;
+    }
 }
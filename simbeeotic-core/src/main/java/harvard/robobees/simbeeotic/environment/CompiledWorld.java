@@ -0,0 +1,1203 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.CompoundShape;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import com.bulletphysics.linearmath.Transform;
+import harvard.robobees.simbeeotic.configuration.world.Grid;
+import harvard.robobees.simbeeotic.configuration.world.Meta;
+import harvard.robobees.simbeeotic.configuration.world.Obstacle;
+import harvard.robobees.simbeeotic.configuration.world.Patch;
+import harvard.robobees.simbeeotic.configuration.world.Path;
+import harvard.robobees.simbeeotic.configuration.world.Person;
+import harvard.robobees.simbeeotic.configuration.world.Point;
+import harvard.robobees.simbeeotic.configuration.world.Structure;
+import harvard.robobees.simbeeotic.configuration.world.Terrain;
+import harvard.robobees.simbeeotic.configuration.world.Texture;
+import harvard.robobees.simbeeotic.configuration.world.World;
+import harvard.robobees.simbeeotic.model.MotionRecorder;
+import harvard.robobees.simbeeotic.util.ImageLoader;
+import harvard.robobees.simbeeotic.util.JaxbHelper;
+import org.apache.log4j.Logger;
+
+import javax.vecmath.Matrix3f;
+import javax.vecmath.Vector3f;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A world that has been compiled into a flat binary form. Large generated worlds
+ * can take a long time to parse and to construct, so the static bodies of the world
+ * (obstacles, structures and people) are resolved once by {@link #compile} into
+ * tables of shapes, transforms, colors and metadata. The compiled file is memory-mapped
+ * when it is loaded, and {@link WorldMap} reads the body records directly instead of
+ * walking the world description in every scenario variation.
+ * <p/>
+ * The remainder of the world (the bounds, properties, terrain and flower patches) is
+ * small and is rebuilt as a {@link World} without going through the XML parser. Flowers
+ * are still placed by the world map, so they vary with the random seed as before.
+ *
+ * @author bkate
+ */
+public class CompiledWorld {
+
+    private static Logger logger = Logger.getLogger(CompiledWorld.class);
+
+    private static final int MAGIC = 0x53425731;   // SBW1
+    private static final int VERSION = 1;
+
+    // bytes in a body record: type, shape, transform (12 floats), color, texture, label, meta
+    private static final int RECORD_SIZE = 4 * 18;
+
+    private static final String COMPOUND = "compound";
+    private static final String CLASSPATH_PREFIX = "classpath:";
+    private static final String FILESYSTEM_PREFIX = "file:";
+
+    private static final WorldObject.Type[] BODY_TYPES = {WorldObject.Type.OBSTACLE,
+                                                          WorldObject.Type.STRUCTURE,
+                                                          WorldObject.Type.PERSON};
+
+    private static final Set<String> BODY_SECTIONS = new HashSet<String>(Arrays.asList("obstacles", "flowers",
+                                                                                     "people", "structures"));
+
+    private final World world;
+    private final String[] strings;
+    private final List<Map<String, Object>> metas;
+    private final CollisionShape[] shapes;
+    private final ByteBuffer bodies;
+    private final int numBodies;
+
+
+    private CompiledWorld(World world, String[] strings, List<Map<String, Object>> metas,
+                          CollisionShape[] shapes, ByteBuffer bodies, int numBodies) {
+
+        this.world = world;
+        this.strings = strings;
+        this.metas = metas;
+        this.shapes = shapes;
+        this.bodies = bodies;
+        this.numBodies = numBodies;
+    }
+
+
+    /**
+     * Compiles a world description into a binary file that can be loaded with {@link #load}.
+     *
+     * @param world The world to compile.
+     * @param file The file to which the compiled world is written.
+     */
+    public static void compile(World world, File file) {
+
+        Capture capture = new Capture();
+        WorldMap map = createMap(world, capture);
+
+        map.initialize();
+
+        write(world, capture, file);
+    }
+
+
+    /**
+     * Compiles a world XML file into a binary file that can be loaded with {@link #load}.
+     * The document is validated and then streamed one element at a time, so the
+     * full object tree of the world is never held in memory. This is the preferred
+     * way to compile very large generated worlds.
+     *
+     * @param xml The world XML file.
+     * @param file The file to which the compiled world is written.
+     */
+    public static void compile(File xml, File file) {
+
+        try {
+
+            InputStream stream = new BufferedInputStream(new FileInputStream(xml));
+
+            try {
+                JaxbHelper.validate(stream, World.class);
+            }
+            finally {
+                stream.close();
+            }
+
+            // only the bounds, properties, terrain and patches are kept in the residual world
+            World world = new World();
+            Capture capture = new Capture();
+            WorldMap map = createMap(world, capture);
+            List<Person> people = new ArrayList<Person>();
+            boolean initialized = false;
+
+            stream = new BufferedInputStream(new FileInputStream(xml));
+
+            XMLStreamReader reader = JaxbHelper.createStreamReader(stream);
+
+            try {
+
+                while (reader.hasNext()) {
+
+                    if (reader.isStartElement()) {
+
+                        String name = reader.getLocalName();
+
+                        // the map is started once the ground has been described
+                        if (!initialized && BODY_SECTIONS.contains(name)) {
+
+                            map.initialize();
+                            initialized = true;
+                        }
+
+                        // the unmarshaller leaves the reader after the element it binds
+                        if (name.equals("radius")) {
+                            world.setRadius(Float.parseFloat(reader.getElementText().trim()));
+                        }
+                        else if (name.equals("properties")) {
+
+                            world.setProperties(JaxbHelper.objectFromElement(reader, Meta.class));
+                            continue;
+                        }
+                        else if (name.equals("terrain")) {
+
+                            world.setTerrain(JaxbHelper.objectFromElement(reader, Terrain.class));
+                            continue;
+                        }
+                        else if (name.equals("obstacle")) {
+
+                            map.addObstacle(JaxbHelper.objectFromElement(reader, Obstacle.class));
+                            continue;
+                        }
+                        else if (name.equals("patch")) {
+
+                            if (world.getFlowers() == null) {
+                                world.setFlowers(new World.Flowers());
+                            }
+
+                            world.getFlowers().getPatch().add(JaxbHelper.objectFromElement(reader, Patch.class));
+                            continue;
+                        }
+                        else if (name.equals("person")) {
+
+                            // people precede structures in the document, but follow them in the map
+                            people.add(JaxbHelper.objectFromElement(reader, Person.class));
+                            continue;
+                        }
+                        else if (name.equals("structure")) {
+
+                            map.addStructure(JaxbHelper.objectFromElement(reader, Structure.class));
+                            continue;
+                        }
+                    }
+
+                    reader.next();
+                }
+            }
+            finally {
+
+                reader.close();
+                stream.close();
+            }
+
+            if (!initialized) {
+                map.initialize();
+            }
+
+            for (Person person : people) {
+                map.addPerson(person);
+            }
+
+            write(world, capture, file);
+        }
+        catch(XMLStreamException xse) {
+            throw new RuntimeException("Could not read the world: " + xml, xse);
+        }
+        catch(JAXBException je) {
+            throw new RuntimeException("Could not read the world: " + xml, je);
+        }
+        catch(IOException ioe) {
+            throw new RuntimeException("Could not read the world: " + xml, ioe);
+        }
+    }
+
+
+    /**
+     * Creates a world map that records the static bodies of a world instead of simulating them.
+     */
+    private static WorldMap createMap(World world, Capture capture) {
+
+        // construct the world once to resolve the placement and shape of every static body
+        DefaultCollisionConfiguration config = new DefaultCollisionConfiguration();
+        DiscreteDynamicsWorld dynamicsWorld = new DiscreteDynamicsWorld(new CollisionDispatcher(config),
+                                                                        new DbvtBroadphase(),
+                                                                        new SequentialImpulseConstraintSolver(),
+                                                                        config);
+
+        WorldMap map = new WorldMap();
+
+        map.setRandomSeed(0);
+        map.setNextId(new AtomicInteger(0));
+        map.setWorld(world);
+        map.setDynamicsWorld(dynamicsWorld);
+        map.setMotionRecorder(new MotionRecorder());
+        map.setCapture(capture);
+
+        return map;
+    }
+
+
+    /**
+     * Writes the residual world and the captured static bodies to a compiled file.
+     */
+    private static void write(World world, Capture capture, File file) {
+
+        Writer writer = new Writer();
+
+        // tables first, so that the body records can be read without lookahead
+        int props = writer.addMeta(world.getProperties());
+        int[] bodyShapes = new int[capture.getBodies().size()];
+
+        for (int i = 0; i < bodyShapes.length; i++) {
+            bodyShapes[i] = writer.addShape(capture.getBodies().get(i).shape);
+        }
+
+        try {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+            try {
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                // residual world description, which references the tables
+                ByteArrayBuffer residual = new ByteArrayBuffer();
+
+                residual.out.writeBoolean(world.getRadius() != null);
+                residual.out.writeFloat((world.getRadius() != null) ? world.getRadius() : 0);
+                residual.out.writeInt(props);
+
+                writer.writeTerrain(residual.out, world.getTerrain());
+                writer.writePatches(residual.out, (world.getFlowers() != null) ? world.getFlowers().getPatch() : null);
+
+                // body records also reference the tables, so they are resolved before the tables are written
+                ByteArrayBuffer records = new ByteArrayBuffer();
+
+                for (int i = 0; i < bodyShapes.length; i++) {
+
+                    Body body = capture.getBodies().get(i);
+
+                    records.out.writeInt(Arrays.asList(BODY_TYPES).indexOf(body.type));
+                    records.out.writeInt(bodyShapes[i]);
+
+                    writeTransform(records.out, body.transform);
+
+                    records.out.writeInt(body.color.getRGB());
+                    records.out.writeInt(writer.addString(body.texture));
+                    records.out.writeInt(writer.addString(body.label));
+                    records.out.writeInt(writer.addMeta(body.meta));
+                }
+
+                writer.writeTables(out);
+
+                residual.out.flush();
+                out.write(residual.bytes.toByteArray());
+
+                out.writeInt(bodyShapes.length);
+
+                records.out.flush();
+                out.write(records.bytes.toByteArray());
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch(IOException ioe) {
+            throw new RuntimeException("Could not write the compiled world: " + file, ioe);
+        }
+
+        logger.info("Compiled " + bodyShapes.length + " bodies with " + writer.shapeKeys.size() +
+                    " unique shapes into " + file + ".");
+    }
+
+
+    /**
+     * Loads a compiled world. The file is memory-mapped, so the body records are
+     * only read from disk as they are used.
+     *
+     * @param file The compiled world file.
+     *
+     * @return The compiled world.
+     */
+    public static CompiledWorld load(File file) {
+
+        try {
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+            try {
+
+                ByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+
+                if ((buf.capacity() < 8) || (buf.getInt() != MAGIC)) {
+                    throw new RuntimeException("The file is not a compiled world: " + file);
+                }
+
+                int version = buf.getInt();
+
+                if (version != VERSION) {
+                    throw new RuntimeException("Unsupported compiled world version " + version + ": " + file);
+                }
+
+                Reader reader = new Reader(buf);
+                World world = reader.readWorld();
+                int numBodies = buf.getInt();
+
+                if (buf.remaining() < ((long)numBodies * RECORD_SIZE)) {
+                    throw new RuntimeException("The compiled world is truncated: " + file);
+                }
+
+                return new CompiledWorld(world, reader.strings, reader.metas, reader.shapes,
+                                         buf.slice(), numBodies);
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch(BufferUnderflowException bue) {
+            throw new RuntimeException("The compiled world is truncated: " + file, bue);
+        }
+        catch(IOException ioe) {
+            throw new RuntimeException("Could not read the compiled world: " + file, ioe);
+        }
+    }
+
+
+    /**
+     * Determines if a file holds a compiled world (as opposed to an XML description).
+     *
+     * @param file The file in question.
+     *
+     * @return True if the file starts with the compiled world signature, false otherwise.
+     */
+    public static boolean isCompiled(File file) {
+
+        try {
+
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+            try {
+                return (file.length() >= 4) && (in.readInt() == MAGIC);
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch(IOException ioe) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Gets the parts of the world description that are not compiled (the bounds, properties,
+     * terrain and flower patches). The obstacles, structures and people are omitted.
+     *
+     * @return The uncompiled world description.
+     */
+    public World getWorld() {
+        return world;
+    }
+
+
+    /**
+     * Gets the number of compiled bodies.
+     *
+     * @return The number of obstacles, structures and people in the world.
+     */
+    public int getNumBodies() {
+        return numBodies;
+    }
+
+
+    /**
+     * Reads a compiled body. Bodies are returned in the order in which the world
+     * description defined them, so they are assigned the same object identifiers.
+     *
+     * @param index The index of the body.
+     *
+     * @return A new copy of the body details.
+     */
+    Body getBody(int index) {
+
+        // absolute reads, so the shared buffer has no position to protect
+        ByteBuffer buf = bodies;
+        int off = index * RECORD_SIZE;
+
+        Body body = new Body();
+
+        body.type = BODY_TYPES[buf.getInt(off)];
+        body.shape = shapes[buf.getInt(off + 4)];
+        body.transform = readTransform(buf, off + 8);
+        body.color = new Color(buf.getInt(off + 56), true);
+        body.texture = string(buf.getInt(off + 60));
+        body.label = string(buf.getInt(off + 64));
+
+        int meta = buf.getInt(off + 68);
+
+        body.meta = (meta < 0) ? new HashMap<String, Object>() : new HashMap<String, Object>(metas.get(meta));
+
+        return body;
+    }
+
+
+    private String string(int index) {
+        return (index < 0) ? null : strings[index];
+    }
+
+
+    /**
+     * Gets a string that identifies the source of a texture.
+     */
+    static String getTextureSource(Texture texture) {
+
+        if (texture.getClasspath() != null) {
+            return CLASSPATH_PREFIX + texture.getClasspath().getPath();
+        }
+
+        return FILESYSTEM_PREFIX + texture.getFilesystem().getPath();
+    }
+
+
+    /**
+     * Loads a texture given the string that identifies its source.
+     */
+    static Image loadTexture(String source) {
+
+        if (source.startsWith(CLASSPATH_PREFIX)) {
+            return ImageLoader.loadImageFromClasspath(source.substring(CLASSPATH_PREFIX.length()));
+        }
+
+        return ImageLoader.loadImageFromFilesystem(source.substring(FILESYSTEM_PREFIX.length()));
+    }
+
+
+    private static Texture toTexture(String source) {
+
+        if (source == null) {
+            return null;
+        }
+
+        Texture texture = new Texture();
+        Path path = new Path();
+
+        if (source.startsWith(CLASSPATH_PREFIX)) {
+
+            path.setPath(source.substring(CLASSPATH_PREFIX.length()));
+            texture.setClasspath(path);
+        }
+        else {
+
+            path.setPath(source.substring(FILESYSTEM_PREFIX.length()));
+            texture.setFilesystem(path);
+        }
+
+        return texture;
+    }
+
+
+    private static void writeTransform(DataOutputStream out, Transform trans) throws IOException {
+
+        Matrix3f basis = trans.basis;
+
+        out.writeFloat(basis.m00);
+        out.writeFloat(basis.m01);
+        out.writeFloat(basis.m02);
+        out.writeFloat(basis.m10);
+        out.writeFloat(basis.m11);
+        out.writeFloat(basis.m12);
+        out.writeFloat(basis.m20);
+        out.writeFloat(basis.m21);
+        out.writeFloat(basis.m22);
+        out.writeFloat(trans.origin.x);
+        out.writeFloat(trans.origin.y);
+        out.writeFloat(trans.origin.z);
+    }
+
+
+    private static Transform readTransform(ByteBuffer buf, int off) {
+
+        Transform trans = new Transform();
+
+        trans.basis.setRow(0, buf.getFloat(off), buf.getFloat(off + 4), buf.getFloat(off + 8));
+        trans.basis.setRow(1, buf.getFloat(off + 12), buf.getFloat(off + 16), buf.getFloat(off + 20));
+        trans.basis.setRow(2, buf.getFloat(off + 24), buf.getFloat(off + 28), buf.getFloat(off + 32));
+        trans.origin.set(buf.getFloat(off + 36), buf.getFloat(off + 40), buf.getFloat(off + 44));
+
+        return trans;
+    }
+
+
+    private static harvard.robobees.simbeeotic.configuration.world.Color toColor(int argb) {
+
+        Color awt = new Color(argb, true);
+        harvard.robobees.simbeeotic.configuration.world.Color color =
+                new harvard.robobees.simbeeotic.configuration.world.Color();
+
+        color.setRed((short)awt.getRed());
+        color.setGreen((short)awt.getGreen());
+        color.setBlue((short)awt.getBlue());
+        color.setAlpha((short)awt.getAlpha());
+
+        return color;
+    }
+
+
+    private static int fromColor(harvard.robobees.simbeeotic.configuration.world.Color color) {
+
+        return new Color(color.getRed(), color.getGreen(), color.getBlue(), color.getAlpha()).getRGB();
+    }
+
+
+    /**
+     * The details of a static body, as captured from (or restored to) the world map.
+     */
+    static class Body {
+
+        public WorldObject.Type type;
+        public CollisionShape shape;
+        public Transform transform;
+        public Color color;
+        public String texture;
+        public String label;
+        public Map<String, Object> meta;
+    }
+
+
+    /**
+     * Collects the static bodies as the world map creates them.
+     */
+    static class Capture {
+
+        private List<Body> bodies = new ArrayList<Body>();
+
+
+        public void add(WorldObject.Type type, CollisionShape shape, Transform transform, Color color,
+                        String texture, String label, Map<String, Object> meta) {
+
+            Body body = new Body();
+
+            body.type = type;
+            body.shape = shape;
+            body.transform = new Transform(transform);
+            body.color = color;
+            body.texture = texture;
+            body.label = label;
+            body.meta = meta;
+
+            bodies.add(body);
+        }
+
+
+        public List<Body> getBodies() {
+            return bodies;
+        }
+    }
+
+
+    /**
+     * An in-memory section of the output file.
+     */
+    private static class ByteArrayBuffer {
+
+        public ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        public DataOutputStream out = new DataOutputStream(bytes);
+    }
+
+
+    /**
+     * Builds the deduplicated string, metadata and shape tables.
+     */
+    private static class Writer {
+
+        private Map<String, Integer> stringIds = new LinkedHashMap<String, Integer>();
+        private Map<Map<String, String>, Integer> metaIds = new LinkedHashMap<Map<String, String>, Integer>();
+        private Map<String, Integer> shapeKeys = new HashMap<String, Integer>();
+        private Map<CollisionShape, Integer> shapeIds = new IdentityHashMap<CollisionShape, Integer>();
+        private List<ShapeEntry> shapes = new ArrayList<ShapeEntry>();
+
+
+        public int addString(String str) {
+
+            if (str == null) {
+                return -1;
+            }
+
+            Integer id = stringIds.get(str);
+
+            if (id == null) {
+
+                id = stringIds.size();
+                stringIds.put(str, id);
+            }
+
+            return id;
+        }
+
+
+        public int addMeta(Meta meta) {
+
+            if (meta == null) {
+                return -1;
+            }
+
+            Map<String, Object> props = new LinkedHashMap<String, Object>();
+
+            for (Meta.Prop p : meta.getProp()) {
+                props.put(p.getName(), p.getValue());
+            }
+
+            return addMeta(props);
+        }
+
+
+        public int addMeta(Map<String, Object> meta) {
+
+            if ((meta == null) || meta.isEmpty()) {
+                return -1;
+            }
+
+            Map<String, String> props = new LinkedHashMap<String, String>();
+
+            for (Map.Entry<String, Object> entry : meta.entrySet()) {
+
+                props.put(entry.getKey(), String.valueOf(entry.getValue()));
+
+                addString(entry.getKey());
+                addString(String.valueOf(entry.getValue()));
+            }
+
+            Integer id = metaIds.get(props);
+
+            if (id == null) {
+
+                id = metaIds.size();
+                metaIds.put(props, id);
+            }
+
+            return id;
+        }
+
+
+        /**
+         * Adds a shape (and any child shapes) to the shape table. Shapes are identified by their
+         * dimensions, so equivalent compound shapes that were created separately are merged.
+         */
+        public int addShape(CollisionShape shape) {
+
+            Integer id = shapeIds.get(shape);
+
+            if (id != null) {
+                return id;
+            }
+
+            ShapeEntry entry = new ShapeEntry();
+
+            if (shape instanceof CompoundShape) {
+
+                CompoundShape compound = (CompoundShape)shape;
+
+                entry.type = COMPOUND;
+                entry.dims = new float[0];
+                entry.children = new int[compound.getNumChildShapes()];
+                entry.transforms = new Transform[entry.children.length];
+
+                for (int i = 0; i < entry.children.length; i++) {
+
+                    entry.children[i] = addShape(compound.getChildShape(i));
+                    entry.transforms[i] = compound.getChildTransform(i, new Transform());
+                }
+            }
+            else {
+
+                entry.type = ShapeRegistry.getShapeType(shape);
+                entry.dims = ShapeRegistry.getShapeDimensions(shape);
+                entry.children = new int[0];
+                entry.transforms = new Transform[0];
+
+                if (entry.type == null) {
+                    throw new RuntimeException("Cannot compile a shape that is not in the shape registry: " + shape);
+                }
+            }
+
+            String key = entry.key();
+
+            id = shapeKeys.get(key);
+
+            if (id == null) {
+
+                id = shapes.size();
+
+                shapes.add(entry);
+                shapeKeys.put(key, id);
+                addString(entry.type);
+            }
+
+            shapeIds.put(shape, id);
+
+            return id;
+        }
+
+
+        public void writeTables(DataOutputStream out) throws IOException {
+
+            out.writeInt(stringIds.size());
+
+            for (String str : stringIds.keySet()) {
+
+                byte[] bytes = str.getBytes("UTF-8");
+
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(metaIds.size());
+
+            for (Map<String, String> meta : metaIds.keySet()) {
+
+                out.writeInt(meta.size());
+
+                for (Map.Entry<String, String> entry : meta.entrySet()) {
+
+                    out.writeInt(stringIds.get(entry.getKey()));
+                    out.writeInt(stringIds.get(entry.getValue()));
+                }
+            }
+
+            out.writeInt(shapes.size());
+
+            for (ShapeEntry entry : shapes) {
+
+                out.writeInt(stringIds.get(entry.type));
+                out.writeInt(entry.dims.length);
+
+                for (float dim : entry.dims) {
+                    out.writeFloat(dim);
+                }
+
+                out.writeInt(entry.children.length);
+
+                for (int i = 0; i < entry.children.length; i++) {
+
+                    out.writeInt(entry.children[i]);
+                    writeTransform(out, entry.transforms[i]);
+                }
+            }
+        }
+
+
+        public void writeTerrain(DataOutputStream out, Terrain terrain) throws IOException {
+
+            out.writeBoolean(terrain != null);
+
+            if (terrain == null) {
+                return;
+            }
+
+            out.writeBoolean(terrain.getGrid() != null);
+
+            if (terrain.getGrid() != null) {
+
+                out.writeInt(addString(terrain.getGrid().getPath()));
+                out.writeInt(terrain.getGrid().getColumns());
+                out.writeInt(terrain.getGrid().getRows());
+                out.writeBoolean(terrain.getGrid().isLittleEndian());
+            }
+            else {
+                out.writeInt(addString(getTextureSource(terrain.getImage())));
+            }
+
+            writePoint(out, terrain.getOrigin());
+
+            out.writeBoolean(terrain.getColor() != null);
+            out.writeInt((terrain.getColor() != null) ? fromColor(terrain.getColor()) : 0);
+            out.writeInt((terrain.getTexture() != null) ? addString(getTextureSource(terrain.getTexture())) : -1);
+            out.writeInt(addMeta(terrain.getMeta()));
+            out.writeFloat(terrain.getSpacing());
+            out.writeFloat(terrain.getScale());
+            out.writeFloat(terrain.getOffset());
+        }
+
+
+        public void writePatches(DataOutputStream out, List<Patch> patches) throws IOException {
+
+            out.writeBoolean(patches != null);
+
+            if (patches == null) {
+                return;
+            }
+
+            out.writeInt(patches.size());
+
+            for (Patch patch : patches) {
+
+                writePoint(out, patch.getCenter());
+
+                out.writeFloat(patch.getRadius());
+                out.writeFloat(patch.getDensity());
+                out.writeBoolean(patch.getColor() != null);
+                out.writeInt((patch.getColor() != null) ? fromColor(patch.getColor()) : 0);
+                out.writeInt(addMeta(patch.getMeta()));
+            }
+        }
+
+
+        private void writePoint(DataOutputStream out, Point point) throws IOException {
+
+            out.writeBoolean(point != null);
+
+            if (point != null) {
+
+                out.writeFloat(point.getX());
+                out.writeFloat(point.getY());
+                out.writeFloat(point.getZ());
+            }
+        }
+    }
+
+
+    /**
+     * A shape in the shape table.
+     */
+    private static class ShapeEntry {
+
+        public String type;
+        public float[] dims;
+        public int[] children;
+        public Transform[] transforms;
+
+
+        public String key() {
+
+            StringBuilder key = new StringBuilder(type).append(Arrays.toString(dims));
+
+            for (int i = 0; i < children.length; i++) {
+
+                float[] mat = new float[16];
+
+                transforms[i].getOpenGLMatrix(mat);
+                key.append(children[i]).append(Arrays.toString(mat));
+            }
+
+            return key.toString();
+        }
+    }
+
+
+    /**
+     * Reads the tables and the residual world description from a mapped file.
+     */
+    private static class Reader {
+
+        private ByteBuffer buf;
+
+        public String[] strings;
+        public List<Map<String, Object>> metas;
+        public CollisionShape[] shapes;
+
+
+        public Reader(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+
+        public World readWorld() throws IOException {
+
+            strings = new String[buf.getInt()];
+
+            for (int i = 0; i < strings.length; i++) {
+
+                byte[] bytes = new byte[buf.getInt()];
+
+                buf.get(bytes);
+                strings[i] = new String(bytes, "UTF-8");
+            }
+
+            int numMetas = buf.getInt();
+
+            metas = new ArrayList<Map<String, Object>>(numMetas);
+
+            for (int i = 0; i < numMetas; i++) {
+
+                int size = buf.getInt();
+                Map<String, Object> meta = new HashMap<String, Object>();
+
+                for (int j = 0; j < size; j++) {
+                    meta.put(strings[buf.getInt()], strings[buf.getInt()]);
+                }
+
+                metas.add(meta);
+            }
+
+            shapes = new CollisionShape[buf.getInt()];
+
+            for (int i = 0; i < shapes.length; i++) {
+                shapes[i] = readShape();
+            }
+
+            World world = new World();
+
+            boolean hasRadius = buf.get() != 0;
+            float radius = buf.getFloat();
+
+            if (hasRadius) {
+                world.setRadius(radius);
+            }
+
+            world.setProperties(toMeta(buf.getInt()));
+            world.setTerrain(readTerrain());
+
+            if (buf.get() != 0) {
+
+                World.Flowers flowers = new World.Flowers();
+                int numPatches = buf.getInt();
+
+                for (int i = 0; i < numPatches; i++) {
+
+                    Patch patch = new Patch();
+
+                    patch.setCenter(readPoint());
+                    patch.setRadius(buf.getFloat());
+                    patch.setDensity(buf.getFloat());
+
+                    boolean hasColor = buf.get() != 0;
+                    int color = buf.getInt();
+
+                    if (hasColor) {
+                        patch.setColor(toColor(color));
+                    }
+
+                    patch.setMeta(toMeta(buf.getInt()));
+
+                    flowers.getPatch().add(patch);
+                }
+
+                world.setFlowers(flowers);
+            }
+
+            return world;
+        }
+
+
+        /**
+         * Recreates a shape through the shape registry, so that it is shared with
+         * any other world (or variation) that uses the same shape.
+         */
+        private CollisionShape readShape() {
+
+            final String type = strings[buf.getInt()];
+            final float[] dims = new float[buf.getInt()];
+
+            for (int i = 0; i < dims.length; i++) {
+                dims[i] = buf.getFloat();
+            }
+
+            int numChildren = buf.getInt();
+
+            if (type.equals(COMPOUND)) {
+
+                // children precede their parents in the table
+                final CollisionShape[] children = new CollisionShape[numChildren];
+                final Transform[] transforms = new Transform[numChildren];
+                float[] key = new float[numChildren * 13];
+
+                for (int i = 0; i < numChildren; i++) {
+
+                    children[i] = shapes[buf.getInt()];
+                    transforms[i] = readTransform(buf, buf.position());
+
+                    buf.position(buf.position() + 48);
+
+                    key[i * 13] = ShapeRegistry.getShapeId(children[i]);
+
+                    float[] mat = new float[16];
+
+                    transforms[i].getOpenGLMatrix(mat);
+                    System.arraycopy(mat, 0, key, i * 13 + 1, 12);
+                }
+
+                return ShapeRegistry.getShape("compiled-compound", key, new ShapeRegistry.ShapeFactory() {
+
+                    public CollisionShape createShape() {
+
+                        CompoundShape compound = new CompoundShape();
+
+                        for (int i = 0; i < children.length; i++) {
+                            compound.addChildShape(transforms[i], children[i]);
+                        }
+
+                        compound.recalculateLocalAabb();
+
+                        return compound;
+                    }
+                });
+            }
+
+            if (type.equals("box")) {
+                return ShapeRegistry.getBox(new Vector3f(dims[0], dims[1], dims[2]));
+            }
+            else if (type.equals("sphere")) {
+                return ShapeRegistry.getSphere(dims[0]);
+            }
+            else if (type.equals("cylinder-z")) {
+                return ShapeRegistry.getCylinderZ(new Vector3f(dims[0], dims[1], dims[2]));
+            }
+            else if (type.equals("cone-z")) {
+                return ShapeRegistry.getConeZ(dims[0], dims[1]);
+            }
+
+            throw new RuntimeException("Unsupported shape type in compiled world: " + type);
+        }
+
+
+        private Terrain readTerrain() {
+
+            if (buf.get() == 0) {
+                return null;
+            }
+
+            Terrain terrain = new Terrain();
+
+            if (buf.get() != 0) {
+
+                Grid grid = new Grid();
+
+                grid.setPath(strings[buf.getInt()]);
+                grid.setColumns(buf.getInt());
+                grid.setRows(buf.getInt());
+                grid.setLittleEndian(buf.get() != 0);
+
+                terrain.setGrid(grid);
+            }
+            else {
+                terrain.setImage(toTexture(strings[buf.getInt()]));
+            }
+
+            terrain.setOrigin(readPoint());
+
+            boolean hasColor = buf.get() != 0;
+            int color = buf.getInt();
+
+            if (hasColor) {
+                terrain.setColor(toColor(color));
+            }
+
+            int texture = buf.getInt();
+
+            terrain.setTexture((texture < 0) ? null : toTexture(strings[texture]));
+            terrain.setMeta(toMeta(buf.getInt()));
+            terrain.setSpacing(buf.getFloat());
+            terrain.setScale(buf.getFloat());
+            terrain.setOffset(buf.getFloat());
+
+            return terrain;
+        }
+
+
+        private Point readPoint() {
+
+            if (buf.get() == 0) {
+                return null;
+            }
+
+            Point point = new Point();
+
+            point.setX(buf.getFloat());
+            point.setY(buf.getFloat());
+            point.setZ(buf.getFloat());
+
+            return point;
+        }
+
+
+        private Meta toMeta(int index) {
+
+            if (index < 0) {
+                return null;
+            }
+
+            Meta meta = new Meta();
+
+            for (Map.Entry<String, Object> entry : metas.get(index).entrySet()) {
+
+                Meta.Prop prop = new Meta.Prop();
+
+                prop.setName(entry.getKey());
+                prop.setValue((String)entry.getValue());
+
+                meta.getProp().add(prop);
+            }
+
+            return meta;
+        }
+    }
+}
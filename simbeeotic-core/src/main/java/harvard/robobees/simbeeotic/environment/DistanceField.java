@@ -0,0 +1,751 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.shapes.BoxShape;
+import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.CompoundShape;
+import com.bulletphysics.collision.shapes.ConeShape;
+import com.bulletphysics.collision.shapes.CylinderShape;
+import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.linearmath.Transform;
+import org.apache.log4j.Logger;
+
+import javax.vecmath.Matrix3f;
+import javax.vecmath.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * A precomputed signed distance field over static geometry. The field is sampled on a
+ * regular 3D grid and values between samples are found by trilinear interpolation, so
+ * the clearance around a point (and the direction away from the nearest surface) can be
+ * found in constant time instead of by casting rays.
+ * <p/>
+ * Distances are positive outside of the geometry and negative inside, and are truncated
+ * to a maximum distance. The grid covers the geometry plus the maximum distance on every
+ * side, so any point outside of the grid is at least that far from all geometry.
+ * <p/>
+ * Since building a fine field for a large world is expensive, it is built in parallel
+ * and can be cached on disk. The cache is keyed by a digest of the geometry and the
+ * field parameters, so a cached field is reused by any world with identical static
+ * geometry. Cached fields are memory-mapped when loaded.
+ *
+ * @author bkate
+ */
+public class DistanceField {
+
+    private static Logger logger = Logger.getLogger(DistanceField.class);
+
+    private static final int MAGIC = 0x53444631;   // SDF1
+    private static final int HEADER_SIZE = 4 * 9;
+
+    private final FloatBuffer samples;    // x varies fastest, then y, then z
+    private final int nx;
+    private final int ny;
+    private final int nz;
+    private final float originX;
+    private final float originY;
+    private final float originZ;
+    private final float resolution;
+    private final float maxDistance;
+
+
+    private DistanceField(FloatBuffer samples, int nx, int ny, int nz,
+                          float originX, float originY, float originZ,
+                          float resolution, float maxDistance) {
+
+        this.samples = samples;
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.resolution = resolution;
+        this.maxDistance = maxDistance;
+    }
+
+
+    /**
+     * Creates a distance field over a set of static bodies, loading it from the
+     * cache directory if an identical field was built before.
+     *
+     * @param shapes The collision shapes of the bodies.
+     * @param transforms The position and orientation of each body.
+     * @param resolution The spacing between samples (in meters).
+     * @param maxDistance The distance at which the field is truncated (in meters).
+     * @param threads The number of threads to use when building the field.
+     * @param cacheDir The directory in which fields are cached, or {@code null} to disable caching.
+     *
+     * @return The distance field.
+     */
+    public static DistanceField create(List<CollisionShape> shapes, List<Transform> transforms,
+                                       float resolution, float maxDistance, int threads, File cacheDir) {
+
+        if ((resolution <= 0) || (maxDistance <= 0)) {
+            throw new RuntimeException("The distance field resolution and maximum distance must be positive.");
+        }
+
+        // flatten compound shapes into primitives in the world frame
+        List<Primitive> prims = new ArrayList<Primitive>();
+
+        for (int i = 0; i < shapes.size(); i++) {
+            flatten(shapes.get(i), transforms.get(i), prims);
+        }
+
+        File cacheFile = null;
+
+        if (cacheDir != null) {
+
+            cacheFile = new File(cacheDir, "sdf-" + digest(prims, resolution, maxDistance) + ".bin");
+
+            if (cacheFile.exists()) {
+
+                DistanceField field = load(cacheFile);
+
+                if (field != null) {
+
+                    logger.info("Loaded distance field from cache: " + cacheFile);
+
+                    return field;
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+
+        DistanceField field = build(prims, resolution, maxDistance, Math.max(1, threads));
+
+        logger.info("Built a " + field.nx + "x" + field.ny + "x" + field.nz + " distance field over " + prims.size() +
+                    " primitives in " + ((System.nanoTime() - start) / 1000000) + " ms.");
+
+        if (cacheFile != null) {
+            field.save(cacheFile);
+        }
+
+        return field;
+    }
+
+
+    /**
+     * Gets the signed distance from a point to the nearest surface.
+     *
+     * @param pos The point (in the world frame).
+     *
+     * @return The distance to the nearest surface (in meters), negative if the point is inside
+     *         of an object. The distance is clamped to the maximum distance of the field.
+     */
+    public float getDistance(Vector3f pos) {
+        return getDistance(pos.x, pos.y, pos.z);
+    }
+
+
+    /**
+     * Gets the signed distance from a point to the nearest surface.
+     *
+     * @param x The x coordinate of the point (in meters).
+     * @param y The y coordinate of the point (in meters).
+     * @param z The z coordinate of the point (in meters).
+     *
+     * @return The distance to the nearest surface (in meters), negative if the point is inside
+     *         of an object. The distance is clamped to the maximum distance of the field.
+     */
+    public float getDistance(float x, float y, float z) {
+
+        float fx = (x - originX) / resolution;
+        float fy = (y - originY) / resolution;
+        float fz = (z - originZ) / resolution;
+
+        if ((fx < 0) || (fy < 0) || (fz < 0) || (fx > nx - 1) || (fy > ny - 1) || (fz > nz - 1)) {
+            return maxDistance;
+        }
+
+        int i = Math.min(nx - 2, (int)fx);
+        int j = Math.min(ny - 2, (int)fy);
+        int k = Math.min(nz - 2, (int)fz);
+
+        float u = fx - i;
+        float v = fy - j;
+        float w = fz - k;
+
+        int base = index(i, j, k);
+        int sy = nx;
+        int sz = nx * ny;
+
+        float c00 = lerp(samples.get(base), samples.get(base + 1), u);
+        float c10 = lerp(samples.get(base + sy), samples.get(base + sy + 1), u);
+        float c01 = lerp(samples.get(base + sz), samples.get(base + sz + 1), u);
+        float c11 = lerp(samples.get(base + sy + sz), samples.get(base + sy + sz + 1), u);
+
+        return lerp(lerp(c00, c10, v), lerp(c01, c11, v), w);
+    }
+
+
+    /**
+     * Gets the gradient of the distance field at a point, which points away from the
+     * nearest surface. The gradient is that of the interpolated field, so it has roughly
+     * unit length near surfaces and is zero where the field is truncated.
+     *
+     * @param pos The point (in the world frame).
+     * @param out The vector in which the gradient is stored.
+     *
+     * @return The output vector.
+     */
+    public Vector3f getGradient(Vector3f pos, Vector3f out) {
+
+        float fx = (pos.x - originX) / resolution;
+        float fy = (pos.y - originY) / resolution;
+        float fz = (pos.z - originZ) / resolution;
+
+        if ((fx < 0) || (fy < 0) || (fz < 0) || (fx > nx - 1) || (fy > ny - 1) || (fz > nz - 1)) {
+
+            out.set(0, 0, 0);
+
+            return out;
+        }
+
+        int i = Math.min(nx - 2, (int)fx);
+        int j = Math.min(ny - 2, (int)fy);
+        int k = Math.min(nz - 2, (int)fz);
+
+        float u = fx - i;
+        float v = fy - j;
+        float w = fz - k;
+
+        int base = index(i, j, k);
+        int sy = nx;
+        int sz = nx * ny;
+
+        float d000 = samples.get(base);
+        float d100 = samples.get(base + 1);
+        float d010 = samples.get(base + sy);
+        float d110 = samples.get(base + sy + 1);
+        float d001 = samples.get(base + sz);
+        float d101 = samples.get(base + sz + 1);
+        float d011 = samples.get(base + sy + sz);
+        float d111 = samples.get(base + sy + sz + 1);
+
+        // partial derivatives of the trilinear interpolant
+        float gx = lerp(lerp(d100 - d000, d110 - d010, v), lerp(d101 - d001, d111 - d011, v), w);
+        float gy = lerp(lerp(d010 - d000, d110 - d100, u), lerp(d011 - d001, d111 - d101, u), w);
+        float gz = lerp(lerp(d001 - d000, d101 - d100, u), lerp(d011 - d010, d111 - d110, u), v);
+
+        out.set(gx / resolution, gy / resolution, gz / resolution);
+
+        return out;
+    }
+
+
+    public float getResolution() {
+        return resolution;
+    }
+
+
+    public float getMaxDistance() {
+        return maxDistance;
+    }
+
+
+    private int index(int i, int j, int k) {
+        return (((k * ny) + j) * nx) + i;
+    }
+
+
+    private static float lerp(float a, float b, float t) {
+        return a + ((b - a) * t);
+    }
+
+
+    /**
+     * Samples the field on a grid that covers all primitives. The grid is split into
+     * slabs along the z axis that are filled concurrently, so no two threads write
+     * the same sample.
+     */
+    private static DistanceField build(final List<Primitive> prims, final float resolution,
+                                       final float maxDistance, int threads) {
+
+        // bounds of the geometry, padded by the truncation distance
+        Vector3f min = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+        Vector3f max = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+
+        for (Primitive prim : prims) {
+
+            min.x = Math.min(min.x, prim.min.x);
+            min.y = Math.min(min.y, prim.min.y);
+            min.z = Math.min(min.z, prim.min.z);
+            max.x = Math.max(max.x, prim.max.x);
+            max.y = Math.max(max.y, prim.max.y);
+            max.z = Math.max(max.z, prim.max.z);
+        }
+
+        if (prims.isEmpty()) {
+
+            min.set(0, 0, 0);
+            max.set(0, 0, 0);
+        }
+
+        final float ox = min.x - maxDistance;
+        final float oy = min.y - maxDistance;
+        final float oz = min.z - maxDistance;
+
+        final int nx = (int)Math.ceil((max.x - min.x + 2 * maxDistance) / resolution) + 1;
+        final int ny = (int)Math.ceil((max.y - min.y + 2 * maxDistance) / resolution) + 1;
+        final int nz = (int)Math.ceil((max.z - min.z + 2 * maxDistance) / resolution) + 1;
+
+        if (((long)nx * ny * nz) > Integer.MAX_VALUE) {
+            throw new RuntimeException("The distance field is too large, use a coarser resolution.");
+        }
+
+        final float[] data = new float[nx * ny * nz];
+
+        Arrays.fill(data, maxDistance);
+
+        int numSlabs = Math.min(nz, threads * 4);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+
+        for (int s = 0; s < numSlabs; s++) {
+
+            final int k0 = (int)(((long)s * nz) / numSlabs);
+            final int k1 = (int)(((long)(s + 1) * nz) / numSlabs);
+
+            results.add(executor.submit(new Callable<Object>() {
+
+                public Object call() {
+
+                    Vector3f local = new Vector3f();
+
+                    for (Primitive prim : prims) {
+
+                        // the samples that are within the truncation distance of the primitive
+                        int i0 = Math.max(0, (int)Math.floor((prim.min.x - maxDistance - ox) / resolution));
+                        int i1 = Math.min(nx - 1, (int)Math.ceil((prim.max.x + maxDistance - ox) / resolution));
+                        int j0 = Math.max(0, (int)Math.floor((prim.min.y - maxDistance - oy) / resolution));
+                        int j1 = Math.min(ny - 1, (int)Math.ceil((prim.max.y + maxDistance - oy) / resolution));
+                        int kk0 = Math.max(k0, (int)Math.floor((prim.min.z - maxDistance - oz) / resolution));
+                        int kk1 = Math.min(k1 - 1, (int)Math.ceil((prim.max.z + maxDistance - oz) / resolution));
+
+                        for (int k = kk0; k <= kk1; k++) {
+
+                            for (int j = j0; j <= j1; j++) {
+
+                                int idx = (((k * ny) + j) * nx) + i0;
+
+                                for (int i = i0; i <= i1; i++, idx++) {
+
+                                    local.set(ox + (i * resolution), oy + (j * resolution), oz + (k * resolution));
+
+                                    float d = prim.distance(local);
+
+                                    if (d < data[idx]) {
+                                        data[idx] = Math.max(d, -maxDistance);
+                                    }
+                                }
+                            }
+                        }
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        executor.shutdown();
+
+        try {
+
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        }
+        catch(InterruptedException ie) {
+            throw new RuntimeException("Interrupted while building the distance field.", ie);
+        }
+        catch(ExecutionException ee) {
+            throw new RuntimeException("Could not build the distance field.", ee.getCause());
+        }
+
+        return new DistanceField(FloatBuffer.wrap(data), nx, ny, nz, ox, oy, oz, resolution, maxDistance);
+    }
+
+
+    /**
+     * Loads a cached field.
+     *
+     * @return The field, or {@code null} if the file is not a valid field.
+     */
+    private static DistanceField load(File file) {
+
+        try {
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+            try {
+
+                MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+
+                if ((buf.capacity() < HEADER_SIZE) || (buf.getInt() != MAGIC)) {
+
+                    logger.warn("Ignoring invalid distance field cache: " + file);
+
+                    return null;
+                }
+
+                int nx = buf.getInt();
+                int ny = buf.getInt();
+                int nz = buf.getInt();
+                float ox = buf.getFloat();
+                float oy = buf.getFloat();
+                float oz = buf.getFloat();
+                float res = buf.getFloat();
+                float maxDist = buf.getFloat();
+
+                if (buf.remaining() < (4L * nx * ny * nz)) {
+
+                    logger.warn("Ignoring truncated distance field cache: " + file);
+
+                    return null;
+                }
+
+                return new DistanceField(buf.slice().asFloatBuffer(), nx, ny, nz, ox, oy, oz, res, maxDist);
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch(IOException ioe) {
+
+            logger.warn("Could not read the distance field cache: " + file, ioe);
+
+            return null;
+        }
+    }
+
+
+    /**
+     * Writes the field to a cache file. The file is written under a temporary name and
+     * then renamed, so concurrent simulations never see a partially written field.
+     */
+    private void save(File file) {
+
+        File dir = file.getAbsoluteFile().getParentFile();
+
+        if (!dir.exists() && !dir.mkdirs()) {
+
+            logger.warn("Could not create the distance field cache directory: " + dir);
+
+            return;
+        }
+
+        try {
+
+            File temp = File.createTempFile("sdf-", ".tmp", dir);
+            RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+
+            try {
+
+                FileChannel channel = raf.getChannel();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+                header.putInt(MAGIC).putInt(nx).putInt(ny).putInt(nz);
+                header.putFloat(originX).putFloat(originY).putFloat(originZ);
+                header.putFloat(resolution).putFloat(maxDistance);
+                header.flip();
+
+                channel.write(header);
+
+                ByteBuffer body = ByteBuffer.allocate(4 * samples.capacity());
+
+                body.asFloatBuffer().put(samples.duplicate());
+
+                channel.write(body);
+            }
+            finally {
+                raf.close();
+            }
+
+            if (!temp.renameTo(file)) {
+
+                temp.delete();
+
+                logger.warn("Could not move the distance field into the cache: " + file);
+            }
+        }
+        catch(IOException ioe) {
+            logger.warn("Could not write the distance field cache: " + file, ioe);
+        }
+    }
+
+
+    /**
+     * Computes a digest that identifies the geometry and the field parameters.
+     */
+    private static String digest(List<Primitive> prims, float resolution, float maxDistance) {
+
+        try {
+
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buf = ByteBuffer.allocate(4 * 32);
+
+            buf.putFloat(resolution).putFloat(maxDistance);
+            md.update(buf.array(), 0, buf.position());
+
+            for (Primitive prim : prims) {
+
+                buf.clear();
+                buf.putInt(prim.type);
+
+                for (float dim : prim.dims) {
+                    buf.putFloat(dim);
+                }
+
+                Matrix3f basis = prim.toWorld.basis;
+
+                for (int r = 0; r < 3; r++) {
+
+                    for (int c = 0; c < 3; c++) {
+                        buf.putFloat(basis.getElement(r, c));
+                    }
+                }
+
+                buf.putFloat(prim.toWorld.origin.x).putFloat(prim.toWorld.origin.y).putFloat(prim.toWorld.origin.z);
+
+                md.update(buf.array(), 0, buf.position());
+            }
+
+            StringBuilder hex = new StringBuilder();
+
+            for (byte b : md.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        }
+        catch(NoSuchAlgorithmException nsae) {
+            throw new RuntimeException("Could not compute the distance field digest.", nsae);
+        }
+    }
+
+
+    /**
+     * Breaks a shape into primitives with a known signed distance function.
+     */
+    private static void flatten(CollisionShape shape, Transform trans, List<Primitive> prims) {
+
+        if (shape instanceof CompoundShape) {
+
+            CompoundShape compound = (CompoundShape)shape;
+
+            for (int i = 0; i < compound.getNumChildShapes(); i++) {
+
+                Transform child = compound.getChildTransform(i, new Transform());
+
+                child.mul(trans, child);
+
+                flatten(compound.getChildShape(i), child, prims);
+            }
+        }
+        else if (shape instanceof CylinderShape) {
+
+            CylinderShape cylinder = (CylinderShape)shape;
+            Vector3f halfExtents = cylinder.getHalfExtentsWithMargin(new Vector3f());
+            int up = cylinder.getUpAxis();
+
+            prims.add(new Primitive(Primitive.CYLINDER, up, new float[] {cylinder.getRadius(), component(halfExtents, up)},
+                                    shape, trans));
+        }
+        else if (shape instanceof BoxShape) {
+
+            Vector3f h = ((BoxShape)shape).getHalfExtentsWithMargin(new Vector3f());
+
+            prims.add(new Primitive(Primitive.BOX, 2, new float[] {h.x, h.y, h.z}, shape, trans));
+        }
+        else if (shape instanceof SphereShape) {
+            prims.add(new Primitive(Primitive.SPHERE, 2, new float[] {((SphereShape)shape).getRadius()}, shape, trans));
+        }
+        else if (shape instanceof ConeShape) {
+
+            ConeShape cone = (ConeShape)shape;
+
+            prims.add(new Primitive(Primitive.CONE, cone.getConeUpIndex(), new float[] {cone.getRadius(), cone.getHeight() / 2},
+                                    shape, trans));
+        }
+        else {
+            throw new RuntimeException("No distance function for shape: " + shape.getName());
+        }
+    }
+
+
+    private static float component(Vector3f vec, int axis) {
+
+        switch(axis) {
+
+            case 0:
+                return vec.x;
+
+            case 1:
+                return vec.y;
+
+            default:
+                return vec.z;
+        }
+    }
+
+
+    /**
+     * A convex primitive with an analytic signed distance function.
+     */
+    private static final class Primitive {
+
+        public static final int BOX = 0;
+        public static final int SPHERE = 1;
+        public static final int CYLINDER = 2;
+        public static final int CONE = 3;
+
+        public final int type;
+        public final int up;
+        public final float[] dims;
+        public final Transform toWorld;
+        public final Transform toLocal;
+        public final Vector3f min = new Vector3f();
+        public final Vector3f max = new Vector3f();
+
+
+        public Primitive(int type, int up, float[] dims, CollisionShape shape, Transform trans) {
+
+            this.type = type;
+            this.up = up;
+            this.dims = dims;
+
+            toWorld = new Transform(trans);
+            toLocal = new Transform(trans);
+            toLocal.inverse();
+
+            shape.getAabb(toWorld, min, max);
+        }
+
+
+        /**
+         * Computes the signed distance from a point to the primitive. The point is
+         * moved into the frame of the primitive, so it is overwritten.
+         */
+        public float distance(Vector3f point) {
+
+            toLocal.transform(point);
+
+            switch(type) {
+
+                case BOX:
+                    return box(Math.abs(point.x) - dims[0], Math.abs(point.y) - dims[1], Math.abs(point.z) - dims[2]);
+
+                case SPHERE:
+                    return point.length() - dims[0];
+
+                case CYLINDER: {
+
+                    float h = component(point, up);
+                    float r = (float)Math.sqrt(Math.max(0, point.lengthSquared() - (h * h)));
+
+                    return box2(r - dims[0], Math.abs(h) - dims[1]);
+                }
+
+                default: {
+
+                    float h = component(point, up);
+                    float r = (float)Math.sqrt(Math.max(0, point.lengthSquared() - (h * h)));
+
+                    return cone(r, h, dims[1], dims[0]);
+                }
+            }
+        }
+
+
+        private static float box(float qx, float qy, float qz) {
+
+            float ox = Math.max(qx, 0);
+            float oy = Math.max(qy, 0);
+            float oz = Math.max(qz, 0);
+
+            return (float)Math.sqrt((ox * ox) + (oy * oy) + (oz * oz)) + Math.min(Math.max(qx, Math.max(qy, qz)), 0);
+        }
+
+
+        private static float box2(float qx, float qy) {
+
+            float ox = Math.max(qx, 0);
+            float oy = Math.max(qy, 0);
+
+            return (float)Math.sqrt((ox * ox) + (oy * oy)) + Math.min(Math.max(qx, qy), 0);
+        }
+
+
+        /**
+         * Distance to a cone with its base of the given radius at -halfHeight and its
+         * apex at +halfHeight, given the radial and axial coordinates of the point.
+         */
+        private static float cone(float r, float h, float halfHeight, float radius) {
+
+            // distance to the caps (the top cap has no radius)
+            float capX = r - Math.min(r, (h < 0) ? radius : 0);
+            float capY = Math.abs(h) - halfHeight;
+
+            // distance to the slanted side, from the apex (0, halfHeight) to (radius, -halfHeight)
+            float k2x = -radius;
+            float k2y = 2 * halfHeight;
+            float t = Math.min(1, Math.max(0, ((-r * k2x) + ((halfHeight - h) * k2y)) / ((k2x * k2x) + (k2y * k2y))));
+            float sideX = r + (k2x * t);
+            float sideY = h - halfHeight + (k2y * t);
+
+            float sign = ((sideX < 0) && (capY < 0)) ? -1 : 1;
+
+            return sign * (float)Math.sqrt(Math.min((capX * capX) + (capY * capY), (sideX * sideX) + (sideY * sideY)));
+        }
+    }
+}
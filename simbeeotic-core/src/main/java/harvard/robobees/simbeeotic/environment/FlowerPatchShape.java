@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
+import com.bulletphysics.collision.shapes.ConcaveShape;
+import com.bulletphysics.collision.shapes.TriangleCallback;
+import com.bulletphysics.linearmath.AabbUtil2;
+import com.bulletphysics.linearmath.Transform;
+
+import javax.vecmath.Vector3f;
+
+
+/**
+ * A collision shape that represents an entire patch of flowers as a single static
+ * object. The flowers are stored as a compact array of positions (relative to the
+ * center of the patch) and indexed with a uniform grid. When the physics engine
+ * asks for the geometry within a region (for contact generation or ray tests), only
+ * the flowers that overlap the region are tessellated on the fly. Each flower is
+ * approximated by a square stem and a hexagonal platform.
+ * <p/>
+ * The triangle index reported to the physics engine can be mapped back to the
+ * flower that was hit with {@link #getFlowerIndex(int)}. Since the flowers are
+ * tessellated (as opposed to the solid cylinders used for individual flowers), very
+ * fast moving bodies may tunnel through the thin flower platforms.
+ *
+ * @author bkate
+ */
+public class FlowerPatchShape extends ConcaveShape {
+
+    // the number of triangles used to tessellate each flower
+    public static final int TRIANGLES_PER_FLOWER = 28;
+
+    private static final int MAX_CELLS_PER_SIDE = 256;
+    private static final int HEX_SIDES = 6;
+    private static final float REACH_SCALE = 1.26f;  // covers the circumradius of the tessellated polygons
+
+    private final float[] positions;   // x, y, z for each flower
+    private final int numFlowers;
+
+    private final float stemRadius;
+    private final float stemHeight;
+    private final float floraRadius;
+    private final float floraHeight;
+    private final float topHeight;
+
+    // local bounds
+    private final Vector3f localMin = new Vector3f();
+    private final Vector3f localMax = new Vector3f();
+
+    // flower grid (in compressed row form)
+    private final float cellSize;
+    private final int cellsX;
+    private final int cellsY;
+    private final int[] cellStart;
+    private final int[] cellFlowers;
+
+    private final Vector3f localScaling = new Vector3f(1, 1, 1);
+
+    // unit square and hexagon, precomputed
+    private static final float[] SQUARE_X = new float[] {1, -1, -1, 1};
+    private static final float[] SQUARE_Y = new float[] {1, 1, -1, -1};
+    private static final float[] HEX_X = new float[HEX_SIDES];
+    private static final float[] HEX_Y = new float[HEX_SIDES];
+
+    // the polygons are scaled to have the same area as the unit circle
+    static {
+
+        float hexScale = (float)Math.sqrt(2 * Math.PI / (3 * Math.sqrt(3)));
+        float squareScale = (float)Math.sqrt(Math.PI) / 2;
+
+        for (int i = 0; i < HEX_SIDES; i++) {
+
+            double ang = 2 * Math.PI * i / HEX_SIDES;
+
+            HEX_X[i] = hexScale * (float)Math.cos(ang);
+            HEX_Y[i] = hexScale * (float)Math.sin(ang);
+        }
+
+        for (int i = 0; i < 4; i++) {
+
+            SQUARE_X[i] *= squareScale;
+            SQUARE_Y[i] *= squareScale;
+        }
+    }
+
+
+    /**
+     * Creates a flower patch.
+     *
+     * @param positions The location of each flower's base (x, y, z triples), relative to the patch center.
+     * @param stemRadius The radius of a flower stem (m).
+     * @param stemHeight The height of a flower stem (m).
+     * @param floraRadius The radius of the flower platform (m).
+     * @param floraHeight The height of the flower platform (m).
+     */
+    public FlowerPatchShape(final float[] positions, float stemRadius, float stemHeight,
+                            float floraRadius, float floraHeight) {
+
+        if ((positions.length % 3) != 0) {
+            throw new IllegalArgumentException("Flower positions must be given as (x, y, z) triples.");
+        }
+
+        this.positions = positions;
+        this.numFlowers = positions.length / 3;
+        this.stemRadius = stemRadius;
+        this.stemHeight = stemHeight;
+        this.floraRadius = floraRadius;
+        this.floraHeight = floraHeight;
+        this.topHeight = stemHeight + (floraHeight / 2);
+
+        collisionMargin = 0;
+
+        // find the extent of the patch
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < numFlowers; i++) {
+
+            minX = Math.min(minX, positions[i * 3]);
+            minY = Math.min(minY, positions[i * 3 + 1]);
+            minZ = Math.min(minZ, positions[i * 3 + 2]);
+            maxX = Math.max(maxX, positions[i * 3]);
+            maxY = Math.max(maxY, positions[i * 3 + 1]);
+            maxZ = Math.max(maxZ, positions[i * 3 + 2]);
+        }
+
+        if (numFlowers == 0) {
+            minX = minY = minZ = maxX = maxY = maxZ = 0;
+        }
+
+        float reach = Math.max(floraRadius, stemRadius) * REACH_SCALE;
+
+        localMin.set(minX - reach, minY - reach, minZ);
+        localMax.set(maxX + reach, maxY + reach, maxZ + topHeight);
+
+        // build the grid
+        float spanX = localMax.x - localMin.x;
+        float spanY = localMax.y - localMin.y;
+
+        cellSize = Math.max(Math.max(2 * reach, Math.max(spanX, spanY) / MAX_CELLS_PER_SIDE), 1e-3f);
+        cellsX = Math.max(1, (int)Math.ceil(spanX / cellSize));
+        cellsY = Math.max(1, (int)Math.ceil(spanY / cellSize));
+
+        cellStart = new int[(cellsX * cellsY) + 1];
+        cellFlowers = new int[numFlowers];
+
+        int[] cellOf = new int[numFlowers];
+
+        for (int i = 0; i < numFlowers; i++) {
+
+            cellOf[i] = cellIndex(cellX(positions[i * 3]), cellY(positions[i * 3 + 1]));
+            cellStart[cellOf[i] + 1]++;
+        }
+
+        for (int c = 0; c < cellsX * cellsY; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        int[] fill = new int[cellsX * cellsY];
+
+        for (int i = 0; i < numFlowers; i++) {
+            cellFlowers[cellStart[cellOf[i]] + fill[cellOf[i]]++] = i;
+        }
+    }
+
+
+    /**
+     * A callback that is invoked for each flower found by a query.
+     */
+    public static interface FlowerCallback {
+
+        /**
+         * Invoked for each flower that satisfies the query.
+         *
+         * @param index The index of the flower in the patch.
+         */
+        public void flower(int index);
+    }
+
+
+    /**
+     * Finds all flowers whose base is within a given distance of a point.
+     *
+     * @param center The center of the query sphere (relative to the patch center).
+     * @param radius The radius of the query sphere.
+     * @param callback The callback that is invoked for each flower found.
+     */
+    public void findFlowers(final Vector3f center, final float radius, final FlowerCallback callback) {
+
+        int x0 = cellX(center.x - radius);
+        int x1 = cellX(center.x + radius);
+        int y0 = cellY(center.y - radius);
+        int y1 = cellY(center.y + radius);
+
+        float radiusSq = radius * radius;
+
+        for (int cy = y0; cy <= y1; cy++) {
+
+            for (int cx = x0; cx <= x1; cx++) {
+
+                int cell = cellIndex(cx, cy);
+
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+
+                    int i = cellFlowers[k];
+
+                    float dx = positions[i * 3] - center.x;
+                    float dy = positions[i * 3 + 1] - center.y;
+                    float dz = positions[i * 3 + 2] - center.z;
+
+                    if ((dx * dx) + (dy * dy) + (dz * dz) <= radiusSq) {
+                        callback.flower(i);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void processAllTriangles(TriangleCallback callback, Vector3f aabbMin, Vector3f aabbMax) {
+
+        if ((aabbMax.x < localMin.x) || (aabbMin.x > localMax.x) ||
+            (aabbMax.y < localMin.y) || (aabbMin.y > localMax.y) ||
+            (aabbMax.z < localMin.z) || (aabbMin.z > localMax.z)) {
+
+            return;
+        }
+
+        float reach = Math.max(floraRadius, stemRadius) * REACH_SCALE;
+
+        int x0 = cellX(aabbMin.x - reach);
+        int x1 = cellX(aabbMax.x + reach);
+        int y0 = cellY(aabbMin.y - reach);
+        int y1 = cellY(aabbMax.y + reach);
+
+        Vector3f[] tri = new Vector3f[] {new Vector3f(), new Vector3f(), new Vector3f()};
+
+        for (int cy = y0; cy <= y1; cy++) {
+
+            for (int cx = x0; cx <= x1; cx++) {
+
+                int cell = cellIndex(cx, cy);
+
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+
+                    int i = cellFlowers[k];
+
+                    float x = positions[i * 3];
+                    float y = positions[i * 3 + 1];
+                    float z = positions[i * 3 + 2];
+
+                    if ((x + reach < aabbMin.x) || (x - reach > aabbMax.x) ||
+                        (y + reach < aabbMin.y) || (y - reach > aabbMax.y) ||
+                        (z + topHeight < aabbMin.z) || (z > aabbMax.z)) {
+
+                        continue;
+                    }
+
+                    tessellate(i, x, y, z, tri, callback);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Emits the triangles of a single flower.
+     */
+    private void tessellate(int index, float x, float y, float z, Vector3f[] tri, TriangleCallback callback) {
+
+        int base = index * TRIANGLES_PER_FLOWER;
+        int t = 0;
+
+        // stem - the four sides of a square prism
+        float stemTop = z + stemHeight;
+
+        for (int s = 0; s < 4; s++) {
+
+            int n = (s + 1) % 4;
+
+            float ax = x + stemRadius * SQUARE_X[s];
+            float ay = y + stemRadius * SQUARE_Y[s];
+            float bx = x + stemRadius * SQUARE_X[n];
+            float by = y + stemRadius * SQUARE_Y[n];
+
+            tri[0].set(ax, ay, z);
+            tri[1].set(bx, by, z);
+            tri[2].set(bx, by, stemTop);
+            callback.processTriangle(tri, 0, base + t++);
+
+            tri[0].set(ax, ay, z);
+            tri[1].set(bx, by, stemTop);
+            tri[2].set(ax, ay, stemTop);
+            callback.processTriangle(tri, 0, base + t++);
+        }
+
+        // platform - a hexagonal prism
+        float bottom = z + stemHeight - (floraHeight / 2);
+        float top = z + topHeight;
+
+        for (int s = 0; s < HEX_SIDES; s++) {
+
+            int n = (s + 1) % HEX_SIDES;
+
+            float ax = x + floraRadius * HEX_X[s];
+            float ay = y + floraRadius * HEX_Y[s];
+            float bx = x + floraRadius * HEX_X[n];
+            float by = y + floraRadius * HEX_Y[n];
+
+            tri[0].set(ax, ay, bottom);
+            tri[1].set(bx, by, bottom);
+            tri[2].set(bx, by, top);
+            callback.processTriangle(tri, 0, base + t++);
+
+            tri[0].set(ax, ay, bottom);
+            tri[1].set(bx, by, top);
+            tri[2].set(ax, ay, top);
+            callback.processTriangle(tri, 0, base + t++);
+        }
+
+        // top and bottom faces as a fan from the first vertex
+        for (int s = 1; s < HEX_SIDES - 1; s++) {
+
+            tri[0].set(x + floraRadius * HEX_X[0], y + floraRadius * HEX_Y[0], top);
+            tri[1].set(x + floraRadius * HEX_X[s], y + floraRadius * HEX_Y[s], top);
+            tri[2].set(x + floraRadius * HEX_X[s + 1], y + floraRadius * HEX_Y[s + 1], top);
+            callback.processTriangle(tri, 0, base + t++);
+
+            tri[0].set(x + floraRadius * HEX_X[0], y + floraRadius * HEX_Y[0], bottom);
+            tri[1].set(x + floraRadius * HEX_X[s + 1], y + floraRadius * HEX_Y[s + 1], bottom);
+            tri[2].set(x + floraRadius * HEX_X[s], y + floraRadius * HEX_Y[s], bottom);
+            callback.processTriangle(tri, 0, base + t++);
+        }
+    }
+
+
+    /**
+     * Gets the flower that a triangle belongs to.
+     *
+     * @param triangleIndex The index of a triangle reported to a {@link TriangleCallback}
+     *                      (or a ray test).
+     *
+     * @return The index of the flower in the patch.
+     */
+    public static int getFlowerIndex(int triangleIndex) {
+        return triangleIndex / TRIANGLES_PER_FLOWER;
+    }
+
+
+    public int getNumFlowers() {
+        return numFlowers;
+    }
+
+
+    /**
+     * Gets the location of a flower's base, relative to the center of the patch.
+     *
+     * @param index The index of the flower.
+     * @param out The vector that receives the position.
+     *
+     * @return The given vector, for convenience.
+     */
+    public Vector3f getFlowerPosition(int index, Vector3f out) {
+
+        out.set(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2]);
+
+        return out;
+    }
+
+
+    public float getStemRadius() {
+        return stemRadius;
+    }
+
+
+    public float getStemHeight() {
+        return stemHeight;
+    }
+
+
+    public float getFloraRadius() {
+        return floraRadius;
+    }
+
+
+    public float getFloraHeight() {
+        return floraHeight;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void getAabb(Transform trans, Vector3f aabbMin, Vector3f aabbMax) {
+        AabbUtil2.transformAabb(localMin, localMax, getMargin(), trans, aabbMin, aabbMax);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public BroadphaseNativeType getShapeType() {
+
+        // not handled specially anywhere in the physics engine, so it
+        // receives the generic concave shape treatment
+        return BroadphaseNativeType.FAST_CONCAVE_MESH_PROXYTYPE;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void setLocalScaling(Vector3f scaling) {
+
+        if ((scaling.x != 1) || (scaling.y != 1) || (scaling.z != 1)) {
+            throw new UnsupportedOperationException("Flower patches cannot be scaled.");
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Vector3f getLocalScaling(Vector3f out) {
+
+        out.set(localScaling);
+
+        return out;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void calculateLocalInertia(float mass, Vector3f inertia) {
+
+        // flower patches are always static
+        inertia.set(0, 0, 0);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return "FlowerPatch";
+    }
+
+
+    private int cellX(float x) {
+        return Math.min(cellsX - 1, Math.max(0, (int)((x - localMin.x) / cellSize)));
+    }
+
+
+    private int cellY(float y) {
+        return Math.min(cellsY - 1, Math.max(0, (int)((y - localMin.y) / cellSize)));
+    }
+
+
+    private int cellIndex(int cx, int cy) {
+        return (cy * cellsX) + cx;
+    }
+}
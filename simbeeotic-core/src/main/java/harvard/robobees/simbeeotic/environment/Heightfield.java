@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A regular grid of terrain elevation samples. Sample {@code (column, row)} is
+ * located at {@code (originX + column * spacing, originY + row * spacing)} in
+ * the world frame, and each cell between four samples is split into two triangles.
+ * Elevation lookups are constant time and outside of the grid the elevation of the
+ * nearest edge is used.
+ * <p/>
+ * Elevations are stored as raw samples that are converted to meters as
+ * {@code offset + (scale * sample)}. Grids that are loaded from a binary file are
+ * memory-mapped rather than copied onto the heap.
+ *
+ * @author bkate
+ */
+public class Heightfield {
+
+    private final FloatBuffer samples;   // row-major, rows along the y axis
+    private final int columns;
+    private final int rows;
+    private final float spacing;
+    private final float originX;
+    private final float originY;
+    private final float scale;
+    private final float offset;
+
+    private final float minHeight;
+    private final float maxHeight;
+
+
+    /**
+     * Creates a heightfield from raw elevation samples.
+     *
+     * @param samples The raw samples, in row-major order (rows along the y axis).
+     * @param columns The number of samples along the x axis.
+     * @param rows The number of samples along the y axis.
+     * @param spacing The distance between adjacent samples (in meters).
+     * @param originX The x coordinate of the first sample (in meters).
+     * @param originY The y coordinate of the first sample (in meters).
+     * @param scale The multiplier that converts a raw sample to meters.
+     * @param offset The elevation of a raw sample of zero (in meters).
+     */
+    public Heightfield(FloatBuffer samples, int columns, int rows, float spacing,
+                       float originX, float originY, float scale, float offset) {
+
+        if ((columns < 2) || (rows < 2)) {
+            throw new RuntimeException("A heightfield must have at least two rows and two columns.");
+        }
+
+        if (samples.capacity() < (columns * rows)) {
+            throw new RuntimeException("The heightfield has " + samples.capacity() + " samples, expected " +
+                                       (columns * rows) + ".");
+        }
+
+        if (spacing <= 0) {
+            throw new RuntimeException("The heightfield spacing must be positive.");
+        }
+
+        this.samples = samples;
+        this.columns = columns;
+        this.rows = rows;
+        this.spacing = spacing;
+        this.originX = originX;
+        this.originY = originY;
+        this.scale = scale;
+        this.offset = offset;
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+
+        for (int i = 0; i < (columns * rows); i++) {
+
+            float h = offset + (scale * samples.get(i));
+
+            min = Math.min(min, h);
+            max = Math.max(max, h);
+        }
+
+        minHeight = min;
+        maxHeight = max;
+    }
+
+
+    /**
+     * Creates a copy of a heightfield that shares its samples but is positioned
+     * at a different location.
+     *
+     * @param other The heightfield to copy.
+     * @param originX The x coordinate of the first sample (in meters).
+     * @param originY The y coordinate of the first sample (in meters).
+     */
+    Heightfield(Heightfield other, float originX, float originY) {
+
+        this.samples = other.samples;
+        this.columns = other.columns;
+        this.rows = other.rows;
+        this.spacing = other.spacing;
+        this.originX = originX;
+        this.originY = originY;
+        this.scale = other.scale;
+        this.offset = other.offset;
+        this.minHeight = other.minHeight;
+        this.maxHeight = other.maxHeight;
+    }
+
+
+    /**
+     * Loads a heightfield from a grayscale image. Black pixels are at the elevation
+     * given by the offset and white pixels are at {@code offset + scale}. The first
+     * row of the image is the row with the smallest y coordinate.
+     *
+     * @param url The location of the image.
+     * @param spacing The distance between adjacent pixels (in meters).
+     * @param originX The x coordinate of the first pixel (in meters).
+     * @param originY The y coordinate of the first pixel (in meters).
+     * @param scale The elevation difference between a white and black pixel (in meters).
+     * @param offset The elevation of a black pixel (in meters).
+     *
+     * @return The loaded heightfield.
+     */
+    public static Heightfield loadImage(URL url, float spacing, float originX, float originY,
+                                        float scale, float offset) {
+
+        BufferedImage image;
+
+        try {
+            image = ImageIO.read(url);
+        }
+        catch(IOException ioe) {
+            throw new RuntimeException("Could not read the heightfield image: " + url, ioe);
+        }
+
+        if (image == null) {
+            throw new RuntimeException("Unrecognized heightfield image format: " + url);
+        }
+
+        int columns = image.getWidth();
+        int rows = image.getHeight();
+        float[] samples = new float[columns * rows];
+
+        for (int row = 0; row < rows; row++) {
+
+            for (int col = 0; col < columns; col++) {
+
+                int rgb = image.getRGB(col, row);
+
+                // use the luminance of the pixel
+                float lum = (0.299f * ((rgb >> 16) & 0xff)) +
+                            (0.587f * ((rgb >> 8) & 0xff)) +
+                            (0.114f * (rgb & 0xff));
+
+                samples[(row * columns) + col] = lum / 255;
+            }
+        }
+
+        return new Heightfield(FloatBuffer.wrap(samples), columns, rows, spacing,
+                               originX, originY, scale, offset);
+    }
+
+
+    /**
+     * Loads a heightfield from a binary file of 32-bit floating point samples in
+     * row-major order. The file is memory-mapped, so its contents are paged in by
+     * the operating system as they are used.
+     *
+     * @param file The file containing the samples.
+     * @param columns The number of samples along the x axis.
+     * @param rows The number of samples along the y axis.
+     * @param order The byte order of the samples in the file.
+     * @param spacing The distance between adjacent samples (in meters).
+     * @param originX The x coordinate of the first sample (in meters).
+     * @param originY The y coordinate of the first sample (in meters).
+     * @param scale The multiplier that converts a sample to meters.
+     * @param offset The elevation of a sample of zero (in meters).
+     *
+     * @return The loaded heightfield.
+     */
+    public static Heightfield loadGrid(File file, int columns, int rows, ByteOrder order, float spacing,
+                                       float originX, float originY, float scale, float offset) {
+
+        long size = 4L * columns * rows;
+
+        try {
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+            try {
+
+                if (raf.length() < size) {
+                    throw new RuntimeException("The heightfield grid '" + file + "' is too small for " +
+                                               columns + "x" + rows + " samples.");
+                }
+
+                // the mapping remains valid after the channel is closed
+                MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+                buf.order(order);
+
+                return new Heightfield(buf.asFloatBuffer(), columns, rows, spacing,
+                                       originX, originY, scale, offset);
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch(IOException ioe) {
+            throw new RuntimeException("Could not map the heightfield grid: " + file, ioe);
+        }
+    }
+
+
+    /**
+     * Gets the terrain elevation at a point. The elevation is interpolated across the
+     * same two triangles per grid cell that are used for collision detection, so an
+     * object placed at this elevation rests exactly on the terrain.
+     *
+     * @param x The x coordinate of the point (in meters).
+     * @param y The y coordinate of the point (in meters).
+     *
+     * @return The elevation of the terrain at the given point (in meters).
+     */
+    public float getHeight(float x, float y) {
+
+        float fx = Math.min(columns - 1, Math.max(0, (x - originX) / spacing));
+        float fy = Math.min(rows - 1, Math.max(0, (y - originY) / spacing));
+
+        int col = Math.min(columns - 2, (int)fx);
+        int row = Math.min(rows - 2, (int)fy);
+
+        float u = fx - col;
+        float v = fy - row;
+
+        int i = (row * columns) + col;
+
+        float h00 = samples.get(i);
+        float h11 = samples.get(i + columns + 1);
+        float raw;
+
+        // each cell is split along the diagonal from (0,0) to (1,1)
+        if (u >= v) {
+
+            float h10 = samples.get(i + 1);
+
+            raw = h00 + (u * (h10 - h00)) + (v * (h11 - h10));
+        }
+        else {
+
+            float h01 = samples.get(i + columns);
+
+            raw = h00 + (v * (h01 - h00)) + (u * (h11 - h01));
+        }
+
+        return offset + (scale * raw);
+    }
+
+
+    /**
+     * Gets the elevation of a single sample.
+     *
+     * @param column The sample column, in the range {@code [0, columns)}.
+     * @param row The sample row, in the range {@code [0, rows)}.
+     *
+     * @return The elevation of the sample (in meters).
+     */
+    public float getSample(int column, int row) {
+        return offset + (scale * samples.get((row * columns) + column));
+    }
+
+
+    public int getColumns() {
+        return columns;
+    }
+
+
+    public int getRows() {
+        return rows;
+    }
+
+
+    public float getSpacing() {
+        return spacing;
+    }
+
+
+    public float getOriginX() {
+        return originX;
+    }
+
+
+    public float getOriginY() {
+        return originY;
+    }
+
+
+    public float getMinHeight() {
+        return minHeight;
+    }
+
+
+    public float getMaxHeight() {
+        return maxHeight;
+    }
+
+
+    /**
+     * Gets the extent of the heightfield along the x axis.
+     *
+     * @return The length of the heightfield (in meters).
+     */
+    public float getLength() {
+        return (columns - 1) * spacing;
+    }
+
+
+    /**
+     * Gets the extent of the heightfield along the y axis.
+     *
+     * @return The width of the heightfield (in meters).
+     */
+    public float getWidth() {
+        return (rows - 1) * spacing;
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
+import com.bulletphysics.collision.narrowphase.TriangleRaycastCallback;
+import com.bulletphysics.collision.shapes.ConcaveShape;
+import com.bulletphysics.collision.shapes.TriangleCallback;
+import com.bulletphysics.linearmath.AabbUtil2;
+import com.bulletphysics.linearmath.Transform;
+
+import javax.vecmath.Vector3f;
+
+
+/**
+ * A static collision shape for uneven terrain that is described by a {@link Heightfield}.
+ * The shape is defined in the world frame, so the body that holds it should have an
+ * identity transform. Each grid cell is tessellated on the fly as two triangles.
+ * <p/>
+ * The cells are grouped into square tiles, and the minimum and maximum elevation of
+ * every tile is kept in a quadtree (a min/max pyramid). Region queries from the
+ * physics engine only descend into nodes that overlap the region in all three
+ * dimensions. Ray tests walk the quadtree front-to-back along the ray and stop
+ * descending once a closer hit has been found, so their cost grows with the log
+ * of the terrain size plus the number of tiles that the ray actually passes
+ * near, rather than with the area under the ray.
+ * <p/>
+ * The shape does not extend past the edges of the heightfield, so the grid should
+ * cover the area in which the simulation takes place.
+ *
+ * @author bkate
+ */
+public class HeightfieldShape extends ConcaveShape {
+
+    // the number of cells along each side of a tile
+    private static final int TILE_SIZE = 8;
+
+    private final Heightfield field;
+    private final int cellsX;
+    private final int cellsY;
+
+    // min/max pyramid, level 0 holds the tiles
+    private final int numLevels;
+    private final int[] levelWidth;
+    private final int[] levelHeight;
+    private final float[][] levelMin;
+    private final float[][] levelMax;
+
+    // local bounds
+    private final Vector3f localMin = new Vector3f();
+    private final Vector3f localMax = new Vector3f();
+
+    private final Vector3f localScaling = new Vector3f(1, 1, 1);
+
+
+    /**
+     * Creates a terrain shape and builds its bounding hierarchy.
+     *
+     * @param field The elevation samples that define the terrain.
+     */
+    public HeightfieldShape(Heightfield field) {
+
+        this.field = field;
+
+        cellsX = field.getColumns() - 1;
+        cellsY = field.getRows() - 1;
+
+        // determine the number of levels in the pyramid
+        int w = (cellsX + TILE_SIZE - 1) / TILE_SIZE;
+        int h = (cellsY + TILE_SIZE - 1) / TILE_SIZE;
+        int levels = 1;
+
+        while ((w > 1) || (h > 1)) {
+
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+            levels++;
+        }
+
+        numLevels = levels;
+        levelWidth = new int[numLevels];
+        levelHeight = new int[numLevels];
+        levelMin = new float[numLevels][];
+        levelMax = new float[numLevels][];
+
+        // the tiles
+        levelWidth[0] = (cellsX + TILE_SIZE - 1) / TILE_SIZE;
+        levelHeight[0] = (cellsY + TILE_SIZE - 1) / TILE_SIZE;
+        levelMin[0] = new float[levelWidth[0] * levelHeight[0]];
+        levelMax[0] = new float[levelWidth[0] * levelHeight[0]];
+
+        for (int ty = 0; ty < levelHeight[0]; ty++) {
+
+            for (int tx = 0; tx < levelWidth[0]; tx++) {
+
+                float min = Float.MAX_VALUE;
+                float max = -Float.MAX_VALUE;
+
+                // a tile's cells touch the samples on both of its edges
+                int colEnd = Math.min((tx + 1) * TILE_SIZE, cellsX);
+                int rowEnd = Math.min((ty + 1) * TILE_SIZE, cellsY);
+
+                for (int row = ty * TILE_SIZE; row <= rowEnd; row++) {
+
+                    for (int col = tx * TILE_SIZE; col <= colEnd; col++) {
+
+                        float s = field.getSample(col, row);
+
+                        min = Math.min(min, s);
+                        max = Math.max(max, s);
+                    }
+                }
+
+                levelMin[0][(ty * levelWidth[0]) + tx] = min;
+                levelMax[0][(ty * levelWidth[0]) + tx] = max;
+            }
+        }
+
+        // merge 2x2 blocks of nodes until a single root remains
+        for (int level = 1; level < numLevels; level++) {
+
+            int prevW = levelWidth[level - 1];
+            int prevH = levelHeight[level - 1];
+
+            levelWidth[level] = (prevW + 1) / 2;
+            levelHeight[level] = (prevH + 1) / 2;
+            levelMin[level] = new float[levelWidth[level] * levelHeight[level]];
+            levelMax[level] = new float[levelWidth[level] * levelHeight[level]];
+
+            for (int ny = 0; ny < levelHeight[level]; ny++) {
+
+                for (int nx = 0; nx < levelWidth[level]; nx++) {
+
+                    float min = Float.MAX_VALUE;
+                    float max = -Float.MAX_VALUE;
+
+                    for (int cy = 2 * ny; cy < Math.min(2 * ny + 2, prevH); cy++) {
+
+                        for (int cx = 2 * nx; cx < Math.min(2 * nx + 2, prevW); cx++) {
+
+                            min = Math.min(min, levelMin[level - 1][(cy * prevW) + cx]);
+                            max = Math.max(max, levelMax[level - 1][(cy * prevW) + cx]);
+                        }
+                    }
+
+                    levelMin[level][(ny * levelWidth[level]) + nx] = min;
+                    levelMax[level][(ny * levelWidth[level]) + nx] = max;
+                }
+            }
+        }
+
+        localMin.set(field.getOriginX(), field.getOriginY(), field.getMinHeight());
+        localMax.set(field.getOriginX() + field.getLength(),
+                     field.getOriginY() + field.getWidth(),
+                     field.getMaxHeight());
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void processAllTriangles(TriangleCallback callback, Vector3f aabbMin, Vector3f aabbMax) {
+
+        Vector3f[] tri = new Vector3f[] {new Vector3f(), new Vector3f(), new Vector3f()};
+        int root = numLevels - 1;
+
+        // the physics engine passes the bounds of the whole ray for ray
+        // tests, so they are better served by walking along the ray
+        if (callback instanceof TriangleRaycastCallback) {
+
+            TriangleRaycastCallback rayCallback = (TriangleRaycastCallback)callback;
+
+            Vector3f dir = new Vector3f();
+            dir.sub(rayCallback.to, rayCallback.from);
+
+            visitRay(root, 0, 0, rayCallback, rayCallback.from, dir, new float[2], tri);
+        }
+        else {
+            visitAabb(root, 0, 0, callback, aabbMin, aabbMax, tri);
+        }
+    }
+
+
+    /**
+     * Descends into the nodes of the pyramid that overlap a bounding box.
+     */
+    private void visitAabb(int level, int nx, int ny, TriangleCallback callback,
+                           Vector3f aabbMin, Vector3f aabbMax, Vector3f[] tri) {
+
+        int node = (ny * levelWidth[level]) + nx;
+        int span = TILE_SIZE << level;
+
+        int col0 = nx * span;
+        int row0 = ny * span;
+        int col1 = Math.min(col0 + span, cellsX);
+        int row1 = Math.min(row0 + span, cellsY);
+
+        if ((aabbMax.z < levelMin[level][node]) || (aabbMin.z > levelMax[level][node]) ||
+            (aabbMax.x < cellX(col0)) || (aabbMin.x > cellX(col1)) ||
+            (aabbMax.y < cellY(row0)) || (aabbMin.y > cellY(row1))) {
+
+            return;
+        }
+
+        if (level == 0) {
+
+            // only the cells of the tile that overlap the box
+            int c0 = Math.max(col0, toCol(aabbMin.x));
+            int c1 = Math.min(col1 - 1, toCol(aabbMax.x));
+            int r0 = Math.max(row0, toRow(aabbMin.y));
+            int r1 = Math.min(row1 - 1, toRow(aabbMax.y));
+
+            emitCells(c0, c1, r0, r1, callback, tri);
+
+            return;
+        }
+
+        for (int cy = 2 * ny; cy < Math.min(2 * ny + 2, levelHeight[level - 1]); cy++) {
+
+            for (int cx = 2 * nx; cx < Math.min(2 * nx + 2, levelWidth[level - 1]); cx++) {
+                visitAabb(level - 1, cx, cy, callback, aabbMin, aabbMax, tri);
+            }
+        }
+    }
+
+
+    /**
+     * Descends into the nodes of the pyramid that are pierced by a ray, nearest first.
+     */
+    private void visitRay(int level, int nx, int ny, TriangleRaycastCallback callback,
+                          Vector3f from, Vector3f dir, float[] t, Vector3f[] tri) {
+
+        int node = (ny * levelWidth[level]) + nx;
+        int span = TILE_SIZE << level;
+
+        int col0 = nx * span;
+        int row0 = ny * span;
+        int col1 = Math.min(col0 + span, cellsX);
+        int row1 = Math.min(row0 + span, cellsY);
+
+        float minX = cellX(col0);
+        float maxX = cellX(col1);
+        float minY = cellY(row0);
+        float maxY = cellY(row1);
+
+        // clip the ray against the bounds of the node, ignoring anything
+        // that is farther than the closest hit found so far
+        t[0] = 0;
+        t[1] = callback.hitFraction;
+
+        if (!clipSlab(from.x, dir.x, minX, maxX, t) ||
+            !clipSlab(from.y, dir.y, minY, maxY, t) ||
+            !clipSlab(from.z, dir.z, levelMin[level][node], levelMax[level][node], t)) {
+
+            return;
+        }
+
+        if (level == 0) {
+
+            // the cells under the portion of the ray that crosses the tile
+            float xa = from.x + (dir.x * t[0]);
+            float xb = from.x + (dir.x * t[1]);
+            float ya = from.y + (dir.y * t[0]);
+            float yb = from.y + (dir.y * t[1]);
+
+            int c0 = Math.max(col0, toCol(Math.min(xa, xb)));
+            int c1 = Math.min(col1 - 1, toCol(Math.max(xa, xb)));
+            int r0 = Math.max(row0, toRow(Math.min(ya, yb)));
+            int r1 = Math.min(row1 - 1, toRow(Math.max(ya, yb)));
+
+            emitCells(c0, c1, r0, r1, callback, tri);
+
+            return;
+        }
+
+        // the child nearest to the ray origin is entered first and the farthest is entered
+        // last. a ray passes through at most one of the remaining two, so their order is moot
+        int childW = levelWidth[level - 1];
+        int childH = levelHeight[level - 1];
+        int nearX = (dir.x >= 0) ? 0 : 1;
+        int nearY = (dir.y >= 0) ? 0 : 1;
+
+        for (int k = 0; k < 4; k++) {
+
+            int cx = (2 * nx) + (((k == 0) || (k == 2)) ? nearX : (1 - nearX));
+            int cy = (2 * ny) + (((k == 0) || (k == 1)) ? nearY : (1 - nearY));
+
+            if ((cx < childW) && (cy < childH)) {
+                visitRay(level - 1, cx, cy, callback, from, dir, t, tri);
+            }
+        }
+    }
+
+
+    /**
+     * Clips the parametric range of a ray against a slab along one axis.
+     *
+     * @return True if the clipped range (updated in place) is not empty.
+     */
+    private static boolean clipSlab(float origin, float dir, float min, float max, float[] t) {
+
+        if (dir == 0) {
+            return (origin >= min) && (origin <= max);
+        }
+
+        float ta = (min - origin) / dir;
+        float tb = (max - origin) / dir;
+
+        if (ta > tb) {
+
+            float tmp = ta;
+            ta = tb;
+            tb = tmp;
+        }
+
+        t[0] = Math.max(t[0], ta);
+        t[1] = Math.min(t[1], tb);
+
+        return (t[0] <= t[1]);
+    }
+
+
+    /**
+     * Emits the two triangles of every cell in a rectangular range.
+     */
+    private void emitCells(int c0, int c1, int r0, int r1, TriangleCallback callback, Vector3f[] tri) {
+
+        for (int row = r0; row <= r1; row++) {
+
+            for (int col = c0; col <= c1; col++) {
+
+                float x0 = cellX(col);
+                float x1 = cellX(col + 1);
+                float y0 = cellY(row);
+                float y1 = cellY(row + 1);
+
+                float h00 = field.getSample(col, row);
+                float h10 = field.getSample(col + 1, row);
+                float h01 = field.getSample(col, row + 1);
+                float h11 = field.getSample(col + 1, row + 1);
+
+                int base = ((row * cellsX) + col) * 2;
+
+                // split along the diagonal, matching Heightfield.getHeight()
+                tri[0].set(x0, y0, h00);
+                tri[1].set(x1, y0, h10);
+                tri[2].set(x1, y1, h11);
+
+                callback.processTriangle(tri, 0, base);
+
+                tri[0].set(x0, y0, h00);
+                tri[1].set(x1, y1, h11);
+                tri[2].set(x0, y1, h01);
+
+                callback.processTriangle(tri, 0, base + 1);
+            }
+        }
+    }
+
+
+    public Heightfield getHeightfield() {
+        return field;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void getAabb(Transform trans, Vector3f aabbMin, Vector3f aabbMax) {
+        AabbUtil2.transformAabb(localMin, localMax, getMargin(), trans, aabbMin, aabbMax);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public BroadphaseNativeType getShapeType() {
+
+        // not handled specially anywhere in the physics engine, so it
+        // receives the generic concave shape treatment
+        return BroadphaseNativeType.FAST_CONCAVE_MESH_PROXYTYPE;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void setLocalScaling(Vector3f scaling) {
+
+        if ((scaling.x != 1) || (scaling.y != 1) || (scaling.z != 1)) {
+            throw new UnsupportedOperationException("Terrain cannot be scaled.");
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Vector3f getLocalScaling(Vector3f out) {
+
+        out.set(localScaling);
+
+        return out;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void calculateLocalInertia(float mass, Vector3f inertia) {
+
+        // terrain is always static
+        inertia.set(0, 0, 0);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return "Heightfield";
+    }
+
+
+    private float cellX(int col) {
+        return field.getOriginX() + (col * field.getSpacing());
+    }
+
+
+    private float cellY(int row) {
+        return field.getOriginY() + (row * field.getSpacing());
+    }
+
+
+    private int toCol(float x) {
+        return Math.min(cellsX - 1, Math.max(0, (int)Math.floor((x - field.getOriginX()) / field.getSpacing())));
+    }
+
+
+    private int toRow(float y) {
+        return Math.min(cellsY - 1, Math.max(0, (int)Math.floor((y - field.getOriginY()) / field.getSpacing())));
+    }
+}
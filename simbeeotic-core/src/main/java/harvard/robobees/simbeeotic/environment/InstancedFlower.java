@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.linearmath.Transform;
+import harvard.robobees.simbeeotic.util.BoundingSphere;
+
+import javax.vecmath.Vector3f;
+import java.util.Map;
+
+
+/**
+ * A single flower that is part of an instanced flower patch. The flower does not
+ * have a body of its own - its position is derived from the patch body and the
+ * flower's offset in the {@link FlowerPatchShape}.
+ *
+ * @author bkate
+ */
+class InstancedFlower extends WorldObject {
+
+    private RigidBody patchBody;
+    private FlowerPatchShape shape;
+    private int index;
+
+
+    public InstancedFlower(int objectId, RigidBody patchBody, FlowerPatchShape shape, int index, Map<String, Object> meta) {
+
+        super(objectId, Type.FLOWER, patchBody, meta);
+
+        this.patchBody = patchBody;
+        this.shape = shape;
+        this.index = index;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Vector3f getTruthPosition() {
+
+        Transform trans = patchBody.getMotionState().getWorldTransform(new Transform());
+        Vector3f pos = shape.getFlowerPosition(index, new Vector3f());
+
+        trans.transform(pos);
+
+        return pos;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public BoundingSphere getTruthBoundingSphere() {
+
+        Vector3f center = getTruthPosition();
+        Vector3f halfExtents = new Vector3f(shape.getFloraRadius(),
+                                            shape.getFloraRadius(),
+                                            (shape.getStemHeight() + shape.getFloraHeight() / 2) / 2);
+
+        center.z += halfExtents.z;
+
+        return new BoundingSphere(center, halfExtents.length());
+    }
+
+
+    /**
+     * Gets the index of this flower in its patch.
+     *
+     * @return The flower index.
+     */
+    public int getIndex() {
+        return index;
+    }
+}
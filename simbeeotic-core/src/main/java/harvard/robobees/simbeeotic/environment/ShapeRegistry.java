@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.shapes.BoxShape;
+import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.ConeShapeZ;
+import com.bulletphysics.collision.shapes.CylinderShapeZ;
+import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.collision.shapes.StaticPlaneShape;
+
+import javax.vecmath.Vector3f;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+
+/**
+ * A JVM-wide registry of interned collision shapes. Collision shapes are immutable once
+ * created (as long as nobody changes the scaling or margin), so any two bodies with the same
+ * type and dimensions can share a single shape instance. This saves a significant amount
+ * of memory in worlds with many bodies, and the registry persists across scenario variations
+ * so that the shapes are only created once per run.
+ * <p/>
+ * While a simulation is running (see {@link #retainShapes()}) every interned shape is held, so
+ * a shape keeps its instance and id from one variation to the next. Otherwise the registry only
+ * holds weak references to its shapes, and a shape that is no longer used by any body (or compiled
+ * world) is dropped, so that the shapes of a finished run are not kept for the life of the JVM.
+ * A shape that is requested again after it was dropped is recreated with a new id.
+ * <p/>
+ * Each interned shape is assigned a unique id so that consumers of shape updates
+ * (e.g. {@link harvard.robobees.simbeeotic.model.MotionListener}s) can share derived
+ * geometry by id.
+ * <p/>
+ * Shapes obtained from this registry must not be modified.
+ *
+ * @author bkate
+ */
+public final class ShapeRegistry {
+
+    private static final Map<Key, ShapeReference> shapes = new HashMap<Key, ShapeReference>();
+    private static final Map<CollisionShape, Integer> shapeIds = new WeakHashMap<CollisionShape, Integer>();
+    private static final Map<CollisionShape, Key> shapeKeys = new WeakHashMap<CollisionShape, Key>();
+    private static final ReferenceQueue<CollisionShape> collected = new ReferenceQueue<CollisionShape>();
+    private static final Map<Key, CollisionShape> retained = new HashMap<Key, CollisionShape>();
+
+    private static int nextShapeId = 0;
+    private static int retainCount = 0;
+
+
+    /**
+     * A factory used to create a shape that has not yet been interned.
+     */
+    public static interface ShapeFactory {
+
+        /**
+         * Creates a new shape.
+         *
+         * @return The new shape instance.
+         */
+        public CollisionShape createShape();
+    }
+
+
+    private ShapeRegistry() {
+    }
+
+
+    /**
+     * Gets a sphere shape.
+     *
+     * @param radius The radius of the sphere (m).
+     *
+     * @return The shared shape instance.
+     */
+    public static CollisionShape getSphere(final float radius) {
+
+        return getShape("sphere", new float[] {radius}, new ShapeFactory() {
+
+            public CollisionShape createShape() {
+                return new SphereShape(radius);
+            }
+        });
+    }
+
+
+    /**
+     * Gets a box shape.
+     *
+     * @param halfExtents The half extents of the box (m).
+     *
+     * @return The shared shape instance.
+     */
+    public static CollisionShape getBox(final Vector3f halfExtents) {
+
+        final Vector3f extents = new Vector3f(halfExtents);
+
+        return getShape("box", new float[] {extents.x, extents.y, extents.z}, new ShapeFactory() {
+
+            public CollisionShape createShape() {
+                return new BoxShape(extents);
+            }
+        });
+    }
+
+
+    /**
+     * Gets a cylinder shape that is aligned with the Z axis.
+     *
+     * @param halfExtents The half extents of the cylinder (m).
+     *
+     * @return The shared shape instance.
+     */
+    public static CollisionShape getCylinderZ(final Vector3f halfExtents) {
+
+        final Vector3f extents = new Vector3f(halfExtents);
+
+        return getShape("cylinder-z", new float[] {extents.x, extents.y, extents.z}, new ShapeFactory() {
+
+            public CollisionShape createShape() {
+                return new CylinderShapeZ(extents);
+            }
+        });
+    }
+
+
+    /**
+     * Gets a cone shape that is aligned with the Z axis.
+     *
+     * @param radius The radius of the base of the cone (m).
+     * @param height The height of the cone (m).
+     *
+     * @return The shared shape instance.
+     */
+    public static CollisionShape getConeZ(final float radius, final float height) {
+
+        return getShape("cone-z", new float[] {radius, height}, new ShapeFactory() {
+
+            public CollisionShape createShape() {
+                return new ConeShapeZ(radius, height);
+            }
+        });
+    }
+
+
+    /**
+     * Gets an infinite static plane shape.
+     *
+     * @param normal The plane normal.
+     * @param constant The plane constant.
+     *
+     * @return The shared shape instance.
+     */
+    public static CollisionShape getStaticPlane(final Vector3f normal, final float constant) {
+
+        final Vector3f norm = new Vector3f(normal);
+
+        return getShape("static-plane", new float[] {norm.x, norm.y, norm.z, constant}, new ShapeFactory() {
+
+            public CollisionShape createShape() {
+                return new StaticPlaneShape(norm, constant);
+            }
+        });
+    }
+
+
+    /**
+     * Gets an arbitrary shape (such as a compound shape), creating it if it has not
+     * already been interned with the same type and dimensions.
+     *
+     * @param type The name of the type of shape. Callers are responsible for choosing a name that
+     *             does not conflict with the other shape types.
+     * @param dims The dimensions that uniquely identify the shape within its type.
+     * @param factory The factory used to create the shape if it does not exist.
+     *
+     * @return The shared shape instance.
+     */
+    public static synchronized CollisionShape getShape(final String type, final float[] dims, final ShapeFactory factory) {
+
+        purge();
+
+        Key key = new Key(type, dims);
+        ShapeReference ref = shapes.get(key);
+        CollisionShape shape = (ref != null) ? ref.get() : null;
+
+        if (shape == null) {
+
+            shape = factory.createShape();
+
+            shapes.put(key, new ShapeReference(shape, key));
+            shapeIds.put(shape, nextShapeId++);
+            shapeKeys.put(shape, key);
+        }
+
+        if (retainCount > 0) {
+            retained.put(key, shape);
+        }
+
+        return shape;
+    }
+
+
+    /**
+     * Holds a strong reference to each shape that is requested from now on, until a matching
+     * call to {@link #releaseShapes()}. Calls may be nested, in which case the shapes are held
+     * until the outermost call is released.
+     */
+    public static synchronized void retainShapes() {
+        retainCount++;
+    }
+
+
+    /**
+     * Releases the shapes held since the matching call to {@link #retainShapes()}. The shapes
+     * remain interned for as long as they are otherwise in use.
+     */
+    public static synchronized void releaseShapes() {
+
+        if (retainCount == 0) {
+            throw new RuntimeException("The shapes of the registry are not retained.");
+        }
+
+        if (--retainCount == 0) {
+            retained.clear();
+        }
+    }
+
+
+    /**
+     * Gets the unique identifier of an interned shape.
+     *
+     * @param shape The shape in question.
+     *
+     * @return The identifier of the shape, or -1 if the shape was not created by this registry.
+     */
+    public static synchronized int getShapeId(final CollisionShape shape) {
+
+        Integer id = shapeIds.get(shape);
+
+        return (id == null) ? -1 : id;
+    }
+
+
+    /**
+     * Gets the name of the type that an interned shape was created with.
+     *
+     * @param shape The shape in question.
+     *
+     * @return The type of the shape, or {@code null} if the shape was not created by this registry.
+     */
+    static synchronized String getShapeType(final CollisionShape shape) {
+
+        Key key = shapeKeys.get(shape);
+
+        return (key == null) ? null : key.type;
+    }
+
+
+    /**
+     * Gets the dimensions that an interned shape was created with.
+     *
+     * @param shape The shape in question.
+     *
+     * @return A copy of the dimensions of the shape, or {@code null} if the shape was not created by this registry.
+     */
+    static synchronized float[] getShapeDimensions(final CollisionShape shape) {
+
+        Key key = shapeKeys.get(shape);
+
+        return (key == null) ? null : key.dims.clone();
+    }
+
+
+    /**
+     * Gets the number of shapes that are currently interned. Shapes that are no longer
+     * used may be counted until the garbage collector has cleared them.
+     *
+     * @return The number of unique shapes.
+     */
+    public static synchronized int size() {
+
+        purge();
+
+        return shapes.size();
+    }
+
+
+    /**
+     * Removes the entries of shapes that have been garbage collected.
+     */
+    private static void purge() {
+
+        Reference<? extends CollisionShape> ref;
+
+        while ((ref = collected.poll()) != null) {
+
+            Key key = ((ShapeReference)ref).key;
+
+            // the key may already refer to a newer instance of the shape
+            if (shapes.get(key) == ref) {
+                shapes.remove(key);
+            }
+        }
+    }
+
+
+    /**
+     * A weak reference to an interned shape that remembers its lookup key.
+     */
+    private static final class ShapeReference extends WeakReference<CollisionShape> {
+
+        private final Key key;
+
+
+        public ShapeReference(CollisionShape shape, Key key) {
+
+            super(shape, collected);
+
+            this.key = key;
+        }
+    }
+
+
+    /**
+     * The lookup key of an interned shape.
+     */
+    private static final class Key {
+
+        private final String type;
+        private final float[] dims;
+        private final int hash;
+
+
+        public Key(String type, float[] dims) {
+
+            this.type = type;
+            this.dims = dims;
+
+            hash = (31 * type.hashCode()) + Arrays.hashCode(dims);
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) {
+                return true;
+            }
+
+            if ((o == null) || (getClass() != o.getClass())) {
+                return false;
+            }
+
+            Key other = (Key)o;
+
+            return type.equals(other.type) && Arrays.equals(dims, other.dims);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import javax.vecmath.Vector3f;
+import java.util.Collection;
+import java.util.Map;
+
+
+/**
+ * A uniform grid (in the XY plane) over a fixed set of static world objects. The
+ * grid is built once and stores the position of each object so that queries
+ * do not need to touch the physics engine or allocate any memory.
+ *
+ * @author bkate
+ */
+class StaticGrid {
+
+    private static final int MAX_CELLS_PER_SIDE = 1024;
+
+    private WorldObject[] objects;
+    private float[] positions;   // x, y, z for each object (in cell order)
+
+    private float minX;
+    private float minY;
+    private float cellSize;
+    private int cellsX;
+    private int cellsY;
+    private int[] cellStart;
+
+
+    /**
+     * A callback for objects that are candidates for a query, along with their position.
+     */
+    public static interface CandidateVisitor {
+
+        public void visit(WorldObject object, float x, float y, float z);
+    }
+
+
+    public StaticGrid(final Collection<WorldObject> objs) {
+
+        int num = objs.size();
+
+        WorldObject[] unsorted = objs.toArray(new WorldObject[num]);
+        float[] pos = new float[num * 3];
+
+        minX = Float.POSITIVE_INFINITY;
+        minY = Float.POSITIVE_INFINITY;
+
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < num; i++) {
+
+            Vector3f p = unsorted[i].getTruthPosition();
+
+            pos[i * 3] = p.x;
+            pos[i * 3 + 1] = p.y;
+            pos[i * 3 + 2] = p.z;
+
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+
+        if (num == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+
+        // aim for about one object per cell
+        float spanX = maxX - minX;
+        float spanY = maxY - minY;
+        float span = Math.max(spanX, spanY);
+
+        cellSize = (float)Math.sqrt((spanX * spanY) / Math.max(num, 1));
+        cellSize = Math.max(cellSize, span / MAX_CELLS_PER_SIDE);
+        cellSize = Math.max(cellSize, 1e-3f);
+
+        cellsX = Math.min(MAX_CELLS_PER_SIDE, (int)(spanX / cellSize) + 1);
+        cellsY = Math.min(MAX_CELLS_PER_SIDE, (int)(spanY / cellSize) + 1);
+
+        // counting sort into cells
+        int[] cellOf = new int[num];
+
+        cellStart = new int[(cellsX * cellsY) + 1];
+
+        for (int i = 0; i < num; i++) {
+
+            cellOf[i] = (cellY(pos[i * 3 + 1]) * cellsX) + cellX(pos[i * 3]);
+            cellStart[cellOf[i] + 1]++;
+        }
+
+        for (int c = 0; c < cellsX * cellsY; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        int[] fill = new int[cellsX * cellsY];
+
+        objects = new WorldObject[num];
+        positions = new float[num * 3];
+
+        for (int i = 0; i < num; i++) {
+
+            int slot = cellStart[cellOf[i]] + fill[cellOf[i]]++;
+
+            objects[slot] = unsorted[i];
+            positions[slot * 3] = pos[i * 3];
+            positions[slot * 3 + 1] = pos[i * 3 + 1];
+            positions[slot * 3 + 2] = pos[i * 3 + 2];
+        }
+    }
+
+
+    /**
+     * Creates a grid with the same layout as an existing grid, but over a different set of
+     * objects that have the same identifiers and positions. The layout is shared, so this
+     * is much cheaper than building a new grid.
+     *
+     * @param grid The grid whose layout is shared.
+     * @param objs The objects that replace those of the given grid, keyed by object identifier.
+     */
+    public StaticGrid(final StaticGrid grid, final Map<Integer, WorldObject> objs) {
+
+        objects = new WorldObject[grid.objects.length];
+
+        for (int i = 0; i < objects.length; i++) {
+
+            objects[i] = objs.get(grid.objects[i].getObjectId());
+
+            if (objects[i] == null) {
+                throw new RuntimeException("No replacement for indexed object " + grid.objects[i].getObjectId() + ".");
+            }
+        }
+
+        positions = grid.positions;
+        minX = grid.minX;
+        minY = grid.minY;
+        cellSize = grid.cellSize;
+        cellsX = grid.cellsX;
+        cellsY = grid.cellsY;
+        cellStart = grid.cellStart;
+    }
+
+
+    /**
+     * Visits all objects whose position is within a sphere.
+     *
+     * @param center The center of the sphere.
+     * @param radius The radius of the sphere.
+     * @param visitor The visitor that is invoked for each object inside the sphere.
+     */
+    public void visitSphere(final Vector3f center, final float radius, final WorldObjectVisitor visitor) {
+
+        int x0 = cellX(center.x - radius);
+        int x1 = cellX(center.x + radius);
+        int y0 = cellY(center.y - radius);
+        int y1 = cellY(center.y + radius);
+
+        float radiusSq = radius * radius;
+
+        for (int cy = y0; cy <= y1; cy++) {
+
+            for (int cx = x0; cx <= x1; cx++) {
+
+                int cell = (cy * cellsX) + cx;
+
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+
+                    float dx = positions[i * 3] - center.x;
+                    float dy = positions[i * 3 + 1] - center.y;
+                    float dz = positions[i * 3 + 2] - center.z;
+
+                    if ((dx * dx) + (dy * dy) + (dz * dz) <= radiusSq) {
+                        visitor.visit(objects[i]);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Visits all objects whose position falls within the XY bounds of a box.
+     *
+     * @param minX The minimum X coordinate of the box.
+     * @param minY The minimum Y coordinate of the box.
+     * @param maxX The maximum X coordinate of the box.
+     * @param maxY The maximum Y coordinate of the box.
+     * @param visitor The visitor that is invoked for each candidate.
+     */
+    public void visitBox(float minX, float minY, float maxX, float maxY, final CandidateVisitor visitor) {
+
+        int x0 = cellX(minX);
+        int x1 = cellX(maxX);
+        int y0 = cellY(minY);
+        int y1 = cellY(maxY);
+
+        for (int cy = y0; cy <= y1; cy++) {
+
+            for (int cx = x0; cx <= x1; cx++) {
+
+                int cell = (cy * cellsX) + cx;
+
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+
+                    float x = positions[i * 3];
+                    float y = positions[i * 3 + 1];
+
+                    if ((x >= minX) && (x <= maxX) && (y >= minY) && (y <= maxY)) {
+                        visitor.visit(objects[i], x, y, positions[i * 3 + 2]);
+                    }
+                }
+            }
+        }
+    }
+
+
+    private int cellX(float x) {
+        return Math.min(cellsX - 1, Math.max(0, (int)((x - minX) / cellSize)));
+    }
+
+
+    private int cellY(float y) {
+        return Math.min(cellsY - 1, Math.max(0, (int)((y - minY) / cellSize)));
+    }
+}
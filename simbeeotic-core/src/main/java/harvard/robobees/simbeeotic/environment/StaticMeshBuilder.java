@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.shapes.BoxShape;
+import com.bulletphysics.collision.shapes.BvhTriangleMeshShape;
+import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.CompoundShape;
+import com.bulletphysics.collision.shapes.ConeShape;
+import com.bulletphysics.collision.shapes.CylinderShape;
+import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.collision.shapes.TriangleIndexVertexArray;
+import com.bulletphysics.linearmath.Transform;
+import harvard.robobees.simbeeotic.model.EntityInfo;
+
+import javax.vecmath.Vector3f;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Accumulates the geometry of many static bodies into a single triangle mesh that
+ * is backed by a bounding volume hierarchy. Each body (primitive) that is added
+ * occupies a contiguous range of triangle indices, which is used to map a triangle
+ * back to the {@link EntityInfo} of the primitive that it came from.
+ * <p/>
+ * Curved shapes are approximated by polygons that have the same cross sectional
+ * area as the original shape. Since the mesh is a shell with no volume, very fast
+ * moving bodies may tunnel through thin primitives.
+ *
+ * @author bkate
+ */
+class StaticMeshBuilder {
+
+    private static final int SEGMENTS = 16;
+
+    // scales a regular polygon to have the same area as its circumscribed circle
+    private static final float AREA_SCALE = (float)Math.sqrt(2 * Math.PI / (SEGMENTS * Math.sin(2 * Math.PI / SEGMENTS)));
+
+    private float[] vertices = new float[3 * 3 * 1024];
+    private int numTriangles = 0;
+
+    private List<Integer> partStarts = new ArrayList<Integer>();
+    private List<EntityInfo> parts = new ArrayList<EntityInfo>();
+
+    // scratch space
+    private Transform trans = new Transform();
+    private Vector3f[] tri = new Vector3f[] {new Vector3f(), new Vector3f(), new Vector3f()};
+
+
+    /**
+     * Adds the triangles of a static body to the mesh.
+     *
+     * @param shape The collision shape of the body.
+     * @param transform The position and orientation of the body.
+     * @param info The details of the body, which are associated with its triangles.
+     */
+    public void add(CollisionShape shape, Transform transform, EntityInfo info) {
+
+        partStarts.add(numTriangles);
+        parts.add(info);
+
+        tessellate(shape, transform);
+    }
+
+
+    /**
+     * Gets the number of triangles added so far.
+     *
+     * @return The number of triangles in the mesh.
+     */
+    public int getNumTriangles() {
+        return numTriangles;
+    }
+
+
+    /**
+     * Builds the mesh shape and its hierarchy. The mesh is defined in the world
+     * frame, so the body that holds it should have an identity transform.
+     *
+     * @return The merged triangle mesh.
+     */
+    public BvhTriangleMeshShape buildShape() {
+
+        ByteBuffer vertexBuf = ByteBuffer.allocateDirect(numTriangles * 3 * 3 * 4).order(ByteOrder.nativeOrder());
+        ByteBuffer indexBuf = ByteBuffer.allocateDirect(numTriangles * 3 * 4).order(ByteOrder.nativeOrder());
+
+        for (int i = 0; i < (numTriangles * 3 * 3); i++) {
+            vertexBuf.putFloat(vertices[i]);
+        }
+
+        // every triangle has its own vertices
+        for (int i = 0; i < (numTriangles * 3); i++) {
+            indexBuf.putInt(i);
+        }
+
+        vertexBuf.flip();
+        indexBuf.flip();
+
+        TriangleIndexVertexArray mesh = new TriangleIndexVertexArray(numTriangles, indexBuf, 3 * 4,
+                                                                     numTriangles * 3, vertexBuf, 3 * 4);
+
+        return new BvhTriangleMeshShape(mesh, true);
+    }
+
+
+    /**
+     * Builds the body details that map the triangles of the mesh to the primitives
+     * that they came from.
+     *
+     * @param objectId The object identifier of the merged body.
+     * @param meta The metadata of the merged body.
+     *
+     * @return The details to attach to the merged body.
+     */
+    public StaticMeshInfo buildInfo(int objectId, Map<String, Object> meta) {
+
+        int[] starts = new int[partStarts.size()];
+
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = partStarts.get(i);
+        }
+
+        return new StaticMeshInfo(objectId, meta, starts, parts.toArray(new EntityInfo[parts.size()]));
+    }
+
+
+    private void tessellate(CollisionShape shape, Transform transform) {
+
+        if (shape instanceof CompoundShape) {
+
+            CompoundShape compound = (CompoundShape)shape;
+
+            for (int i = 0; i < compound.getNumChildShapes(); i++) {
+
+                Transform child = compound.getChildTransform(i, new Transform());
+
+                child.mul(transform, child);
+
+                tessellate(compound.getChildShape(i), child);
+            }
+        }
+        else if (shape instanceof CylinderShape) {
+
+            CylinderShape cylinder = (CylinderShape)shape;
+            Vector3f halfExtents = cylinder.getHalfExtentsWithMargin(new Vector3f());
+            int up = cylinder.getUpAxis();
+            float radius = cylinder.getRadius() * AREA_SCALE;
+            float halfHeight = get(halfExtents, up);
+
+            trans.set(transform);
+
+            for (int i = 0; i < SEGMENTS; i++) {
+
+                double a0 = 2 * Math.PI * i / SEGMENTS;
+                double a1 = 2 * Math.PI * (i + 1) / SEGMENTS;
+
+                float x0 = radius * (float)Math.cos(a0);
+                float y0 = radius * (float)Math.sin(a0);
+                float x1 = radius * (float)Math.cos(a1);
+                float y1 = radius * (float)Math.sin(a1);
+
+                // side
+                quad(up, x0, y0, -halfHeight, x1, y1, -halfHeight, x1, y1, halfHeight, x0, y0, halfHeight);
+
+                // caps
+                triangle(up, 0, 0, halfHeight, x0, y0, halfHeight, x1, y1, halfHeight);
+                triangle(up, 0, 0, -halfHeight, x1, y1, -halfHeight, x0, y0, -halfHeight);
+            }
+        }
+        else if (shape instanceof BoxShape) {
+
+            Vector3f h = ((BoxShape)shape).getHalfExtentsWithMargin(new Vector3f());
+
+            trans.set(transform);
+
+            // the box is oriented along the z axis, so the permutation is the identity
+            quad(2, -h.x, -h.y, -h.z, -h.x, h.y, -h.z, h.x, h.y, -h.z, h.x, -h.y, -h.z);
+            quad(2, -h.x, -h.y, h.z, h.x, -h.y, h.z, h.x, h.y, h.z, -h.x, h.y, h.z);
+            quad(2, -h.x, -h.y, -h.z, h.x, -h.y, -h.z, h.x, -h.y, h.z, -h.x, -h.y, h.z);
+            quad(2, -h.x, h.y, -h.z, -h.x, h.y, h.z, h.x, h.y, h.z, h.x, h.y, -h.z);
+            quad(2, -h.x, -h.y, -h.z, -h.x, -h.y, h.z, -h.x, h.y, h.z, -h.x, h.y, -h.z);
+            quad(2, h.x, -h.y, -h.z, h.x, h.y, -h.z, h.x, h.y, h.z, h.x, -h.y, h.z);
+        }
+        else if (shape instanceof SphereShape) {
+
+            float radius = ((SphereShape)shape).getRadius() * AREA_SCALE;
+            int rings = SEGMENTS / 2;
+
+            trans.set(transform);
+
+            for (int j = 0; j < rings; j++) {
+
+                double p0 = Math.PI * j / rings - (Math.PI / 2);
+                double p1 = Math.PI * (j + 1) / rings - (Math.PI / 2);
+
+                float z0 = radius * (float)Math.sin(p0);
+                float z1 = radius * (float)Math.sin(p1);
+                float r0 = radius * (float)Math.cos(p0);
+                float r1 = radius * (float)Math.cos(p1);
+
+                for (int i = 0; i < SEGMENTS; i++) {
+
+                    double a0 = 2 * Math.PI * i / SEGMENTS;
+                    double a1 = 2 * Math.PI * (i + 1) / SEGMENTS;
+
+                    float c0 = (float)Math.cos(a0);
+                    float s0 = (float)Math.sin(a0);
+                    float c1 = (float)Math.cos(a1);
+                    float s1 = (float)Math.sin(a1);
+
+                    quad(2, r0 * c0, r0 * s0, z0, r0 * c1, r0 * s1, z0, r1 * c1, r1 * s1, z1, r1 * c0, r1 * s0, z1);
+                }
+            }
+        }
+        else if (shape instanceof ConeShape) {
+
+            ConeShape cone = (ConeShape)shape;
+            int up = cone.getConeUpIndex();
+            float radius = cone.getRadius() * AREA_SCALE;
+            float halfHeight = cone.getHeight() / 2;
+
+            trans.set(transform);
+
+            for (int i = 0; i < SEGMENTS; i++) {
+
+                double a0 = 2 * Math.PI * i / SEGMENTS;
+                double a1 = 2 * Math.PI * (i + 1) / SEGMENTS;
+
+                float x0 = radius * (float)Math.cos(a0);
+                float y0 = radius * (float)Math.sin(a0);
+                float x1 = radius * (float)Math.cos(a1);
+                float y1 = radius * (float)Math.sin(a1);
+
+                triangle(up, 0, 0, halfHeight, x0, y0, -halfHeight, x1, y1, -halfHeight);
+                triangle(up, 0, 0, -halfHeight, x1, y1, -halfHeight, x0, y0, -halfHeight);
+            }
+        }
+        else {
+            throw new RuntimeException("Cannot bake a static body with shape: " + shape.getName());
+        }
+    }
+
+
+    private void quad(int up, float ax, float ay, float az, float bx, float by, float bz,
+                      float cx, float cy, float cz, float dx, float dy, float dz) {
+
+        triangle(up, ax, ay, az, bx, by, bz, cx, cy, cz);
+        triangle(up, ax, ay, az, cx, cy, cz, dx, dy, dz);
+    }
+
+
+    /**
+     * Adds a triangle whose vertices are given in a frame where the shape's
+     * up axis is z. The vertices are rotated onto the up axis and then moved
+     * into the world frame with the current transform.
+     */
+    private void triangle(int up, float ax, float ay, float az, float bx, float by, float bz,
+                          float cx, float cy, float cz) {
+
+        vertex(tri[0], up, ax, ay, az);
+        vertex(tri[1], up, bx, by, bz);
+        vertex(tri[2], up, cx, cy, cz);
+
+        if (vertices.length < ((numTriangles + 1) * 9)) {
+
+            float[] grown = new float[vertices.length * 2];
+
+            System.arraycopy(vertices, 0, grown, 0, vertices.length);
+            vertices = grown;
+        }
+
+        int base = numTriangles * 9;
+
+        for (int i = 0; i < 3; i++) {
+
+            trans.transform(tri[i]);
+
+            vertices[base + (i * 3)] = tri[i].x;
+            vertices[base + (i * 3) + 1] = tri[i].y;
+            vertices[base + (i * 3) + 2] = tri[i].z;
+        }
+
+        numTriangles++;
+    }
+
+
+    private static void vertex(Vector3f out, int up, float a, float b, float h) {
+
+        switch(up) {
+
+            case 0:
+                out.set(h, a, b);
+                break;
+
+            case 1:
+                out.set(b, h, a);
+                break;
+
+            default:
+                out.set(a, b, h);
+        }
+    }
+
+
+    private static float get(Vector3f vec, int axis) {
+
+        switch(axis) {
+
+            case 0:
+                return vec.x;
+
+            case 1:
+                return vec.y;
+
+            default:
+                return vec.z;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import harvard.robobees.simbeeotic.model.EntityInfo;
+
+import java.util.Arrays;
+import java.util.Map;
+
+
+/**
+ * The details of a body that holds the merged geometry of many static primitives.
+ * Each primitive owns a contiguous range of triangle indices in the merged mesh,
+ * so the primitive that was touched can be found from the index of the triangle.
+ *
+ * @author bkate
+ */
+class StaticMeshInfo extends EntityInfo {
+
+    private int[] partStarts;      // first triangle of each part, ascending
+    private EntityInfo[] parts;
+
+
+    public StaticMeshInfo(int objectId, Map<String, Object> meta, int[] partStarts, EntityInfo[] parts) {
+
+        super(objectId, meta);
+
+        this.partStarts = partStarts;
+        this.parts = parts;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityInfo getPart(int triangleIndex) {
+
+        if ((triangleIndex < 0) || (parts.length == 0)) {
+            return this;
+        }
+
+        int pos = Arrays.binarySearch(partStarts, triangleIndex);
+
+        // primitives that produce no triangles share a start with the next
+        // primitive, so find the last part that starts at or before the index
+        if (pos >= 0) {
+
+            while ((pos + 1 < partStarts.length) && (partStarts[pos + 1] == triangleIndex)) {
+                pos++;
+            }
+        }
+        else {
+            pos = -pos - 2;
+        }
+
+        if (pos < 0) {
+            return this;
+        }
+
+        return parts[pos];
+    }
+
+
+    /**
+     * Gets the index of the first triangle of each primitive.
+     *
+     * @return The (shared) array of part starts, in ascending order.
+     */
+    public int[] getPartStarts() {
+        return partStarts;
+    }
+
+
+    /**
+     * Gets the number of primitives that were merged.
+     *
+     * @return The number of merged primitives.
+     */
+    public int getNumParts() {
+        return parts.length;
+    }
+}
@@ -32,16 +32,12 @@
 package harvard.robobees.simbeeotic.environment;
 
 
-import com.bulletphysics.collision.shapes.BoxShape;
 import com.bulletphysics.collision.shapes.CollisionShape;
-import com.bulletphysics.collision.shapes.ConeShapeZ;
-import com.bulletphysics.collision.shapes.CylinderShapeZ;
-import com.bulletphysics.collision.shapes.SphereShape;
-import com.bulletphysics.collision.shapes.StaticPlaneShape;
 import com.bulletphysics.collision.shapes.CompoundShape;
 import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
 import com.bulletphysics.dynamics.RigidBody;
 import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
+import com.bulletphysics.linearmath.DefaultMotionState;
 import com.bulletphysics.linearmath.MatrixUtil;
 import com.bulletphysics.linearmath.Transform;
 import com.bulletphysics.linearmath.MotionState;
@@ -61,12 +57,15 @@ import harvard.robobees.simbeeotic.configuration.world.Person;
 import harvard.robobees.simbeeotic.configuration.world.Sphere;
 import harvard.robobees.simbeeotic.configuration.world.Structure;
 import harvard.robobees.simbeeotic.configuration.world.Surface;
+import harvard.robobees.simbeeotic.configuration.world.Terrain;
+import harvard.robobees.simbeeotic.configuration.world.Texture;
 import harvard.robobees.simbeeotic.configuration.world.Wall;
 import harvard.robobees.simbeeotic.configuration.world.World;
 import harvard.robobees.simbeeotic.model.EntityInfo;
 import harvard.robobees.simbeeotic.model.MotionRecorder;
 import harvard.robobees.simbeeotic.model.RecordedMotionState;
 import harvard.robobees.simbeeotic.util.ImageLoader;
+import org.apache.log4j.Logger;
 
 import static harvard.robobees.simbeeotic.model.PhysicalEntity.COLLISION_BEE;
 import static harvard.robobees.simbeeotic.model.PhysicalEntity.COLLISION_FLOWER;
@@ -74,14 +73,21 @@ import static harvard.robobees.simbeeotic.model.PhysicalEntity.COLLISION_TERRAIN
 
 import javax.vecmath.Matrix3f;
 import javax.vecmath.Quat4f;
-import javax.vecmath.Vector2f;
 import javax.vecmath.Vector3f;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.awt.*;
 
@@ -94,21 +100,57 @@ import java.awt.*;
  */
 public class WorldMap {
 
+    private static Logger logger = Logger.getLogger(WorldMap.class);
+
     private World world;
     private Random rand;
     private DiscreteDynamicsWorld dynamicsWorld;
     private MotionRecorder recorder;
     private AtomicInteger nextId;
 
+    // instanced flower patches take their ids from a separate (negative) space, so that the
+    // flowers and every object created after them have the same ids as individual flowers would
+    private int nextPatchId = -1;
+
     private WorldObject ground;
     private Set<WorldObject> obstacles = new HashSet<WorldObject>();
     private Set<WorldObject> structures = new HashSet<WorldObject>();
     private Set<WorldObject> flowers = new HashSet<WorldObject>();
     private Set<WorldObject> people = new HashSet<WorldObject>();
     private Map<Integer, Double> approxPatchDensity = new HashMap<Integer, Double>();
+    private List<FlowerPatch> flowerPatches = new ArrayList<FlowerPatch>();
+
+    // spatial indices
+    private StaticGrid obstacleIndex;
+    private StaticGrid structureIndex;
+    private StaticGrid flowerIndex;
+    private StaticGrid peopleIndex;
+
+    private Heightfield heightfield = null;
+    private StaticMeshBuilder staticMesh = null;
+    private DistanceField distanceField = null;
+    private CompiledWorld compiledWorld = null;
+    private WorldTemplate template = null;
+    private Color terrainColor;
+    private Image terrainTexture;
+    private RigidBody staticMeshBody = null;
+    private List<EntityInfo> bakedParts = null;
+
+    // set when the static bodies are recorded (for compiling the world or building a template)
+    private CompiledWorld.Capture capture = null;
+    private boolean captureOnly = false;
+    private Map<Image, String> textureSources = new IdentityHashMap<Image, String>();
 
     // params
     private boolean approximatePatches = false;
+    private boolean instancedPatches = false;
+    private boolean bakeStatic = false;
+    private boolean useDistanceField = false;
+    private boolean useTemplate = false;
+    private float distanceFieldResolution = 0.1f;  // m
+    private float distanceFieldMaxDistance = 2;    // m
+    private int distanceFieldThreads = Runtime.getRuntime().availableProcessors();
+    private String distanceFieldCache = null;
     private float stemHeight = 0.2f;   // m
     private float stemRadius = 0.01f;  // m
     private float floraHeight = 0.02f; // m
@@ -117,373 +159,300 @@ public class WorldMap {
 
     public void initialize() {
 
-        // setup the inifinite ground plane
-        CollisionShape groundShape = new StaticPlaneShape(new Vector3f(0, 0, 1), 0);
-        Transform groundTransform = new Transform();
+        if (template != null) {
+            instantiateTemplate();
+        }
+        else {
 
-        groundTransform.setIdentity();
-        groundTransform.origin.set(new Vector3f(0, 0, 0));
+            // record the static bodies as they are created so that later variations can share them
+            if (useTemplate && (capture == null)) {
+                capture = new CompiledWorld.Capture();
+            }
 
-        int groundId = nextId.getAndIncrement();
+            addStaticBodies();
+        }
 
-        recorder.updateShape(groundId, groundShape);
-        recorder.updateMetadata(groundId, new Color(20, 70, 30), ImageLoader.loadImageFromClasspath("/textures/grass_1.jpg"), null);
+        // only the static bodies are compiled, flowers are placed in each variation
+        if (captureOnly) {
+            return;
+        }
 
-        // the plane is a static object, so it does not need mass properties
-        MotionState myMotionState = new RecordedMotionState(groundId, recorder, groundTransform);
-        RigidBodyConstructionInfo rbInfo = new RigidBodyConstructionInfo(0, myMotionState,
-                                                                         groundShape, new Vector3f(0, 0, 0));
+        // setup flower patches
+        if (world.getFlowers() != null) {
 
-        Map<String, Object> groundMeta = new HashMap<String, Object>();
+            for (Patch patch : world.getFlowers().getPatch()) {
 
-        RigidBody groundBody = new RigidBody(rbInfo);
-        groundBody.setUserPointer(new EntityInfo(groundId, groundMeta));
+                float radius = patch.getRadius();
+                float diam = radius * 2;
 
-        ground = new WorldObject(groundId, WorldObject.Type.TERRAIN, groundBody, groundMeta);
-        dynamicsWorld.addRigidBody(groundBody, COLLISION_TERRAIN, COLLISION_BEE);
+                Color color = new Color(255, 102, 151);
 
-        // todo: setup uneven terrain
+                if (patch.getColor() != null) {
 
-        // setup obstacles
-        if (world.getObstacles() != null) {
-            
-            for (Obstacle obstacle : world.getObstacles().getObstacle()) {
+                    color = new Color(patch.getColor().getRed(),
+                                      patch.getColor().getGreen(),
+                                      patch.getColor().getBlue(),
+                                      patch.getColor().getAlpha());
+                }
 
-                CollisionShape colShape = null;
-                Transform startTransform = null;
-                Map<String, Object> meta = loadProperties(obstacle.getMeta());
+                if (!approximatePatches && instancedPatches) {
 
-                int id = nextId.getAndIncrement();
-                EntityInfo info = new EntityInfo(id, meta);
+                    int numFlowers = (int)(Math.PI * (radius * radius) * patch.getDensity());
+                    int patchId = nextPatchId--;
+                    int[] flowerIds = new int[numFlowers];
+                    float[] positions = new float[numFlowers * 3];
 
-                if (obstacle.getBox() != null) {
+                    // place the flowers exactly as they would be placed individually
+                    for (int i = 0; i < numFlowers; i++) {
 
-                    Box box = obstacle.getBox();
-                    colShape = new BoxShape(new Vector3f(box.getLength() / 2,
-                                                         box.getWidth() / 2,
-                                                         box.getHeight() / 2));
+                        positions[i * 3] = (rand.nextFloat() * diam) - radius;
+                        positions[i * 3 + 1] = (rand.nextFloat() * diam) - radius;
+                        positions[i * 3 + 2] = getTerrainHeight(patch.getCenter().getX() + positions[i * 3],
+                                                                patch.getCenter().getY() + positions[i * 3 + 1]);
 
-                    Matrix3f rot = new Matrix3f();
-                    Quat4f quat = new Quat4f();
+                        flowerIds[i] = nextId.getAndIncrement();
+                    }
 
-                    MatrixUtil.setEulerZYX(rot, 0, 0, box.getRotation());
-                    MatrixUtil.getRotation(rot, quat);
+                    FlowerPatchShape shape = new FlowerPatchShape(positions, stemRadius, stemHeight,
+                                                                  floraRadius, floraHeight);
 
-                    startTransform = new Transform();
-                    startTransform.setIdentity();
-                    startTransform.setRotation(quat);
+                    Transform trans = new Transform();
 
-                    // todo: get z loc once terrain is added
-                    startTransform.origin.set(new Vector3f(box.getPosition().getX(),
-                                                           box.getPosition().getY(),
-                                                           box.getHeight() / 2));
-                }
-                else if (obstacle.getCylinder() != null) {
+                    trans.setIdentity();
+                    trans.origin.set(new Vector3f(patch.getCenter().getX(), patch.getCenter().getY(), 0));
 
-                    Cylinder cylinder = obstacle.getCylinder();
-                    colShape = new CylinderShapeZ(new Vector3f(cylinder.getWidth() / 2,
-                                                               cylinder.getWidth() / 2,
-                                                               cylinder.getHeight() / 2));
+                    Map<String, Object> patchMeta = loadProperties(patch.getMeta());
+                    RigidBody body = addBody(WorldObject.Type.FLOWER, trans, shape, color, null, null,
+                                             new EntityInfo(patchId, patchMeta), null);
+
+                    InstancedFlower[] instances = new InstancedFlower[numFlowers];
 
-                    startTransform = new Transform();
-                    startTransform.setIdentity();
+                    for (int i = 0; i < numFlowers; i++) {
+
+                        instances[i] = new InstancedFlower(flowerIds[i], body, shape, i, patchMeta);
+                        flowers.add(instances[i]);
+                    }
 
-                    // todo: get z loc once terrain is added
-                    startTransform.origin.set(new Vector3f(cylinder.getPosition().getX(),
-                                                           cylinder.getPosition().getY(),
-                                                           cylinder.getHeight() / 2));
+                    flowerPatches.add(new FlowerPatch(body, shape, instances));
                 }
-                else if (obstacle.getSphere() != null) {
+                else if (!approximatePatches) {
 
-                    Sphere sphere = obstacle.getSphere();
-                    colShape = new SphereShape(sphere.getRadius());
+                    int numFlowers = (int)(Math.PI * (radius * radius) * patch.getDensity());
 
-                    startTransform = new Transform();
-                    startTransform.setIdentity();
+                    // every flower has the same geometry, so they can all share a shape
+                    CollisionShape shape = ShapeRegistry.getShape("flower",
+                                                                  new float[] {stemRadius, stemHeight, floraRadius, floraHeight},
+                                                                  new ShapeRegistry.ShapeFactory() {
 
-                    // todo: get z loc once terrain is added
-                    startTransform.origin.set(new Vector3f(sphere.getPosition().getX(),
-                                                           sphere.getPosition().getY(),
-                                                           sphere.getRadius()));
-                }
-                else {
+                        public CollisionShape createShape() {
 
-                    Cone cone = obstacle.getCone();
-                    colShape = new ConeShapeZ(cone.getRadius(), cone.getHeight());
+                            CollisionShape stemShape = ShapeRegistry.getCylinderZ(new Vector3f(stemRadius, stemRadius, stemHeight / 2));
+                            CollisionShape platShape = ShapeRegistry.getCylinderZ(new Vector3f(floraRadius, floraRadius, floraHeight / 2));
 
-                    startTransform = new Transform();
-                    startTransform.setIdentity();
+                            // make stem
+                            Transform stemTransform = new Transform();
+                            stemTransform.setIdentity();
 
-                    // todo: get z loc once terrain is added
-                    startTransform.origin.set(new Vector3f(cone.getPosition().getX(),
-                                                           cone.getPosition().getY(),
-                                                           cone.getHeight() / 2));
-                }
+                            stemTransform.origin.set(new Vector3f(0, 0, stemHeight / 2));
 
-                Color color = new Color(140, 140, 140);
-                Image texture = null;
+                            // make platform
+                            Transform platTransform = new Transform();
+                            platTransform.setIdentity();
 
-                if (obstacle.getColor() != null) {
-                    
-                    color = new Color(obstacle.getColor().getRed(),
-                                      obstacle.getColor().getGreen(),
-                                      obstacle.getColor().getBlue(),
-                                      obstacle.getColor().getAlpha());
-                }
+                            platTransform.origin.set(new Vector3f(0, 0, stemHeight));
 
-                if (obstacle.getTexture() != null) {
+                            // put the flower together
+                            CompoundShape flower = new CompoundShape();
 
-                    if (obstacle.getTexture().getClasspath() != null) {
-                        texture = ImageLoader.loadImageFromClasspath(obstacle.getTexture().getClasspath().getPath());
-                    }
-                    else {
-                        texture = ImageLoader.loadImageFromFilesystem(obstacle.getTexture().getFilesystem().getPath());
+                            flower.addChildShape(stemTransform, stemShape);
+                            flower.addChildShape(platTransform, platShape);
+
+                            return flower;
+                        }
+                    });
+
+                    // make individual flowers and place them in the patch randomly
+                    for (int i = 0; i < numFlowers; i++) {
+
+                        float x = patch.getCenter().getX() + (rand.nextFloat() * diam) - radius;
+                        float y = patch.getCenter().getY() + (rand.nextFloat() * diam) - radius;
+                        float z = getTerrainHeight(x, y);
+
+                        EntityInfo flowerInfo = new EntityInfo(nextId.getAndIncrement(), loadProperties(patch.getMeta()));
+
+                        Transform trans = new Transform();
+
+                        trans.setIdentity();
+                        trans.origin.set(new Vector3f(x, y, z));
+
+                        addBody(WorldObject.Type.FLOWER, trans, shape, color, null, null, flowerInfo, flowers);
                     }
                 }
+                else {
+
+                    EntityInfo patchInfo = new EntityInfo(nextId.getAndIncrement(), loadProperties(patch.getMeta()));
+                    Transform trans = new Transform();
+                    float halfHeight = 0.01f;
 
-                addBody(WorldObject.Type.OBSTACLE, startTransform, colShape, color, texture, obstacle.getLabel(), info, obstacles);
+                    trans.setIdentity();
+                    trans.origin.set(new Vector3f(patch.getCenter().getX(),
+                                                  patch.getCenter().getY(),
+                                                  getTerrainHeight(patch.getCenter().getX(),
+                                                                   patch.getCenter().getY()) + halfHeight));
+
+                    CollisionShape shape = ShapeRegistry.getCylinderZ(new Vector3f(patch.getRadius(), patch.getRadius(), halfHeight));
+
+                    color = new Color(color.getRed(), color.getGreen(), color.getBlue(), 128);
+
+                    approxPatchDensity.put(patchInfo.getObjectId(), (double)patch.getDensity());
+                    addBody(WorldObject.Type.FLOWER, trans, shape, color, null, null, patchInfo, flowers);
+                }
             }
         }
-        
-        // setup structures
-        if (world.getStructures() != null) {
 
-            for (Structure structure : world.getStructures().getStructure()) {
+        // merge the obstacles and structures into a single body
+        if (staticMesh != null) {
 
-                Transform startTransform = null;
+            if (staticMesh.getNumTriangles() > 0) {
 
-                Map<String, Object> meta = loadProperties(structure.getMeta());
+                StaticMeshInfo info = staticMesh.buildInfo(nextId.getAndIncrement(), new HashMap<String, Object>());
 
-                int id = nextId.getAndIncrement();
-                EntityInfo info = new EntityInfo(id, meta);
+                addStaticMesh(staticMesh.buildShape(), info);
 
-                String label = null;
-                Color color = new Color(77, 77, 77);
-                Image texture = null;
+                logger.info("Baked " + info.getNumParts() + " static bodies into a mesh of " +
+                            staticMesh.getNumTriangles() + " triangles.");
+            }
 
-                if (structure.getColor() != null) {
-                    
-                    color = new Color(structure.getColor().getRed(),
-                                      structure.getColor().getGreen(),
-                                      structure.getColor().getBlue(),
-                                      structure.getColor().getAlpha());
-                }
+            staticMesh = null;
+        }
+        else if (bakedParts != null) {
 
-                if (structure.getTexture() != null) {
+            addStaticMesh(template.getMeshShape(),
+                          new StaticMeshInfo(nextId.getAndIncrement(), new HashMap<String, Object>(),
+                                             template.getMeshPartStarts(),
+                                             bakedParts.toArray(new EntityInfo[bakedParts.size()])));
 
-                    if (structure.getTexture().getClasspath() != null) {
-                        texture = ImageLoader.loadImageFromClasspath(structure.getTexture().getClasspath().getPath());
-                    }
-                    else {
-                        texture = ImageLoader.loadImageFromFilesystem(structure.getTexture().getFilesystem().getPath());
-                    }
-                }
+            bakedParts = null;
+        }
 
-                // walls
-                if (structure.getWall() != null)
-                {
-	                Wall wall = structure.getWall();
+        if (useDistanceField) {
 
-	            	startTransform = new Transform();
-	            	startTransform.setIdentity();
+            if (template != null) {
+                distanceField = template.getDistanceField();
+            }
+            else {
+                buildDistanceField();
+            }
+        }
 
-	            	// extract properties of the wall from the xml
-	            	// these are the coordinates of the 'lower-left corner' of the compound shape
-	            	Vector3f position = new Vector3f(wall.getPosition().getX(),
-	            									 wall.getPosition().getY(),
-	            									 wall.getPosition().getZ());
+        // everything is static, so index it once for proximity queries
+        if (template != null) {
 
-	            	Vector3f dimensions = new Vector3f(wall.getLength(),
-	            									   wall.getWidth(),
-	            									   wall.getHeight());
+            obstacleIndex = new StaticGrid(template.getObstacleIndex(), mapById(obstacles));
+            structureIndex = new StaticGrid(template.getStructureIndex(), mapById(structures));
+            peopleIndex = new StaticGrid(template.getPeopleIndex(), mapById(people));
+        }
+        else {
 
-	            	float rotation = wall.getRotation();
+            obstacleIndex = new StaticGrid(obstacles);
+            structureIndex = new StaticGrid(structures);
+            peopleIndex = new StaticGrid(people);
+        }
 
-	            	float doorWidth = wall.getDoorwidth();
-	            	float doorHeight = wall.getDoorheight();
-	            	float doorX = wall.getDoorposition();
+        if (!approximatePatches && !instancedPatches) {
+            flowerIndex = new StaticGrid(flowers);
+        }
+
+        if (useTemplate && (template == null)) {
+            template = buildTemplate();
+        }
+    }
 
-	            	// divide by 2 to preserve dimensions specified in xml
-	            	Vector3f extents = new Vector3f(dimensions.x/2,
-	            									dimensions.y/2,
-	            									dimensions.z/2);
 
-	            	// rotate about z axis by angle 'rotation' (radians)
-	            	Matrix3f rot = new Matrix3f();
-	            	Quat4f quat = new Quat4f();
-	                MatrixUtil.setEulerZYX(rot, 0, 0, rotation);
-	                MatrixUtil.getRotation(rot, quat);
+    /**
+     * Creates the static bodies of this variation from a template that was built by an earlier
+     * variation. The shapes, transforms, textures, terrain and indices are all shared.
+     */
+    private void instantiateTemplate() {
 
-	                Vector3f center = new Vector3f(position.x + extents.x,
-	                							   position.y + extents.y,
-	                							   position.z + extents.z);
+        heightfield = template.getHeightfield();
 
-	                Vector3f relPos = new Vector3f(-extents.x, -extents.y, 0);
-	                adjustCenterPostRot(center, relPos, rotation);
+        addGround(template.getGroundShape(), template.getGroundColor(), template.getGroundTexture(),
+                  new HashMap<String, Object>(template.getGroundMeta()));
 
-	                startTransform = new Transform();
-	                startTransform.setIdentity();
+        if (template.getMeshShape() != null) {
+            bakedParts = new ArrayList<EntityInfo>();
+        }
 
-	            	// wall without door
-	            	if(!wall.isDoor()) {
+        for (int i = 0; i < template.getNumBodies(); i++) {
 
-	                	CollisionShape colShape = new BoxShape(extents);
+            CompiledWorld.Body body = template.getBody(i);
+            EntityInfo info = new EntityInfo(nextId.getAndIncrement(), new HashMap<String, Object>(body.meta));
 
-	                	// add half of given height to ensure that wall actually rests upon the specified z
-	                	startTransform.origin.set(center);
-		                startTransform.setRotation(quat);
+            addBody(body.type, body.transform, body.shape, body.color, template.getTexture(i), body.label,
+                    info, getObjectSet(body.type));
+        }
+    }
 
-                        addBody(WorldObject.Type.STRUCTURE, startTransform, colShape, color, texture, label, info, structures);
-	            	}
 
-	            	// wall with door
-	            	else {
-	            		// relative distances from center of compound shape to centers of each child shape
-	            		float relDistLeft = -extents.x + doorX/2;
-	            		float relDistRight = extents.x - (dimensions.x  - (doorX + doorWidth + dimensions.x)/2);
-	            		float relDistTop = -extents.x + doorX + doorWidth/2;
+    /**
+     * Creates the obstacles, structures and people from the world description (or the compiled world).
+     */
+    private void addStaticBodies() {
 
-	            		CompoundShape compoundShape = new CompoundShape();
+        CollisionShape groundShape;
+        Color groundColor = new Color(20, 70, 30);
+        Image groundTexture = ImageLoader.loadImageFromClasspath("/textures/grass_1.jpg");
+        Map<String, Object> groundMeta = new HashMap<String, Object>();
 
-	            		// collision shape for the boxes on the left side
-	            		// |xxxx|DOOR|----| form the x part!
-	            		CollisionShape colShape = new BoxShape(new Vector3f(doorX/2, extents.y, extents.z));
+        if (world.getTerrain() != null) {
 
-	            		// relative transform for left piece
-	            		startTransform.origin.set(new Vector3f(relDistLeft, 0, 0));
-	            		compoundShape.addChildShape(startTransform, colShape);
+            // setup uneven terrain
+            Terrain terrain = world.getTerrain();
 
-	            		// collision shape for the box on the right side
-	            		colShape = new BoxShape(new Vector3f((dimensions.x - doorX - doorWidth)/2, extents.y, extents.z));
+            heightfield = loadHeightfield(terrain);
+            groundShape = new HeightfieldShape(heightfield);
+            groundMeta = loadProperties(terrain.getMeta());
 
-	            		// relative transform for right piece
-	            		startTransform.origin.set(new Vector3f(relDistRight, 0, 0));
-	            		compoundShape.addChildShape(startTransform, colShape);
+            if (terrain.getColor() != null) {
 
-	            		// collision shape for box above door
-	            		colShape = new BoxShape(new Vector3f(doorWidth/2, extents.y, extents.z - doorHeight/2));
-	            		startTransform.origin.set(new Vector3f(relDistTop, 0, doorHeight/2));
+                groundColor = new Color(terrain.getColor().getRed(),
+                                        terrain.getColor().getGreen(),
+                                        terrain.getColor().getBlue(),
+                                        terrain.getColor().getAlpha());
+            }
 
-	            		compoundShape.addChildShape(startTransform, colShape);
+            if (terrain.getTexture() != null) {
+                groundTexture = loadTexture(terrain.getTexture());
+            }
+        }
+        else {
 
-	            		// I think I have to do this since I added child shapes...
-	            		compoundShape.recalculateLocalAabb();
+            // setup the inifinite ground plane
+            groundShape = ShapeRegistry.getStaticPlane(new Vector3f(0, 0, 1), 0);
+        }
 
-	            		// reset the transform for the full compound shape
-	            		startTransform.setRotation(quat);
-	            		startTransform.origin.set(center);
+        addGround(groundShape, groundColor, groundTexture, groundMeta);
 
-	            		// add the compound shape into the world!
-                        addBody(WorldObject.Type.STRUCTURE, startTransform, compoundShape, color, texture, label, info, structures);
-	            	}
-                }
+        if (bakeStatic) {
+            staticMesh = new StaticMeshBuilder();
+        }
 
-                // surfaces
-                else if (structure.getSurface() != null)
-                {
-	                Surface surface = structure.getSurface();
-
-	            	startTransform = new Transform();
-	            	startTransform.setIdentity();
-
-	            	// extract properties of the wall from the xml
-	            	Vector3f position = new Vector3f(surface.getPosition().getX(),
-	            			     					 surface.getPosition().getY(),
-	            									 surface.getPosition().getZ());
-
-	            	Vector3f dimensions = new Vector3f(surface.getLength(),
-	            									   surface.getWidth(),
-	            									   surface.getHeight());
-
-	            	float rotation = surface.getRotation();
-
-	            	// divide by 2 to preserve dimensions specified in xml
-	            	Vector3f extents = new Vector3f(dimensions.x/2, dimensions.y/2, dimensions.z/2);
-
-	            	// rotate about z axis by angle 'rotation' (radians)
-	            	Matrix3f rot = new Matrix3f();
-	            	Quat4f quat = new Quat4f();
-	                MatrixUtil.setEulerZYX(rot, 0, 0, rotation);
-	                MatrixUtil.getRotation(rot, quat);
-
-	                startTransform = new Transform();
-	                startTransform.setIdentity();
-	                startTransform.setRotation(quat);
-
-	                // set up center to correct for rotation (in order to position corner at specified position)
-	                Vector3f center = new Vector3f(position.x + extents.x,
-	                		    				   position.y + extents.y,
-	                							   position.z + extents.z);
-	                Vector3f relPos = new Vector3f(-extents.x, -extents.y, 0);
-
-	                if(rotation != 0)
-	                {
-	                	adjustCenterPostRot(center, relPos, rotation);
-	                }
-
-	                // surface without 'trap'
-	                if(!surface.isTrap())
-	                {
-	                	CollisionShape colShape = new BoxShape(extents);
-		                startTransform.origin.set(center);
-
-                        addBody(WorldObject.Type.STRUCTURE, startTransform, colShape, color, texture, label, info, structures);
-	                }
-
-	                // surface with 'trap'
-	                else // IT'S A TRAP!
-	                {
-	                	float trapX = surface.getTrapX();
-	                	float trapY = surface.getTrapY();
-	                	float trapLength = surface.getTrapLength();
-	                	float trapWidth = surface.getTrapWidth();
-
-	                	float relDistLeft = -extents.x + trapX/2;
-	                	float relDistRight = extents.x - (dimensions.x - (trapX + trapLength + dimensions.x)/2);
-	                	float relDistTopY = extents.y - (dimensions.y - (trapY + trapWidth + dimensions.y)/2);
-	                	float relDistBottomY = -extents.y + trapY/2;
-	                	float relDistTopX = -extents.x + trapX + trapWidth/2;
-	                	float relDistBottomX = relDistTopX;
-
-	                	CompoundShape compoundShape = new CompoundShape();
-
-	                	// left shape
-	                	CollisionShape colShape = new BoxShape(new Vector3f(trapX/2, extents.y, extents.z));
-
-	                	startTransform.origin.set(new Vector3f(relDistLeft, 0, 0));
-	                	compoundShape.addChildShape(startTransform, colShape);
-
-	                	// right shape
-	                	colShape = new BoxShape(new Vector3f((dimensions.x - trapX - trapLength)/2,
-	                										 extents.y,
-	                										 extents.z));
-	                	
-	                	startTransform.origin.set(new Vector3f(relDistRight, 0, 0));
-	                	compoundShape.addChildShape(startTransform, colShape);
-
-	                	// top shape
-	                	colShape = new BoxShape(new Vector3f(trapLength/2,
-	                										(dimensions.y - trapY - trapWidth)/2, 0));
-
-	                	startTransform.origin.set(new Vector3f(relDistTopX, relDistTopY, extents.z));
-	                	compoundShape.addChildShape(startTransform, colShape);
-
-	                	// bottom shape
-	                	colShape = new BoxShape(new Vector3f(trapLength/2, trapY/2, 0));
-
-	                	startTransform.origin.set(new Vector3f(relDistBottomX, relDistBottomY, extents.z));
-	                	compoundShape.addChildShape(startTransform, colShape);
-
-	            		compoundShape.recalculateLocalAabb();
-
-	            		// setup the transform for the full compound shape
-	            		// correct for rotation to place the surface such that the lower left corner is in position
-	            		startTransform.origin.set(center);
-
-	            		// add the compound shape into the world!
-	            		addBody(WorldObject.Type.STRUCTURE, startTransform, compoundShape, color, texture, label, info, structures);
-	                }
-                }
+        // setup obstacles
+        if (world.getObstacles() != null) {
+            
+            for (Obstacle obstacle : world.getObstacles().getObstacle()) {
+
+                addObstacle(obstacle);
+            }
+        }
+        
+        // setup structures
+        if (world.getStructures() != null) {
+
+            for (Structure structure : world.getStructures().getStructure()) {
+
+                addStructure(structure);
             }
         }
         
@@ -491,189 +460,463 @@ public class WorldMap {
         if (world.getPeople() != null) {
         	
         	for (Person person: world.getPeople().getPerson()) {
-        		
-        		if (person.getMan() != null) {
-        			
-        			Transform startTransform = null;
+                addPerson(person);
+            }
+        }
 
-                    Map<String, Object> meta = loadProperties(person.getMeta());
+        // setup the obstacles, structures and people of a compiled world
+        if (compiledWorld != null) {
 
-                    int id = nextId.getAndIncrement();
-                    EntityInfo info = new EntityInfo(id, meta);
+            for (int i = 0; i < compiledWorld.getNumBodies(); i++) {
 
-                    String label = null;
-                    Color color = new Color(205, 175, 149, 128);
+                CompiledWorld.Body body = compiledWorld.getBody(i);
+                EntityInfo info = new EntityInfo(nextId.getAndIncrement(), body.meta);
+                Image texture = (body.texture != null) ? CompiledWorld.loadTexture(body.texture) : null;
 
-                    if (person.getColor() != null) {
-                    	
-                        color = new Color(person.getColor().getRed(), 
-                        				  person.getColor().getGreen(), 
-                        				  person.getColor().getBlue(),
-                        				  person.getColor().getAlpha());
-                    }
+                addBody(body.type, body.transform, body.shape, body.color, texture, body.label, info, getObjectSet(body.type));
+            }
+        }
+    }
+
+
+    /**
+     * Adds an obstacle that is described in the world.
+     */
+    void addObstacle(Obstacle obstacle) {
+
+        CollisionShape colShape = null;
+        Transform startTransform = null;
+        Map<String, Object> meta = loadProperties(obstacle.getMeta());
+
+        int id = nextId.getAndIncrement();
+        EntityInfo info = new EntityInfo(id, meta);
+
+        if (obstacle.getBox() != null) {
+
+            Box box = obstacle.getBox();
+            colShape = ShapeRegistry.getBox(new Vector3f(box.getLength() / 2,
+                                                         box.getWidth() / 2,
+                                                         box.getHeight() / 2));
+
+            Matrix3f rot = new Matrix3f();
+            Quat4f quat = new Quat4f();
+
+            MatrixUtil.setEulerZYX(rot, 0, 0, box.getRotation());
+            MatrixUtil.getRotation(rot, quat);
 
-        			Man man = person.getMan();
-
-	            	// extract properties of the man from the xml
-	            	Vector3f position = new Vector3f(man.getPosition().getX(),
-	            			     					 man.getPosition().getY(),
-	            									 man.getPosition().getZ());
-
-	            	float width = man.getWidth();
-	            	float height = man.getHeight();
-	            	float xscale = width / 13.0f;
-	            	float thickness = 0.075f * height;
-	            	float zscale = height / 13.0f;
-
-	                startTransform = new Transform();
-	                startTransform.setIdentity();
-
-	                // set up center
-	                Vector3f center = new Vector3f(position.x,
-	                		    				   position.y,
-	                							   position.z + height/2.0f);
-
-	                CompoundShape compoundShape = new CompoundShape();
-
-	                CollisionShape colShape = null;
-	                
-                	// left leg
-                	colShape = new BoxShape(new Vector3f(0.5f * xscale, thickness, 2.5f * zscale));
-
-                	startTransform.origin.set(new Vector3f(-1 * xscale, 0, -4.0f * zscale));
-                	compoundShape.addChildShape(startTransform, colShape);
-
-                	// right leg
-                	colShape = new BoxShape(new Vector3f(0.5f * xscale, thickness, 2.5f * zscale));
-
-                	startTransform.origin.set(new Vector3f(1 * xscale, 0, -4 * zscale));
-                	compoundShape.addChildShape(startTransform, colShape);
-
-                	// torso
-                	colShape = new BoxShape(new Vector3f(1.5f * xscale, thickness, 2.5f * zscale));
-
-                	startTransform.origin.set(new Vector3f(0 * xscale, 0, 1 * zscale));
-                	compoundShape.addChildShape(startTransform, colShape);
-                	
-                	// left arm
-                	colShape = new BoxShape(new Vector3f(2.5f * xscale, thickness, 0.5f * zscale));
-
-                	startTransform.origin.set(new Vector3f(-4 * xscale, 0, 3 * zscale));
-                	compoundShape.addChildShape(startTransform, colShape);
-                	
-                	// right arm
-                	colShape = new BoxShape(new Vector3f(2.5f * xscale, thickness, 0.5f * zscale));
-
-                	startTransform.origin.set(new Vector3f(4 * xscale, 0, 3 * zscale));
-                	compoundShape.addChildShape(startTransform, colShape);
-                	
-                	// neck
-                	colShape = new BoxShape(new Vector3f(0.5f * xscale, thickness, 0.5f * zscale));
-
-                	startTransform.origin.set(new Vector3f(0 * xscale, 0, 4 * zscale));
-                	compoundShape.addChildShape(startTransform, colShape);
-                	
-                	// head
-                	colShape = new BoxShape(new Vector3f(1 * xscale, thickness, 1 * zscale));
-
-                	startTransform.origin.set(new Vector3f(0 * xscale, 0, 5.5f * zscale));
-                	compoundShape.addChildShape(startTransform, colShape);
-                	
-                	
-                	// necessary I think?
-            		compoundShape.recalculateLocalAabb();
-
-            		// setup the transform for the full compound shape
-            		// correct for rotation to place the surface such that the lower left corner is in position
-            		startTransform.origin.set(center);
-
-            		// add the compound shape into the world!
-            		addBody(WorldObject.Type.PERSON, startTransform, compoundShape, color, null, label, info, people);
-        		}
-        	}
+            startTransform = new Transform();
+            startTransform.setIdentity();
+            startTransform.setRotation(quat);
+
+            startTransform.origin.set(new Vector3f(box.getPosition().getX(),
+                                                   box.getPosition().getY(),
+                                                   getTerrainHeight(box.getPosition().getX(),
+                                                                    box.getPosition().getY()) +
+                                                   box.getHeight() / 2));
         }
+        else if (obstacle.getCylinder() != null) {
 
-        // setup flower patches
-        if (world.getFlowers() != null) {
+            Cylinder cylinder = obstacle.getCylinder();
+            colShape = ShapeRegistry.getCylinderZ(new Vector3f(cylinder.getWidth() / 2,
+                                                               cylinder.getWidth() / 2,
+                                                               cylinder.getHeight() / 2));
 
-            for (Patch patch : world.getFlowers().getPatch()) {
+            startTransform = new Transform();
+            startTransform.setIdentity();
 
-                float radius = patch.getRadius();
-                float diam = radius * 2;
+            startTransform.origin.set(new Vector3f(cylinder.getPosition().getX(),
+                                                   cylinder.getPosition().getY(),
+                                                   getTerrainHeight(cylinder.getPosition().getX(),
+                                                                    cylinder.getPosition().getY()) +
+                                                   cylinder.getHeight() / 2));
+        }
+        else if (obstacle.getSphere() != null) {
 
-                Color color = new Color(255, 102, 151);
+            Sphere sphere = obstacle.getSphere();
+            colShape = ShapeRegistry.getSphere(sphere.getRadius());
 
-                if (patch.getColor() != null) {
+            startTransform = new Transform();
+            startTransform.setIdentity();
 
-                    color = new Color(patch.getColor().getRed(),
-                                      patch.getColor().getGreen(),
-                                      patch.getColor().getBlue(),
-                                      patch.getColor().getAlpha());
-                }
+            startTransform.origin.set(new Vector3f(sphere.getPosition().getX(),
+                                                   sphere.getPosition().getY(),
+                                                   getTerrainHeight(sphere.getPosition().getX(),
+                                                                    sphere.getPosition().getY()) +
+                                                   sphere.getRadius()));
+        }
+        else {
 
-                if (!approximatePatches) {
+            Cone cone = obstacle.getCone();
+            colShape = ShapeRegistry.getConeZ(cone.getRadius(), cone.getHeight());
 
-                    int numFlowers = (int)(Math.PI * (radius * radius) * patch.getDensity());
+            startTransform = new Transform();
+            startTransform.setIdentity();
 
-                    CollisionShape stemShape = new CylinderShapeZ(new Vector3f(stemRadius, stemRadius, stemHeight / 2));
-                    CollisionShape platShape = new CylinderShapeZ(new Vector3f(floraRadius, floraRadius, floraHeight / 2));
+            startTransform.origin.set(new Vector3f(cone.getPosition().getX(),
+                                                   cone.getPosition().getY(),
+                                                   getTerrainHeight(cone.getPosition().getX(),
+                                                                    cone.getPosition().getY()) +
+                                                   cone.getHeight() / 2));
+        }
 
-                    // make individual flowers and place them in the patch randomly
-                    for (int i = 0; i < numFlowers; i++) {
+        Color color = new Color(140, 140, 140);
+        Image texture = null;
 
-                        // todo: get the z loc once terrain is added
-                        float x = patch.getCenter().getX() + (rand.nextFloat() * diam) - radius;
-                        float y = patch.getCenter().getY() + (rand.nextFloat() * diam) - radius;
-                        float z = 0;
+        if (obstacle.getColor() != null) {
+            
+            color = new Color(obstacle.getColor().getRed(),
+                              obstacle.getColor().getGreen(),
+                              obstacle.getColor().getBlue(),
+                              obstacle.getColor().getAlpha());
+        }
+
+        if (obstacle.getTexture() != null) {
+            texture = loadTexture(obstacle.getTexture());
+        }
+
+        addBody(WorldObject.Type.OBSTACLE, startTransform, colShape, color, texture, obstacle.getLabel(), info, obstacles);
+    }
 
-                        EntityInfo flowerInfo = new EntityInfo(nextId.getAndIncrement(), loadProperties(patch.getMeta()));
 
-                        // make stem
-                        Transform stemTransform = new Transform();
-                        stemTransform.setIdentity();
+    /**
+     * Adds a structure that is described in the world.
+     */
+    void addStructure(Structure structure) {
 
-                        stemTransform.origin.set(new Vector3f(0, 0, stemHeight / 2));
+        Transform startTransform = null;
 
-                        // make platform
-                        Transform platTransform = new Transform();
-                        platTransform.setIdentity();
+        Map<String, Object> meta = loadProperties(structure.getMeta());
 
-                        platTransform.origin.set(new Vector3f(0, 0, stemHeight));
+        int id = nextId.getAndIncrement();
+        EntityInfo info = new EntityInfo(id, meta);
 
-                        // put the flower together
-                        Transform trans = new Transform();
+        String label = null;
+        Color color = new Color(77, 77, 77);
+        Image texture = null;
 
-                        trans.setIdentity();
-                        trans.origin.set(new Vector3f(x, y, z));
+        if (structure.getColor() != null) {
+            
+            color = new Color(structure.getColor().getRed(),
+                              structure.getColor().getGreen(),
+                              structure.getColor().getBlue(),
+                              structure.getColor().getAlpha());
+        }
 
-                        CompoundShape shape = new CompoundShape();
+        if (structure.getTexture() != null) {
+            texture = loadTexture(structure.getTexture());
+        }
 
-                        shape.addChildShape(stemTransform, stemShape);
-                        shape.addChildShape(platTransform, platShape);
+        // walls
+        if (structure.getWall() != null)
+        {
+	        Wall wall = structure.getWall();
 
-                        addBody(WorldObject.Type.FLOWER, trans, shape, color, null, null, flowerInfo, flowers);
-                    }
-                }
-                else {
+	    	startTransform = new Transform();
+	    	startTransform.setIdentity();
 
-                    EntityInfo patchInfo = new EntityInfo(nextId.getAndIncrement(), loadProperties(patch.getMeta()));
-                    Transform trans = new Transform();
-                    float halfHeight = 0.01f;
+	    	// extract properties of the wall from the xml
+	    	// these are the coordinates of the 'lower-left corner' of the compound shape
+	    	Vector3f position = new Vector3f(wall.getPosition().getX(),
+	    									 wall.getPosition().getY(),
+	    									 wall.getPosition().getZ());
 
-                    trans.setIdentity();
-                    trans.origin.set(new Vector3f(patch.getCenter().getX(),
-                                                  patch.getCenter().getY(),
-                                                  halfHeight));
+	    	Vector3f dimensions = new Vector3f(wall.getLength(),
+	    									   wall.getWidth(),
+	    									   wall.getHeight());
 
-                    CollisionShape shape = new CylinderShapeZ((new Vector3f(patch.getRadius(), patch.getRadius(), halfHeight)));
+	    	float rotation = wall.getRotation();
 
-                    color = new Color(color.getRed(), color.getGreen(), color.getBlue(), 128);
+	    	float doorWidth = wall.getDoorwidth();
+	    	float doorHeight = wall.getDoorheight();
+	    	float doorX = wall.getDoorposition();
 
-                    approxPatchDensity.put(patchInfo.getObjectId(), (double)patch.getDensity());
-                    addBody(WorldObject.Type.FLOWER, trans, shape, color, null, null, patchInfo, flowers);
-                }
-            }
+	    	// divide by 2 to preserve dimensions specified in xml
+	    	Vector3f extents = new Vector3f(dimensions.x/2,
+	    									dimensions.y/2,
+	    									dimensions.z/2);
+
+	    	// rotate about z axis by angle 'rotation' (radians)
+	    	Matrix3f rot = new Matrix3f();
+	    	Quat4f quat = new Quat4f();
+	        MatrixUtil.setEulerZYX(rot, 0, 0, rotation);
+	        MatrixUtil.getRotation(rot, quat);
+
+	        Vector3f center = new Vector3f(position.x + extents.x,
+	        							   position.y + extents.y,
+	        							   position.z + extents.z);
+
+	        Vector3f relPos = new Vector3f(-extents.x, -extents.y, 0);
+	        adjustCenterPostRot(center, relPos, rotation);
+
+	        startTransform = new Transform();
+	        startTransform.setIdentity();
+
+	    	// wall without door
+	    	if(!wall.isDoor()) {
+
+	        	CollisionShape colShape = ShapeRegistry.getBox(extents);
+
+	        	// add half of given height to ensure that wall actually rests upon the specified z
+	        	startTransform.origin.set(center);
+		        startTransform.setRotation(quat);
+
+                addBody(WorldObject.Type.STRUCTURE, startTransform, colShape, color, texture, label, info, structures);
+	    	}
+
+	    	// wall with door
+	    	else {
+	    		// relative distances from center of compound shape to centers of each child shape
+	    		float relDistLeft = -extents.x + doorX/2;
+	    		float relDistRight = extents.x - (dimensions.x  - (doorX + doorWidth + dimensions.x)/2);
+	    		float relDistTop = -extents.x + doorX + doorWidth/2;
+
+	    		CompoundShape compoundShape = new CompoundShape();
+
+	    		// collision shape for the boxes on the left side
+	    		// |xxxx|DOOR|----| form the x part!
+	    		CollisionShape colShape = ShapeRegistry.getBox(new Vector3f(doorX/2, extents.y, extents.z));
+
+	    		// relative transform for left piece
+	    		startTransform.origin.set(new Vector3f(relDistLeft, 0, 0));
+	    		compoundShape.addChildShape(startTransform, colShape);
+
+	    		// collision shape for the box on the right side
+	    		colShape = ShapeRegistry.getBox(new Vector3f((dimensions.x - doorX - doorWidth)/2, extents.y, extents.z));
+
+	    		// relative transform for right piece
+	    		startTransform.origin.set(new Vector3f(relDistRight, 0, 0));
+	    		compoundShape.addChildShape(startTransform, colShape);
+
+	    		// collision shape for box above door
+	    		colShape = ShapeRegistry.getBox(new Vector3f(doorWidth/2, extents.y, extents.z - doorHeight/2));
+	    		startTransform.origin.set(new Vector3f(relDistTop, 0, doorHeight/2));
+
+	    		compoundShape.addChildShape(startTransform, colShape);
+
+	    		// I think I have to do this since I added child shapes...
+	    		compoundShape.recalculateLocalAabb();
+
+	    		// reset the transform for the full compound shape
+	    		startTransform.setRotation(quat);
+	    		startTransform.origin.set(center);
+
+	    		// add the compound shape into the world!
+                addBody(WorldObject.Type.STRUCTURE, startTransform, compoundShape, color, texture, label, info, structures);
+	    	}
         }
+
+        // surfaces
+        else if (structure.getSurface() != null)
+        {
+	        Surface surface = structure.getSurface();
+
+	    	startTransform = new Transform();
+	    	startTransform.setIdentity();
+
+	    	// extract properties of the wall from the xml
+	    	Vector3f position = new Vector3f(surface.getPosition().getX(),
+	    			     					 surface.getPosition().getY(),
+	    									 surface.getPosition().getZ());
+
+	    	Vector3f dimensions = new Vector3f(surface.getLength(),
+	    									   surface.getWidth(),
+	    									   surface.getHeight());
+
+	    	float rotation = surface.getRotation();
+
+	    	// divide by 2 to preserve dimensions specified in xml
+	    	Vector3f extents = new Vector3f(dimensions.x/2, dimensions.y/2, dimensions.z/2);
+
+	    	// rotate about z axis by angle 'rotation' (radians)
+	    	Matrix3f rot = new Matrix3f();
+	    	Quat4f quat = new Quat4f();
+	        MatrixUtil.setEulerZYX(rot, 0, 0, rotation);
+	        MatrixUtil.getRotation(rot, quat);
+
+	        startTransform = new Transform();
+	        startTransform.setIdentity();
+	        startTransform.setRotation(quat);
+
+	        // set up center to correct for rotation (in order to position corner at specified position)
+	        Vector3f center = new Vector3f(position.x + extents.x,
+	        		    				   position.y + extents.y,
+	        							   position.z + extents.z);
+	        Vector3f relPos = new Vector3f(-extents.x, -extents.y, 0);
+
+	        if(rotation != 0)
+	        {
+	        	adjustCenterPostRot(center, relPos, rotation);
+	        }
+
+	        // surface without 'trap'
+	        if(!surface.isTrap())
+	        {
+	        	CollisionShape colShape = ShapeRegistry.getBox(extents);
+		        startTransform.origin.set(center);
+
+                addBody(WorldObject.Type.STRUCTURE, startTransform, colShape, color, texture, label, info, structures);
+	        }
+
+	        // surface with 'trap'
+	        else // IT'S A TRAP!
+	        {
+	        	float trapX = surface.getTrapX();
+	        	float trapY = surface.getTrapY();
+	        	float trapLength = surface.getTrapLength();
+	        	float trapWidth = surface.getTrapWidth();
+
+	        	float relDistLeft = -extents.x + trapX/2;
+	        	float relDistRight = extents.x - (dimensions.x - (trapX + trapLength + dimensions.x)/2);
+	        	float relDistTopY = extents.y - (dimensions.y - (trapY + trapWidth + dimensions.y)/2);
+	        	float relDistBottomY = -extents.y + trapY/2;
+	        	float relDistTopX = -extents.x + trapX + trapWidth/2;
+	        	float relDistBottomX = relDistTopX;
+
+	        	CompoundShape compoundShape = new CompoundShape();
+
+	        	// left shape
+	        	CollisionShape colShape = ShapeRegistry.getBox(new Vector3f(trapX/2, extents.y, extents.z));
+
+	        	startTransform.origin.set(new Vector3f(relDistLeft, 0, 0));
+	        	compoundShape.addChildShape(startTransform, colShape);
+
+	        	// right shape
+	        	colShape = ShapeRegistry.getBox(new Vector3f((dimensions.x - trapX - trapLength)/2,
+	        										 extents.y,
+	        										 extents.z));
+	        	
+	        	startTransform.origin.set(new Vector3f(relDistRight, 0, 0));
+	        	compoundShape.addChildShape(startTransform, colShape);
+
+	        	// top shape
+	        	colShape = ShapeRegistry.getBox(new Vector3f(trapLength/2,
+	        										(dimensions.y - trapY - trapWidth)/2, 0));
+
+	        	startTransform.origin.set(new Vector3f(relDistTopX, relDistTopY, extents.z));
+	        	compoundShape.addChildShape(startTransform, colShape);
+
+	        	// bottom shape
+	        	colShape = ShapeRegistry.getBox(new Vector3f(trapLength/2, trapY/2, 0));
+
+	        	startTransform.origin.set(new Vector3f(relDistBottomX, relDistBottomY, extents.z));
+	        	compoundShape.addChildShape(startTransform, colShape);
+
+	    		compoundShape.recalculateLocalAabb();
+
+	    		// setup the transform for the full compound shape
+	    		// correct for rotation to place the surface such that the lower left corner is in position
+	    		startTransform.origin.set(center);
+
+	    		// add the compound shape into the world!
+	    		addBody(WorldObject.Type.STRUCTURE, startTransform, compoundShape, color, texture, label, info, structures);
+	        }
+        }
+    }
+
+
+    /**
+     * Adds a person that is described in the world.
+     */
+    void addPerson(Person person) {
+		
+		if (person.getMan() != null) {
+			
+			Transform startTransform = null;
+
+            Map<String, Object> meta = loadProperties(person.getMeta());
+
+            int id = nextId.getAndIncrement();
+            EntityInfo info = new EntityInfo(id, meta);
+
+            String label = null;
+            Color color = new Color(205, 175, 149, 128);
+
+            if (person.getColor() != null) {
+            	
+                color = new Color(person.getColor().getRed(), 
+                				  person.getColor().getGreen(), 
+                				  person.getColor().getBlue(),
+                				  person.getColor().getAlpha());
+            }
+
+			Man man = person.getMan();
+
+	    	// extract properties of the man from the xml
+	    	Vector3f position = new Vector3f(man.getPosition().getX(),
+	    			     					 man.getPosition().getY(),
+	    									 man.getPosition().getZ());
+
+	    	float width = man.getWidth();
+	    	float height = man.getHeight();
+	    	float xscale = width / 13.0f;
+	    	float thickness = 0.075f * height;
+	    	float zscale = height / 13.0f;
+
+	        startTransform = new Transform();
+	        startTransform.setIdentity();
+
+	        // set up center
+	        Vector3f center = new Vector3f(position.x,
+	        		    				   position.y,
+	        							   position.z + height/2.0f);
+
+	        CompoundShape compoundShape = new CompoundShape();
+
+	        CollisionShape colShape = null;
+
+        	// left leg
+        	colShape = ShapeRegistry.getBox(new Vector3f(0.5f * xscale, thickness, 2.5f * zscale));
+
+        	startTransform.origin.set(new Vector3f(-1 * xscale, 0, -4.0f * zscale));
+        	compoundShape.addChildShape(startTransform, colShape);
+
+        	// right leg
+        	colShape = ShapeRegistry.getBox(new Vector3f(0.5f * xscale, thickness, 2.5f * zscale));
+
+        	startTransform.origin.set(new Vector3f(1 * xscale, 0, -4 * zscale));
+        	compoundShape.addChildShape(startTransform, colShape);
+
+        	// torso
+        	colShape = ShapeRegistry.getBox(new Vector3f(1.5f * xscale, thickness, 2.5f * zscale));
+
+        	startTransform.origin.set(new Vector3f(0 * xscale, 0, 1 * zscale));
+        	compoundShape.addChildShape(startTransform, colShape);
+        	
+        	// left arm
+        	colShape = ShapeRegistry.getBox(new Vector3f(2.5f * xscale, thickness, 0.5f * zscale));
+
+        	startTransform.origin.set(new Vector3f(-4 * xscale, 0, 3 * zscale));
+        	compoundShape.addChildShape(startTransform, colShape);
+        	
+        	// right arm
+        	colShape = ShapeRegistry.getBox(new Vector3f(2.5f * xscale, thickness, 0.5f * zscale));
+
+        	startTransform.origin.set(new Vector3f(4 * xscale, 0, 3 * zscale));
+        	compoundShape.addChildShape(startTransform, colShape);
+        	
+        	// neck
+        	colShape = ShapeRegistry.getBox(new Vector3f(0.5f * xscale, thickness, 0.5f * zscale));
+
+        	startTransform.origin.set(new Vector3f(0 * xscale, 0, 4 * zscale));
+        	compoundShape.addChildShape(startTransform, colShape);
+        	
+        	// head
+        	colShape = ShapeRegistry.getBox(new Vector3f(1 * xscale, thickness, 1 * zscale));
+
+        	startTransform.origin.set(new Vector3f(0 * xscale, 0, 5.5f * zscale));
+        	compoundShape.addChildShape(startTransform, colShape);
+        	
+        	
+        	// necessary I think?
+    		compoundShape.recalculateLocalAabb();
+
+    		// setup the transform for the full compound shape
+    		// correct for rotation to place the surface such that the lower left corner is in position
+    		startTransform.origin.set(center);
+
+    		// add the compound shape into the world!
+    		addBody(WorldObject.Type.PERSON, startTransform, compoundShape, color, null, label, info, people);
+		}
     }
 
 
@@ -681,6 +924,18 @@ public class WorldMap {
     }
 
 
+    /**
+     * Gets the static portion of the world, which can be shared with the world maps of later
+     * scenario variations (see the {@code world-template} property).
+     *
+     * @return The template that this world was built from (or that was built from this world),
+     *         or {@code null} if templates are disabled.
+     */
+    public WorldTemplate getTemplate() {
+        return template;
+    }
+
+
     /**
      * Gets the radius of a bounding half-sphere that defines the "edge" of the physical world. Physical
      * entities are permitted to exceed these bounds but they may not be subject to collision detection.
@@ -692,6 +947,46 @@ public class WorldMap {
     }
 
 
+    /**
+     * Gets the elevation of the terrain at a point. This is a constant time lookup,
+     * suitable for placing objects on the ground.
+     *
+     * @param x The x coordinate of the point (in meters).
+     * @param y The y coordinate of the point (in meters).
+     *
+     * @return The elevation of the ground at the given point (in meters).
+     */
+    public float getTerrainHeight(float x, float y) {
+
+        if (heightfield == null) {
+            return 0;
+        }
+
+        return heightfield.getHeight(x, y);
+    }
+
+
+    /**
+     * Gets the signed distance field over the static obstacles and structures, which
+     * gives the clearance around a point in constant time.
+     *
+     * @return The distance field, or {@code null} if it is disabled (see the {@code distance-field} property).
+     */
+    public DistanceField getDistanceField() {
+        return distanceField;
+    }
+
+
+    /**
+     * Gets the elevation samples that define uneven terrain.
+     *
+     * @return The terrain heightfield, or {@code null} if the ground is flat.
+     */
+    public Heightfield getHeightfield() {
+        return heightfield;
+    }
+
+
     /**
      * Get the object that defines the terrain (ground) in the world.
      *
@@ -702,227 +997,466 @@ public class WorldMap {
     }
 
 
-    /**
-     * Gets all obstacles present in the world.
-     *
-     * @return The set of all obstacles.
-     */
-    public Set<WorldObject> getObstacles() {
-        return Collections.unmodifiableSet(obstacles);
+    /**
+     * Gets all obstacles present in the world.
+     *
+     * @return The set of all obstacles.
+     */
+    public Set<WorldObject> getObstacles() {
+        return Collections.unmodifiableSet(obstacles);
+    }
+
+
+    /**
+     * Gets the obstacles that are contained within the given sphere. The
+     * obstacle is determined to be in the sphere if its center is in the sphere.
+     *
+     * @param center The center of the query sphere.
+     * @param radius The radius of the query sphere.
+     *
+     * @return The set of all obstacles within the given area.
+     */
+    public Set<WorldObject> getObstacles(Vector3f center, double radius) {
+
+        Set<WorldObject> in = new HashSet<WorldObject>();
+
+        visitObstacles(center, radius, new SetCollector(in));
+
+        return in;
+    }
+
+
+    /**
+     * Visits the obstacles that are contained within the given sphere, without
+     * allocating a collection for the results.
+     *
+     * @param center The center of the query sphere.
+     * @param radius The radius of the query sphere.
+     * @param visitor The visitor that is invoked for each obstacle within the given area.
+     */
+    public void visitObstacles(Vector3f center, double radius, WorldObjectVisitor visitor) {
+        obstacleIndex.visitSphere(center, (float)radius, visitor);
+    }
+
+
+    /**
+     * Gets all structures present in the world.
+     *
+     * @return The set of all structures.
+     */
+    public Set<WorldObject> getStructures() {
+        return Collections.unmodifiableSet(structures);
+    }
+
+
+    /**
+     * Gets the structures that are contained within the given sphere. The
+     * obstacle is determined to be in the sphere if its center is in the sphere.
+     *
+     * @param center The center of the query sphere.
+     * @param radius The radius of the query sphere.
+     *
+     * @return The set of all objects.
+     */
+    public Set<WorldObject> getStructures(Vector3f center, double radius) {
+
+        Set<WorldObject> in = new HashSet<WorldObject>();
+
+        visitStructures(center, radius, new SetCollector(in));
+
+        return in;
+    }
+
+
+    /**
+     * Visits the structures that are contained within the given sphere, without
+     * allocating a collection for the results.
+     *
+     * @param center The center of the query sphere.
+     * @param radius The radius of the query sphere.
+     * @param visitor The visitor that is invoked for each structure within the given area.
+     */
+    public void visitStructures(Vector3f center, double radius, WorldObjectVisitor visitor) {
+        structureIndex.visitSphere(center, (float)radius, visitor);
+    }
+
+
+    /**
+     * Gets all flowers present in the world.
+     *
+     * @return The set of all flowers.
+     */
+    public Set<WorldObject> getFlowers() {
+        return Collections.unmodifiableSet(flowers);
+    }
+
+
+    /**
+     * Gets the flowers that are contained within the given sphere. The
+     * flower is determined to be in the sphere if its center is in the sphere.
+     * For approximate flower patches, the patch and intersecting area are modeled
+     * as circles.
+     *
+     * @param center The center of the query sphere.
+     * @param radius The radius of the query sphere.
+     *
+     * @return The set of all flowers in the given area.
+     */
+    public Set<WorldObject> getFlowers(Vector3f center, double radius) {
+
+        Set<WorldObject> in = new HashSet<WorldObject>();
+
+        visitFlowers(center, radius, new SetCollector(in));
+
+        return in;
+    }
+
+
+    /**
+     * Visits the flowers that are contained within the given sphere, without
+     * allocating a collection for the results. The semantics are the same as
+     * {@link #getFlowers(Vector3f, double)}.
+     *
+     * @param center The center of the query sphere.
+     * @param radius The radius of the query sphere.
+     * @param visitor The visitor that is invoked for each flower in the given area.
+     */
+    public void visitFlowers(Vector3f center, double radius, WorldObjectVisitor visitor) {
+
+        if (approximatePatches) {
+
+            // there are only a handful of patches, and the random draws must be
+            // made in a consistent order, so just check each patch
+            for (WorldObject obj : flowers) {
+
+                if (isApproximateFlowerSeen(obj, center, radius)) {
+                    visitor.visit(obj);
+                }
+            }
+        }
+        else if (instancedPatches) {
+
+            // instanced patches index their own flowers. the query state is local
+            // so that a visitor may make queries of its own
+            Vector3f local = new Vector3f();
+            FlowerQuery query = new FlowerQuery(visitor);
+
+            for (FlowerPatch patch : flowerPatches) {
+
+                patch.toLocal(center, local);
+
+                query.flowers = patch.flowers;
+                patch.shape.findFlowers(local, (float)radius, query);
+            }
+        }
+        else {
+            flowerIndex.visitSphere(center, (float)radius, visitor);
+        }
+    }
+
+
+    /**
+     * Determines if a flower is seen in an approximate patch. We need to approximate detecting
+     * individual flowers using the size of the patch, the amount of overlap, and the density.
+     */
+    private boolean isApproximateFlowerSeen(WorldObject obj, Vector3f center, double radius) {
+
+        Vector3f patchPos = obj.getTruthPosition();
+
+        float dx = center.x - patchPos.x;
+        float dy = center.y - patchPos.y;
+        double distSq = (dx * dx) + (dy * dy);
+        double dist = (float)Math.sqrt(distSq);
+        double patchRadius = obj.getTruthBoundingSphere().getRadius();
+        double patchRadiusSq = patchRadius * patchRadius;
+        double radiusSq = (float)(radius * radius);
+        double intersectedArea = 0;
+
+        if (dist >= (patchRadius + radius)) {
+
+            // the query circle is outside the patch
+            return false;
+        }
+        else if (dist + radius <= patchRadius) {
+
+            // the query is inscribed
+            intersectedArea = Math.PI * radiusSq;
+        }
+        else {
+
+            // the circles partially intersect
+            double theta1 = 2 * Math.acos((radiusSq + distSq - patchRadiusSq) / (2 * radius * dist));
+            double theta2 = 2 * Math.acos((patchRadiusSq + distSq - radiusSq) / (2 * patchRadius * dist));
+
+            intersectedArea = (0.5 * theta1 * radiusSq) - (0.5 * radiusSq * Math.sin(theta1)) +
+                              (0.5 * theta2 * patchRadiusSq) - (0.5 * patchRadiusSq * Math.sin(theta2));
+        }
+
+        // use the density and the intersected area to determine how likely
+        // we are to see a flower. then do a random draw to see if a flower is seen
+        return (rand.nextDouble() <= (approxPatchDensity.get(obj.getObjectId()) * intersectedArea));
+    }
+
+    
+    /**
+     * Gets the people that are contained within the right cone defining the field of view. The
+     * person is determined to be in the cone if its center is in the cone.
+     *
+     * @param origin The center of the sensor.
+     * @param pointing Direction in which sensor looks.
+     * @param range The length of the field-of-view cone.
+     * @param halfAngle Angle in radians of half of the field of view.
+     *
+     * @return The set of all people in the given area.
+     */
+    public Set<WorldObject> getPeople(Vector3f origin, Vector3f pointing, double range, float halfAngle) {
+
+        Set<WorldObject> in = new HashSet<WorldObject>();
+
+        visitPeople(origin, pointing, range, halfAngle, new SetCollector(in));
+
+        return in;
+    }
+
+
+    /**
+     * Visits the people that are contained within the right cone defining the field of view,
+     * without allocating a collection for the results.
+     *
+     * @param origin The center of the sensor.
+     * @param pointing Direction in which sensor looks.
+     * @param range The length of the field-of-view cone.
+     * @param halfAngle Angle in radians of half of the field of view.
+     * @param visitor The visitor that is invoked for each person in the cone.
+     */
+    public void visitPeople(Vector3f origin, Vector3f pointing, double range, float halfAngle,
+                            WorldObjectVisitor visitor) {
+
+        ConeQuery query = new ConeQuery(origin, pointing, range, halfAngle, visitor);
+
+        // every point in the cone is within range of the origin
+        float r = (float)range;
+
+        peopleIndex.visitBox(origin.x - r, origin.y - r, origin.x + r, origin.y + r, query);
+    }
+
+
+    /**
+     * Builds a template from the static bodies that were recorded while this world was created.
+     */
+    private WorldTemplate buildTemplate() {
+
+        List<Image> textures = new ArrayList<Image>();
+
+        for (CompiledWorld.Body body : capture.getBodies()) {
+            textures.add((body.texture != null) ? CompiledWorld.loadTexture(body.texture) : null);
+        }
+
+        WorldTemplate temp = new WorldTemplate(ground, terrainColor, terrainTexture, heightfield,
+                                               capture.getBodies(), textures);
+
+        if (staticMeshBody != null) {
+
+            temp.setStaticMesh(staticMeshBody.getCollisionShape(),
+                               ((StaticMeshInfo)staticMeshBody.getUserPointer()).getPartStarts());
+        }
+
+        temp.setDistanceField(distanceField);
+        temp.setIndices(obstacleIndex, structureIndex, peopleIndex);
+
+        capture = null;
+
+        return temp;
+    }
+
+
+    private static Map<Integer, WorldObject> mapById(Set<WorldObject> objects) {
+
+        Map<Integer, WorldObject> byId = new HashMap<Integer, WorldObject>();
+
+        for (WorldObject obj : objects) {
+            byId.put(obj.getObjectId(), obj);
+        }
+
+        return byId;
+    }
+
+
+    private Set<WorldObject> getObjectSet(WorldObject.Type type) {
+
+        switch(type) {
+
+            case OBSTACLE:
+                return obstacles;
+
+            case STRUCTURE:
+                return structures;
+
+            case PERSON:
+                return people;
+
+            default:
+                return flowers;
+        }
     }
 
 
     /**
-     * Gets the obstacles that are contained within the given sphere. The
-     * obstacle is determined to be in the sphere if its center is in the sphere.
-     *
-     * @param center The center of the query sphere.
-     * @param radius The radius of the query sphere.
-     *
-     * @return The set of all obstacles within the given area.
+     * Builds (or loads from the cache) the distance field over all static obstacles and structures.
      */
-    public Set<WorldObject> getObstacles(Vector3f center, double radius) {
-
-        Set<WorldObject> in = new HashSet<WorldObject>();
+    private void buildDistanceField() {
 
-        for (WorldObject obj : obstacles) {
+        List<WorldObject> objects = new ArrayList<WorldObject>(obstacles);
 
-            Vector3f diff = new Vector3f();
+        objects.addAll(structures);
 
-            diff.sub(center, obj.getTruthPosition());
+        // keep the order stable so that the field is identified consistently in the cache
+        Collections.sort(objects, new Comparator<WorldObject>() {
 
-            if (diff.length() <= radius) {
-                in.add(obj);
+            public int compare(WorldObject o1, WorldObject o2) {
+                return Integer.valueOf(o1.getObjectId()).compareTo(o2.getObjectId());
             }
+        });
+
+        List<CollisionShape> shapes = new ArrayList<CollisionShape>();
+        List<Transform> transforms = new ArrayList<Transform>();
+
+        for (WorldObject obj : objects) {
+
+            shapes.add(obj.getBody().getCollisionShape());
+            transforms.add(obj.getBody().getMotionState().getWorldTransform(new Transform()));
         }
 
-        return in;
+        distanceField = DistanceField.create(shapes, transforms, distanceFieldResolution, distanceFieldMaxDistance,
+                                             distanceFieldThreads,
+                                             (distanceFieldCache != null) ? new File(distanceFieldCache) : null);
     }
 
 
     /**
-     * Gets all structures present in the world.
-     *
-     * @return The set of all structures.
+     * Adds the single body that holds the merged geometry of all static obstacles and
+     * structures. The individual objects have already been sent to the motion recorder.
      */
-    public Set<WorldObject> getStructures() {
-        return Collections.unmodifiableSet(structures);
+    private void addStaticMesh(CollisionShape shape, StaticMeshInfo info) {
+
+        Transform trans = new Transform();
+        trans.setIdentity();
+
+        RigidBodyConstructionInfo rbInfo = new RigidBodyConstructionInfo(0, new DefaultMotionState(trans),
+                                                                         shape, new Vector3f(0, 0, 0));
+
+        RigidBody body = new RigidBody(rbInfo);
+        body.setUserPointer(info);
+
+        dynamicsWorld.addRigidBody(body, COLLISION_TERRAIN, COLLISION_BEE);
+
+        staticMeshBody = body;
     }
 
 
     /**
-     * Gets the structures that are contained within the given sphere. The
-     * obstacle is determined to be in the sphere if its center is in the sphere.
-     *
-     * @param center The center of the query sphere.
-     * @param radius The radius of the query sphere.
-     *
-     * @return The set of all objects.
+     * Adds the body that represents the ground.
      */
-    public Set<WorldObject> getStructures(Vector3f center, double radius) {
+    private void addGround(CollisionShape groundShape, Color color, Image texture, Map<String, Object> groundMeta) {
 
-        Set<WorldObject> in = new HashSet<WorldObject>();
+        Transform groundTransform = new Transform();
 
-        for (WorldObject obj : structures) {
+        groundTransform.setIdentity();
+        groundTransform.origin.set(new Vector3f(0, 0, 0));
 
-            Vector3f diff = new Vector3f();
+        int groundId = nextId.getAndIncrement();
 
-            diff.sub(center, obj.getTruthPosition());
+        recorder.updateShape(groundId, groundShape);
+        recorder.updateMetadata(groundId, color, texture, null);
 
-            if (diff.length() <= radius) {
-                in.add(obj);
-            }
-        }
+        // the ground is a static object, so it does not need mass properties
+        MotionState myMotionState = new RecordedMotionState(groundId, recorder, groundTransform);
+        RigidBodyConstructionInfo rbInfo = new RigidBodyConstructionInfo(0, myMotionState,
+                                                                         groundShape, new Vector3f(0, 0, 0));
 
-        return in;
-    }
+        RigidBody groundBody = new RigidBody(rbInfo);
+        groundBody.setUserPointer(new EntityInfo(groundId, groundMeta));
 
+        ground = new WorldObject(groundId, WorldObject.Type.TERRAIN, groundBody, groundMeta);
+        terrainColor = color;
+        terrainTexture = texture;
 
-    /**
-     * Gets all flowers present in the world.
-     *
-     * @return The set of all flowers.
-     */
-    public Set<WorldObject> getFlowers() {
-        return Collections.unmodifiableSet(flowers);
+        dynamicsWorld.addRigidBody(groundBody, COLLISION_TERRAIN, COLLISION_BEE);
     }
 
 
     /**
-     * Gets the flowers that are contained within the given sphere. The
-     * flower is determined to be in the sphere if its center is in the sphere.
-     * For approximate flower patches, the patch and intersecting area are modeled
-     * as circles.
-     *
-     * @param center The center of the query sphere.
-     * @param radius The radius of the query sphere.
-     *
-     * @return The set of all flowers in the given area.
+     * Loads the elevation samples of the terrain from an image or binary grid.
      */
-    public Set<WorldObject> getFlowers(Vector3f center, double radius) {
-
-        Set<WorldObject> in = new HashSet<WorldObject>();
+    private Heightfield loadHeightfield(Terrain terrain) {
 
-        for (WorldObject obj : flowers) {
+        int columns;
+        int rows;
 
-            if (!approximatePatches) {
+        if (terrain.getGrid() != null) {
 
-                Vector3f diff = new Vector3f();
+            columns = terrain.getGrid().getColumns();
+            rows = terrain.getGrid().getRows();
+        }
+        else {
 
-                diff.sub(center, obj.getTruthPosition());
+            // the image needs to be read to know its size, so the origin is set after loading
+            URL url;
 
-                if (diff.length() <= radius) {
-                    in.add(obj);
-                }
+            if (terrain.getImage().getClasspath() != null) {
+                url = WorldMap.class.getResource(terrain.getImage().getClasspath().getPath());
             }
             else {
 
-                // we need to approximate detecting individual flowers using the
-                // size of the patch, the amount of overlap, and the density
-
-                Vector2f patchCenter = new Vector2f(obj.getTruthPosition().x, obj.getTruthPosition().y);
-                Vector2f queryCenter = new Vector2f(center.x, center.y);
+                try {
+                    url = new File(terrain.getImage().getFilesystem().getPath()).toURI().toURL();
+                }
+                catch(MalformedURLException mue) {
+                    throw new RuntimeException("Invalid terrain image path.", mue);
+                }
+            }
 
-                Vector2f temp = new Vector2f();
-                temp.sub(queryCenter, patchCenter);
+            if (url == null) {
+                throw new RuntimeException("Could not find the terrain image: " + terrain.getImage().getClasspath().getPath());
+            }
 
-                double dist = temp.length();
-                double distSq = temp.lengthSquared();
-                double patchRadius = obj.getTruthBoundingSphere().getRadius();
-                double patchRadiusSq = patchRadius * patchRadius;
-                double radiusSq = (float)(radius * radius);
-                double intersectedArea = 0;
+            Heightfield field = Heightfield.loadImage(url, terrain.getSpacing(), 0, 0,
+                                                      terrain.getScale(), terrain.getOffset());
 
-                if (dist >= (patchRadius + radius)) {
+            if (terrain.getOrigin() == null) {
 
-                    // the query circle is outside the patch
-                    continue;
-                }
-                else if (dist + radius <= patchRadius) {
+                return new Heightfield(field, -field.getLength() / 2, -field.getWidth() / 2);
+            }
 
-                    // the query is inscribed
-                    intersectedArea = Math.PI * radiusSq;
-                }
-                else {
+            return new Heightfield(field, terrain.getOrigin().getX(), terrain.getOrigin().getY());
+        }
 
-                    // the circles partially intersect
-                    double theta1 = 2 * Math.acos((radiusSq + distSq - patchRadiusSq) / (2 * radius * dist));
-                    double theta2 = 2 * Math.acos((patchRadiusSq + distSq - radiusSq) / (2 * patchRadius * dist));
+        float originX = -((columns - 1) * terrain.getSpacing()) / 2;
+        float originY = -((rows - 1) * terrain.getSpacing()) / 2;
 
-                    intersectedArea = (0.5 * theta1 * radiusSq) - (0.5 * radiusSq * Math.sin(theta1)) +
-                                      (0.5 * theta2 * patchRadiusSq) - (0.5 * patchRadiusSq * Math.sin(theta2));
-                }
+        if (terrain.getOrigin() != null) {
 
-                // use the density and the intersected area to determine how likely
-                // we are to see a flower. then do a random draw to see if a flower is seen
-                if (rand.nextDouble() <= (approxPatchDensity.get(obj.getObjectId()) * intersectedArea)) {
-                    in.add(obj);
-                }
-            }
+            originX = terrain.getOrigin().getX();
+            originY = terrain.getOrigin().getY();
         }
 
-        return in;
+        return Heightfield.loadGrid(new File(terrain.getGrid().getPath()), columns, rows,
+                                    terrain.getGrid().isLittleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN,
+                                    terrain.getSpacing(), originX, originY,
+                                    terrain.getScale(), terrain.getOffset());
     }
-    
-    /**
-     * Gets the people that are contained within the right cone defining the field of view. The
-     * person is determined to be in the cone if its center is in the cone.
-     *
-     * @param origin The center of the sensor.
-     * @param pointing Direction in which sensor looks. Assume normalized.
-     * @param range The length of the field-of-view cone.
-     * @param halfAngle Angle in radians of half of the field of view.
-     *
-     * @return The set of all people in the given area.
-     */
-    public Set<WorldObject> getPeople(Vector3f origin, Vector3f pointing, double range, float halfAngle) {
 
-        Set<WorldObject> in = new HashSet<WorldObject>();
 
-        for (WorldObject obj : people) {
-        	
-        	// vector from sensor to object
-            Vector3f relPos = new Vector3f();
-            relPos.sub(obj.getTruthPosition(), origin);
-            
-            pointing.normalize();
-            
-            // distance between sensor and object along direction in which sensor is pointed
-            float component = pointing.dot(relPos);
-            
-            // check that component falls within range of cone
-            if(component >= 0 && component <= range) {
-            	
-            	// get vector projection
-            	Vector3f proj = new Vector3f();
-            	proj.get(pointing);
-            	proj.scale(component);
-            	
-            	// get orthogonal component
-            	Vector3f orthogonal = new Vector3f();
-            	orthogonal.sub(relPos, proj);
-            	float orthogonalComponent = proj.length();
-            	
-            	// 'right angle cone' portion
-            	if(component <= range * Math.cos(halfAngle)) {
-	            	// determine whether orthogonal component places the object in the cone
-	            	if(orthogonalComponent <= Math.tan(halfAngle) * component)
-	            		in.add(obj);
-            	}
-            	// 'oblique' portion
-            	else {
-            		float arcHeight = (float) range - component;
-            		// get chord length from radius and arc height
-            		float coneWidth = ((float) Math.sqrt((8 * arcHeight) * (range - arcHeight/2)))/2;
-            		if(orthogonalComponent <= coneWidth)
-            			in.add(obj);
-            	}
-            }
+    private Image loadTexture(Texture texture) {
 
-            
+        String source = CompiledWorld.getTextureSource(texture);
+        Image image = CompiledWorld.loadTexture(source);
+
+        if (capture != null) {
+            textureSources.put(image, source);
         }
 
-        return in;
+        return image;
     }
 
 
@@ -943,11 +1477,20 @@ public class WorldMap {
     }
     
     
-    private void addBody(WorldObject.Type type, Transform startTransform, CollisionShape colShape,
-                         Color color, Image texture, String label, EntityInfo info, Set<WorldObject> objSet) {
+    private RigidBody addBody(WorldObject.Type type, Transform startTransform, CollisionShape colShape,
+                              Color color, Image texture, String label, EntityInfo info, Set<WorldObject> objSet) {
 
         int id = info.getObjectId();
 
+        if ((capture != null) && (type != WorldObject.Type.FLOWER)) {
+
+            capture.add(type, colShape, startTransform, color, textureSources.get(texture), label, info.getMetadata());
+
+            if (captureOnly) {
+                return null;
+            }
+        }
+
         recorder.updateShape(id, colShape);
         recorder.updateMetadata(id, color, texture, label);
 
@@ -958,6 +1501,25 @@ public class WorldMap {
 		RigidBody body = new RigidBody(rbInfo);
 		body.setUserPointer(info);
 
+        // baked bodies are kept out of the physics world, but still
+        // provide the truth position and bounds of the world object
+        if (((staticMesh != null) || (bakedParts != null)) &&
+            ((type == WorldObject.Type.OBSTACLE) || (type == WorldObject.Type.STRUCTURE))) {
+
+            if (staticMesh != null) {
+                staticMesh.add(colShape, startTransform, info);
+            }
+            else {
+                bakedParts.add(info);
+            }
+
+            if (objSet != null) {
+                objSet.add(new WorldObject(id, type, body, info.getMetadata()));
+            }
+
+            return body;
+        }
+
         switch(type) {
 
             case OBSTACLE:
@@ -973,7 +1535,11 @@ public class WorldMap {
                 break;
         }
 
-        objSet.add(new WorldObject(id, type, body, info.getMetadata()));
+        if (objSet != null) {
+            objSet.add(new WorldObject(id, type, body, info.getMetadata()));
+        }
+
+        return body;
     }
 
     
@@ -1035,12 +1601,82 @@ public class WorldMap {
     }
 
 
+    @Inject(optional = true)
+    public final void setCompiledWorld(final CompiledWorld compiled) {
+        this.compiledWorld = compiled;
+    }
+
+
+    /**
+     * Captures the static bodies of the world description instead of simulating them.
+     */
+    final void setCapture(final CompiledWorld.Capture capture) {
+
+        this.capture = capture;
+        this.captureOnly = true;
+    }
+
+
+    @Inject(optional = true)
+    public final void setTemplate(final WorldTemplate template) {
+        this.template = template;
+    }
+
+
+    @Inject(optional = true)
+    public final void setUseTemplate(@Named("world-template") final boolean use) {
+        useTemplate = use;
+    }
+
+
     @Inject(optional = true)
     public final void setApproximatePatches(@Named("approximate-patches") final boolean use) {
         approximatePatches = use;
     }
 
 
+    @Inject(optional = true)
+    public final void setInstancedPatches(@Named("instanced-patches") final boolean use) {
+        instancedPatches = use;
+    }
+
+
+    @Inject(optional = true)
+    public final void setBakeStaticGeometry(@Named("bake-static-geometry") final boolean bake) {
+        bakeStatic = bake;
+    }
+
+
+    @Inject(optional = true)
+    public final void setUseDistanceField(@Named("distance-field") final boolean use) {
+        useDistanceField = use;
+    }
+
+
+    @Inject(optional = true)
+    public final void setDistanceFieldResolution(@Named("distance-field-resolution") final float res) {
+        distanceFieldResolution = res;
+    }
+
+
+    @Inject(optional = true)
+    public final void setDistanceFieldMaxDistance(@Named("distance-field-max-distance") final float dist) {
+        distanceFieldMaxDistance = dist;
+    }
+
+
+    @Inject(optional = true)
+    public final void setDistanceFieldThreads(@Named("distance-field-threads") final int threads) {
+        distanceFieldThreads = threads;
+    }
+
+
+    @Inject(optional = true)
+    public final void setDistanceFieldCache(@Named("distance-field-cache") final String dir) {
+        distanceFieldCache = dir;
+    }
+
+
     @Inject(optional = true)
     public final void setStemHeight(@Named("flower-stem-height") final float height) {
         stemHeight = height;
@@ -1063,4 +1699,147 @@ public class WorldMap {
     public final void setFloraRadius(@Named("flower-flora-radius") final float rad) {
         floraRadius = rad;
     }
+
+
+    /**
+     * The details of an instanced flower patch.
+     */
+    private static class FlowerPatch {
+
+        public RigidBody body;
+        public FlowerPatchShape shape;
+        public InstancedFlower[] flowers;
+
+        private Transform inverse = new Transform();
+
+
+        public FlowerPatch(RigidBody body, FlowerPatchShape shape, InstancedFlower[] flowers) {
+
+            this.body = body;
+            this.shape = shape;
+            this.flowers = flowers;
+
+            body.getMotionState().getWorldTransform(inverse);
+            inverse.inverse();
+        }
+
+
+        /**
+         * Transforms a point in the world frame into the frame of the patch.
+         */
+        public void toLocal(Vector3f point, Vector3f out) {
+
+            out.set(point);
+            inverse.transform(out);
+        }
+    }
+
+
+    /**
+     * An adapter between the flower indices of an instanced patch and the visitor of a flower query.
+     */
+    private static class FlowerQuery implements FlowerPatchShape.FlowerCallback {
+
+        public InstancedFlower[] flowers;
+
+        private WorldObjectVisitor visitor;
+
+
+        public FlowerQuery(WorldObjectVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+
+        public void flower(int index) {
+            visitor.visit(flowers[index]);
+        }
+    }
+
+
+    /**
+     * Collects the results of a query into a set.
+     */
+    private static class SetCollector implements WorldObjectVisitor {
+
+        private Set<WorldObject> set;
+
+
+        public SetCollector(Set<WorldObject> set) {
+            this.set = set;
+        }
+
+
+        public void visit(WorldObject object) {
+            set.add(object);
+        }
+    }
+
+
+    /**
+     * Tests candidate people against a field-of-view cone.
+     */
+    private static class ConeQuery implements StaticGrid.CandidateVisitor {
+
+        private WorldObjectVisitor visitor;
+        private Vector3f origin = new Vector3f();
+        private Vector3f pointing = new Vector3f();
+        private double range;
+        private double cosHalfAngle;
+        private double tanHalfAngle;
+
+
+        public ConeQuery(Vector3f origin, Vector3f pointing, double range, float halfAngle, WorldObjectVisitor visitor) {
+
+            this.origin.set(origin);
+            this.pointing.normalize(pointing);
+            this.range = range;
+            this.cosHalfAngle = Math.cos(halfAngle);
+            this.tanHalfAngle = Math.tan(halfAngle);
+            this.visitor = visitor;
+        }
+
+
+        public void visit(WorldObject object, float x, float y, float z) {
+
+            // vector from sensor to object
+            float relX = x - origin.x;
+            float relY = y - origin.y;
+            float relZ = z - origin.z;
+
+            // distance between sensor and object along direction in which sensor is pointed
+            float component = (pointing.x * relX) + (pointing.y * relY) + (pointing.z * relZ);
+
+            // check that component falls within range of cone
+            if ((component < 0) || (component > range)) {
+                return;
+            }
+
+            // distance orthogonal to the pointing vector
+            float orthX = relX - (pointing.x * component);
+            float orthY = relY - (pointing.y * component);
+            float orthZ = relZ - (pointing.z * component);
+            float orthogonalComponent = (float)Math.sqrt((orthX * orthX) + (orthY * orthY) + (orthZ * orthZ));
+
+            // 'right angle cone' portion
+            if (component <= range * cosHalfAngle) {
+
+                // determine whether orthogonal component places the object in the cone
+                if (orthogonalComponent <= tanHalfAngle * component) {
+                    visitor.visit(object);
+                }
+            }
+            // 'oblique' portion
+            else {
+
+                double arcHeight = range - component;
+
+                // get chord length from radius and arc height
+                double coneWidth = Math.sqrt((8 * arcHeight) * (range - arcHeight / 2)) / 2;
+
+                if (orthogonalComponent <= coneWidth) {
+                    visitor.visit(object);
+                }
+            }
+        }
+    }
 }
@@ -150,4 +150,16 @@ public class WorldObject {
     public Map<String, Object> getMetadata() {
         return meta;
     }
+
+
+    /**
+     * Gets the body that represents this object in the physics engine. The body may be
+     * shared with other objects (e.g. instanced flowers) or not be part of the physics
+     * world at all (e.g. baked static geometry).
+     *
+     * @return The object's body.
+     */
+    RigidBody getBody() {
+        return body;
+    }
 }
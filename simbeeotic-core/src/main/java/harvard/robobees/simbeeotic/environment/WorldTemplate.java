@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.shapes.CollisionShape;
+
+import java.awt.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The immutable, static portion of a world that is shared by all variations of a scenario
+ * that run in the same JVM. A template is built by the first variation's {@link WorldMap}
+ * (see the {@code world-template} world property) and holds the terrain, the shapes, transforms
+ * and decoded textures of the obstacles, structures and people, any baked mesh or distance
+ * field, and the spatial indices. Later variations only create new rigid bodies from the
+ * template, which is far cheaper than rebuilding the world.
+ * <p/>
+ * Flowers are not part of the template because their placement depends on the random
+ * seed of each variation.
+ *
+ * @author bkate
+ */
+public class WorldTemplate {
+
+    private CollisionShape groundShape;
+    private Color groundColor;
+    private Image groundTexture;
+    private Map<String, Object> groundMeta;
+    private Heightfield heightfield;
+
+    private CompiledWorld.Body[] bodies;
+    private Image[] textures;
+
+    private CollisionShape meshShape;
+    private int[] meshPartStarts;
+    private DistanceField distanceField;
+
+    private StaticGrid obstacleIndex;
+    private StaticGrid structureIndex;
+    private StaticGrid peopleIndex;
+
+
+    WorldTemplate(WorldObject ground, Color groundColor, Image groundTexture, Heightfield heightfield,
+                  List<CompiledWorld.Body> bodies, List<Image> textures) {
+
+        this.groundShape = ground.getBody().getCollisionShape();
+        this.groundColor = groundColor;
+        this.groundTexture = groundTexture;
+        this.groundMeta = Collections.unmodifiableMap(new HashMap<String, Object>(ground.getMetadata()));
+        this.heightfield = heightfield;
+
+        this.bodies = bodies.toArray(new CompiledWorld.Body[bodies.size()]);
+        this.textures = textures.toArray(new Image[textures.size()]);
+
+        // detach the metadata from the objects of the variation that built the template
+        for (CompiledWorld.Body body : this.bodies) {
+            body.meta = Collections.unmodifiableMap(new HashMap<String, Object>(body.meta));
+        }
+    }
+
+
+    void setStaticMesh(CollisionShape shape, int[] partStarts) {
+
+        meshShape = shape;
+        meshPartStarts = partStarts;
+    }
+
+
+    void setDistanceField(DistanceField field) {
+        distanceField = field;
+    }
+
+
+    void setIndices(StaticGrid obstacles, StaticGrid structures, StaticGrid people) {
+
+        obstacleIndex = obstacles;
+        structureIndex = structures;
+        peopleIndex = people;
+    }
+
+
+    /**
+     * Gets the number of static bodies (obstacles, structures and people) in the template.
+     *
+     * @return The number of static bodies.
+     */
+    public int getNumBodies() {
+        return bodies.length;
+    }
+
+
+    CompiledWorld.Body getBody(int index) {
+        return bodies[index];
+    }
+
+
+    Image getTexture(int index) {
+        return textures[index];
+    }
+
+
+    CollisionShape getGroundShape() {
+        return groundShape;
+    }
+
+
+    Color getGroundColor() {
+        return groundColor;
+    }
+
+
+    Image getGroundTexture() {
+        return groundTexture;
+    }
+
+
+    Map<String, Object> getGroundMeta() {
+        return groundMeta;
+    }
+
+
+    Heightfield getHeightfield() {
+        return heightfield;
+    }
+
+
+    CollisionShape getMeshShape() {
+        return meshShape;
+    }
+
+
+    int[] getMeshPartStarts() {
+        return meshPartStarts;
+    }
+
+
+    DistanceField getDistanceField() {
+        return distanceField;
+    }
+
+
+    StaticGrid getObstacleIndex() {
+        return obstacleIndex;
+    }
+
+
+    StaticGrid getStructureIndex() {
+        return structureIndex;
+    }
+
+
+    StaticGrid getPeopleIndex() {
+        return peopleIndex;
+    }
+}
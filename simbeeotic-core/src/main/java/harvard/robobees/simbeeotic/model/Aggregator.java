@@ -35,6 +35,8 @@ package harvard.robobees.simbeeotic.model;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Collections;
+import java.util.List;
+import java.util.ArrayList;
 
 
 /**
@@ -45,6 +47,9 @@ import java.util.Collections;
  * Aggregators can be arranged hierarchically, so that values aggregated in lower levels are
  * also passed to higher levels.
  *
+ * Values that are expensive to tally as they accrue (such as energy used over time) can
+ * be added lazily by registering an updater, which is run before any values are read.
+ *
  * @author bkate
  */
 public class Aggregator {
@@ -53,6 +58,8 @@ public class Aggregator {
 
     private Map<String, Double> aggregate = new HashMap<String, Double>();
     private Map<String, Map<String, Double>> itemized = new HashMap<String, Map<String, Double>>();
+    private List<Runnable> updaters = new ArrayList<Runnable>();
+    private List<Aggregator> children = new ArrayList<Aggregator>();
 
 
     /**
@@ -119,6 +126,8 @@ public class Aggregator {
             throw new IllegalArgumentException("The aggregator key is null.");
         }
 
+        update();
+
         if (aggregate.containsKey(key)) {
             return aggregate.get(key);
         }
@@ -145,6 +154,8 @@ public class Aggregator {
             throw new IllegalArgumentException("The aggregator item is null.");
         }
 
+        update();
+
         if (itemized.containsKey(key) && itemized.get(key).containsKey(item)) {
             return itemized.get(key).get(item);
         }
@@ -166,6 +177,8 @@ public class Aggregator {
             throw new IllegalArgumentException("The aggregator key is null.");
         }
 
+        update();
+
         if (itemized.containsKey(key)) {
             return Collections.unmodifiableMap(itemized.get(key));
         }
@@ -182,8 +195,42 @@ public class Aggregator {
      */
     public void setParentAggregator(Aggregator parent) {
 
+        if (this.parent != null) {
+            this.parent.children.remove(this);
+        }
+
         // todo: this would ideally be done with events between models
         this.parent = parent;
+
+        if (parent != null) {
+            parent.children.add(this);
+        }
+    }
+
+
+    /**
+     * Registers a callback that adds the values that have accrued since it was last run. The
+     * updaters of this aggregator and its children are run before any values are read.
+     *
+     * @param updater The callback, which is expected to call {@link #addValue(String, String, double)}.
+     */
+    public void addUpdater(Runnable updater) {
+        updaters.add(updater);
+    }
+
+
+    /**
+     * Brings the aggregated values up to date by running the updaters in this hierarchy.
+     */
+    private void update() {
+
+        for (Runnable updater : updaters) {
+            updater.run();
+        }
+
+        for (Aggregator child : children) {
+            child.update();
+        }
     }
 
 
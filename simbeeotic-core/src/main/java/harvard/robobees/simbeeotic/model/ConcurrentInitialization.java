@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+import static java.lang.annotation.ElementType.TYPE;
+import java.lang.annotation.Retention;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import java.lang.annotation.Target;
+
+
+/**
+ * Declares that the {@link Model#initialize()} method of a model class may be run
+ * concurrently with the initialization of other models. This is only honored when
+ * the simulation is configured to use more than one initialization thread.
+ * <p/>
+ * While a declared model is initialized, the changes it makes to the dynamics world,
+ * the {@link MotionRecorder} and the event queue are held in a {@link SharedStateBuffer}
+ * and applied afterward at the point where the model would have been initialized
+ * serially, so the outcome does not depend on thread timing or on the number of threads.
+ * The model must not change any other shared state during initialization (e.g. the
+ * internals of other models), and should only schedule events on itself. It also must
+ * not depend on the state of other models, including its parent, since it may be
+ * initialized before them.
+ * <p/>
+ * The proximity queries of the {@link harvard.robobees.simbeeotic.environment.WorldMap}
+ * do not share any scratch state, so they may be made from concurrent initialization.
+ * Approximate flower patches are the exception - they draw from the random stream of the
+ * map, so their results depend on the order in which the queries are made.
+ * <p/>
+ * The declaration is not inherited, since a derived class may do things in its own
+ * initialization that are not safe.
+ *
+ * @author bkate
+ */
+@Target(TYPE)
+@Retention(RUNTIME)
+public @interface ConcurrentInitialization {
+}
@@ -104,6 +104,22 @@ public class EntityInfo {
     }
 
 
+    /**
+     * Gets the details of a part of the physical body. Most bodies represent a
+     * single object, but a body may hold the merged geometry of many objects (see
+     * the {@code bake-static-geometry} option of the world map), in which case the
+     * part is identified by the triangle index reported by the physics engine for
+     * a ray hit or contact.
+     *
+     * @param triangleIndex The index of the triangle that was touched, or -1 if unknown.
+     *
+     * @return The details of the object that owns the triangle.
+     */
+    public EntityInfo getPart(int triangleIndex) {
+        return this;
+    }
+
+
     /**
      * Gets the metadata associated with the physical body.
      *
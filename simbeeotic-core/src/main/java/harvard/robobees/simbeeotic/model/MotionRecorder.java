@@ -48,6 +48,9 @@ import org.apache.log4j.Logger;
  * A class that coordinates the dissemination of motion information for the
  * objects in the simulation. Interested classes can register as a listener
  * of motion state updates via the {@link MotionListener} interface.
+ * <p/>
+ * Updates made while a model is initialized concurrently are held in the
+ * {@link SharedStateBuffer} of the model and passed on when it is committed.
  *
  * @author bkate
  */
@@ -66,7 +69,17 @@ public class MotionRecorder {
      * @param objectId The unique identifier of the object.
      * @param shape The shape and size of the object.
      */
-    public void updateShape(int objectId, CollisionShape shape) {
+    public void updateShape(final int objectId, final CollisionShape shape) {
+
+        if (SharedStateBuffer.defer(new Runnable() {
+
+            public void run() {
+                updateShape(objectId, shape);
+            }
+        })) {
+
+            return;
+        }
 
         for (MotionListener listener : listeners) {
 
@@ -86,7 +99,17 @@ public class MotionRecorder {
      * @param objectId The unique identifier of the object.
      * @param scale The new scale of the object.
      */
-    public void updateScale(int objectId, Vector3f scale) {
+    public void updateScale(final int objectId, final Vector3f scale) {
+
+        if (SharedStateBuffer.defer(new Runnable() {
+
+            public void run() {
+                updateScale(objectId, scale);
+            }
+        })) {
+
+            return;
+        }
 
         for (MotionListener listener : listeners) {
 
@@ -107,7 +130,17 @@ public class MotionRecorder {
      * @param position The position of the object (in the world frame).
      * @param orientation The orientation of the object (in the world frame).
      */
-    public void updateKinematicState(int objectId, Vector3f position, Quat4f orientation) {
+    public void updateKinematicState(final int objectId, final Vector3f position, final Quat4f orientation) {
+
+        if (SharedStateBuffer.defer(new Runnable() {
+
+            public void run() {
+                updateKinematicState(objectId, position, orientation);
+            }
+        })) {
+
+            return;
+        }
 
         for (MotionListener listener : listeners) {
 
@@ -162,7 +195,17 @@ public class MotionRecorder {
      * @param texture The new texture information (may be null if no change is being made).
      * @param label The new label information (may be null if no change is being made).
      */
-    public void updateMetadata(int objectId, Color color, Image texture, String label) {
+    public void updateMetadata(final int objectId, final Color color, final Image texture, final String label) {
+
+        if (SharedStateBuffer.defer(new Runnable() {
+
+            public void run() {
+                updateMetadata(objectId, color, texture, label);
+            }
+        })) {
+
+            return;
+        }
 
         for (MotionListener listener : listeners) {
 
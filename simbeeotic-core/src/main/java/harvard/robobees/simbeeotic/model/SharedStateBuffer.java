@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Holds the changes to shared simulation state that a model makes while it is
+ * initialized on a worker thread (see {@link ConcurrentInitialization}). Shared
+ * objects check {@link #defer} before making a change, and the buffered changes
+ * are applied in order when the buffer is committed.
+ *
+ * @author bkate
+ */
+public class SharedStateBuffer {
+
+    private List<Runnable> actions = new ArrayList<Runnable>();
+
+    private static final ThreadLocal<SharedStateBuffer> current = new ThreadLocal<SharedStateBuffer>();
+
+    // the number of open buffers, so that the common case does not touch the thread local
+    private static final AtomicInteger numOpen = new AtomicInteger(0);
+
+
+    /**
+     * Directs the changes made by the calling thread into this buffer until {@link #close} is called.
+     */
+    public void open() {
+
+        current.set(this);
+        numOpen.incrementAndGet();
+    }
+
+
+    /**
+     * Stops buffering changes made by the calling thread.
+     */
+    public void close() {
+
+        current.remove();
+        numOpen.decrementAndGet();
+    }
+
+
+    /**
+     * Applies the buffered changes on the calling thread, in the order they were made.
+     */
+    public void commit() {
+
+        for (Runnable action : actions) {
+            action.run();
+        }
+
+        actions.clear();
+    }
+
+
+    /**
+     * Buffers a change to shared state if the calling thread has an open buffer.
+     *
+     * @param action The change to make.
+     *
+     * @return True if the change was buffered, false if the caller should make the change immediately.
+     */
+    public static boolean defer(Runnable action) {
+
+        if (numOpen.get() == 0) {
+            return false;
+        }
+
+        SharedStateBuffer buffer = current.get();
+
+        if (buffer == null) {
+            return false;
+        }
+
+        buffer.actions.add(action);
+
+        return true;
+    }
+
+
+    /**
+     * Determines if the calling thread has an open buffer.
+     *
+     * @return True if changes made by the calling thread are being buffered.
+     */
+    public static boolean isBuffering() {
+        return (numOpen.get() > 0) && (current.get() != null);
+    }
+}
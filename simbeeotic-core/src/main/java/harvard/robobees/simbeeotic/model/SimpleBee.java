@@ -33,7 +33,6 @@ package harvard.robobees.simbeeotic.model;
 
 
 import com.bulletphysics.collision.shapes.CollisionShape;
-import com.bulletphysics.collision.shapes.SphereShape;
 import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
 import com.bulletphysics.dynamics.RigidBody;
 import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
@@ -44,6 +43,7 @@ import com.bulletphysics.linearmath.QuaternionUtil;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import harvard.robobees.simbeeotic.environment.PhysicalConstants;
+import harvard.robobees.simbeeotic.environment.ShapeRegistry;
 import harvard.robobees.simbeeotic.util.MathUtil;
 import harvard.robobees.simbeeotic.SimTime;
 import harvard.robobees.simbeeotic.model.weather.WeatherModel;
@@ -233,8 +233,8 @@ public abstract class SimpleBee extends GenericModel {
 
         float halfLength = length / 2;
 
-        // establish the bee body
-        CollisionShape colShape = new SphereShape(halfLength);
+        // establish the bee body (shared by all bees of the same size)
+        CollisionShape colShape = ShapeRegistry.getSphere(halfLength);
 
         Transform startTransform = new Transform();
         startTransform.setIdentity();
@@ -32,7 +32,6 @@
 package harvard.robobees.simbeeotic.model;
 
 
-import com.bulletphysics.collision.shapes.BoxShape;
 import com.bulletphysics.collision.shapes.CollisionShape;
 import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
 import com.bulletphysics.dynamics.RigidBody;
@@ -41,6 +40,7 @@ import com.bulletphysics.linearmath.MotionState;
 import com.bulletphysics.linearmath.Transform;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import harvard.robobees.simbeeotic.environment.ShapeRegistry;
 
 import javax.vecmath.Vector3f;
 import java.awt.*;
@@ -53,6 +53,7 @@ import java.awt.*;
  *
  * @author bkate
  */
+@ConcurrentInitialization
 public class SimpleHive extends GenericModel {
 
     // parameters
@@ -66,7 +67,7 @@ public class SimpleHive extends GenericModel {
         // establish the static hive geometry
         float halfSize = size / 2;
 
-        CollisionShape colShape = new BoxShape(new Vector3f(halfSize, halfSize, halfSize));
+        CollisionShape colShape = ShapeRegistry.getBox(new Vector3f(halfSize, halfSize, halfSize));
 
         Transform startTransform = new Transform();
         startTransform.setIdentity();
@@ -32,14 +32,19 @@
 package harvard.robobees.simbeeotic.model.comms;
 
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.bulletphysics.linearmath.Transform;
+import org.apache.log4j.Logger;
 
+import javax.vecmath.Matrix3f;
 import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
 
@@ -48,10 +53,31 @@ import harvard.robobees.simbeeotic.model.AbstractModel;
 import harvard.robobees.simbeeotic.model.Model;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
 import harvard.robobees.simbeeotic.ClockControl;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.trace.SimTrace;
+import harvard.robobees.simbeeotic.trace.TraceType;
+
+import static harvard.robobees.simbeeotic.environment.PhysicalConstants.SPEED_OF_LIGHT;
 
 
 /**
  * A base class that implements some boilerplate functionality of a propagation model.
+ * <p/>
+ * The model can optionally cache the received power of each link (the path loss and
+ * antenna gains between a transmitter and receiver) so that it is not recalculated
+ * for radios that are stationary or moving slowly. A cached link is recalculated
+ * once either endpoint moves or rotates beyond a tolerance, or the band changes.
+ * <p/>
+ * The model can also account for interference between transmissions. In this mode each
+ * packet occupies its band for its time on air, and it is delivered when the last bit
+ * arrives along with the peak power of the other signals that were concurrently in flight
+ * at the receiver, so that the receiving radio can determine the SINR.
+ * <p/>
+ * Otherwise packets are delivered at the moment they are sent, unless the reception delay
+ * is enabled. In that case each packet arrives after the time it takes to travel to the
+ * receiver and is delivered once it has been on the air for its full length. Delivery
+ * times can also be rounded up to a fixed tick, so that the receptions that end within
+ * the same tick are delivered to each radio in a single event.
  *
  * @author bkate
  */
@@ -62,11 +88,31 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
     private ClockControl clockControl;
 
     private Map<Integer, Radio> radios = new HashMap<Integer, Radio>();
+    private RadioIndex index;
+    private long indexStep = -1;
+    private Map<Radio, AntennaFrame> frames = new IdentityHashMap<Radio, AntennaFrame>();
+    private Map<Radio, Batch> batches = new IdentityHashMap<Radio, Batch>();
+    private InterferenceIndex interference = new InterferenceIndex();
+    private PacketPool packetPool;
+
+    private long linkHits = 0;
+    private long linkMisses = 0;
+    private long linkInvalidations = 0;
 
     // parameters
     private double rangeThresh = 10;      // m
     private float noiseFloorMean = -100;  // dBm
     private float noiseFloorSigma = 10;   // dBm
+    private boolean useLinkCache = false;
+    private float linkDistanceTolerance = 0;  // m
+    private float linkAngleTolerance = 0;     // rad
+    private boolean useInterference = false;
+    private boolean useCarrierSense = false;
+    private boolean useReceptionDelay = false;
+    private long receptionTick = 0;      // us
+    private int packetPoolSize = 256;
+
+    private static Logger logger = Logger.getLogger(AbstractPropagationModel.class);
 
 
     /**
@@ -83,6 +129,20 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
     protected abstract double calculatePathLoss(Radio tx, Radio rx, double txPower, Band band, double distance);
 
 
+    /**
+     * Gets the position of a radio's antenna as seen by the propagation model. The
+     * position is sampled once per physics step, so it agrees with the distance
+     * passed to {@link #calculatePathLoss}.
+     *
+     * @param radio The radio.
+     *
+     * @return The position of the antenna (in the world frame). It must not be modified.
+     */
+    protected final Vector3f getAntennaPosition(Radio radio) {
+        return getAntennaFrame(radio).getPosition();
+    }
+
+
     /** {@inheritDoc} */
     public void initialize() {
 
@@ -93,36 +153,116 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
         for (Radio radio : radioModels) {
             radios.put(((Model)radio).getModelId(), radio);
         }
+
+        // radios are placed in the grid when the first transmission is made, once their hosts are initialized
+        index = new RadioIndex(new ArrayList<Radio>(radios.values()), rangeThresh);
     }
 
 
     /** {@inheritDoc} */
     public void finish() {
+
+        if (useLinkCache) {
+
+            long total = linkHits + linkMisses;
+
+            logger.info("link cache: " + linkHits + " hits, " + linkMisses + " misses (" +
+                        linkInvalidations + " invalidated), hit rate " +
+                        ((total > 0) ? (Math.round(1000.0 * linkHits / total) / 10.0) : 0) + "%");
+        }
+
+        if (packetPool != null) {
+
+            logger.info("packet pool: " + packetPool.getAllocations() + " allocations, " +
+                        packetPool.getReuses() + " reused buffers");
+        }
+    }
+
+
+    /**
+     * Gets an empty packet from the pool of packet buffers that is shared by all radios.
+     *
+     * @param length The length of the payload (in bytes).
+     *
+     * @return A packet with a single reference, held by the caller.
+     */
+    Packet allocatePacket(int length) {
+
+        if (packetPool == null) {
+            packetPool = new PacketPool(packetPoolSize);
+        }
+
+        return packetPool.allocate(length);
+    }
+
+
+    /**
+     * Called when a radio is retuned, so that it is found by transmissions in its new band.
+     *
+     * @param radio The radio whose receive band has changed.
+     */
+    void updateReceiveBand(Radio radio) {
+
+        if (index != null) {
+            index.updateBand(radio);
+        }
     }
 
 
     /** {@inheritDoc} */
     @Override
     public void transmit(Radio tx, byte[] data, double txPower, Band band) {
+        transmit(tx, Packet.wrap(data), txPower, band);
+    }
 
+
+    /**
+     * {@inheritDoc}
+     *
+     * Every receiver is given the same packet, and each pending reception holds a
+     * reference to it until the receiving radio has handled the event.
+     */
+    @Override
+    public void transmit(Radio tx, Packet packet, double txPower, Band band) {
+
+        SimTrace.Span span = SimTrace.begin(TraceType.RADIO_TRANSMIT);
+        SimTime now = clockControl.getCurrentTime();
+        Vector3f txPos = getAntennaFrame(tx).getPosition();
         Vector3f diff = new Vector3f();
+        int receivers = 0;
+
+        boolean trackSignals = useInterference || useCarrierSense;
+        boolean deliverAtEnd = useInterference || useReceptionDelay;
+        long tick = TimeUnit.MICROSECONDS.toNanos(receptionTick);
+        long airtime = 0;
+
+        if ((trackSignals || deliverAtEnd) && (tx instanceof AbstractRadio)) {
+            airtime = (long)(((AbstractRadio)tx).getAirtime(packet.getLength()) * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        // the radios can only have moved if the physics engine has stepped since the index was built
+        long step = clockControl.getPhysicsSteps();
+
+        if (indexStep != step) {
+
+            index.update();
+            indexStep = step;
+        }
 
-        // determine the received signal strength at each radio
-        for (Map.Entry<Integer, Radio> entry : radios.entrySet()) {
+        // only radios that are tuned to the band and may be in range are considered
+        int numCandidates = index.findCandidates(txPos, band);
 
-            Radio rx = entry.getValue();
+        // determine the received signal strength at each candidate
+        for (int i = 0; i < numCandidates; i++) {
+
+            Radio rx = index.getCandidate(i);
 
             // do not overhear your own transmission
             if (rx.equals(tx)) {
                 continue;
             }
 
-            // check if it is within the operating band of the receiver
-            if (!rx.getOperatingBand().isInBand(band.getCenterFrequency())) {
-                continue;
-            }
-
-            diff.sub(rx.getPosition(), tx.getPosition());
+            diff.sub(getAntennaFrame(rx).getPosition(), txPos);
 
             double dist = diff.length();
 
@@ -131,17 +271,73 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
                 continue;
             }
 
-            double rxPower = calculatePathLoss(tx, rx, txPower, band, dist);
+            double rxPower = getLinkPower(tx, rx, txPower, band, dist);
 
             // todo: random degradation of signal?
 
-            // todo: offset reception time?
+            long start = now.getTime();
+            long end = start + airtime;
+            InterferenceIndex.Signal signal = null;
+
+            // the index requires signals in the order in which they start, so they are tracked from
+            // the time of transmission. overlaps that are only due to propagation time are ignored
+            if (trackSignals) {
+                signal = interference.add(rx, band, MathUtil.dbmToMw(rxPower), start, end);
+            }
+
+            long delivery = deliverAtEnd ? end : start;
+
+            if (useReceptionDelay) {
+                delivery += Math.round(dist / SPEED_OF_LIGHT * TimeUnit.SECONDS.toNanos(1));
+            }
+
+            if (tick > 0) {
+                delivery = ((delivery + tick - 1) / tick) * tick;
+            }
+
+            packet.retain();
+
+            ReceptionEvent event = new ReceptionEvent(packet, rxPower, band, useInterference ? signal : null);
+
+            if (tick > 0) {
+
+                // join the receiver's batch for this tick if its event has not been handled yet
+                Batch batch = batches.get(rx);
+
+                if ((batch != null) && (batch.time == delivery) && (delivery > now.getTime())) {
 
-            // todo: copy the data?
+                    batch.last.setNext(event);
+                    batch.last = event;
 
-            getSimEngine().scheduleEvent(entry.getKey(), clockControl.getCurrentTime(),
-                                         new ReceptionEvent(data, rxPower, band));
+                    receivers++;
+                    continue;
+                }
+
+                if (batch == null) {
+
+                    batch = new Batch();
+                    batches.put(rx, batch);
+                }
+
+                batch.time = delivery;
+                batch.last = event;
+            }
+
+            getSimEngine().scheduleEvent(index.getCandidateId(i),
+                                         (delivery == now.getTime()) ? now : new SimTime(delivery, TimeUnit.NANOSECONDS),
+                                         event);
+
+            receivers++;
+        }
+
+        if (span != null) {
+
+            SimTrace.end(span, now.getTime(), ((Model)tx).getModelId(),
+                         band.getCenterFrequency(), packet.getLength(), receivers);
         }
+
+        // the sender's reference is given up once the receptions hold their own
+        packet.release();
     }
 
 
@@ -171,45 +367,121 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
      */
     protected double getReceivedPower(Radio tx, Radio rx, double txPower) {
 
-        Vector3f diff = new Vector3f();
+        AntennaFrame txFrame = getAntennaFrame(tx);
+        AntennaFrame rxFrame = getAntennaFrame(rx);
+        Vector3f txPos = txFrame.getPosition();
+        Vector3f rxPos = rxFrame.getPosition();
         double rxPower = txPower;
 
         // vector between two radios
-        diff.sub(rx.getPosition(), tx.getPosition());
+        float dx = rxPos.x - txPos.x;
+        float dy = rxPos.y - txPos.y;
+        float dz = rxPos.z - txPos.z;
 
-        float distSq = diff.lengthSquared();
+        if (((dx * dx) + (dy * dy) + (dz * dz)) > 0) {
 
-        if (distSq > 0) {
+            // adjust the power according to the tx antenna pattern
+            rxPower += txFrame.getGain(dx, dy, dz);
 
-            // start with gain from transmitter
+            // invert the difference vector and get the receiver's gain
+            rxPower += rxFrame.getGain(-dx, -dy, -dz);
+        }
 
-            // find the rotations needed to get from the pointing vector
-            // in the world frame to the antenna frame. the calculated
-            // azimuth and elevation must be in the antenna frame before
-            // querying the antenna pattern
-            Vector3f diffAz = transformAndNormalize(tx.getAntennaNormal(), new Vector3f(1, 0, 0), diff);
-            Vector3f diffEl = transformAndNormalize(tx.getAntennaPointing(), new Vector3f(0, 0, 1), diff);
+        return rxPower;
+    }
 
-            double az = Math.atan2(diffAz.y, diffAz.x);
-            double el = Math.atan2(diffEl.x, diffEl.z);
 
-            // adjust the power according to the tx antenna pattern
-            rxPower += tx.getAntennaPattern().getGain(az, el);
+    /**
+     * Called by a radio that performs carrier sensing, so that the transmissions that are
+     * in flight are tracked even if interference is not being considered.
+     */
+    void enableCarrierSense() {
+        useCarrierSense = true;
+    }
 
-            // invert the difference vector and get the receiver's gain
-            diff.negate();
 
-            diffAz = transformAndNormalize(rx.getAntennaNormal(), new Vector3f(1, 0, 0), diff);
-            diffEl = transformAndNormalize(rx.getAntennaPointing(), new Vector3f(0, 0, 1), diff);
+    /**
+     * Gets the power of the transmissions that are currently in flight at a radio.
+     *
+     * @param radio The radio that is sensing the channel.
+     * @param band The band that is being sensed.
+     *
+     * @return The total power on the channel (in dBm).
+     */
+    double getChannelPower(Radio radio, Band band) {
+        return MathUtil.mwToDbm(interference.getPower(radio, band, clockControl.getCurrentTime().getTime()));
+    }
 
-            az = Math.atan2(diffAz.y, diffAz.x);
-            el = Math.atan2(diffEl.x, diffEl.z);
 
-            // adjust the power according to the tx antenna pattern
-            rxPower += rx.getAntennaPattern().getGain(az, el);
+    /**
+     * Gets the number of received power calculations that were satisfied by the link cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getLinkCacheHits() {
+        return linkHits;
+    }
+
+
+    /**
+     * Gets the number of received power calculations that were not satisfied by the link
+     * cache, including those for links that were invalidated.
+     *
+     * @return The number of cache misses.
+     */
+    public long getLinkCacheMisses() {
+        return linkMisses;
+    }
+
+
+    /**
+     * Gets the received power of a link, using a cached value if neither radio has moved
+     * beyond the tolerance since it was calculated.
+     *
+     * @param tx The transmitting radio.
+     * @param rx The receiving radio.
+     * @param txPower The singal strength at the transmitter (in dBm).
+     * @param band The band in which the radio is transmitting.
+     * @param distance The distance between the transmitter and receiver (in m).
+     *
+     * @return The signal strength at the receiving radio (in dBm).
+     */
+    private double getLinkPower(Radio tx, Radio rx, double txPower, Band band, double distance) {
+
+        if (!useLinkCache) {
+            return calculatePathLoss(tx, rx, txPower, band, distance);
         }
 
-        return rxPower;
+        AntennaFrame txFrame = getAntennaFrame(tx);
+        int txPose = txFrame.getPose(linkDistanceTolerance, linkAngleTolerance);
+        int rxPose = getAntennaFrame(rx).getPose(linkDistanceTolerance, linkAngleTolerance);
+        Link link = txFrame.getLink(rx);
+
+        if (link.isValid(txPose, rxPose, band)) {
+
+            linkHits++;
+
+            // the path loss is independent of the transmit power
+            if (txPower == link.txPower) {
+                return link.rxPower;
+            }
+
+            return link.rxPower + (txPower - link.txPower);
+        }
+
+        if (link.band != null) {
+            linkInvalidations++;
+        }
+
+        linkMisses++;
+
+        link.txPose = txPose;
+        link.rxPose = rxPose;
+        link.band = band;
+        link.txPower = txPower;
+        link.rxPower = calculatePathLoss(tx, rx, txPower, band, distance);
+
+        return link.rxPower;
     }
 
 
@@ -245,6 +517,32 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
     }
 
 
+    /**
+     * Gets the position and antenna orientation of a radio. They are cached until the
+     * physics engine steps, since the radios can only move when the physics engine
+     * steps between events.
+     *
+     * @param radio The radio.
+     *
+     * @return The current frame of the radio's antenna.
+     */
+    private AntennaFrame getAntennaFrame(Radio radio) {
+
+        AntennaFrame frame = frames.get(radio);
+
+        if (frame == null) {
+
+            frame = new AntennaFrame(radio);
+            frames.put(radio, frame);
+        }
+
+        // nothing is cached before the simulation starts, since models may still be placing their bodies
+        frame.update((clockControl.getCurrentTime() != null) ? clockControl.getPhysicsSteps() : -1);
+
+        return frame;
+    }
+
+
     @Inject(optional = true)
     public final void setNoiseFloorMean(@Named("noise-floor-mean") final float noiseFloorMean) {
         this.noiseFloorMean = noiseFloorMean;
@@ -261,4 +559,290 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
     public final void setReceiveRadiusThreshold(@Named("range-thresh") final double thresh) {
         this.rangeThresh = thresh;
     }
+
+
+    /**
+     * Enables the interference model, which delivers each packet after its time
+     * on air with the power of any overlapping transmissions.
+     *
+     * @param use True if interference should be considered.
+     */
+    @Inject(optional = true)
+    public final void setUseInterference(@Named("interference") final boolean use) {
+        this.useInterference = use;
+    }
+
+
+    /**
+     * Sets the number of free buffers of each size that are kept in the packet pool.
+     *
+     * @param size The maximum number of free buffers per size.
+     */
+    @Inject(optional = true)
+    public final void setPacketPoolSize(@Named("packet-pool-size") final int size) {
+        this.packetPoolSize = size;
+    }
+
+
+    /**
+     * Enables the reception delay, which delivers each packet once it has traveled
+     * to the receiver and been on the air for its full length. The interference model
+     * and carrier sensing do not account for the delay - a signal occupies the channel
+     * at each receiver from the time that it is transmitted.
+     *
+     * @param use True if receptions should be delayed.
+     */
+    @Inject(optional = true)
+    public final void setUseReceptionDelay(@Named("reception-delay") final boolean use) {
+        this.useReceptionDelay = use;
+    }
+
+
+    /**
+     * Sets the granularity of reception times. Each reception is delivered at the end
+     * of the tick in which it would otherwise arrive, and the receptions that a radio
+     * gets in the same tick are delivered by a single event. A tick of zero disables
+     * the rounding.
+     *
+     * @param tick The length of a tick (in us).
+     */
+    @Inject(optional = true)
+    public final void setReceptionTick(@Named("reception-tick") final long tick) {
+
+        if (tick < 0) {
+            throw new RuntimeException("The reception tick cannot be negative.");
+        }
+
+        this.receptionTick = tick;
+    }
+
+
+    @Inject(optional = true)
+    public final void setUseLinkCache(@Named("link-cache") final boolean use) {
+        this.useLinkCache = use;
+    }
+
+
+    /**
+     * Sets the distance that a radio can move before the cached links to and from
+     * it are recalculated.
+     *
+     * @param tolerance The distance tolerance (in m).
+     */
+    @Inject(optional = true)
+    public final void setLinkDistanceTolerance(@Named("link-cache-distance") final float tolerance) {
+        this.linkDistanceTolerance = tolerance;
+    }
+
+
+    /**
+     * Sets the angle that a radio's antenna can rotate before the cached links to and
+     * from it are recalculated.
+     *
+     * @param tolerance The angle tolerance (in rad).
+     */
+    @Inject(optional = true)
+    public final void setLinkAngleTolerance(@Named("link-cache-angle") final float tolerance) {
+        this.linkAngleTolerance = tolerance;
+    }
+
+
+    /**
+     * The position of a radio and the rotation from the world frame to its antenna
+     * frame between two physics steps. The rows of the rotation are the antenna normal,
+     * the cross product of the pointing vector and the normal, and the pointing vector,
+     * all in the world frame. The rotation is only calculated when it is needed, since
+     * most radios are too far away to require it.
+     */
+    private static final class AntennaFrame {
+
+        private Radio radio;
+        private long time = -1;
+        private Vector3f position;
+        private Matrix3f rotation = new Matrix3f();
+        private boolean rotationValid = false;
+        private Vector3f normal = new Vector3f();
+        private Vector3f pointing = new Vector3f();
+        private Vector3f side = new Vector3f();
+
+        // the pose against which movement is measured for the link cache
+        private int pose = -1;
+        private long poseTime = -1;
+        private Vector3f posePosition;
+        private Vector3f poseNormal;
+        private Vector3f posePointing;
+        private Map<Radio, Link> links;
+
+
+        public AntennaFrame(Radio radio) {
+            this.radio = radio;
+        }
+
+
+        /**
+         * Discards the cached values if the physics engine has stepped.
+         *
+         * @param step The number of physics steps taken so far, or a negative
+         *             value if the values should not be cached.
+         */
+        public void update(long step) {
+
+            if ((step < 0) || (step != time)) {
+
+                time = step;
+                position = radio.getPosition();
+                rotationValid = false;
+            }
+        }
+
+
+        public Vector3f getPosition() {
+            return position;
+        }
+
+
+        /**
+         * Gets the gain of the antenna in a given direction. The direction does not
+         * need to be normalized, since only the angles are used.
+         *
+         * @param dx The X component of the direction (in the world frame).
+         * @param dy The Y component of the direction (in the world frame).
+         * @param dz The Z component of the direction (in the world frame).
+         *
+         * @return The gain of the antenna (in dBi).
+         */
+        public double getGain(float dx, float dy, float dz) {
+
+            updateRotation();
+
+            // rotate the vector from the world frame to the antenna frame. the
+            // calculated azimuth and elevation must be in the antenna frame before
+            // querying the antenna pattern
+            float x = (rotation.m00 * dx) + (rotation.m01 * dy) + (rotation.m02 * dz);
+            float y = (rotation.m10 * dx) + (rotation.m11 * dy) + (rotation.m12 * dz);
+            float z = (rotation.m20 * dx) + (rotation.m21 * dy) + (rotation.m22 * dz);
+
+            return radio.getAntennaPattern().getGain(Math.atan2(y, x), Math.atan2(x, z));
+        }
+
+
+        private void updateRotation() {
+
+            if (rotationValid && (time >= 0)) {
+                return;
+            }
+
+            normal.set(radio.getAntennaNormal());
+            pointing.set(radio.getAntennaPointing());
+            side.cross(pointing, normal);
+
+            rotation.setRow(0, normal);
+            rotation.setRow(1, side);
+            rotation.setRow(2, pointing);
+
+            rotationValid = true;
+        }
+
+
+        /**
+         * Gets the pose of the radio, which is a counter that is incremented each time
+         * the radio has moved or rotated beyond the tolerance since the last increment.
+         *
+         * @param distTol The distance tolerance (in m).
+         * @param angleTol The angle tolerance (in rad).
+         *
+         * @return The current pose of the radio.
+         */
+        public int getPose(float distTol, float angleTol) {
+
+            if ((poseTime == time) && (time >= 0)) {
+                return pose;
+            }
+
+            poseTime = time;
+
+            updateRotation();
+
+            if ((pose < 0) || hasMoved(posePosition, position, distTol) ||
+                hasRotated(poseNormal, normal, angleTol) || hasRotated(posePointing, pointing, angleTol)) {
+
+                pose++;
+                posePosition = position;
+                poseNormal = new Vector3f(normal);
+                posePointing = new Vector3f(pointing);
+            }
+
+            return pose;
+        }
+
+
+        /**
+         * Gets the cached link from this radio to a receiver.
+         *
+         * @param rx The receiving radio.
+         *
+         * @return The link, which is empty if it has not been calculated.
+         */
+        public Link getLink(Radio rx) {
+
+            if (links == null) {
+                links = new IdentityHashMap<Radio, Link>();
+            }
+
+            Link link = links.get(rx);
+
+            if (link == null) {
+
+                link = new Link();
+                links.put(rx, link);
+            }
+
+            return link;
+        }
+
+
+        private static boolean hasMoved(Vector3f from, Vector3f to, float tolerance) {
+
+            Vector3f diff = new Vector3f();
+
+            diff.sub(to, from);
+
+            return diff.lengthSquared() > (tolerance * tolerance);
+        }
+
+
+        private static boolean hasRotated(Vector3f from, Vector3f to, float tolerance) {
+            return !from.equals(to) && (from.angle(to) > tolerance);
+        }
+    }
+
+
+    /**
+     * The last reception event scheduled for a radio and the time at which it is
+     * delivered, so that later receptions in the same tick can be added to it.
+     */
+    private static final class Batch {
+
+        private long time;
+        private ReceptionEvent last;
+    }
+
+
+    /**
+     * The received power of a link from one radio to another, along with the
+     * poses of the radios and the band for which it was calculated.
+     */
+    private static final class Link {
+
+        private int txPose = -1;
+        private int rxPose = -1;
+        private Band band;
+        private double txPower;
+        private double rxPower;
+
+
+        public boolean isValid(int txPose, int rxPose, Band band) {
+            return (this.txPose == txPose) && (this.rxPose == rxPose) && band.equals(this.band);
+        }
+    }
 }
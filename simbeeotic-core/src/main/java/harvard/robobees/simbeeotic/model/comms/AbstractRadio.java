@@ -67,13 +67,18 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     private PhysicalEntity host;
     private PropagationModel propModel;
     private ClockControl clock;
-    private double txRxTime = 0;
+    private double interference = 0;
+
+    // idle energy accounting
+    private IdleTimeMeter idleMeter = new IdleTimeMeter(IDLE_PERIOD);
+    private long lastEventTime = -1;    // ns
 
     // async send data
-    private Queue<byte[]> sendQueue = new LinkedList<byte[]>();
+    private Queue<Packet> sendQueue = new LinkedList<Packet>();
     private Timer sendTimer;
 
     private Set<MessageListener> listeners = new HashSet<MessageListener>();
+    private Set<PacketListener> packetListeners = new HashSet<PacketListener>();
 
     // parameters
     private Vector3f offset = new Vector3f();
@@ -84,6 +89,7 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     private int sendQueueSize = 100;
 
     private static final double BYTES_PER_KILOBIT = 125;
+    private static final long IDLE_PERIOD = 100;  // ms
 
 
     /** {@inheritDoc} */
@@ -97,26 +103,23 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
         // until someone tries to use them. it is possible that someone attached a radio for no reason...
         propModel = getSimEngine().findModelByType(PropagationModel.class);
 
-        final long idlePollPeriod = 100;   // ms
-
-        // a timer that periodically measures idle energy usage
-        createTimer(new TimerCallback() {
+        // idle energy is measured in fixed periods starting now, but it is only
+        // tallied when the radio becomes busy or the energy usage is read
+        idleMeter.start(getCurrTime().getTime());
 
-            public void fire(SimTime time) {
+        getAggregator().addUpdater(new Runnable() {
 
-                double idleTime = idlePollPeriod - txRxTime;
+            public void run() {
 
-                if (idleTime < 0) {
-                    txRxTime -= idlePollPeriod;
-                }
-                else {
+                SimTime now = clock.getCurrentTime();
 
-                    txRxTime = 0;
-                    getAggregator().addValue("energy", "radio-idle", getIdleEnergy() * (idleTime / TimeUnit.SECONDS.toMillis(1)));
+                // a period that ends at the end of the scenario has always ended by the time models finish
+                if (now != null) {
+                    updateIdleEnergy(now.getTime(), (now.getTime() == lastEventTime) ||
+                                                    (now.compareTo(clock.getEndTime()) >= 0));
                 }
             }
-
-        }, 0, TimeUnit.MICROSECONDS, idlePollPeriod, TimeUnit.MILLISECONDS);
+        });
 
 
         // a timer that pulls messages off the message queue and sends them
@@ -127,13 +130,14 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
 
                if (!sendQueue.isEmpty()) {
 
-                   // send packet
-                   transmit(sendQueue.poll());
+                   Packet packet = sendQueue.poll();
+                   long sendTime = (long)(getAirtime(packet.getLength()) * TimeUnit.SECONDS.toNanos(1));
 
-                   long sendTime = (long)(sendQueue.peek().length / BYTES_PER_KILOBIT / getBandwidth());
+                   // send packet
+                   transmit(packet);
 
-                   // schedule timer to send next packet
-                   sendTimer.reset(t, sendTime, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS);
+                   // schedule timer to send next packet once this one is on the air
+                   sendTimer.reset(t, sendTime, TimeUnit.NANOSECONDS, 0, TimeUnit.MILLISECONDS);
                }
                else {
                    sendTimer.cancel();
@@ -145,45 +149,206 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
 
     /** {@inheritDoc} */
     public void finish() {
+        updateIdleEnergy(clock.getEndTime().getTime(), true);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation notes the time of the event, which determines the order of
+     * radio activity and idle periods that end at the same time.
+     */
+    @Override
+    protected void checkpoint() {
+
+        super.checkpoint();
+
+        lastEventTime = clock.getCurrentTime().getTime();
     }
 
 
     /**
-     * Handles the reception of an RF transmission.
+     * Handles the reception of an RF transmission, or of a batch of transmissions
+     * that end within the same tick.
      *
      * @param time The time of the transmission.
      * @param event The details of the transmission.
      */
     @EventHandler
     public final void handleReceptionEvent(SimTime time, ReceptionEvent event) {
-        receive(time, event.getData(), event.getRxPower(), event.getBand().getCenterFrequency());
+
+        ReceptionEvent reception = event;
+
+        try {
+
+            while (reception != null) {
+
+                // made available to the SINR calculation of the receiving radio
+                interference = reception.getInterference();
+
+                receive(time, reception.getPacket(), reception.getRxPower(), reception.getBand().getCenterFrequency());
+
+                ReceptionEvent done = reception;
+
+                reception = reception.getNext();
+                done.getPacket().release();
+            }
+        }
+        finally {
+
+            interference = 0;
+
+            // the packets are returned to the pool once every reception has been handled,
+            // including those that were not delivered because a reception failed
+            for (; reception != null; reception = reception.getNext()) {
+                reception.getPacket().release();
+            }
+        }
     }
 
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation tallies the energy used to receive the data. Radios that
+     * override {@link #receive(SimTime, Packet, double, double)} should also override
+     * this method to pass the data to it.
+     */
     public void receive(SimTime time, byte[] data, double rxPower, double frequency) {
+        recordReception(time, data.length);
+    }
+
+
+    /**
+     * Called when a transmission is received. Radios that extend this class may
+     * override this method to receive packets without copying their payloads, and
+     * call {@link #recordReception} to tally the energy used. By default the payload
+     * is copied and passed to {@link #receive(SimTime, byte[], double, double)}.
+     *
+     * @param time The time at which the packet was received.
+     * @param packet The packet received. It may not be modified or kept after this call returns.
+     * @param rxPower The strength of the received signal (in dBm).
+     * @param frequency The frequency at which the packet was received (in MHz).
+     */
+    public void receive(SimTime time, Packet packet, double rxPower, double frequency) {
+        receive(time, packet.toByteArray(), rxPower, frequency);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation tallies the energy used to transmit the data. Radios that
+     * override {@link #transmit(Packet)} should also override this method to pass the
+     * data to it.
+     */
+    public void transmit(byte[] data) {
+        recordTransmission(data.length);
+    }
+
 
-        double timeToRx = data.length / BYTES_PER_KILOBIT / getBandwidth();
+    /**
+     * Transmits a packet. The radio takes over the caller's reference to the packet,
+     * which must not be modified afterward. Radios that extend this class may override
+     * this method to hand the packet to the propagation model without copying it, and
+     * call {@link #recordTransmission} to tally the energy used. By default the payload
+     * is copied and passed to {@link #transmit(byte[])}.
+     *
+     * @param packet The packet to send.
+     */
+    public void transmit(Packet packet) {
+
+        try {
+            transmit(packet.toByteArray());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Radios that override {@link #transmitAsync(Packet)} should also override this
+     * method to pass the data to it.
+     */
+    public boolean transmitAsync(byte[] data) {
+        return queuePacket(Packet.wrap(data));
+    }
 
-        txRxTime += timeToRx * TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * Queues a packet to be transmitted as soon as the radio is free. If the packet
+     * is accepted the radio takes over the caller's reference to it. Radios that extend
+     * this class may override this method to queue the packet without copying it, using
+     * {@link #queuePacket}. By default the payload is copied and passed to
+     * {@link #transmitAsync(byte[])}.
+     *
+     * @param packet The packet to send.
+     *
+     * @return True if the packet was queued, false if the queue is full.
+     */
+    public boolean transmitAsync(Packet packet) {
+
+        if (!transmitAsync(packet.toByteArray())) {
+            return false;
+        }
+
+        packet.release();
+
+        return true;
+    }
+
+
+    /**
+     * Tallies the energy used to receive a packet.
+     *
+     * @param time The time at which the packet was received.
+     * @param length The length of the packet (in bytes).
+     */
+    protected final void recordReception(SimTime time, int length) {
+
+        double timeToRx = getAirtime(length);
+
+        updateIdleEnergy(time.getTime(), true);
+
+        idleMeter.addBusyTime(timeToRx * TimeUnit.SECONDS.toMillis(1));
 
         getAggregator().addValue("energy", "radio-rx", timeToRx * getRxEnergy());
     }
 
 
-    /** {@inheritDoc} */
-    public void transmit(byte[] data) {
+    /**
+     * Tallies the energy used to transmit a packet at the current time.
+     *
+     * @param length The length of the packet (in bytes).
+     */
+    protected final void recordTransmission(int length) {
+
+        double timeToTx = getAirtime(length);
+        long now = clock.getCurrentTime().getTime();
 
-        double timeToTx = data.length / BYTES_PER_KILOBIT / getBandwidth();
+        // if the transmission is made by the host before the radio has handled any events at
+        // this time, it precedes an idle period that ends now
+        updateIdleEnergy(now, now == lastEventTime);
 
-        txRxTime += timeToTx * TimeUnit.SECONDS.toMillis(1);
+        idleMeter.addBusyTime(timeToTx * TimeUnit.SECONDS.toMillis(1));
 
         getAggregator().addValue("energy", "radio-tx", timeToTx * getTxEnergy());
     }
 
 
-    /** {@inheritDoc} */
-    public boolean transmitAsync(byte[] data) {
+    /**
+     * Adds a packet to the queue of packets that are sent as soon as the radio is free.
+     * If the packet is accepted the radio takes over the caller's reference to it.
+     *
+     * @param packet The packet to send.
+     *
+     * @return True if the packet was queued, false if the queue is full.
+     */
+    protected final boolean queuePacket(Packet packet) {
 
         //Check if queue is full
         if (sendQueue.size() > sendQueueSize) {
@@ -191,7 +356,7 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
         }
 
         // Queue not full - so add this packet to queue
-        sendQueue.add(data);
+        sendQueue.add(packet);
 
         // check to see if the timer is scheduled to fire. if it idle, then schedule it
         // to fire immdiately so this packet can be sent. otherwise it will be scheduled anyway
@@ -203,6 +368,26 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     }
 
     
+    /**
+     * Tallies the idle energy of the periods that have ended. Each period adds its
+     * own value, so the total is the same as that of a periodic timer.
+     *
+     * @param now The current time (in ns).
+     * @param inclusive True if a period that ends at exactly {@code now} has ended.
+     */
+    private void updateIdleEnergy(long now, boolean inclusive) {
+
+        while (idleMeter.advance(now, inclusive)) {
+
+            double idleTime = idleMeter.closePeriod();
+
+            if (idleTime > 0) {
+                getAggregator().addValue("energy", "radio-idle", getIdleEnergy() * (idleTime / TimeUnit.SECONDS.toMillis(1)));
+            }
+        }
+    }
+
+
     /**
      * Gets the amount of energy used by the radio when it is receiving a
      * message. The return from this method may be dependent on the current
@@ -233,6 +418,39 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     protected abstract double getIdleEnergy();
 
 
+    /**
+     * Gets the level of noise that a received signal must overcome. This is a
+     * sample of the noise floor in the given band, plus the peak power of the other
+     * transmissions that were concurrent with the signal currently being received.
+     *
+     * @param band The band in which the noise floor is to be measured.
+     *
+     * @return The noise and interference (in dBm).
+     */
+    protected final double getNoiseAndInterference(Band band) {
+
+        double noise = getPropagationModel().getNoiseFloor(band);
+
+        if (interference > 0) {
+            noise = MathUtil.mwToDbm(MathUtil.dbmToMw(noise) + interference);
+        }
+
+        return noise;
+    }
+
+
+    /**
+     * Gets the amount of time needed to send a packet at the bandwidth of the radio.
+     *
+     * @param length The size of the packet (in bytes).
+     *
+     * @return The time on air (in seconds).
+     */
+    final double getAirtime(int length) {
+        return length / BYTES_PER_KILOBIT / getBandwidth();
+    }
+
+
     /**
      * Gets the bandwidth of the radio.
      *
@@ -296,9 +514,32 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
      * @param rxPower The strength of the received signal (in dBm).
      */
     protected final void notifyListeners(SimTime time, byte[] data, double rxPower) {
+        notifyListeners(time, Packet.wrap(data), rxPower);
+    }
 
-        for (MessageListener l : listeners) {
-            l.messageReceived(time, data, rxPower);
+
+    /**
+     * Notifies all listeners that a packet has been received. Packet listeners are
+     * given read-only views of the payload, while message listeners share a single
+     * copy of it if the packet is pooled.
+     *
+     * @param time The simulation time when the packet was received.
+     * @param packet The packet received.
+     * @param rxPower The strength of the received signal (in dBm).
+     */
+    protected final void notifyListeners(SimTime time, Packet packet, double rxPower) {
+
+        for (PacketListener l : packetListeners) {
+            l.packetReceived(time, packet.getPayload(), rxPower);
+        }
+
+        if (!listeners.isEmpty()) {
+
+            byte[] data = packet.toByteArray();
+
+            for (MessageListener l : listeners) {
+                l.messageReceived(time, data, rxPower);
+            }
         }
     }
 
@@ -324,6 +565,45 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     }
 
 
+    /**
+     * Subscribes a listener to notifications of packet arrivals.
+     *
+     * @param listener The listener to invoke when a packet is received.
+     */
+    public final void addPacketListener(PacketListener listener) {
+        packetListeners.add(listener);
+    }
+
+
+    /**
+     * Unsubscribes a packet listener from notifications.
+     *
+     * @param listener The listener that is to be removed from the set of
+     *                 active listeners.
+     */
+    public final void removePacketListener(PacketListener listener) {
+        packetListeners.remove(listener);
+    }
+
+
+    /**
+     * Gets an empty packet from the pool of packet buffers. The caller holds the only
+     * reference to the packet, which is given up when it is transmitted.
+     *
+     * @param length The length of the payload (in bytes).
+     *
+     * @return A packet that can be filled through its {@link Packet#getBuffer() buffer}.
+     */
+    public final Packet allocatePacket(int length) {
+
+        if (propModel instanceof AbstractPropagationModel) {
+            return ((AbstractPropagationModel)propModel).allocatePacket(length);
+        }
+
+        return Packet.wrap(new byte[length]);
+    }
+
+
     /**
      * Transforms a vector in the body frame of the host to the
      * world reference frame accodring to the body's current orientation.
@@ -388,8 +668,79 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     protected final PhysicalEntity getHost() {
         return host;
     }
+
+
+    protected final ClockControl getClockControl() {
+        return clock;
+    }
+
+
+    protected final int getSendQueueSize() {
+        return sendQueueSize;
+    }
+
+
+    /**
+     * Gets the distance between the antenna base and the host's center of mass.
+     *
+     * @return The length of the antenna offset (in m).
+     */
+    final float getOffsetLength() {
+        return offset.length();
+    }
+
+
+    /**
+     * Gets the band to which the receiver is currently tuned. Propagation models that extend
+     * {@link AbstractPropagationModel} only deliver transmissions whose center frequency is
+     * in this band. The default is the full operating band.
+     *
+     * @return The band that the radio is listening to.
+     */
+    public Band getReceiveBand() {
+        return getOperatingBand();
+    }
+
+
+    /**
+     * Informs the propagation model that the receive band of this radio has changed. Radios
+     * that retune at runtime must call this method so that they continue to receive transmissions.
+     */
+    protected final void receiveBandChanged() {
+
+        if (propModel instanceof AbstractPropagationModel) {
+            ((AbstractPropagationModel)propModel).updateReceiveBand(this);
+        }
+    }
     
 
+    /**
+     * Informs the propagation model that this radio will sense the channel before
+     * transmitting, so that transmissions in flight are tracked.
+     */
+    protected final void enableCarrierSense() {
+
+        if (propModel instanceof AbstractPropagationModel) {
+            ((AbstractPropagationModel)propModel).enableCarrierSense();
+        }
+    }
+
+
+    /**
+     * Measures the energy on the channel to which the radio is listening.
+     *
+     * @return The power of the transmissions that are currently in flight at the radio (in dBm).
+     */
+    protected final double getChannelPower() {
+
+        if (propModel instanceof AbstractPropagationModel) {
+            return ((AbstractPropagationModel)propModel).getChannelPower(this, getReceiveBand());
+        }
+
+        return Double.NEGATIVE_INFINITY;
+    }
+
+
     protected final PropagationModel getPropagationModel() {
 
         if (propModel == null) {
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+/**
+ * An antenna pattern that is a precomputed table of the gains of another pattern. The gain is
+ * sampled on a regular grid of azimuth and elevation angles over {@code [-PI, PI]}, and
+ * lookups are bilinearly interpolated between the four surrounding samples. This is useful
+ * for patterns that are expensive to evaluate, since the link budget of every pair of radios
+ * queries the pattern twice. The table is immutable, so it can be shared by all radios that
+ * have the same pattern.
+ * <p/>
+ * A table is used in a scenario by setting the {@code gain-table-resolution} property
+ * (in degrees) of the antenna pattern.
+ *
+ * @author bkate
+ */
+public class AntennaGainTable implements AntennaPattern {
+
+    private AntennaPattern pattern;
+    private double[] gains;
+    private int azSteps;
+    private int elSteps;
+    private double azStep;
+    private double elStep;
+
+    private static final double TWO_PI = 2 * Math.PI;
+
+
+    /**
+     * Samples an antenna pattern.
+     *
+     * @param pattern The pattern to sample.
+     * @param resolution The maximum spacing between samples (in rad).
+     */
+    public AntennaGainTable(AntennaPattern pattern, double resolution) {
+
+        if (!(resolution > 0)) {
+            throw new RuntimeException("The resolution of an antenna gain table must be positive.");
+        }
+
+        this.pattern = pattern;
+
+        azSteps = (int)Math.ceil(TWO_PI / resolution);
+        elSteps = azSteps;
+        azStep = TWO_PI / azSteps;
+        elStep = TWO_PI / elSteps;
+
+        gains = new double[(azSteps + 1) * (elSteps + 1)];
+
+        for (int i = 0; i <= azSteps; i++) {
+            for (int j = 0; j <= elSteps; j++) {
+                gains[(i * (elSteps + 1)) + j] = pattern.getGain(-Math.PI + (i * azStep), -Math.PI + (j * elStep));
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The gain is interpolated from the samples that surround the given angles.
+     */
+    @Override
+    public double getGain(double azimuth, double elevation) {
+
+        double az = (wrap(azimuth) + Math.PI) / azStep;
+        double el = (wrap(elevation) + Math.PI) / elStep;
+
+        int i = Math.min((int)az, azSteps - 1);
+        int j = Math.min((int)el, elSteps - 1);
+
+        double fracAz = az - i;
+        double fracEl = el - j;
+
+        int row = i * (elSteps + 1);
+        int nextRow = row + elSteps + 1;
+
+        double low = gains[row + j] + (fracEl * (gains[row + j + 1] - gains[row + j]));
+        double high = gains[nextRow + j] + (fracEl * (gains[nextRow + j + 1] - gains[nextRow + j]));
+
+        return low + (fracAz * (high - low));
+    }
+
+
+    /**
+     * Gets the pattern from which the table was sampled.
+     *
+     * @return The sampled pattern.
+     */
+    public AntennaPattern getPattern() {
+        return pattern;
+    }
+
+
+    /**
+     * Wraps an angle to the range {@code [-PI, PI]}.
+     *
+     * @param angle The angle (in rad).
+     *
+     * @return The equivalent angle in the range of the table.
+     */
+    private static double wrap(double angle) {
+
+        if ((angle < -Math.PI) || (angle > Math.PI)) {
+
+            angle = Math.IEEEremainder(angle, TWO_PI);
+
+            // guard against rounding at the edges
+            angle = Math.max(Math.min(angle, Math.PI), -Math.PI);
+        }
+
+        return angle;
+    }
+}
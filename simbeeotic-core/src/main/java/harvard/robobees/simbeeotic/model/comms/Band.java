@@ -118,8 +118,9 @@ public class Band {
             return true;
         }
 
-        return (((other.getCenterFrequency() - otherHalfWidth) <= (centerFreq + halfWidth)) ||
-                ((other.getCenterFrequency() + otherHalfWidth) >= (centerFreq - halfWidth)));
+        // bands that only share an edge (such as adjacent channels) do not overlap
+        return (((other.getCenterFrequency() - otherHalfWidth) < (centerFreq + halfWidth)) &&
+                ((other.getCenterFrequency() + otherHalfWidth) > (centerFreq - halfWidth)));
     }
 
 
@@ -63,11 +63,11 @@ public class CC2420 extends ZigbeeRadio {
      * The transmit power can be adjusted with the {@link #setTransmitPowerLevel(int)} method.
      */
     @Override
-    public void transmit(byte[] data) {
+    public void transmit(Packet packet) {
 
-        super.transmit(data);
+        recordTransmission(packet.getLength());
 
-        getPropagationModel().transmit(this, data, txPower, getChannel());
+        getPropagationModel().transmit(this, packet, txPower, getChannel());
     }
 
 
@@ -82,19 +82,22 @@ public class CC2420 extends ZigbeeRadio {
      * </ol>
      */
     @Override
-    public void receive(SimTime time, byte[] data, double rxPower, double frequency) {
+    public void receive(SimTime time, Packet packet, double rxPower, double frequency) {
 
-        super.receive(time, data, rxPower, frequency);
+        recordReception(time, packet.getLength());
 
         // check if it is within the range of sensitivity of the radio
         if (rxPower < minRxPower) {
             return;
         }
 
-        // todo: check the frequency against the current channel
+        // ignore transmissions on other channels
+        if (!getChannel().isInBand(frequency)) {
+            return;
+        }
 
         // consult the PRR/SNR curve
-        double snr = rxPower - getPropagationModel().getNoiseFloor(getOperatingBand());
+        double snr = rxPower - getNoiseAndInterference(getOperatingBand());
         double prr = 0;
 
         // this function approximates the PRR/SNR curve from the paper
@@ -116,7 +119,7 @@ public class CC2420 extends ZigbeeRadio {
         }
 
         if (getRandom().nextDouble() <= prr) {
-            notifyListeners(time, data, rxPower);
+            notifyListeners(time, packet, rxPower);
         }
     }
 
@@ -55,17 +55,38 @@ public class DefaultRadio extends AbstractRadio {
     // You don't snuggle with Max Power, you strap yourself in and feel the G's!
 
 
+    /** {@inheritDoc} */
+    @Override
+    public void transmit(byte[] data) {
+        transmit(Packet.wrap(data));
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void receive(SimTime time, byte[] data, double rxPower, double frequency) {
+        receive(time, Packet.wrap(data), rxPower, frequency);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean transmitAsync(Packet packet) {
+        return queuePacket(packet);
+    }
+
+
     /**
      * {@inheritDoc}
      *
      * Transmits at the maximum power.
      */
     @Override
-    public void transmit(byte[] data) {
+    public void transmit(Packet packet) {
 
-        super.transmit(data);
+        recordTransmission(packet.getLength());
 
-        getPropagationModel().transmit(this, data, maxPower, band);
+        getPropagationModel().transmit(this, packet, maxPower, band);
     }
 
 
@@ -76,15 +97,15 @@ public class DefaultRadio extends AbstractRadio {
      * registered with this radio to receive notifications when a message is received.
      */
     @Override
-    public void receive(SimTime time, byte[] data, double rxPower, double frequency) {
+    public void receive(SimTime time, Packet packet, double rxPower, double frequency) {
 
-        super.receive(time, data, rxPower, frequency);
+        recordReception(time, packet.getLength());
 
-        double snr = rxPower - getPropagationModel().getNoiseFloor(getOperatingBand());
+        double snr = rxPower - getNoiseAndInterference(getOperatingBand());
 
         // enough power to capture signal?
         if (snr >= snrMargin) {
-            notifyListeners(time, data, rxPower);
+            notifyListeners(time, packet, rxPower);
         }
     }
 
@@ -113,7 +134,7 @@ public class DefaultRadio extends AbstractRadio {
     /** {@inheritDoc} */
     @Override
     protected double getBandwidth() {
-        return bandwidth;
+        return bandwidth / 125;  // convert Bps to kbps
     }
 
 
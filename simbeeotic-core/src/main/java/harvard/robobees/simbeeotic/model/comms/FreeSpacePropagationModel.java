@@ -32,6 +32,8 @@
 package harvard.robobees.simbeeotic.model.comms;
 
 
+import harvard.robobees.simbeeotic.model.ConcurrentInitialization;
+
 import static harvard.robobees.simbeeotic.environment.PhysicalConstants.SPEED_OF_LIGHT;
 
 
@@ -46,6 +48,7 @@ import static harvard.robobees.simbeeotic.environment.PhysicalConstants.SPEED_OF
  *
  * @author bkate
  */
+@ConcurrentInitialization
 public class FreeSpacePropagationModel extends AbstractPropagationModel {
 
     private static final double MIN_DISTANCE = 0.01;
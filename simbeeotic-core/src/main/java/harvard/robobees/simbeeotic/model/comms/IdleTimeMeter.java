@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the idle time of a radio in fixed periods. In each period, the time that the
+ * radio spent transmitting or receiving is deducted from the length of the period and the
+ * remainder is idle. Busy time in excess of a period is carried into the next one.
+ * <p/>
+ * The periods are not closed by a timer. Instead, the periods that have ended are closed
+ * whenever the radio becomes busy or its energy usage is read. Each period is closed in
+ * turn with the same arithmetic as a periodic timer, so the results are identical.
+ *
+ * @author bkate
+ */
+final class IdleTimeMeter {
+
+    private final long period;      // ms
+    private final long periodNanos;
+    private long start = 0;         // ns
+    private long ended = 0;
+    private long closed = 0;
+    private double busy = 0;        // ms
+
+
+    /**
+     * Creates a meter.
+     *
+     * @param period The length of a period (in ms).
+     */
+    public IdleTimeMeter(long period) {
+
+        this.period = period;
+
+        periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+    }
+
+
+    /**
+     * Starts measuring. The first period ends at the start time and the rest
+     * end every period thereafter.
+     *
+     * @param now The start time (in ns).
+     */
+    public void start(long now) {
+        start = now;
+    }
+
+
+    /**
+     * Adds time during which the radio was transmitting or receiving. The periods that
+     * have ended must be closed first, so that the time is deducted from the right period.
+     *
+     * @param time The busy time (in ms).
+     */
+    public void addBusyTime(double time) {
+        busy += time;
+    }
+
+
+    /**
+     * Advances the meter to a point in time, noting the periods that have ended.
+     *
+     * @param now The current time (in ns).
+     * @param inclusive True if a period that ends at exactly {@code now} has ended.
+     *
+     * @return True if there are ended periods that have not been closed.
+     */
+    public boolean advance(long now, boolean inclusive) {
+
+        long elapsed = now - start;
+
+        if (elapsed >= 0) {
+            ended = Math.max(ended, inclusive ? (elapsed / periodNanos) + 1 : (elapsed + periodNanos - 1) / periodNanos);
+        }
+
+        return closed < ended;
+    }
+
+
+    /**
+     * Closes the next period that has ended.
+     *
+     * @return The idle time in the period (in ms), which is zero if the radio was busy for all of it.
+     */
+    public double closePeriod() {
+
+        closed++;
+
+        double idle = period - busy;
+
+        if (idle < 0) {
+
+            busy -= period;
+            return 0;
+        }
+
+        busy = 0;
+
+        return idle;
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+
+/**
+ * Tracks the signals that are in flight at each receiver so that the interference
+ * between overlapping transmissions can be determined. A signal occupies its band
+ * at a receiver for the duration of the packet.
+ * <p/>
+ * The signals at a receiver are kept in an interval index for each channel (band) that
+ * the receiver has heard, ordered by the time that they end. Each channel keeps the total
+ * power of the in-flight signals that overlap it, which only increases when a signal
+ * arrives. The interference of a signal is the largest total power of the other signals
+ * that were concurrently in flight at any moment during its reception, so it is found
+ * from the totals recorded at each arrival since the signal started. These are kept in a
+ * log that only holds the totals that are not exceeded by a later one, so an arrival costs
+ * O(log k) for k signals in flight at the receiver, rather than a scan of all of them.
+ * The same signals are used to determine the energy on a channel when a radio performs
+ * carrier sensing.
+ * <p/>
+ * Signals must be added in the order in which they start.
+ *
+ * @author bkate
+ */
+class InterferenceIndex {
+
+    private Map<Radio, Receiver> receivers = new IdentityHashMap<Radio, Receiver>();
+
+
+    /**
+     * Records the arrival of a signal at a receiver.
+     *
+     * @param rx The receiving radio.
+     * @param band The band of the transmission.
+     * @param power The power of the signal at the receiver (in mW).
+     * @param start The time that the first bit arrives (in nanoseconds).
+     * @param end The time that the last bit arrives (in nanoseconds).
+     *
+     * @return The signal, whose interference is determined once it ends.
+     */
+    public Signal add(Radio rx, Band band, double power, long start, long end) {
+
+        Receiver receiver = receivers.get(rx);
+
+        if (receiver == null) {
+
+            receiver = new Receiver();
+            receivers.put(rx, receiver);
+        }
+
+        // signals that ended before this one started can never interfere again
+        receiver.prune(start);
+
+        Channel own = receiver.getChannel(band);
+
+        for (Channel channel : receiver.channels) {
+
+            if (band.overlaps(channel.band)) {
+
+                channel.total += power;
+                channel.record();
+            }
+        }
+
+        Signal signal = new Signal(own, band, power, start, end, own.seq);
+
+        own.inFlight.add(signal);
+        own.arrivals.add(signal);
+
+        return signal;
+    }
+
+
+    /**
+     * Gets the total power of the signals that are in flight at a receiver.
+     *
+     * @param rx The receiving radio.
+     * @param band The band in which the power is measured.
+     * @param now The current time (in nanoseconds).
+     *
+     * @return The power of the signals that overlap the band (in mW).
+     */
+    public double getPower(Radio rx, Band band, long now) {
+
+        Receiver receiver = receivers.get(rx);
+        double power = 0;
+
+        if (receiver == null) {
+            return power;
+        }
+
+        receiver.prune(now);
+
+        for (Channel channel : receiver.channels) {
+
+            if (!band.overlaps(channel.band)) {
+                continue;
+            }
+
+            for (Signal signal : channel.inFlight) {
+
+                if (signal.start <= now) {
+                    power += signal.power;
+                }
+            }
+        }
+
+        return power;
+    }
+
+
+    /**
+     * The channels heard by a single receiver.
+     */
+    private static final class Receiver {
+
+        private List<Channel> channels = new ArrayList<Channel>();
+
+
+        /**
+         * Gets the channel for a band, creating it if the receiver has not heard it before.
+         */
+        public Channel getChannel(Band band) {
+
+            for (Channel channel : channels) {
+
+                if (channel.band.equals(band)) {
+                    return channel;
+                }
+            }
+
+            Channel channel = new Channel(band);
+
+            // signals in flight on other channels may already overlap the new one
+            for (Channel other : channels) {
+
+                for (Signal signal : other.inFlight) {
+
+                    if (band.overlaps(signal.band)) {
+                        channel.total += signal.power;
+                    }
+                }
+            }
+
+            channels.add(channel);
+
+            return channel;
+        }
+
+
+        /**
+         * Removes the signals that ended at or before a given time.
+         */
+        public void prune(long time) {
+
+            boolean idle = true;
+
+            for (Channel channel : channels) {
+
+                while (!channel.inFlight.isEmpty() && (channel.inFlight.peek().end <= time)) {
+
+                    Signal signal = channel.inFlight.poll();
+
+                    signal.finish();
+
+                    for (Channel other : channels) {
+
+                        if (signal.band.overlaps(other.band)) {
+                            other.total -= signal.power;
+                        }
+                    }
+                }
+
+                channel.trim();
+
+                idle &= channel.inFlight.isEmpty();
+            }
+
+            // avoid the accumulation of rounding errors
+            if (idle) {
+
+                for (Channel channel : channels) {
+                    channel.total = 0;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * The signals in flight in a single band at a receiver.
+     */
+    private static final class Channel {
+
+        private Band band;
+        private double total = 0;    // mW, of all signals overlapping the band
+        private long seq = -1;       // the number of arrivals, less one
+
+        private PriorityQueue<Signal> inFlight = new PriorityQueue<Signal>(16, new Comparator<Signal>() {
+
+            public int compare(Signal s1, Signal s2) {
+                return (s1.end < s2.end) ? -1 : ((s1.end == s2.end) ? 0 : 1);
+            }
+        });
+
+        // the signals in order of arrival, including some that have finished
+        private ArrayDeque<Signal> arrivals = new ArrayDeque<Signal>();
+
+        // the totals after each arrival that are larger than all later totals
+        private long[] logSeq = new long[16];
+        private double[] logTotal = new double[16];
+        private int logStart = 0;
+        private int logEnd = 0;
+
+
+        public Channel(Band band) {
+            this.band = band;
+        }
+
+
+        /**
+         * Records the total after an arrival.
+         */
+        public void record() {
+
+            seq++;
+
+            while ((logEnd > logStart) && (logTotal[logEnd - 1] <= total)) {
+                logEnd--;
+            }
+
+            if (logEnd == logSeq.length) {
+
+                int size = logEnd - logStart;
+                int capacity = (size * 2 < logSeq.length) ? logSeq.length : logSeq.length * 2;
+                long[] newSeq = new long[capacity];
+                double[] newTotal = new double[capacity];
+
+                System.arraycopy(logSeq, logStart, newSeq, 0, size);
+                System.arraycopy(logTotal, logStart, newTotal, 0, size);
+
+                logSeq = newSeq;
+                logTotal = newTotal;
+                logStart = 0;
+                logEnd = size;
+            }
+
+            logSeq[logEnd] = seq;
+            logTotal[logEnd] = total;
+            logEnd++;
+        }
+
+
+        /**
+         * Gets the largest total recorded since the given arrival.
+         */
+        public double getPeak(long since) {
+
+            int low = logStart;
+            int high = logEnd - 1;
+
+            // find the first entry at or after the arrival, which exceeds all later ones
+            while (low < high) {
+
+                int mid = (low + high) >>> 1;
+
+                if (logSeq[mid] < since) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+
+            return logTotal[low];
+        }
+
+
+        /**
+         * Discards the log entries that precede every signal in flight.
+         */
+        public void trim() {
+
+            while (!arrivals.isEmpty() && arrivals.peek().finished) {
+                arrivals.poll();
+            }
+
+            if (arrivals.isEmpty()) {
+
+                logStart = 0;
+                logEnd = 0;
+                return;
+            }
+
+            long oldest = arrivals.peek().seq;
+
+            while ((logStart < logEnd - 1) && (logSeq[logStart] < oldest)) {
+                logStart++;
+            }
+        }
+    }
+
+
+    /**
+     * A signal in flight at a receiver.
+     */
+    static final class Signal {
+
+        private Channel channel;
+        private Band band;
+        private double power;
+        private long start;
+        private long end;
+        private long seq;
+        private boolean finished = false;
+        private double interference = 0;
+
+
+        private Signal(Channel channel, Band band, double power, long start, long end, long seq) {
+
+            this.channel = channel;
+            this.band = band;
+            this.power = power;
+            this.start = start;
+            this.end = end;
+            this.seq = seq;
+        }
+
+
+        /**
+         * Fixes the interference once the signal has ended.
+         */
+        private void finish() {
+
+            interference = getInterference();
+            finished = true;
+            channel = null;
+        }
+
+
+        /**
+         * Gets the largest total power of the other signals that were in flight at
+         * the same time as this one. Until the signal is removed from the index, this
+         * accounts for the signals that have arrived so far.
+         *
+         * @return The interference (in mW).
+         */
+        public double getInterference() {
+
+            if (finished) {
+                return interference;
+            }
+
+            return Math.max(channel.getPeak(seq) - power, 0);
+        }
+    }
+}
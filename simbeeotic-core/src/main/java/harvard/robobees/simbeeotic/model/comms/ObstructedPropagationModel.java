@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import com.bulletphysics.collision.broadphase.SimpleBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.collision.dispatch.CollisionWorld;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.linearmath.Transform;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
+import harvard.robobees.simbeeotic.environment.WorldMap;
+import harvard.robobees.simbeeotic.model.ConcurrentInitialization;
+import harvard.robobees.simbeeotic.model.EntityInfo;
+import org.apache.log4j.Logger;
+
+import javax.vecmath.Vector3f;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static harvard.robobees.simbeeotic.model.PhysicalEntity.COLLISION_BEE;
+import static harvard.robobees.simbeeotic.model.PhysicalEntity.COLLISION_TERRAIN;
+
+
+/**
+ * A free space propagation model that attenuates signals which pass through the static
+ * geometry of the world (obstacles and structures). A ray is cast between the two radios
+ * and each object that it crosses reduces the received power by an amount that depends on
+ * the object's material. The ground and terrain do not obstruct signals.
+ * <p/>
+ * The attenuation of an object is taken from its metadata. An {@code rf-attenuation}
+ * property gives the loss directly (in dB), otherwise the {@code material} property is
+ * looked up in the table of material attenuations. Objects with neither use the default
+ * wall attenuation.
+ * <p/>
+ * The rays are cast against a separate collision world that holds only the static geometry,
+ * so the cost of a ray does not grow with the number of bees.
+ * <p/>
+ * Since the geometry does not move, the obstruction loss of a link is cached according to
+ * the cells of a grid that contain its endpoints. Radios that stay within their cells do
+ * not cast new rays, at the cost of treating every link between the same two cells alike:
+ * the loss of the first ray cast between two cells is reused for every pair of endpoints in
+ * them, even if a wall passes through one of the cells. The cells should therefore be small
+ * compared to the geometry.
+ *
+ * @author bkate
+ */
+@ConcurrentInitialization
+public class ObstructedPropagationModel extends FreeSpacePropagationModel {
+
+    private DiscreteDynamicsWorld world;
+    private WorldMap map;
+    private CollisionWorld staticWorld;
+
+    private Map<EntityInfo, Double> objectLoss = new IdentityHashMap<EntityInfo, Double>();
+    private Map<String, Double> materials = new HashMap<String, Double>();
+    private LosCache losCache;
+    private CellPair probe = new CellPair();
+
+    private long losHits = 0;
+    private long losMisses = 0;
+
+    // parameters
+    private double wallAttenuation = 10;     // dB
+    private float losCacheResolution = 0.1f; // m
+    private int losCacheSize = 65536;
+
+    private static Logger logger = Logger.getLogger(ObstructedPropagationModel.class);
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize() {
+
+        super.initialize();
+
+        if (losCacheResolution > 0) {
+            losCache = new LosCache(losCacheSize);
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void finish() {
+
+        super.finish();
+
+        if (losCache != null) {
+
+            long total = losHits + losMisses;
+
+            logger.info("line of sight cache: " + losHits + " hits, " + losMisses + " misses, hit rate " +
+                        ((total > 0) ? (Math.round(1000.0 * losHits / total) / 10.0) : 0) + "%");
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Subtracts the loss due to obstructions from the free space received power.
+     */
+    @Override
+    protected double calculatePathLoss(Radio tx, Radio rx, double txPower, Band band, double distance) {
+        return super.calculatePathLoss(tx, rx, txPower, band, distance) - getObstructionLoss(getAntennaPosition(tx), getAntennaPosition(rx));
+    }
+
+
+    /**
+     * Gets the total attenuation of the objects that lie between two points.
+     *
+     * @param from One end of the link (in the world frame).
+     * @param to The other end of the link (in the world frame).
+     *
+     * @return The obstruction loss (in dB).
+     */
+    public double getObstructionLoss(Vector3f from, Vector3f to) {
+
+        if (losCache == null) {
+            return castRay(from, to);
+        }
+
+        probe.set(from, to, losCacheResolution);
+
+        Double loss = losCache.get(probe);
+
+        if (loss != null) {
+
+            losHits++;
+            return loss;
+        }
+
+        losMisses++;
+        loss = castRay(from, to);
+
+        losCache.put(new CellPair(probe), loss);
+
+        return loss;
+    }
+
+
+    /**
+     * Gets the number of obstruction calculations that were satisfied by the line of sight cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getLosCacheHits() {
+        return losHits;
+    }
+
+
+    /**
+     * Gets the number of obstruction calculations that required a ray to be cast.
+     *
+     * @return The number of cache misses.
+     */
+    public long getLosCacheMisses() {
+        return losMisses;
+    }
+
+
+    /**
+     * Casts a ray between two points and sums the attenuation of each object that it crosses.
+     */
+    private double castRay(Vector3f from, Vector3f to) {
+
+        if (staticWorld == null) {
+            staticWorld = createStaticWorld();
+        }
+
+        ObstructionCallback callback = new ObstructionCallback();
+
+        staticWorld.rayTest(from, to, callback);
+
+        double loss = 0;
+
+        for (EntityInfo info : callback.getObstructions().keySet()) {
+            loss += getAttenuation(info);
+        }
+
+        return loss;
+    }
+
+
+    /**
+     * Creates a collision world that holds a copy of each static object that can obstruct a
+     * signal, sharing its shape and metadata. It is created on the first ray rather than during
+     * initialization, since other models may still be adding their bodies to the physics world.
+     */
+    private CollisionWorld createStaticWorld() {
+
+        DefaultCollisionConfiguration config = new DefaultCollisionConfiguration();
+        CollisionWorld statics = new CollisionWorld(new CollisionDispatcher(config), new SimpleBroadphase(), config);
+        int groundId = map.getTerrain().getObjectId();
+        Transform trans = new Transform();
+
+        for (int i = 0; i < world.getNumCollisionObjects(); i++) {
+
+            CollisionObject obj = world.getCollisionObjectArray().getQuick(i);
+            EntityInfo info = (EntityInfo)obj.getUserPointer();
+
+            // the ground and terrain do not obstruct signals
+            if (!obj.isStaticObject() || (info == null) || (info.getObjectId() == groundId) ||
+                ((obj.getBroadphaseHandle().collisionFilterGroup & COLLISION_TERRAIN) == 0)) {
+
+                continue;
+            }
+
+            CollisionObject copy = new CollisionObject();
+
+            copy.setCollisionShape(obj.getCollisionShape());
+            copy.setWorldTransform(obj.getWorldTransform(trans));
+            copy.setUserPointer(info);
+
+            statics.addCollisionObject(copy, COLLISION_TERRAIN, COLLISION_BEE);
+        }
+
+        return statics;
+    }
+
+
+    /**
+     * Gets the attenuation of a single object, according to its metadata.
+     */
+    private double getAttenuation(EntityInfo info) {
+
+        Double loss = objectLoss.get(info);
+
+        if (loss == null) {
+
+            Map<String, Object> meta = info.getMetadata();
+            Object value = (meta != null) ? meta.get("rf-attenuation") : null;
+            Object material = (meta != null) ? meta.get("material") : null;
+
+            if (value != null) {
+
+                try {
+                    loss = Double.parseDouble(value.toString().trim());
+                }
+                catch(NumberFormatException nfe) {
+                    throw new RuntimeException("Invalid RF attenuation for object " + info.getObjectId() + ": '" + value + "'.", nfe);
+                }
+            }
+            else if ((material != null) && materials.containsKey(material.toString().trim())) {
+                loss = materials.get(material.toString().trim());
+            }
+            else {
+                loss = wallAttenuation;
+            }
+
+            objectLoss.put(info, loss);
+        }
+
+        return loss;
+    }
+
+
+    @Inject
+    public final void setDynamicsWorld(@GlobalScope DiscreteDynamicsWorld world) {
+        this.world = world;
+    }
+
+
+    @Inject
+    public final void setWorldMap(@GlobalScope WorldMap map) {
+        this.map = map;
+    }
+
+
+    /**
+     * Sets the attenuation of objects whose material is not given or is unknown.
+     *
+     * @param loss The attenuation of a single object (in dB).
+     */
+    @Inject(optional = true)
+    public final void setWallAttenuation(@Named("wall-attenuation") final double loss) {
+        this.wallAttenuation = loss;
+    }
+
+
+    /**
+     * Sets the attenuation of materials, given as a comma separated list of material
+     * names and losses (in dB), for example: {@code "concrete=12,wood=4,glass=2"}.
+     *
+     * @param spec The material attenuations.
+     */
+    @Inject(optional = true)
+    public final void setMaterialAttenuation(@Named("material-attenuation") final String spec) {
+
+        for (String entry : spec.split(",")) {
+
+            if (entry.trim().length() == 0) {
+                continue;
+            }
+
+            int split = entry.indexOf('=');
+
+            if (split < 0) {
+                throw new RuntimeException("A material attenuation must be defined as 'material=loss': " + entry);
+            }
+
+            try {
+                materials.put(entry.substring(0, split).trim(), Double.parseDouble(entry.substring(split + 1).trim()));
+            }
+            catch(NumberFormatException nfe) {
+                throw new RuntimeException("Could not parse material attenuation: " + entry, nfe);
+            }
+        }
+    }
+
+
+    /**
+     * Sets the size of the grid cells used by the line of sight cache. A resolution
+     * of zero disables the cache. Every link between the same two cells is given the
+     * loss of the first ray cast between them, so a wall that passes through a cell
+     * is not resolved within it. The default is 0.1 m.
+     *
+     * @param res The length of a cell edge (in m).
+     */
+    @Inject(optional = true)
+    public final void setLosCacheResolution(@Named("los-cache-resolution") final float res) {
+        this.losCacheResolution = res;
+    }
+
+
+    /**
+     * Sets the maximum number of links kept in the line of sight cache. The least
+     * recently used links are evicted first.
+     *
+     * @param size The number of cached links.
+     */
+    @Inject(optional = true)
+    public final void setLosCacheSize(@Named("los-cache-size") final int size) {
+        this.losCacheSize = size;
+    }
+
+
+    /**
+     * A callback that records the distinct objects crossed by a ray. Baked static meshes
+     * are resolved to the primitive that owns the triangle that was hit, so that an object
+     * is counted once no matter how many of its faces the ray crosses.
+     */
+    private static class ObstructionCallback extends CollisionWorld.RayResultCallback {
+
+        private Map<EntityInfo, Boolean> obstructions = new IdentityHashMap<EntityInfo, Boolean>();
+
+
+        public ObstructionCallback() {
+
+            // static geometry only collides with bees
+            collisionFilterGroup = COLLISION_BEE;
+            collisionFilterMask = COLLISION_TERRAIN;
+        }
+
+
+        public float addSingleResult(CollisionWorld.LocalRayResult rayResult, boolean normalInWorldSpace) {
+
+            EntityInfo info = (EntityInfo)rayResult.collisionObject.getUserPointer();
+            int triangle = (rayResult.localShapeInfo != null) ? rayResult.localShapeInfo.triangleIndex : -1;
+
+            obstructions.put(info.getPart(triangle), Boolean.TRUE);
+
+            // every hit along the ray is wanted, not just the closest
+            return closestHitFraction;
+        }
+
+
+        public Map<EntityInfo, Boolean> getObstructions() {
+            return obstructions;
+        }
+    }
+
+
+    /**
+     * The grid cells that contain the two ends of a link. The pair is unordered, since
+     * the obstruction loss is the same in both directions.
+     */
+    private static final class CellPair {
+
+        private int ax, ay, az;
+        private int bx, by, bz;
+
+
+        public CellPair() {
+        }
+
+
+        public CellPair(CellPair other) {
+
+            ax = other.ax;
+            ay = other.ay;
+            az = other.az;
+            bx = other.bx;
+            by = other.by;
+            bz = other.bz;
+        }
+
+
+        public void set(Vector3f from, Vector3f to, float res) {
+
+            int fx = (int)Math.floor(from.x / res);
+            int fy = (int)Math.floor(from.y / res);
+            int fz = (int)Math.floor(from.z / res);
+            int tx = (int)Math.floor(to.x / res);
+            int ty = (int)Math.floor(to.y / res);
+            int tz = (int)Math.floor(to.z / res);
+
+            boolean swap = (fx > tx) || ((fx == tx) && ((fy > ty) || ((fy == ty) && (fz > tz))));
+
+            ax = swap ? tx : fx;
+            ay = swap ? ty : fy;
+            az = swap ? tz : fz;
+            bx = swap ? fx : tx;
+            by = swap ? fy : ty;
+            bz = swap ? fz : tz;
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (!(o instanceof CellPair)) {
+                return false;
+            }
+
+            CellPair other = (CellPair)o;
+
+            return (ax == other.ax) && (ay == other.ay) && (az == other.az) &&
+                   (bx == other.bx) && (by == other.by) && (bz == other.bz);
+        }
+
+
+        @Override
+        public int hashCode() {
+
+            int hash = ax;
+
+            hash = (31 * hash) + ay;
+            hash = (31 * hash) + az;
+            hash = (31 * hash) + bx;
+            hash = (31 * hash) + by;
+            hash = (31 * hash) + bz;
+
+            return hash;
+        }
+    }
+
+
+    /**
+     * A bounded map of links to their obstruction loss that evicts the least recently used link.
+     */
+    private static final class LosCache {
+
+        private Map<CellPair, Double> entries = new LinkedHashMap<CellPair, Double>(16, 0.75f, true);
+        private int maxSize;
+
+
+        public LosCache(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+
+        public Double get(CellPair link) {
+            return entries.get(link);
+        }
+
+
+        public void put(CellPair link, Double loss) {
+
+            entries.put(link, loss);
+
+            // the map is in access order, so the first entry is the least recently used
+            if (entries.size() > maxSize) {
+
+                Iterator<CellPair> it = entries.keySet().iterator();
+
+                it.next();
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * The payload of a radio transmission. A packet may wrap an existing byte array or
+ * be drawn from a pool of buffers with {@link AbstractRadio#allocatePacket(int)}. Pooled
+ * packets are reference counted - the sender owns one reference, which is given up when
+ * the packet is transmitted, and each pending reception holds another. Once the last
+ * reference is released the buffer is returned to the pool for reuse, and the packet can
+ * no longer be used. Each allocation creates a new packet, so a stale reference to a released
+ * packet never sees the payload of a later one.
+ * <p/>
+ * Receivers are handed read-only views of the same buffer, so a single payload is shared
+ * by all recipients without being copied. A view is only valid for the duration of the
+ * callback that receives it, and must be copied if the data is needed afterward.
+ *
+ * @author bkate
+ */
+public final class Packet {
+
+    private ByteBuffer buffer;
+    private byte[] array;
+    private PacketPool pool;
+    private int length;
+    private int refs = 1;
+
+
+    /**
+     * Creates a packet whose payload is stored in a pooled buffer.
+     *
+     * @param buffer The buffer that holds the payload.
+     * @param length The length of the payload (in bytes).
+     * @param pool The pool to which the buffer is returned when it is released.
+     */
+    Packet(ByteBuffer buffer, int length, PacketPool pool) {
+
+        this.buffer = buffer;
+        this.length = length;
+        this.pool = pool;
+    }
+
+
+    /**
+     * Creates a packet that is backed by the given array.
+     *
+     * @param data The payload.
+     */
+    private Packet(byte[] data) {
+
+        array = data;
+        buffer = ByteBuffer.wrap(data);
+        length = data.length;
+    }
+
+
+    /**
+     * Creates a packet that uses the given array as its payload. The data is not
+     * copied and the packet is not pooled.
+     *
+     * @param data The payload.
+     *
+     * @return A packet that wraps the data.
+     */
+    public static Packet wrap(byte[] data) {
+        return new Packet(data);
+    }
+
+
+    /**
+     * Gets the size of the payload.
+     *
+     * @return The length of the payload (in bytes).
+     */
+    public int getLength() {
+        return length;
+    }
+
+
+    /**
+     * Gets a writable view of the payload, positioned at the first byte. The sender
+     * fills the packet through this view, and must not modify it after the packet
+     * has been transmitted.
+     *
+     * @return A view of the payload.
+     */
+    public ByteBuffer getBuffer() {
+
+        checkReleased();
+
+        ByteBuffer view = buffer.duplicate();
+
+        view.clear();
+        view.limit(length);
+
+        return view;
+    }
+
+
+    /**
+     * Gets a read-only view of the payload, positioned at the first byte.
+     *
+     * @return A view of the payload that cannot be used to modify it.
+     */
+    public ByteBuffer getPayload() {
+
+        checkReleased();
+
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+
+        view.clear();
+        view.limit(length);
+
+        return view;
+    }
+
+
+    /**
+     * Gets the payload as an array. The wrapped array is returned if this packet is not
+     * pooled, otherwise the payload is copied into a new array.
+     *
+     * @return The payload.
+     */
+    public byte[] toByteArray() {
+
+        if (array != null) {
+            return array;
+        }
+
+        byte[] data = new byte[length];
+
+        getPayload().get(data);
+
+        return data;
+    }
+
+
+    /**
+     * Adds a reference to this packet, so that it is not returned to the pool until
+     * the reference is released. This has no effect if the packet is not pooled.
+     */
+    public void retain() {
+
+        if (pool == null) {
+            return;
+        }
+
+        checkReleased();
+
+        refs++;
+    }
+
+
+    /**
+     * Releases a reference to this packet. The buffer is returned to the pool when the
+     * last reference is released. This has no effect if the packet is not pooled.
+     */
+    public void release() {
+
+        if (pool == null) {
+            return;
+        }
+
+        checkReleased();
+
+        if (--refs == 0) {
+
+            pool.recycle(buffer);
+
+            // the buffer now belongs to the pool, and may hold the payload of another packet
+            buffer = null;
+        }
+    }
+
+
+    /**
+     * Determines if the last reference to this packet has been released.
+     *
+     * @return True if the packet can no longer be used.
+     */
+    public boolean isReleased() {
+        return buffer == null;
+    }
+
+
+    private void checkReleased() {
+
+        if (buffer == null) {
+            throw new RuntimeException("The packet has already been released.");
+        }
+    }
+}
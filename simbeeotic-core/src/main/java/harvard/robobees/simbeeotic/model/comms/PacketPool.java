@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A pool of packet buffers. Buffers are grouped by capacity into powers of two, and
+ * a bounded number of free buffers are kept for each size.
+ *
+ * @author bkate
+ */
+final class PacketPool {
+
+    private List<ArrayDeque<ByteBuffer>> free = new ArrayList<ArrayDeque<ByteBuffer>>();
+    private int maxFree;
+
+    private long allocations = 0;
+    private long reuses = 0;
+
+    private static final int MIN_SIZE_CLASS = 4;   // 16 bytes
+    private static final int MAX_SIZE_CLASS = 30;
+
+
+    /**
+     * @param maxFree The maximum number of free buffers to keep for each buffer size.
+     */
+    public PacketPool(int maxFree) {
+
+        this.maxFree = maxFree;
+
+        for (int i = 0; i <= MAX_SIZE_CLASS; i++) {
+            free.add(new ArrayDeque<ByteBuffer>());
+        }
+    }
+
+
+    /**
+     * Creates a packet whose payload is stored in a pooled buffer, allocating a new buffer
+     * if none of the right size are free. The payload is zeroed, as it would be in a new buffer.
+     *
+     * @param length The length of the payload (in bytes).
+     *
+     * @return A packet with a single reference, held by the caller.
+     */
+    public Packet allocate(int length) {
+
+        if (length < 0) {
+            throw new RuntimeException("The packet length cannot be negative.");
+        }
+
+        int sizeClass = getSizeClass(length);
+        ByteBuffer buffer = free.get(sizeClass).poll();
+
+        allocations++;
+
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(1 << sizeClass);
+        }
+        else {
+
+            // the buffer still holds the payload of the packet that last used it
+            Arrays.fill(buffer.array(), 0, length, (byte)0);
+
+            reuses++;
+        }
+
+        return new Packet(buffer, length, this);
+    }
+
+
+    /**
+     * Returns the buffer of a packet to the pool once all references to the packet have been released.
+     *
+     * @param buffer The buffer of the released packet.
+     */
+    void recycle(ByteBuffer buffer) {
+
+        ArrayDeque<ByteBuffer> list = free.get(getSizeClass(buffer.capacity()));
+
+        if (list.size() < maxFree) {
+            list.push(buffer);
+        }
+    }
+
+
+    /**
+     * Gets the number of packets that have been allocated from the pool.
+     *
+     * @return The number of allocations.
+     */
+    public long getAllocations() {
+        return allocations;
+    }
+
+
+    /**
+     * Gets the number of allocations that were satisfied by a free buffer.
+     *
+     * @return The number of reused buffers.
+     */
+    public long getReuses() {
+        return reuses;
+    }
+
+
+    private static int getSizeClass(int length) {
+
+        int sizeClass = (length <= 1) ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+
+        if (sizeClass > MAX_SIZE_CLASS) {
+            throw new RuntimeException("The packet length is too large: " + length);
+        }
+
+        return Math.max(sizeClass, MIN_SIZE_CLASS);
+    }
+}
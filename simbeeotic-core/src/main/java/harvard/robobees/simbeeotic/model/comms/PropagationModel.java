@@ -52,6 +52,18 @@ public interface PropagationModel {
     public void transmit(Radio tx, byte[] data, double txPower, Band band);
 
 
+    /**
+     * Broadcasts a packet in RF. The model takes over the caller's reference to the
+     * packet, which must not be modified afterward.
+     *
+     * @param tx The {@link Radio} that is transmitting.
+     * @param packet The packet to be transferred.
+     * @param txPower The amount of energy used to transmit the data (in dBm).
+     * @param band The RF band for this transmission.
+     */
+    public void transmit(Radio tx, Packet packet, double txPower, Band band);
+
+
     /**
      * Gets a noise floor measurement from the RF environment. The returned value
      * from this call may not be constant over time.
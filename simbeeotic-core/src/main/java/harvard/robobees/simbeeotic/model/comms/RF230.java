@@ -61,11 +61,11 @@ public class RF230 extends ZigbeeRadio {
      * The transmit power can be adjusted with the {@link #setTransmitPowerLevel(int)} method.
      */
     @Override
-    public void transmit(byte[] data) {
+    public void transmit(Packet packet) {
 
-        super.transmit(data);
+        recordTransmission(packet.getLength());
 
-        getPropagationModel().transmit(this, data, txPower, getChannel());
+        getPropagationModel().transmit(this, packet, txPower, getChannel());
     }
 
 
@@ -80,25 +80,28 @@ public class RF230 extends ZigbeeRadio {
      * </ol>
      */
     @Override
-    public void receive(SimTime time, byte[] data, double rxPower, double frequency) {
+    public void receive(SimTime time, Packet packet, double rxPower, double frequency) {
 
-        super.receive(time, data, rxPower, frequency);
+        recordReception(time, packet.getLength());
 
         // check if it is within the range of sensitivity of the radio
         if (rxPower < minRxPower) {
             return;
         }
 
-        // todo: check the frequency against the current channel
+        // ignore transmissions on other channels
+        if (!getChannel().isInBand(frequency)) {
+            return;
+        }
 
         // consult the PRR/SNR curve
-        double snr = rxPower - getPropagationModel().getNoiseFloor(getOperatingBand());
+        double snr = rxPower - getNoiseAndInterference(getOperatingBand());
 
         // todo: define a PRR/SNR function
         double prr = 1;
 
         if (getRandom().nextDouble() <= prr) {
-            notifyListeners(time, data, rxPower);
+            notifyListeners(time, packet, rxPower);
         }
     }
 
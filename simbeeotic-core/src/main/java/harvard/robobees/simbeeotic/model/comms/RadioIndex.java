@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import harvard.robobees.simbeeotic.model.Model;
+
+import javax.vecmath.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An index that is used to find the radios that may receive a transmission without
+ * examining every radio in the simulation. Radios are grouped into buckets by the
+ * band to which they are tuned (see {@link AbstractRadio#getReceiveBand()}), and the
+ * radios in each bucket are kept in a uniform grid whose cells are as wide as the
+ * reception range. A search only examines the buckets that can hear the transmitted
+ * band, and only the cell that contains the transmitter and its 26 neighbors in
+ * each of those buckets.
+ * <p/>
+ * Radios are placed in the grid according to the position of their host's body,
+ * which is cheaper to obtain than the position of the antenna. The cells are widened
+ * by the largest antenna offset to account for the difference. The index must be
+ * {@link #update updated} after the bodies move, and only the radios that have
+ * changed cells are moved. It must also be told when a radio is retuned
+ * ({@link #updateBand}).
+ * <p/>
+ * Candidates are returned in the order of the list of radios that was used to build
+ * the index, so a caller that iterates over the candidates visits them in the same
+ * order as it would when iterating over all radios.
+ *
+ * @author bkate
+ */
+public class RadioIndex {
+
+    private float cellSize;
+    private Entry[] entries;
+    private Map<Integer, Entry> entryMap = new HashMap<Integer, Entry>();
+    private List<Bucket> buckets = new ArrayList<Bucket>();
+    private boolean placed = false;
+
+    private int[] candidates = new int[16];
+    private int numCandidates = 0;
+
+    // cell coordinates are clamped so that they can be packed into a single key
+    private static final int COORD_BITS = 21;
+    private static final int COORD_MIN = -(1 << (COORD_BITS - 1));
+    private static final int COORD_MAX = (1 << (COORD_BITS - 1)) - 1;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+
+
+    /**
+     * Builds an index of radios. The radios are not placed in the grid until
+     * the index is first updated.
+     *
+     * @param radios The radios to index.
+     * @param range The range beyond which a radio is not considered a candidate (in m).
+     */
+    public RadioIndex(List<Radio> radios, double range) {
+
+        float maxOffset = 0;
+
+        entries = new Entry[radios.size()];
+
+        for (int i = 0; i < entries.length; i++) {
+
+            Radio radio = radios.get(i);
+            AbstractRadio hosted = null;
+
+            if ((radio instanceof AbstractRadio) && (((AbstractRadio)radio).getHost() != null)) {
+
+                hosted = (AbstractRadio)radio;
+                maxOffset = Math.max(maxOffset, hosted.getOffsetLength());
+            }
+
+            entries[i] = new Entry(i, radio, hosted);
+            entryMap.put(entries[i].modelId, entries[i]);
+
+            getBucket(getReceiveBand(radio)).add(entries[i]);
+        }
+
+        cellSize = (float)range + maxOffset;
+    }
+
+
+    /**
+     * Moves radios to the cells that contain their current positions.
+     */
+    public void update() {
+
+        for (Bucket bucket : buckets) {
+            bucket.update();
+        }
+
+        placed = true;
+    }
+
+
+    /**
+     * Moves a radio to the bucket for the band to which it is currently tuned.
+     *
+     * @param radio The radio that has been retuned.
+     */
+    public void updateBand(Radio radio) {
+
+        Entry entry = entryMap.get(((Model)radio).getModelId());
+
+        if (entry == null) {
+            return;
+        }
+
+        Band band = getReceiveBand(radio);
+
+        if (entry.bucket.band.equals(band)) {
+            return;
+        }
+
+        entry.bucket.remove(entry);
+
+        Bucket bucket = getBucket(band);
+
+        bucket.add(entry);
+
+        // radios that are retuned between updates need to be placed right away
+        if (placed) {
+            bucket.place(entry);
+        }
+    }
+
+
+    /**
+     * Finds the radios that may receive a transmission, which are available through
+     * {@link #getCandidate} until the next search. A candidate is tuned to a band that
+     * contains the center frequency of the transmission and may be within range.
+     *
+     * @param pos The position of the transmitter (in world coordinates).
+     * @param band The band of the transmission.
+     *
+     * @return The number of candidates.
+     */
+    public int findCandidates(Vector3f pos, Band band) {
+
+        numCandidates = 0;
+
+        for (Bucket bucket : buckets) {
+
+            if (bucket.band.isInBand(band.getCenterFrequency())) {
+                bucket.findCandidates(pos);
+            }
+        }
+
+        // restore the original order of the radios
+        Arrays.sort(candidates, 0, numCandidates);
+
+        return numCandidates;
+    }
+
+
+    /**
+     * Gets a radio found by the last call to {@link #findCandidates}.
+     *
+     * @param index The index of the candidate, between zero and the number of candidates.
+     *
+     * @return The candidate radio.
+     */
+    public Radio getCandidate(int index) {
+        return entries[candidates[index]].radio;
+    }
+
+
+    /**
+     * Gets the model ID of a radio found by the last call to {@link #findCandidates}.
+     *
+     * @param index The index of the candidate, between zero and the number of candidates.
+     *
+     * @return The model ID of the candidate radio.
+     */
+    public int getCandidateId(int index) {
+        return entries[candidates[index]].modelId;
+    }
+
+
+    /**
+     * Gets the band to which a radio is tuned.
+     *
+     * @param radio The radio.
+     *
+     * @return The receive band of radios that extend {@link AbstractRadio}, otherwise the operating band.
+     */
+    private static Band getReceiveBand(Radio radio) {
+
+        if (radio instanceof AbstractRadio) {
+            return ((AbstractRadio)radio).getReceiveBand();
+        }
+
+        return radio.getOperatingBand();
+    }
+
+
+    private Bucket getBucket(Band band) {
+
+        for (Bucket bucket : buckets) {
+
+            if (bucket.band.equals(band)) {
+                return bucket;
+            }
+        }
+
+        Bucket bucket = new Bucket(band);
+
+        buckets.add(bucket);
+
+        return bucket;
+    }
+
+
+    private void addCandidate(int index) {
+
+        if (numCandidates == candidates.length) {
+            candidates = Arrays.copyOf(candidates, candidates.length * 2);
+        }
+
+        candidates[numCandidates++] = index;
+    }
+
+
+    private boolean isBounded() {
+        return (cellSize > 0) && !Float.isInfinite(cellSize) && !Float.isNaN(cellSize);
+    }
+
+
+    private int getCoord(float val) {
+        return (int)Math.max(Math.min(Math.floor(val / cellSize), COORD_MAX), COORD_MIN);
+    }
+
+
+    private long getKey(Vector3f pos) {
+
+        if (!isBounded()) {
+            return 0;
+        }
+
+        return getKey(getCoord(pos.x), getCoord(pos.y), getCoord(pos.z));
+    }
+
+
+    private static long getKey(int x, int y, int z) {
+        return ((x & COORD_MASK) << (2 * COORD_BITS)) | ((y & COORD_MASK) << COORD_BITS) | (z & COORD_MASK);
+    }
+
+
+    /**
+     * The radios that are tuned to a single band, and the grid that holds them.
+     */
+    private final class Bucket {
+
+        private Band band;
+        private List<Entry> members = new ArrayList<Entry>();
+        private Map<Long, Cell> cells = new HashMap<Long, Cell>();
+
+
+        public Bucket(Band band) {
+            this.band = band;
+        }
+
+
+        public void add(Entry entry) {
+
+            entry.bucket = this;
+            entry.bucketSlot = members.size();
+
+            members.add(entry);
+        }
+
+
+        public void remove(Entry entry) {
+
+            if (entry.cell != null) {
+                removeFromCell(entry);
+            }
+
+            Entry last = members.remove(members.size() - 1);
+
+            if (last != entry) {
+
+                members.set(entry.bucketSlot, last);
+                last.bucketSlot = entry.bucketSlot;
+            }
+
+            entry.bucket = null;
+        }
+
+
+        public void update() {
+
+            for (Entry entry : members) {
+                place(entry);
+            }
+        }
+
+
+        /**
+         * Moves a radio to the cell that contains its current position, if it is not already there.
+         *
+         * @param entry The radio.
+         */
+        public void place(Entry entry) {
+
+            Vector3f pos = (entry.hosted != null) ? entry.hosted.getHost().getTruthPosition() : entry.radio.getPosition();
+            long key = getKey(pos);
+
+            if ((entry.cell != null) && (entry.key == key)) {
+                return;
+            }
+
+            if (entry.cell != null) {
+                removeFromCell(entry);
+            }
+
+            Cell cell = cells.get(key);
+
+            if (cell == null) {
+
+                cell = new Cell();
+                cells.put(key, cell);
+            }
+
+            entry.key = key;
+            entry.cell = cell;
+            entry.cellSlot = cell.add(entry.rank);
+        }
+
+
+        public void findCandidates(Vector3f pos) {
+
+            if (!isBounded()) {
+
+                for (Cell cell : cells.values()) {
+                    addCandidates(cell);
+                }
+
+                return;
+            }
+
+            int cx = getCoord(pos.x);
+            int cy = getCoord(pos.y);
+            int cz = getCoord(pos.z);
+
+            for (int x = Math.max(cx - 1, COORD_MIN); x <= Math.min(cx + 1, COORD_MAX); x++) {
+                for (int y = Math.max(cy - 1, COORD_MIN); y <= Math.min(cy + 1, COORD_MAX); y++) {
+                    for (int z = Math.max(cz - 1, COORD_MIN); z <= Math.min(cz + 1, COORD_MAX); z++) {
+
+                        Cell cell = cells.get(getKey(x, y, z));
+
+                        if (cell != null) {
+                            addCandidates(cell);
+                        }
+                    }
+                }
+            }
+        }
+
+
+        private void addCandidates(Cell cell) {
+
+            for (int i = 0; i < cell.size; i++) {
+                addCandidate(cell.members[i]);
+            }
+        }
+
+
+        private void removeFromCell(Entry entry) {
+
+            int moved = entry.cell.remove(entry.cellSlot);
+
+            if (moved >= 0) {
+                entries[moved].cellSlot = entry.cellSlot;
+            }
+
+            if (entry.cell.size == 0) {
+                cells.remove(entry.key);
+            }
+
+            entry.cell = null;
+        }
+    }
+
+
+    /**
+     * A radio's place in the index.
+     */
+    private static final class Entry {
+
+        private int rank;
+        private Radio radio;
+        private AbstractRadio hosted;
+        private int modelId;
+
+        private Bucket bucket;
+        private int bucketSlot;
+
+        private long key;
+        private Cell cell;
+        private int cellSlot;
+
+
+        public Entry(int rank, Radio radio, AbstractRadio hosted) {
+
+            this.rank = rank;
+            this.radio = radio;
+            this.hosted = hosted;
+            this.modelId = ((Model)radio).getModelId();
+        }
+    }
+
+
+    /**
+     * The radios in a single cell, referred to by their index in the list of radios.
+     */
+    private static final class Cell {
+
+        private int[] members = new int[4];
+        private int size = 0;
+
+
+        /**
+         * Adds a radio to the cell.
+         *
+         * @param index The index of the radio.
+         *
+         * @return The slot in which the radio was placed.
+         */
+        public int add(int index) {
+
+            if (size == members.length) {
+                members = Arrays.copyOf(members, members.length * 2);
+            }
+
+            members[size] = index;
+
+            return size++;
+        }
+
+
+        /**
+         * Removes a radio from the cell by moving the last radio into its slot.
+         *
+         * @param slot The slot of the radio to remove.
+         *
+         * @return The index of the radio that was moved into the slot, or -1 if none was moved.
+         */
+        public int remove(int slot) {
+
+            size--;
+
+            if (slot == size) {
+                return -1;
+            }
+
+            members[slot] = members[size];
+
+            return members[slot];
+        }
+    }
+}
@@ -42,16 +42,24 @@ import harvard.robobees.simbeeotic.model.Event;
  */
 public final class ReceptionEvent implements Event {
 
-    private byte[] data;
+    private Packet packet;
     private double rxPower;
     private Band band;
+    private InterferenceIndex.Signal signal;
+    private ReceptionEvent next;
 
 
     public ReceptionEvent(byte[] data, double rxPower, Band band) {
+        this(Packet.wrap(data), rxPower, band, null);
+    }
+
 
-        this.data = data;
+    ReceptionEvent(Packet packet, double rxPower, Band band, InterferenceIndex.Signal signal) {
+
+        this.packet = packet;
         this.rxPower = rxPower;
         this.band = band;
+        this.signal = signal;
     }
 
 
@@ -65,7 +73,52 @@ public final class ReceptionEvent implements Event {
     }
 
 
+    /**
+     * Gets the payload of the transmission. If the packet is pooled this is a copy,
+     * so {@link #getPacket()} is preferred.
+     *
+     * @return The data received.
+     */
     public byte[] getData() {
-        return data;
+        return packet.toByteArray();
+    }
+
+
+    /**
+     * Gets the transmitted packet. The event holds a reference to the packet, which
+     * is released by the receiving radio once the event has been handled.
+     *
+     * @return The packet received.
+     */
+    public Packet getPacket() {
+        return packet;
+    }
+
+
+    /**
+     * Gets the peak total power of the other transmissions that were in flight at the
+     * receiver at the same time as this one. This is only tracked when the propagation
+     * model accounts for interference.
+     *
+     * @return The interference (in mW), or zero if there was none.
+     */
+    public double getInterference() {
+        return (signal != null) ? signal.getInterference() : 0;
+    }
+
+
+    /**
+     * Gets the next reception that is delivered to the same radio by this event, when the
+     * propagation model batches the receptions that end within the same tick.
+     *
+     * @return The next reception in the batch, or {@code null} if this is the last one.
+     */
+    ReceptionEvent getNext() {
+        return next;
+    }
+
+
+    void setNext(ReceptionEvent next) {
+        this.next = next;
     }
 }
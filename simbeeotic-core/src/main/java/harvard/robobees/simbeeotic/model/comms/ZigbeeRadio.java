@@ -36,11 +36,30 @@ import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import org.apache.log4j.Logger;
 
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.Timer;
+import harvard.robobees.simbeeotic.model.TimerCallback;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * A class that implements some boilerplate functionality of radios
  * that operate in the 2.4 GHz range according to the IEEE 802.15.4
  * specification.
+ * <p/>
+ * The radio can optionally use the unslotted CSMA/CA algorithm of the 802.15.4 MAC
+ * for packets that are sent with {@link #transmitAsync(Packet)}. Before each packet
+ * the radio waits a random number of backoff periods and then performs a clear
+ * channel assessment, which compares the energy of the transmissions in flight at
+ * the radio to a threshold. If the channel is busy the backoff window is doubled and
+ * the process repeats. If the channel is busy too many times in a row, the channel
+ * access fails and the packet is dropped, as in the standard. Frame retries after a
+ * missing acknowledgement are not modeled, since the radio does not send ACKs. Each
+ * backoff is a single timer firing at the time of the next assessment, not one event
+ * per backoff period.
  *
  * @author bkate
  */
@@ -48,11 +67,188 @@ public abstract class ZigbeeRadio extends AbstractRadio {
 
     private Band band = new Band(2405, 5);  // channel 11
 
+    // csma/ca (IEEE 802.15.4-2006, section 7.5.1.4)
+    private boolean useCsma = false;
+    private int minBackoffExponent = 3;  // macMinBE
+    private int maxBackoffExponent = 5;  // macMaxBE
+    private int maxBackoffs = 4;         // macMaxCSMABackoffs
+    private double ccaThreshold = -77;   // dBm
+
+    private Queue<Packet> macQueue = new LinkedList<Packet>();
+    private Timer macTimer;
+    private long macBusyUntil = 0;       // ns
+    private int numBackoffs = 0;
+    private int backoffExponent = 0;
+
     private static Band operating = new Band(2442.5, 85);  // zigbee spectrum
 
+    private static final long UNIT_BACKOFF_PERIOD = 320;  // us (20 symbols)
+    private static final long CCA_DURATION = 128;         // us (8 symbols)
+
     private static Logger logger = Logger.getLogger(RF230.class);
 
 
+    /** {@inheritDoc} */
+    @Override
+    public void initialize() {
+
+        super.initialize();
+
+        if (!useCsma) {
+            return;
+        }
+
+        enableCarrierSense();
+
+        // a timer that fires at the end of each clear channel assessment
+        macTimer = createTimer(new TimerCallback() {
+
+            public void fire(SimTime time) {
+                assessChannel(time);
+            }
+        }, 0, TimeUnit.MICROSECONDS);
+
+        macTimer.cancel();
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void transmit(byte[] data) {
+        transmit(Packet.wrap(data));
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void receive(SimTime time, byte[] data, double rxPower, double frequency) {
+        receive(time, Packet.wrap(data), rxPower, frequency);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean transmitAsync(byte[] data) {
+        return transmitAsync(Packet.wrap(data));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * If CSMA/CA is enabled, the packet is sent once the channel has been found to be clear.
+     */
+    @Override
+    public boolean transmitAsync(Packet packet) {
+
+        if (!useCsma) {
+            return queuePacket(packet);
+        }
+
+        if (macQueue.size() > getSendQueueSize()) {
+            return false;
+        }
+
+        macQueue.add(packet);
+
+        // start contending for the channel if the radio is idle
+        if (macTimer.getNextFiringTime() == null) {
+
+            SimTime now = getClockControl().getCurrentTime();
+
+            startChannelAccess(now, Math.max(macBusyUntil - now.getTime(), 0));
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Begins the CSMA/CA algorithm for the packet at the head of the queue.
+     *
+     * @param now The current time.
+     * @param delay The time before the first backoff period begins (in ns).
+     */
+    private void startChannelAccess(SimTime now, long delay) {
+
+        numBackoffs = 0;
+        backoffExponent = minBackoffExponent;
+
+        scheduleAssessment(now, delay);
+    }
+
+
+    /**
+     * Waits a random number of backoff periods and schedules the next clear channel assessment.
+     *
+     * @param now The current time.
+     * @param delay The time before the backoff begins (in ns).
+     */
+    private void scheduleAssessment(SimTime now, long delay) {
+
+        long periods = getRandom().nextInt(1 << backoffExponent);
+        long backoff = TimeUnit.MICROSECONDS.toNanos((periods * UNIT_BACKOFF_PERIOD) + CCA_DURATION);
+
+        macTimer.reset(now, delay + backoff, TimeUnit.NANOSECONDS, 0, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Completes a clear channel assessment. The packet at the head of the queue is sent if
+     * the channel is clear, otherwise the radio backs off or gives up on the packet.
+     *
+     * @param now The current time.
+     */
+    private void assessChannel(SimTime now) {
+
+        if (macQueue.isEmpty()) {
+
+            macTimer.cancel();
+            return;
+        }
+
+        if (getChannelPower() < ccaThreshold) {
+
+            Packet packet = macQueue.poll();
+
+            macBusyUntil = now.getTime() + (long)(getAirtime(packet.getLength()) * TimeUnit.SECONDS.toNanos(1));
+
+            transmit(packet);
+
+            if (macQueue.isEmpty()) {
+                macTimer.cancel();
+            }
+            else {
+                startChannelAccess(now, macBusyUntil - now.getTime());
+            }
+
+            return;
+        }
+
+        numBackoffs++;
+        backoffExponent = Math.min(backoffExponent + 1, maxBackoffExponent);
+
+        if (numBackoffs > maxBackoffs) {
+
+            // channel access failure
+            logger.debug("Dropping a packet after a channel access failure.");
+
+            macQueue.poll().release();
+
+            if (macQueue.isEmpty()) {
+                macTimer.cancel();
+            }
+            else {
+                startChannelAccess(now, 0);
+            }
+
+            return;
+        }
+
+        scheduleAssessment(now, 0);
+    }
+
+
     /** {@inheritDoc} */
     @Override
     public final Band getOperatingBand() {
@@ -60,6 +256,17 @@ public abstract class ZigbeeRadio extends AbstractRadio {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * A Zigbee radio listens to its current channel.
+     */
+    @Override
+    public final Band getReceiveBand() {
+        return band;
+    }
+
+
     /**
      * Gets the current channel on which the radio is operating.
      *
@@ -86,6 +293,48 @@ public abstract class ZigbeeRadio extends AbstractRadio {
         }
 
         band= new Band(2405 + (5 * (channel - 11)), 5);
+
+        receiveBandChanged();
+    }
+
+
+    /**
+     * Enables the CSMA/CA algorithm for packets sent with {@link #transmitAsync(Packet)}.
+     *
+     * @param use True if the radio should sense the channel before transmitting.
+     */
+    @Inject(optional = true)
+    public final void setUseCsma(@Named("csma") final boolean use) {
+        this.useCsma = use;
+    }
+
+
+    @Inject(optional = true)
+    public final void setMinBackoffExponent(@Named("csma-min-be") final int exponent) {
+        this.minBackoffExponent = exponent;
+    }
+
+
+    @Inject(optional = true)
+    public final void setMaxBackoffExponent(@Named("csma-max-be") final int exponent) {
+        this.maxBackoffExponent = exponent;
+    }
+
+
+    @Inject(optional = true)
+    public final void setMaxBackoffs(@Named("csma-max-backoffs") final int backoffs) {
+        this.maxBackoffs = backoffs;
+    }
+
+
+    /**
+     * Sets the energy level above which the channel is considered busy.
+     *
+     * @param threshold The clear channel assessment threshold (in dBm).
+     */
+    @Inject(optional = true)
+    public final void setCcaThreshold(@Named("cca-threshold") final double threshold) {
+        this.ccaThreshold = threshold;
     }
 
 }
@@ -32,11 +32,17 @@
 package harvard.robobees.simbeeotic.model.sensor;
 
 
+import com.bulletphysics.collision.dispatch.CollisionWorld;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import harvard.robobees.simbeeotic.model.PhysicalEntity;
 import harvard.robobees.simbeeotic.model.AbstractModel;
 import harvard.robobees.simbeeotic.model.Model;
+import harvard.robobees.simbeeotic.ClockControl;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
+import harvard.robobees.simbeeotic.trace.SimTrace;
+import harvard.robobees.simbeeotic.trace.TraceType;
 
 import javax.vecmath.Vector3f;
 import java.util.Random;
@@ -55,6 +61,8 @@ public abstract class AbstractSensor extends AbstractModel {
     private Vector3f offset;
     private Vector3f pointing;
 
+    private ClockControl clockControl;
+
 
     /** {@inheritDoc} */
     public void finish() {
@@ -76,6 +84,32 @@ public abstract class AbstractSensor extends AbstractModel {
     }
 
 
+    /**
+     * Casts a ray into the world on behalf of this sensor. Sensors should use this method
+     * instead of calling the collision world directly so that ray casts can be traced.
+     *
+     * @param world The world in which the ray is cast.
+     * @param from The start of the ray (in world coordinates).
+     * @param to The end of the ray (in world coordinates).
+     * @param callback The callback that is informed of intersections.
+     */
+    protected final void rayTest(CollisionWorld world, Vector3f from, Vector3f to,
+                                 CollisionWorld.RayResultCallback callback) {
+
+        SimTrace.Span span = SimTrace.begin(TraceType.SENSOR_RAY_CAST);
+
+        world.rayTest(from, to, callback);
+
+        if (span != null) {
+
+            SimTime now = (clockControl != null) ? clockControl.getCurrentTime() : null;
+
+            SimTrace.end(span, (now != null) ? now.getTime() : 0L, getModelId(), getClass().getName(),
+                         callback.hasHit());
+        }
+    }
+
+
     protected final PhysicalEntity getHost() {
         return host;
     }
@@ -114,6 +148,13 @@ public abstract class AbstractSensor extends AbstractModel {
     }
 
 
+    // only used to timestamp traces
+    @Inject(optional = true)
+    public final void setClockControl(@GlobalScope final ClockControl clockControl) {
+        this.clockControl = clockControl;
+    }
+
+
     @Inject
     public final void setOffset(@Named("offset") final Vector3f offset) {
         this.offset = offset;
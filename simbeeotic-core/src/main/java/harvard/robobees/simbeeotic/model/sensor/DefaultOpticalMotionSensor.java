@@ -330,7 +330,7 @@ public class DefaultOpticalMotionSensor extends AbstractSensor implements Optica
         // collide the ray with the world and see what objects are intersected
         RayCallback callback = new RayCallback(maxRange);
 
-        world.rayTest(from, to, callback);
+        rayTest(world, from, to, callback);
         
         double range = addNoise(callback.getMinDistance(), sigma);
         
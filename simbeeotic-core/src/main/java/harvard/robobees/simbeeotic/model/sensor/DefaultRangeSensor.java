@@ -103,7 +103,7 @@ public class DefaultRangeSensor extends AbstractSensor implements RangeSensor {
         // collide the ray with the world and see what objects are intersected
         RayCallback callback = new RayCallback(maxRange);
 
-        world.rayTest(from, to, callback);
+        rayTest(world, from, to, callback);
 
         // add noise and check bounds
         float range = addNoise(callback.getMinDIstance(), sigma);
@@ -130,7 +130,7 @@ public class FlowerSensor extends AbstractSensor {
         // collide the ray with the world and see how far the sensor is from the ground
         RayCallback callback = new RayCallback(map.getTerrain().getObjectId(), maxRange);
 
-        world.rayTest(from, to, callback);
+        rayTest(world, from, to, callback);
 
         float range = callback.getRangeToGround();
 
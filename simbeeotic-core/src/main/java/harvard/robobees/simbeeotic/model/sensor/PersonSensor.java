@@ -127,7 +127,7 @@ public class PersonSensor extends AbstractSensor {
         to.add(rotatedOffset);
         to.add(rotatedPointing);
 
-        Set<WorldObject> conePeople = map.getPeople(from, to, maxRange, halfAngle);
+        Set<WorldObject> conePeople = map.getPeople(from, rotatedPointing, maxRange, halfAngle);
 
 		// for every WorldObject representing a person in the 'field of view' cone,
         // attempt to trace a path using a ray; if an obstacle is encountered prematurely,
@@ -140,7 +140,7 @@ public class PersonSensor extends AbstractSensor {
         	to = person.getTruthPosition();
         	
 			// Send ray
-			world.rayTest(from, to, callback);
+			rayTest(world, from, to, callback);
         	
 			if(!callback.isPersonDetected())
 				conePeople.remove(person);
@@ -40,6 +40,7 @@ import com.google.inject.name.Named;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
 import harvard.robobees.simbeeotic.model.Contact;
 import harvard.robobees.simbeeotic.model.EntityInfo;
+import harvard.robobees.simbeeotic.environment.DistanceField;
 import harvard.robobees.simbeeotic.environment.WorldMap;
 import harvard.robobees.simbeeotic.environment.WorldObject;
 
@@ -115,12 +116,41 @@ public class WallSensor extends AbstractSensor {
     	RayCallback callback = new RayCallback(maxRange);
     	
 		// Send ray
-		world.rayTest(from, to, callback);
+		rayTest(world, from, to, callback);
         	
 		return callback.isObjectDetected();
     }
 
 
+    /**
+     * Gets the clearance around the sensor, which is the distance from the sensor to the
+     * nearest static obstacle or structure in any direction. This is a constant time lookup
+     * in the world's distance field, so it requires the {@code distance-field} world property.
+     *
+     * @return The distance to the nearest static object (in meters), negative if the sensor is
+     *         inside of an object. Distances are truncated at the field's maximum distance.
+     */
+    public float getClearance() {
+
+        DistanceField field = map.getDistanceField();
+
+        if (field == null) {
+            throw new RuntimeException("The wall sensor clearance requires the world distance field to be enabled.");
+        }
+
+        Vector3f pos = new Vector3f(getOffset());
+        Transform trans = new Transform();
+
+        trans.setIdentity();
+        trans.setRotation(getHost().getTruthOrientation());
+        trans.transform(pos);
+
+        pos.add(getHost().getTruthPosition());
+
+        return field.getDistance(pos);
+    }
+
+
     @Inject
     public final void setDynamicsWorld(@GlobalScope DiscreteDynamicsWorld world) {
         this.world = world;
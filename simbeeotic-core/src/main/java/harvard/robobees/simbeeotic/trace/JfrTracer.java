@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.trace;
+
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A tracer that emits each trace as a custom Java Flight Recorder event, so that
+ * recordings of long runs can be correlated with what the simulation was doing. Each
+ * {@link TraceType} is registered as an event type named after its label (e.g.
+ * {@code simbeeotic.EventDispatch}) in the {@code Simbeeotic} category.
+ * <p/>
+ * The simulator is built for Java 6, which has no flight recorder API, so the event
+ * types are defined dynamically through {@code jdk.jfr.EventFactory} using reflection.
+ * This requires a JVM that ships the {@code jdk.jfr} API (JDK 8u262 or later, or JDK 11
+ * or later). Events are only written while a flight recording is running (e.g. when the
+ * JVM is started with {@code -XX:StartFlightRecording}).
+ *
+ * @author bkate
+ */
+public class JfrTracer implements Tracer {
+
+    private Object[] factories = new Object[TraceType.values().length];
+
+    private Method newEvent;
+    private Method beginEvent;
+    private Method endEvent;
+    private Method setField;
+    private Method commitEvent;
+
+    private static final String CATEGORY = "Simbeeotic";
+
+
+    /**
+     * Registers the event types with the flight recorder.
+     *
+     * @throws RuntimeException If the flight recorder API is not available in this JVM.
+     */
+    public JfrTracer() {
+
+        try {
+
+            Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+
+            Class<?> name = Class.forName("jdk.jfr.Name");
+            Class<?> label = Class.forName("jdk.jfr.Label");
+            Class<?> description = Class.forName("jdk.jfr.Description");
+            Class<?> category = Class.forName("jdk.jfr.Category");
+            Class<?> timespan = Class.forName("jdk.jfr.Timespan");
+            Class<?> stackTrace = Class.forName("jdk.jfr.StackTrace");
+
+            Constructor<?> annotationCtor = annotationElement.getConstructor(Class.class, Object.class);
+            Constructor<?> descriptorCtor = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+            Method create = eventFactory.getMethod("create", List.class, List.class);
+
+            newEvent = eventFactory.getMethod("newEvent");
+            beginEvent = event.getMethod("begin");
+            endEvent = event.getMethod("end");
+            setField = event.getMethod("set", int.class, Object.class);
+            commitEvent = event.getMethod("commit");
+
+            for (TraceType type : TraceType.values()) {
+
+                List<Object> annotations = new ArrayList<Object>();
+                List<Object> fields = new ArrayList<Object>();
+
+                annotations.add(annotationCtor.newInstance(name, "simbeeotic." + type.getLabel().replace(" ", "")));
+                annotations.add(annotationCtor.newInstance(label, type.getLabel()));
+                annotations.add(annotationCtor.newInstance(description, type.getDescription()));
+                annotations.add(annotationCtor.newInstance(category, new String[] {CATEGORY}));
+
+                // the stack would always end in the reflective call to commit the event
+                annotations.add(annotationCtor.newInstance(stackTrace, false));
+
+                for (TraceType.Field field : type.getFields()) {
+
+                    List<Object> fieldAnnotations = new ArrayList<Object>();
+
+                    fieldAnnotations.add(annotationCtor.newInstance(label, field.getLabel()));
+
+                    if (field.isSimTime()) {
+                        fieldAnnotations.add(annotationCtor.newInstance(timespan, "NANOSECONDS"));
+                    }
+
+                    fields.add(descriptorCtor.newInstance(field.getType(), field.getName(), fieldAnnotations));
+                }
+
+                factories[type.ordinal()] = create.invoke(null, annotations, fields);
+            }
+        }
+        catch(ClassNotFoundException cnf) {
+            throw new RuntimeException("The flight recorder API is not available in this JVM.", cnf);
+        }
+        catch(Exception e) {
+            throw new RuntimeException("Could not register the flight recorder event types.", e);
+        }
+    }
+
+
+    /**
+     * Indicates if the flight recorder API is available in this JVM.
+     *
+     * @return True if a {@code JfrTracer} can be created, false otherwise.
+     */
+    public static boolean isAvailable() {
+
+        try {
+
+            Class.forName("jdk.jfr.EventFactory");
+            return true;
+        }
+        catch(ClassNotFoundException cnf) {
+            return false;
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public Object begin(TraceType type) {
+
+        Object event = invoke(newEvent, factories[type.ordinal()]);
+
+        invoke(beginEvent, event);
+
+        return event;
+    }
+
+
+    /** {@inheritDoc} */
+    public void commit(TraceType type, Object handle, long duration, Object[] values) {
+
+        invoke(endEvent, handle);
+
+        for (int i = 0; i < values.length; i++) {
+            invoke(setField, handle, i, values[i]);
+        }
+
+        invoke(commitEvent, handle);
+    }
+
+
+    private static Object invoke(Method method, Object target, Object... args) {
+
+        try {
+            return method.invoke(target, args);
+        }
+        catch(IllegalAccessException iae) {
+            throw new RuntimeException("Could not access the flight recorder API.", iae);
+        }
+        catch(InvocationTargetException ite) {
+            throw new RuntimeException("The flight recorder could not record an event.", ite.getCause());
+        }
+    }
+}
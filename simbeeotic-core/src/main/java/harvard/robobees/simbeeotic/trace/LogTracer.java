@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.trace;
+
+
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A tracer that writes each trace to the log. This is useful on JVMs that do not
+ * have the flight recorder, and with thresholds that limit the output to the
+ * slowest operations.
+ *
+ * @author bkate
+ */
+public class LogTracer implements Tracer {
+
+    private static Logger logger = Logger.getLogger(LogTracer.class);
+
+
+    /** {@inheritDoc} */
+    public Object begin(TraceType type) {
+        return null;
+    }
+
+
+    /** {@inheritDoc} */
+    public void commit(TraceType type, Object handle, long duration, Object[] values) {
+
+        StringBuilder builder = new StringBuilder();
+        List<TraceType.Field> fields = type.getFields();
+
+        builder.append(type.getKey()).append(" took ")
+               .append((double)duration / TimeUnit.MICROSECONDS.toNanos(1)).append(" usec:");
+
+        for (int i = 0; i < values.length; i++) {
+
+            builder.append("  ").append(fields.get(i).getName()).append("=");
+
+            if (fields.get(i).isSimTime()) {
+                builder.append((double)((Long)values[i]) / TimeUnit.SECONDS.toNanos(1));
+            }
+            else {
+                builder.append(values[i]);
+            }
+        }
+
+        logger.info(builder.toString());
+    }
+}
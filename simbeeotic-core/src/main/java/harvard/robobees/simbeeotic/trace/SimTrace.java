@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.trace;
+
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The entry point for tracing simulator operations. A traced section of code looks like:
+ *
+ * <pre>
+ * SimTrace.Span span = SimTrace.begin(TraceType.PHYSICS_STEP);
+ *
+ * // do the work
+ *
+ * if (span != null) {
+ *     SimTrace.end(span, simTime, step, substeps);
+ * }
+ * </pre>
+ *
+ * When no {@link Tracer} is set, or the type of trace is not enabled, {@link #begin}
+ * returns {@code null} after checking a single field, so leaving the instrumentation
+ * in place costs nearly nothing. Each type of trace has a threshold, and only
+ * operations that take at least that long are passed to the tracer.
+ *
+ * @author bkate
+ */
+public final class SimTrace {
+
+    private static volatile Tracer tracer = null;
+
+    // the threshold of each trace type (in nanoseconds), or -1 if the type is disabled
+    private static final long[] thresholds = new long[TraceType.values().length];
+
+    static {
+        Arrays.fill(thresholds, -1);
+    }
+
+
+    private SimTrace() {
+    }
+
+
+    /**
+     * Starts tracing an operation.
+     *
+     * @param type The type of operation.
+     *
+     * @return The span that must be passed to {@link #end}, or {@code null} if the type
+     *         of operation is not being traced.
+     */
+    public static Span begin(TraceType type) {
+
+        Tracer curr = tracer;
+
+        if ((curr == null) || (thresholds[type.ordinal()] < 0)) {
+            return null;
+        }
+
+        return new Span(type, curr, curr.begin(type), System.nanoTime());
+    }
+
+
+    /**
+     * Finishes tracing an operation. The trace is passed to the tracer if the
+     * operation took at least as long as the threshold of its type.
+     *
+     * @param span The span returned by {@link #begin} (must not be {@code null}).
+     * @param values The values of the fields of the trace type, in order.
+     */
+    public static void end(Span span, Object... values) {
+
+        long duration = System.nanoTime() - span.start;
+
+        if (duration >= thresholds[span.type.ordinal()]) {
+            span.tracer.commit(span.type, span.handle, duration, values);
+        }
+    }
+
+
+    /**
+     * Indicates if a type of operation is being traced.
+     *
+     * @param type The type of operation.
+     *
+     * @return True if the operation is traced, false otherwise.
+     */
+    public static boolean isEnabled(TraceType type) {
+        return (tracer != null) && (thresholds[type.ordinal()] >= 0);
+    }
+
+
+    /**
+     * Sets the destination of traces. Traces must also be enabled with {@link #enable}
+     * or {@link #configure}.
+     *
+     * @param tracer The tracer, or {@code null} to stop tracing.
+     */
+    public static void setTracer(Tracer tracer) {
+        SimTrace.tracer = tracer;
+    }
+
+
+    /**
+     * Enables tracing of a type of operation.
+     *
+     * @param type The type of operation.
+     * @param threshold The minimum duration of an operation that is traced.
+     * @param unit The unit of the threshold.
+     */
+    public static void enable(TraceType type, long threshold, TimeUnit unit) {
+        thresholds[type.ordinal()] = Math.max(unit.toNanos(threshold), 0);
+    }
+
+
+    /**
+     * Disables tracing of a type of operation.
+     *
+     * @param type The type of operation.
+     */
+    public static void disable(TraceType type) {
+        thresholds[type.ordinal()] = -1;
+    }
+
+
+    /**
+     * Enables the types of traces listed in a specification, which is a comma separated list of
+     * trace type keys, each optionally followed by a threshold in microseconds (e.g.
+     * {@code event-dispatch=500,physics-step,sensor-ray-cast=20}). The key {@code all} refers
+     * to every type of trace. Types that are not listed are disabled.
+     *
+     * @param spec The trace specification.
+     */
+    public static void configure(String spec) {
+
+        Arrays.fill(thresholds, -1);
+
+        for (String entry : spec.split(",")) {
+
+            entry = entry.trim();
+
+            if (entry.length() == 0) {
+                continue;
+            }
+
+            String key = entry;
+            long threshold = 0;
+            int split = entry.indexOf('=');
+
+            if (split >= 0) {
+
+                key = entry.substring(0, split).trim();
+
+                try {
+                    threshold = Long.parseLong(entry.substring(split + 1).trim());
+                }
+                catch(NumberFormatException nfe) {
+                    throw new RuntimeException("Invalid trace threshold: '" + entry + "'.", nfe);
+                }
+            }
+
+            if (key.equals("all")) {
+
+                for (TraceType type : TraceType.values()) {
+                    enable(type, threshold, TimeUnit.MICROSECONDS);
+                }
+            }
+            else {
+
+                TraceType type = TraceType.fromKey(key);
+
+                if (type == null) {
+                    throw new RuntimeException("Unknown trace type: '" + key + "'.");
+                }
+
+                enable(type, threshold, TimeUnit.MICROSECONDS);
+            }
+        }
+    }
+
+
+    /**
+     * An operation that is being traced.
+     */
+    public static final class Span {
+
+        private TraceType type;
+        private Tracer tracer;
+        private Object handle;
+        private long start;
+
+
+        private Span(TraceType type, Tracer tracer, Object handle, long start) {
+
+            this.type = type;
+            this.tracer = tracer;
+            this.handle = handle;
+            this.start = start;
+        }
+    }
+}
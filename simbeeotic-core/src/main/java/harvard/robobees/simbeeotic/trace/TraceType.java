@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.trace;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Enumerates the operations in the simulator that can be traced, along with the
+ * fields that are recorded for each. The fields of a trace are given to
+ * {@link SimTrace#end} in the order they are declared here.
+ *
+ * @author bkate
+ */
+public enum TraceType {
+
+    EVENT_DISPATCH("event-dispatch", "Event Dispatch", "An event processed by a model.",
+                   new Field("simTime", "Sim Time", long.class, true),
+                   new Field("modelId", "Model ID", int.class, false),
+                   new Field("modelClass", "Model Class", String.class, false),
+                   new Field("eventClass", "Event Class", String.class, false)),
+
+    PHYSICS_STEP("physics-step", "Physics Step", "A step of the physics engine between events.",
+                 new Field("simTime", "Sim Time", long.class, true),
+                 new Field("step", "Step (s)", double.class, false),
+                 new Field("substeps", "Substeps", int.class, false)),
+
+    CONTACT_UPDATE("contact-update", "Contact Update", "A search for contacts after a physics step.",
+                   new Field("simTime", "Sim Time", long.class, true),
+                   new Field("manifolds", "Manifolds", int.class, false),
+                   new Field("collision", "Collision", boolean.class, false)),
+
+    RADIO_TRANSMIT("radio-transmit", "Radio Transmit", "A transmission through a propagation model.",
+                   new Field("simTime", "Sim Time", long.class, true),
+                   new Field("modelId", "Radio Model ID", int.class, false),
+                   new Field("frequency", "Center Frequency (MHz)", double.class, false),
+                   new Field("bytes", "Bytes", int.class, false),
+                   new Field("receivers", "Receivers", int.class, false)),
+
+    SENSOR_RAY_CAST("sensor-ray-cast", "Sensor Ray Cast", "A ray cast into the world by a sensor.",
+                    new Field("simTime", "Sim Time", long.class, true),
+                    new Field("modelId", "Sensor Model ID", int.class, false),
+                    new Field("sensorClass", "Sensor Class", String.class, false),
+                    new Field("hit", "Hit", boolean.class, false));
+
+
+    private String key;
+    private String label;
+    private String description;
+    private List<Field> fields;
+
+
+    private TraceType(String key, String label, String description, Field... fields) {
+
+        this.key = key;
+        this.label = label;
+        this.description = description;
+        this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+
+    /**
+     * Gets the name used to refer to this type of trace in configuration (e.g. {@code event-dispatch}).
+     *
+     * @return The configuration key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+
+    public String getLabel() {
+        return label;
+    }
+
+
+    public String getDescription() {
+        return description;
+    }
+
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+
+    /**
+     * Finds a trace type by its configuration key.
+     *
+     * @param key The key (e.g. {@code physics-step}).
+     *
+     * @return The trace type, or {@code null} if there is no type with the given key.
+     */
+    public static TraceType fromKey(String key) {
+
+        for (TraceType type : values()) {
+
+            if (type.key.equals(key)) {
+                return type;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * A field that is recorded with a trace.
+     */
+    public static final class Field {
+
+        private String name;
+        private String label;
+        private Class<?> type;
+        private boolean simTime;
+
+
+        public Field(String name, String label, Class<?> type, boolean simTime) {
+
+            this.name = name;
+            this.label = label;
+            this.type = type;
+            this.simTime = simTime;
+        }
+
+
+        public String getName() {
+            return name;
+        }
+
+
+        public String getLabel() {
+            return label;
+        }
+
+
+        public Class<?> getType() {
+            return type;
+        }
+
+
+        /**
+         * Indicates if the field holds a simulation time (in nanoseconds).
+         *
+         * @return True if the field is a sim time, false otherwise.
+         */
+        public boolean isSimTime() {
+            return simTime;
+        }
+    }
+}
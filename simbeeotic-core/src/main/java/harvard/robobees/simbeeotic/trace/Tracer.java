@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.trace;
+
+
+/**
+ * A destination for traces of simulator operations, such as Java Flight Recorder
+ * or a log. Implementations are given every trace that exceeds the threshold of its
+ * type, so they do not need to do any filtering of their own.
+ *
+ * @author bkate
+ */
+public interface Tracer {
+
+    /**
+     * Called when a traced operation starts.
+     *
+     * @param type The type of operation.
+     *
+     * @return An object that is passed to {@link #commit} when the operation ends (may be {@code null}).
+     */
+    public Object begin(TraceType type);
+
+
+    /**
+     * Called when a traced operation that exceeded its threshold ends.
+     *
+     * @param type The type of operation.
+     * @param handle The object returned by {@link #begin} for this operation.
+     * @param duration The wall clock time taken by the operation (in nanoseconds).
+     * @param values The values of the fields of the trace type, in order.
+     */
+    public void commit(TraceType type, Object handle, long duration, Object[] values);
+}
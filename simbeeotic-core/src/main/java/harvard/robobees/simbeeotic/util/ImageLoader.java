@@ -33,6 +33,7 @@ package harvard.robobees.simbeeotic.util;
 
 
 import java.awt.*;
+import java.net.URL;
 
 
 /**
@@ -51,10 +52,18 @@ public class ImageLoader {
      *
      * @param path The path to the image to be loaded.
      *
-     * @return The loaded image.
+     * @return The loaded image, or {@code null} if the resource is not on the classpath
+     *         (the stock textures are packaged with the visualization module).
      */
     public static Image loadImageFromClasspath(String path) {
-        return Toolkit.getDefaultToolkit().getImage(ImageLoader.class.getResource(path));
+
+        URL url = ImageLoader.class.getResource(path);
+
+        if (url == null) {
+            return null;
+        }
+
+        return Toolkit.getDefaultToolkit().getImage(url);
     }
 
 
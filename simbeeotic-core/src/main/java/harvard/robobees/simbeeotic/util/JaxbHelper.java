@@ -33,13 +33,29 @@ package harvard.robobees.simbeeotic.util;
 
 
 import org.w3c.dom.Node;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
+import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventHandler;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 
 
 /**
@@ -47,6 +63,10 @@ import javax.xml.bind.ValidationEventHandler;
  */
 public class JaxbHelper {
 
+    private static final Map<String, JAXBContext> contexts = new HashMap<String, JAXBContext>();
+    private static final Map<Class<?>, Schema> schemas = new HashMap<Class<?>, Schema>();
+
+
     /**
      * Returns an object structure that represents the node instance passed in.
      *
@@ -73,6 +93,177 @@ public class JaxbHelper {
     }
 
 
+    /**
+     * Returns an object structure that is read from a stream of XML. Unlike
+     * {@link #objectFromNode}, the document is never held in memory as a DOM - the
+     * elements are bound as they are parsed. The document is validated against the
+     * schema of the type (see {@link #getSchema}) as it is read.
+     *
+     * @param stream The stream containing the XML document.
+     * @param type The type of object that is to be created from the document.
+     *
+     * @return An instance of 'type' that represents the document.
+     *
+     * @throws JAXBException Thrown if there is an error in JAXB while reading the document.
+     * @throws RuntimeValidationException Thrown if the document is invalid.
+     */
+    public static <T> T objectFromStream(InputStream stream, Class<T> type) throws JAXBException, RuntimeValidationException {
+
+        XMLStreamReader reader = createStreamReader(stream);
+
+        try {
+
+            Unmarshaller u = getContext(type).createUnmarshaller();
+
+            u.setSchema(getSchema(type));
+            u.setEventHandler(new ValidationEventHandlerImpl());
+
+            JAXBElement<T> element = u.unmarshal(reader, type);
+
+            return element.getValue();
+        }
+        finally {
+            closeStreamReader(reader);
+        }
+    }
+
+
+    /**
+     * Returns an object structure for a single element of a larger document. The reader
+     * must be positioned on the start of the element, and is left positioned on the
+     * token that follows the end of the element. This allows a large document to be bound one piece at a
+     * time with bounded memory. No schema validation is done (see {@link #validate}).
+     *
+     * @param reader The reader that is positioned at the element to unmarshal.
+     * @param type The type of object that is to be created from the element.
+     *
+     * @return An instance of 'type' that represents the element.
+     *
+     * @throws JAXBException Thrown if there is an error in JAXB while reading the element.
+     */
+    public static <T> T objectFromElement(XMLStreamReader reader, Class<T> type) throws JAXBException {
+
+        Unmarshaller u = getContext(type).createUnmarshaller();
+
+        u.setEventHandler(new ValidationEventHandlerImpl());
+
+        return u.unmarshal(reader, type).getValue();
+    }
+
+
+    /**
+     * Validates a document against the schema of a type without binding it. The document
+     * is streamed, so this is suitable for documents of any size.
+     *
+     * @param stream The stream containing the XML document.
+     * @param type The type that the document represents.
+     *
+     * @throws RuntimeValidationException Thrown if the document is invalid or cannot be read.
+     */
+    public static void validate(InputStream stream, Class<?> type) throws RuntimeValidationException {
+
+        Schema schema = getSchema(type);
+
+        if (schema == null) {
+            return;
+        }
+
+        Validator validator = schema.newValidator();
+
+        validator.setErrorHandler(new ErrorHandlerImpl());
+
+        try {
+            validator.validate(new StreamSource(stream));
+        }
+        catch(SAXException se) {
+            throw new RuntimeValidationException("The document is invalid.", se);
+        }
+        catch(IOException ioe) {
+            throw new RuntimeValidationException("Could not read the document.", ioe);
+        }
+    }
+
+
+    /**
+     * Gets the schema that defines the documents of a type. By convention, the schema
+     * is a classpath resource named for the type (e.g. {@code /World.xsd}).
+     *
+     * @param type The type in question.
+     *
+     * @return The schema, or {@code null} if there is no schema for the type.
+     */
+    public static synchronized Schema getSchema(Class<?> type) {
+
+        if (schemas.containsKey(type)) {
+            return schemas.get(type);
+        }
+
+        Schema schema = null;
+        URL url = type.getResource("/" + type.getSimpleName() + ".xsd");
+
+        if (url != null) {
+
+            try {
+                schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(url);
+            }
+            catch(SAXException se) {
+                throw new RuntimeException("Could not load the schema: " + url, se);
+            }
+        }
+
+        schemas.put(type, schema);
+
+        return schema;
+    }
+
+
+    /**
+     * Creates a streaming reader over an XML document.
+     *
+     * @param stream The stream containing the XML document.
+     *
+     * @return The new reader.
+     */
+    public static XMLStreamReader createStreamReader(InputStream stream) {
+
+        try {
+            return XMLInputFactory.newInstance().createXMLStreamReader(stream);
+        }
+        catch(XMLStreamException xse) {
+            throw new RuntimeValidationException("Could not read the document.", xse);
+        }
+    }
+
+
+    private static void closeStreamReader(XMLStreamReader reader) {
+
+        try {
+            reader.close();
+        }
+        catch(XMLStreamException xse) {
+            // nothing to do
+        }
+    }
+
+
+    /**
+     * Contexts are expensive to create and are thread safe, so they are shared.
+     */
+    private static synchronized JAXBContext getContext(Class<?> type) throws JAXBException {
+
+        String pkg = type.getPackage().getName();
+        JAXBContext context = contexts.get(pkg);
+
+        if (context == null) {
+
+            context = JAXBContext.newInstance(pkg);
+            contexts.put(pkg, context);
+        }
+
+        return context;
+    }
+
+
     /**
      * A class that can handle validation errors and throw the appropriate excpetion.
      */
@@ -92,4 +283,25 @@ public class JaxbHelper {
             return false;
         }
     }
+
+
+    /**
+     * A class that fails schema validation on any error.
+     */
+    private static class ErrorHandlerImpl implements ErrorHandler {
+
+        public void warning(SAXParseException spe) {
+        }
+
+
+        public void error(SAXParseException spe) {
+            throw new RuntimeValidationException("The document is invalid at line: " +
+                                                 spe.getLineNumber() + "\n" + spe.getMessage());
+        }
+
+
+        public void fatalError(SAXParseException spe) {
+            error(spe);
+        }
+    }
 }
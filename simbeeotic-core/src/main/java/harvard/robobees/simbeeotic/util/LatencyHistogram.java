@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.util;
+
+
+/**
+ * A histogram of non-negative values (typically latencies in nanoseconds) that uses
+ * logarithmic buckets so that it has a fixed, small size regardless of the range of
+ * values recorded. Each power of two is divided into {@value #SUB_BUCKETS} linear
+ * sub-buckets, so a percentile is reported with a relative error of no more than
+ * 1 / {@value #SUB_BUCKETS}. Recording a value is a few arithmetic operations and an
+ * array increment, so it is cheap enough to use on every event.
+ * <p/>
+ * This class is not thread safe. Values may be read by another thread while they are
+ * being recorded, but the results are approximate.
+ *
+ * @author bkate
+ */
+public class LatencyHistogram {
+
+    private long[] counts = new long[NUM_BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = SUB_BUCKETS + ((Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value The value to record.
+     */
+    public void record(long value) {
+
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts[getBucket(value)]++;
+        count++;
+        sum += value;
+
+        if (value < min) {
+            min = value;
+        }
+
+        if (value > max) {
+            max = value;
+        }
+    }
+
+
+    /**
+     * Gets the value at a given percentile. The value returned is the largest value that
+     * falls in the same bucket as the percentile, limited to the largest value recorded.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     *
+     * @return The value at the given percentile, or zero if no values have been recorded.
+     */
+    public long getPercentile(double percentile) {
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long)Math.ceil((Math.min(Math.max(percentile, 0), 100) / 100) * count);
+        long seen = 0;
+
+        rank = Math.max(rank, 1);
+
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return Math.max(Math.min(getUpperBound(i), max), min);
+            }
+        }
+
+        return max;
+    }
+
+
+    public long getCount() {
+        return count;
+    }
+
+
+    public long getTotal() {
+        return sum;
+    }
+
+
+    public double getMean() {
+
+        if (count == 0) {
+            return 0;
+        }
+
+        return (double)sum / count;
+    }
+
+
+    public long getMin() {
+        return (count == 0) ? 0 : min;
+    }
+
+
+    public long getMax() {
+        return max;
+    }
+
+
+    /**
+     * Gets the index of the bucket that holds a value. Values smaller than the number of
+     * sub-buckets are counted exactly; larger values are placed in a bucket according to
+     * their most significant bit and the {@value #SUB_BUCKET_BITS} bits that follow it.
+     *
+     * @param value The (non-negative) value.
+     *
+     * @return The bucket index.
+     */
+    private static int getBucket(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+
+        return SUB_BUCKETS + (shift * SUB_BUCKETS) + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+
+    /**
+     * Gets the largest value that is placed in a bucket.
+     *
+     * @param bucket The bucket index.
+     *
+     * @return The largest value counted by the bucket.
+     */
+    private static long getUpperBound(int bucket) {
+
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << shift;
+
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.CollisionWorld;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import harvard.robobees.simbeeotic.configuration.world.World;
+import harvard.robobees.simbeeotic.model.MotionRecorder;
+import harvard.robobees.simbeeotic.util.DocUtil;
+import harvard.robobees.simbeeotic.util.JaxbHelper;
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * @author bkate
+ */
+public class CompiledWorldTest extends TestCase {
+
+    private static final String WORLD =
+            "<world xmlns=\"http://harvard/robobees/simbeeotic/configuration/world\">" +
+            "  <radius>100</radius>" +
+            "  <obstacles>" +
+            "    <obstacle><box><position x=\"10\" y=\"10\"/></box>" +
+            "      <meta><prop name=\"foo\" value=\"bar\"/></meta></obstacle>" +
+            "    <obstacle><box length=\"4\" width=\"4\" height=\"4\"><position x=\"-5\" y=\"8\"/></box>" +
+            "      <color red=\"192\" green=\"65\" blue=\"23\" alpha=\"128\"/></obstacle>" +
+            "    <obstacle><sphere radius=\"1\"><position x=\"-4\" y=\"-10\"/></sphere></obstacle>" +
+            "  </obstacles>" +
+            "  <flowers>" +
+            "    <patch><center x=\"3\" y=\"-2\"/><radius>5</radius><density>0.5</density>" +
+            "      <meta><prop name=\"pollen\" value=\"2\"/></meta></patch>" +
+            "  </flowers>" +
+            "  <structures>" +
+            "    <structure><wall length=\"1.1\" width=\"0.1\" height=\"1.0\" rotation=\"1.5707964\">" +
+            "      <position x=\"1\" y=\"0\" z=\"0\"/></wall></structure>" +
+            "    <structure><wall height=\"3.3\" length=\"0.01\" width=\"5.2\">" +
+            "      <position x=\"3\" y=\"-2.6\"/></wall></structure>" +
+            "  </structures>" +
+            "</world>";
+
+    private static final int NUM_RAYS = 2000;
+
+    static {
+
+        // the world loads textures for its bodies
+        System.setProperty("java.awt.headless", "true");
+    }
+
+
+    public void testRoundTrip() throws IOException {
+
+        World world;
+
+        try {
+            world = JaxbHelper.objectFromNode(DocUtil.getDocumentFromXml(WORLD), World.class);
+        }
+        catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        File file = File.createTempFile("world", ".sbw");
+
+        file.deleteOnExit();
+
+        CompiledWorld.compile(world, file);
+
+        assertTrue(CompiledWorld.isCompiled(file));
+
+        CompiledWorld compiled = CompiledWorld.load(file);
+
+        DiscreteDynamicsWorld xmlDynamics = createDynamicsWorld();
+        DiscreteDynamicsWorld compiledDynamics = createDynamicsWorld();
+
+        WorldMap xmlMap = createMap(world, null, xmlDynamics);
+        WorldMap compiledMap = createMap(compiled.getWorld(), compiled, compiledDynamics);
+
+        // the compiled world places the same objects with the same ids
+        assertEquals(3, xmlMap.getObstacles().size());
+        assertEquals(2, xmlMap.getStructures().size());
+        assertFalse(xmlMap.getFlowers().isEmpty());
+
+        assertEquals(describe(xmlMap.getObstacles()), describe(compiledMap.getObstacles()));
+        assertEquals(describe(xmlMap.getStructures()), describe(compiledMap.getStructures()));
+        assertEquals(describe(xmlMap.getFlowers()), describe(compiledMap.getFlowers()));
+        assertEquals(xmlDynamics.getNumCollisionObjects(), compiledDynamics.getNumCollisionObjects());
+
+        // and builds the same collision geometry
+        Random rand = new Random(1);
+        int hits = 0;
+
+        for (int i = 0; i < NUM_RAYS; i++) {
+
+            Vector3f from = new Vector3f(rand.nextFloat() * 40 - 20, rand.nextFloat() * 40 - 20, rand.nextFloat() * 3);
+            Vector3f to = new Vector3f(rand.nextFloat() * 40 - 20, rand.nextFloat() * 40 - 20, rand.nextFloat() * 3);
+
+            CollisionWorld.ClosestRayResultCallback xmlRay = new CollisionWorld.ClosestRayResultCallback(from, to);
+            CollisionWorld.ClosestRayResultCallback compiledRay = new CollisionWorld.ClosestRayResultCallback(from, to);
+
+            xmlDynamics.rayTest(from, to, xmlRay);
+            compiledDynamics.rayTest(from, to, compiledRay);
+
+            assertEquals(xmlRay.hasHit(), compiledRay.hasHit());
+
+            if (xmlRay.hasHit()) {
+
+                assertEquals(xmlRay.hitPointWorld, compiledRay.hitPointWorld);
+                hits++;
+            }
+        }
+
+        assertTrue(hits > 0);
+    }
+
+
+    public void testXmlIsNotCompiled() throws IOException {
+
+        File file = File.createTempFile("world", ".xml");
+
+        file.deleteOnExit();
+
+        assertFalse(CompiledWorld.isCompiled(file));
+    }
+
+
+    private static Map<Integer, String> describe(Set<WorldObject> objects) {
+
+        Map<Integer, String> desc = new TreeMap<Integer, String>();
+
+        for (WorldObject obj : objects) {
+
+            desc.put(obj.getObjectId(), obj.getType() + " " + obj.getTruthPosition() + " " +
+                                        obj.getTruthOrientation() + " " +
+                                        obj.getTruthBoundingSphere().getRadius() + " " +
+                                        obj.getMetadata());
+        }
+
+        return desc;
+    }
+
+
+    private static DiscreteDynamicsWorld createDynamicsWorld() {
+
+        DefaultCollisionConfiguration config = new DefaultCollisionConfiguration();
+
+        return new DiscreteDynamicsWorld(new CollisionDispatcher(config),
+                                         new DbvtBroadphase(),
+                                         new SequentialImpulseConstraintSolver(),
+                                         config);
+    }
+
+
+    private static WorldMap createMap(World world, CompiledWorld compiled, DiscreteDynamicsWorld dynamics) {
+
+        WorldMap map = new WorldMap();
+
+        map.setRandomSeed(42);
+        map.setNextId(new AtomicInteger());
+        map.setWorld(world);
+        map.setDynamicsWorld(dynamics);
+        map.setMotionRecorder(new MotionRecorder());
+
+        if (compiled != null) {
+            map.setCompiledWorld(compiled);
+        }
+
+        map.initialize();
+
+        return map;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.shapes.CollisionShape;
+import junit.framework.TestCase;
+
+
+/**
+ * @author bkate
+ */
+public class ShapeRegistryTest extends TestCase {
+
+    public void testRetainedShapesKeepIds() {
+
+        ShapeRegistry.retainShapes();
+
+        try {
+
+            int id = ShapeRegistry.getShapeId(ShapeRegistry.getSphere(0.123f));
+
+            // nothing else refers to the shape, as if the variation that used it had ended
+            for (int i = 0; i < 5; i++) {
+                System.gc();
+            }
+
+            assertEquals("A retained shape was recreated.", id, ShapeRegistry.getShapeId(ShapeRegistry.getSphere(0.123f)));
+        }
+        finally {
+            ShapeRegistry.releaseShapes();
+        }
+    }
+
+
+    public void testSharedShapes() {
+
+        CollisionShape shape = ShapeRegistry.getSphere(0.5f);
+
+        assertSame(shape, ShapeRegistry.getSphere(0.5f));
+        assertNotSame(shape, ShapeRegistry.getSphere(0.25f));
+        assertTrue(ShapeRegistry.getShapeId(shape) >= 0);
+    }
+
+
+    public void testUnbalancedRelease() {
+
+        try {
+
+            ShapeRegistry.releaseShapes();
+            fail("Shapes were released without being retained.");
+        }
+        catch(RuntimeException re) {
+            // expected
+        }
+    }
+}
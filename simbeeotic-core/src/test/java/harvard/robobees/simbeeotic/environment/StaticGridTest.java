@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.linearmath.DefaultMotionState;
+import com.bulletphysics.linearmath.Transform;
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * @author bkate
+ */
+public class StaticGridTest extends TestCase {
+
+    public void testSphereAgainstBruteForce() {
+
+        Random rand = new Random(7);
+        List<WorldObject> objects = createObjects(rand, 2000);
+        StaticGrid grid = new StaticGrid(objects);
+
+        for (int q = 0; q < 500; q++) {
+
+            // some queries extend beyond the bounds of the grid
+            final Vector3f center = new Vector3f(rand.nextFloat() * 140 - 70, rand.nextFloat() * 140 - 70, rand.nextFloat() * 10);
+            final float radius = rand.nextFloat() * 20;
+
+            Set<WorldObject> expected = new HashSet<WorldObject>();
+
+            for (WorldObject obj : objects) {
+
+                Vector3f pos = obj.getTruthPosition();
+
+                float dx = pos.x - center.x;
+                float dy = pos.y - center.y;
+                float dz = pos.z - center.z;
+
+                if ((dx * dx) + (dy * dy) + (dz * dz) <= radius * radius) {
+                    expected.add(obj);
+                }
+            }
+
+            final List<WorldObject> visited = new ArrayList<WorldObject>();
+
+            grid.visitSphere(center, radius, new WorldObjectVisitor() {
+
+                public void visit(WorldObject object) {
+                    visited.add(object);
+                }
+            });
+
+            assertEquals("An object was visited more than once.", visited.size(), new HashSet<WorldObject>(visited).size());
+            assertEquals("The sphere query does not match a brute force scan.", expected, new HashSet<WorldObject>(visited));
+        }
+    }
+
+
+    public void testBoxAgainstBruteForce() {
+
+        Random rand = new Random(11);
+        List<WorldObject> objects = createObjects(rand, 1000);
+        StaticGrid grid = new StaticGrid(objects);
+
+        for (int q = 0; q < 500; q++) {
+
+            float minX = rand.nextFloat() * 140 - 70;
+            float minY = rand.nextFloat() * 140 - 70;
+            float maxX = minX + rand.nextFloat() * 30;
+            float maxY = minY + rand.nextFloat() * 30;
+
+            Set<WorldObject> expected = new HashSet<WorldObject>();
+
+            for (WorldObject obj : objects) {
+
+                Vector3f pos = obj.getTruthPosition();
+
+                if ((pos.x >= minX) && (pos.x <= maxX) && (pos.y >= minY) && (pos.y <= maxY)) {
+                    expected.add(obj);
+                }
+            }
+
+            final Set<WorldObject> visited = new HashSet<WorldObject>();
+
+            grid.visitBox(minX, minY, maxX, maxY, new StaticGrid.CandidateVisitor() {
+
+                public void visit(WorldObject object, float x, float y, float z) {
+
+                    Vector3f pos = object.getTruthPosition();
+
+                    assertEquals(pos.x, x);
+                    assertEquals(pos.y, y);
+                    assertEquals(pos.z, z);
+
+                    visited.add(object);
+                }
+            });
+
+            assertEquals("The box query does not match a brute force scan.", expected, visited);
+        }
+    }
+
+
+    public void testEmptyAndDegenerateGrids() {
+
+        StaticGrid empty = new StaticGrid(new ArrayList<WorldObject>());
+
+        empty.visitSphere(new Vector3f(), 100, new WorldObjectVisitor() {
+
+            public void visit(WorldObject object) {
+                fail("An empty grid visited an object.");
+            }
+        });
+
+        // every object at the same point
+        List<WorldObject> objects = new ArrayList<WorldObject>();
+
+        for (int i = 0; i < 10; i++) {
+            objects.add(createObject(i, new Vector3f(3, 4, 0)));
+        }
+
+        final Set<WorldObject> visited = new HashSet<WorldObject>();
+
+        new StaticGrid(objects).visitSphere(new Vector3f(3, 4, 0), 0, new WorldObjectVisitor() {
+
+            public void visit(WorldObject object) {
+                visited.add(object);
+            }
+        });
+
+        assertEquals(10, visited.size());
+    }
+
+
+    private static List<WorldObject> createObjects(Random rand, int num) {
+
+        List<WorldObject> objects = new ArrayList<WorldObject>();
+
+        for (int i = 0; i < num; i++) {
+
+            Vector3f pos;
+
+            // a dense cluster and a sparse field
+            if (i % 2 == 0) {
+                pos = new Vector3f(rand.nextFloat() * 5, rand.nextFloat() * 5, rand.nextFloat() * 3);
+            }
+            else {
+                pos = new Vector3f(rand.nextFloat() * 100 - 50, rand.nextFloat() * 100 - 50, rand.nextFloat() * 10);
+            }
+
+            objects.add(createObject(i, pos));
+        }
+
+        return objects;
+    }
+
+
+    private static WorldObject createObject(int id, Vector3f pos) {
+
+        Transform trans = new Transform();
+
+        trans.setIdentity();
+        trans.origin.set(pos);
+
+        RigidBody body = new RigidBody(0, new DefaultMotionState(trans), new SphereShape(0.1f), new Vector3f());
+
+        return new WorldObject(id, WorldObject.Type.OBSTACLE, body, new HashMap<String, Object>());
+    }
+}
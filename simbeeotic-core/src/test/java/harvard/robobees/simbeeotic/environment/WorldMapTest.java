@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.environment;
+
+
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import harvard.robobees.simbeeotic.configuration.world.World;
+import harvard.robobees.simbeeotic.model.MotionRecorder;
+import harvard.robobees.simbeeotic.util.DocUtil;
+import harvard.robobees.simbeeotic.util.JaxbHelper;
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * @author bkate
+ */
+public class WorldMapTest extends TestCase {
+
+    private static final String WORLD =
+            "<world xmlns=\"http://harvard/robobees/simbeeotic/configuration/world\">" +
+            "  <radius>100</radius>" +
+            "  <flowers>" +
+            "    <patch><center x=\"0\" y=\"0\"/><radius>4</radius><density>2</density></patch>" +
+            "    <patch><center x=\"10\" y=\"0\"/><radius>3</radius><density>2</density></patch>" +
+            "  </flowers>" +
+            "  <people>" +
+            "    <person><man height=\"0.5\" width=\"0.5\"><position x=\"5\" y=\"0\" z=\"1\"/></man></person>" +
+            "    <person><man height=\"0.5\" width=\"0.5\"><position x=\"8\" y=\"1\" z=\"1\"/></man></person>" +
+            "    <person><man height=\"0.5\" width=\"0.5\"><position x=\"-6\" y=\"0\" z=\"1\"/></man></person>" +
+            "  </people>" +
+            "</world>";
+
+    static {
+
+        // the world loads textures for its bodies
+        System.setProperty("java.awt.headless", "true");
+    }
+
+
+    public void testNestedFlowerQueries() {
+
+        final WorldMap map = createMap(true);
+        final Vector3f center = new Vector3f(2, 0, 0);
+
+        Set<WorldObject> expected = map.getFlowers(center, 3);
+        final Set<WorldObject> nested = new HashSet<WorldObject>();
+
+        assertFalse(expected.isEmpty());
+
+        // the visitor makes its own queries around another point
+        map.visitFlowers(center, 3, new WorldObjectVisitor() {
+
+            public void visit(WorldObject object) {
+
+                nested.add(object);
+
+                map.getFlowers(new Vector3f(10, 0, 0), 1);
+                map.getPeople(new Vector3f(), new Vector3f(1, 0, 0), 20, 0.5f);
+            }
+        });
+
+        assertEquals("A nested query changed the results of a flower query.", expected, nested);
+    }
+
+
+    public void testNestedPeopleQueries() {
+
+        final WorldMap map = createMap(false);
+        final Vector3f origin = new Vector3f(0, 0, 1);
+        final Vector3f pointing = new Vector3f(1, 0, 0);
+
+        Set<WorldObject> expected = map.getPeople(origin, pointing, 20, 0.5f);
+        final Set<WorldObject> nested = new HashSet<WorldObject>();
+
+        assertEquals(2, expected.size());
+
+        map.visitPeople(origin, pointing, 20, 0.5f, new WorldObjectVisitor() {
+
+            public void visit(WorldObject object) {
+
+                nested.add(object);
+
+                // looking the other way only sees the third person
+                assertEquals(1, map.getPeople(origin, new Vector3f(-1, 0, 0), 20, 0.5f).size());
+            }
+        });
+
+        assertEquals("A nested query changed the results of a cone query.", expected, nested);
+    }
+
+
+    public void testInstancedPatchesKeepIds() {
+
+        AtomicInteger individualIds = new AtomicInteger();
+        AtomicInteger instancedIds = new AtomicInteger();
+
+        Map<Integer, Vector3f> individual = getFlowerPositions(createMap(false, individualIds));
+        Map<Integer, Vector3f> instanced = getFlowerPositions(createMap(true, instancedIds));
+
+        // the same flowers are in the same places, and the next object gets the same id
+        assertEquals(individual.keySet(), instanced.keySet());
+        assertEquals(individualIds.get(), instancedIds.get());
+
+        for (Map.Entry<Integer, Vector3f> entry : individual.entrySet()) {
+
+            Vector3f diff = new Vector3f();
+
+            diff.sub(entry.getValue(), instanced.get(entry.getKey()));
+
+            assertEquals(0, diff.length(), 1e-3);
+        }
+    }
+
+
+    private static Map<Integer, Vector3f> getFlowerPositions(WorldMap map) {
+
+        Map<Integer, Vector3f> positions = new HashMap<Integer, Vector3f>();
+
+        for (WorldObject flower : map.getFlowers()) {
+            positions.put(flower.getObjectId(), flower.getTruthPosition());
+        }
+
+        return positions;
+    }
+
+
+    private static WorldMap createMap(boolean instanced) {
+        return createMap(instanced, new AtomicInteger());
+    }
+
+
+    private static WorldMap createMap(boolean instanced, AtomicInteger nextId) {
+
+        World world;
+
+        try {
+            world = JaxbHelper.objectFromNode(DocUtil.getDocumentFromXml(WORLD), World.class);
+        }
+        catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        DefaultCollisionConfiguration config = new DefaultCollisionConfiguration();
+        DiscreteDynamicsWorld dynamics = new DiscreteDynamicsWorld(new CollisionDispatcher(config),
+                                                                   new DbvtBroadphase(),
+                                                                   new SequentialImpulseConstraintSolver(),
+                                                                   config);
+
+        WorldMap map = new WorldMap();
+
+        map.setRandomSeed(42);
+        map.setNextId(nextId);
+        map.setWorld(world);
+        map.setDynamicsWorld(dynamics);
+        map.setMotionRecorder(new MotionRecorder());
+        map.setInstancedPatches(instanced);
+        map.initialize();
+
+        return map;
+    }
+}
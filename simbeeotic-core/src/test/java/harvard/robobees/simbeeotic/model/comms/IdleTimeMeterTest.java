@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @author bkate
+ */
+public class IdleTimeMeterTest extends TestCase {
+
+    private static final long PERIOD = 100;  // ms
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(PERIOD);
+    private static final double IDLE_ENERGY = 0.0303;
+
+
+    public void testIdleRadio() {
+
+        IdleTimeMeter meter = new IdleTimeMeter(PERIOD);
+        long start = 12345;
+
+        meter.start(start);
+
+        // the first period ends when the meter starts
+        assertEquals(PERIOD, close(meter, start, true), 0);
+        assertEquals(0, close(meter, start, true), 0);
+
+        // nine more periods end within the next second, the tenth ends exactly at the end
+        assertEquals(PERIOD * 9, close(meter, start + TimeUnit.SECONDS.toNanos(1), false), 0);
+        assertEquals(PERIOD, close(meter, start + TimeUnit.SECONDS.toNanos(1), true), 0);
+    }
+
+
+    public void testBusyTimeCarriesOver() {
+
+        IdleTimeMeter meter = new IdleTimeMeter(PERIOD);
+
+        meter.start(0);
+        close(meter, 0, true);
+
+        // busy for two and a half periods
+        meter.addBusyTime(250);
+
+        assertEquals(0, close(meter, PERIOD_NANOS * 2, true), 0);
+        assertEquals(50, close(meter, PERIOD_NANOS * 3, true), 0);
+        assertEquals(PERIOD, close(meter, PERIOD_NANOS * 4, true), 0);
+    }
+
+
+    /**
+     * The lazy meter must give exactly the same total as a timer that fires every period, including
+     * for activity at the period boundaries (which may come before or after the timer).
+     */
+    public void testMatchesPeriodicTimer() {
+
+        Random rand = new Random(47);
+
+        for (int trial = 0; trial < 200; trial++) {
+
+            long start = rand.nextInt(1000000);
+            long end = start + TimeUnit.SECONDS.toNanos(10);
+
+            IdleTimeMeter meter = new IdleTimeMeter(PERIOD);
+
+            meter.start(start);
+
+            // the old timer
+            long nextFiring = start;
+            double timerBusy = 0;
+            double timerTotal = 0;
+            int timerFirings = 0;
+
+            double meterTotal = 0;
+            long time = start;
+
+            while (true) {
+
+                // activity at random times, some of them on period boundaries
+                if (rand.nextInt(4) == 0) {
+                    time = start + (((time - start) / PERIOD_NANOS) + 1 + rand.nextInt(3)) * PERIOD_NANOS;
+                }
+                else {
+                    time += rand.nextInt((int)(PERIOD_NANOS * 2));
+                }
+
+                if (time > end) {
+                    break;
+                }
+
+                boolean afterTimer = rand.nextBoolean();
+                double busy = (rand.nextInt(5) == 0) ? 0 : rand.nextDouble() * PERIOD * 3;
+
+                while ((nextFiring < time) || (afterTimer && (nextFiring == time))) {
+
+                    double idleTime = PERIOD - timerBusy;
+
+                    if (idleTime < 0) {
+                        timerBusy -= PERIOD;
+                    }
+                    else {
+
+                        timerBusy = 0;
+                        timerTotal += IDLE_ENERGY * (idleTime / TimeUnit.SECONDS.toMillis(1));
+                    }
+
+                    nextFiring += PERIOD_NANOS;
+                    timerFirings++;
+                }
+
+                timerBusy += busy;
+
+                meterTotal = tally(meter, time, afterTimer, meterTotal);
+                meter.addBusyTime(busy);
+            }
+
+            // the last firing is at the end time
+            while (nextFiring <= end) {
+
+                double idleTime = PERIOD - timerBusy;
+
+                if (idleTime < 0) {
+                    timerBusy -= PERIOD;
+                }
+                else {
+
+                    timerBusy = 0;
+                    timerTotal += IDLE_ENERGY * (idleTime / TimeUnit.SECONDS.toMillis(1));
+                }
+
+                nextFiring += PERIOD_NANOS;
+                timerFirings++;
+            }
+
+            meterTotal = tally(meter, end, true, meterTotal);
+
+            assertEquals(101, timerFirings);
+            assertEquals("The idle energy differs from the periodic timer.", timerTotal, meterTotal, 0);
+        }
+    }
+
+
+    /**
+     * Closes the periods that have ended, adding their idle energy to a running total
+     * one period at a time, as the radio adds them to its aggregator.
+     */
+    private static double tally(IdleTimeMeter meter, long now, boolean inclusive, double total) {
+
+        while (meter.advance(now, inclusive)) {
+
+            double idleTime = meter.closePeriod();
+
+            if (idleTime > 0) {
+                total += IDLE_ENERGY * (idleTime / TimeUnit.SECONDS.toMillis(1));
+            }
+        }
+
+        return total;
+    }
+
+
+    private static double close(IdleTimeMeter meter, long now, boolean inclusive) {
+
+        double total = 0;
+
+        while (meter.advance(now, inclusive)) {
+            total += meter.closePeriod();
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * @author bkate
+ */
+public class InterferenceIndexTest extends TestCase {
+
+    private static final double EPSILON = 1e-9;
+
+    private Radio rx = new TestRadio(new Vector3f(), null);
+    private Band channel11 = new Band(2405, 2);
+    private Band channel12 = new Band(2410, 2);
+    private Band wide = new Band(2407.5, 10);
+
+
+    public void testConcurrentOverlap() {
+
+        InterferenceIndex index = new InterferenceIndex();
+
+        InterferenceIndex.Signal a = index.add(rx, channel11, 1, 0, 10);
+        InterferenceIndex.Signal b = index.add(rx, channel11, 2, 2, 4);
+        InterferenceIndex.Signal c = index.add(rx, channel11, 3, 6, 8);
+
+        // b and c never overlap each other, so the interference on a is the larger of the two
+        assertEquals(3, a.getInterference(), EPSILON);
+        assertEquals(1, b.getInterference(), EPSILON);
+        assertEquals(1, c.getInterference(), EPSILON);
+    }
+
+
+    public void testAdjacentSignalsDoNotOverlap() {
+
+        InterferenceIndex index = new InterferenceIndex();
+
+        InterferenceIndex.Signal a = index.add(rx, channel11, 1, 0, 10);
+        InterferenceIndex.Signal b = index.add(rx, channel11, 2, 10, 20);
+
+        assertEquals(0, a.getInterference(), EPSILON);
+        assertEquals(0, b.getInterference(), EPSILON);
+    }
+
+
+    public void testBands() {
+
+        InterferenceIndex index = new InterferenceIndex();
+
+        InterferenceIndex.Signal a = index.add(rx, channel11, 1, 0, 10);
+        InterferenceIndex.Signal b = index.add(rx, channel12, 2, 0, 10);
+
+        assertEquals("Signals in separate channels interfered.", 0, a.getInterference(), EPSILON);
+        assertEquals("Signals in separate channels interfered.", 0, b.getInterference(), EPSILON);
+
+        // a wide band signal overlaps both channels
+        InterferenceIndex.Signal c = index.add(rx, wide, 4, 5, 15);
+
+        assertEquals(4, a.getInterference(), EPSILON);
+        assertEquals(4, b.getInterference(), EPSILON);
+        assertEquals(3, c.getInterference(), EPSILON);
+
+        assertEquals(7, index.getPower(rx, wide, 6), EPSILON);
+        assertEquals(5, index.getPower(rx, channel11, 6), EPSILON);
+        assertEquals(4, index.getPower(rx, channel11, 12), EPSILON);
+        assertEquals(0, index.getPower(rx, channel11, 15), EPSILON);
+    }
+
+
+    public void testReceiversAreIndependent() {
+
+        InterferenceIndex index = new InterferenceIndex();
+        Radio other = new TestRadio(new Vector3f(), null);
+
+        InterferenceIndex.Signal a = index.add(rx, channel11, 1, 0, 10);
+        index.add(other, channel11, 2, 0, 10);
+
+        assertEquals(0, a.getInterference(), EPSILON);
+    }
+
+
+    public void testAgainstBruteForce() {
+
+        Random rand = new Random(42);
+        Band[] bands = new Band[] {channel11, channel12, wide};
+        InterferenceIndex index = new InterferenceIndex();
+
+        List<InterferenceIndex.Signal> signals = new ArrayList<InterferenceIndex.Signal>();
+        List<long[]> times = new ArrayList<long[]>();
+        List<Band> signalBands = new ArrayList<Band>();
+        List<Double> powers = new ArrayList<Double>();
+
+        long start = 0;
+
+        for (int i = 0; i < 2000; i++) {
+
+            start += rand.nextInt(3);
+
+            long end = start + 1 + rand.nextInt(40);
+            Band band = bands[rand.nextInt(bands.length)];
+            double power = rand.nextDouble();
+
+            signals.add(index.add(rx, band, power, start, end));
+            times.add(new long[] {start, end});
+            signalBands.add(band);
+            powers.add(power);
+
+            // carrier sensing also prunes the index
+            if (rand.nextInt(10) == 0) {
+                index.getPower(rx, channel11, start);
+            }
+        }
+
+        for (int j = 0; j < signals.size(); j++) {
+
+            double peak = 0;
+
+            // the concurrent power can only increase when a signal starts
+            for (int t = 0; t < signals.size(); t++) {
+
+                long instant = times.get(t)[0];
+
+                if ((instant < times.get(j)[0]) || (instant >= times.get(j)[1])) {
+                    continue;
+                }
+
+                double total = 0;
+
+                for (int i = 0; i < signals.size(); i++) {
+
+                    if ((i != j) && (times.get(i)[0] <= instant) && (times.get(i)[1] > instant) &&
+                        signalBands.get(i).overlaps(signalBands.get(j))) {
+
+                        total += powers.get(i);
+                    }
+                }
+
+                peak = Math.max(peak, total);
+            }
+
+            assertEquals("Incorrect interference for signal " + j, peak, signals.get(j).getInterference(), 1e-6);
+        }
+    }
+}
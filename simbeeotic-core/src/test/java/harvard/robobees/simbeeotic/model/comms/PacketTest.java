@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+
+/**
+ * @author bkate
+ */
+public class PacketTest extends TestCase {
+
+    public void testReferenceCounting() {
+
+        PacketPool pool = new PacketPool(16);
+        Packet packet = pool.allocate(8);
+
+        packet.getBuffer().putLong(42);
+
+        // two pending receptions
+        packet.retain();
+        packet.retain();
+
+        // the sender gives up its reference
+        packet.release();
+        assertFalse("A packet with pending receptions was released.", packet.isReleased());
+
+        packet.release();
+        assertFalse("A packet with pending receptions was released.", packet.isReleased());
+
+        packet.release();
+        assertTrue("The packet was not released with its last reference.", packet.isReleased());
+
+        try {
+
+            packet.release();
+            fail("A released packet was released again.");
+        }
+        catch(RuntimeException re) {
+            // expected
+        }
+
+        try {
+
+            packet.getPayload();
+            fail("The payload of a released packet was accessible.");
+        }
+        catch(RuntimeException re) {
+            // expected
+        }
+    }
+
+
+    public void testReuseCreatesNewPacket() {
+
+        PacketPool pool = new PacketPool(16);
+        Packet first = pool.allocate(8);
+
+        first.getBuffer().putLong(1);
+        first.release();
+
+        Packet second = pool.allocate(8);
+
+        second.getBuffer().putLong(2);
+
+        assertEquals("The buffer was not reused.", 1, pool.getReuses());
+        assertNotSame("A packet handle was reused.", first, second);
+        assertTrue("A stale packet is usable after its buffer was reused.", first.isReleased());
+        assertFalse(second.isReleased());
+        assertEquals(2, second.getPayload().getLong());
+
+        try {
+
+            first.retain();
+            fail("A released packet was retained.");
+        }
+        catch(RuntimeException re) {
+            // expected
+        }
+    }
+
+
+    public void testReusedBufferIsCleared() {
+
+        PacketPool pool = new PacketPool(16);
+        Packet first = pool.allocate(8);
+
+        first.getBuffer().putLong(-1);
+        first.release();
+
+        Packet second = pool.allocate(8);
+
+        assertEquals("The buffer was not reused.", 1, pool.getReuses());
+        assertEquals("A reused buffer held the payload of a previous packet.", 0, second.getPayload().getLong());
+    }
+
+
+    public void testSizeClasses() {
+
+        PacketPool pool = new PacketPool(16);
+
+        pool.allocate(20).release();
+
+        // a buffer of a different size is not reused
+        Packet small = pool.allocate(8);
+        assertEquals(0, pool.getReuses());
+
+        // the payload length is independent of the capacity
+        Packet large = pool.allocate(30);
+        assertEquals(1, pool.getReuses());
+        assertEquals(30, large.getLength());
+        assertEquals(30, large.getPayload().remaining());
+        assertEquals(8, small.getBuffer().remaining());
+    }
+
+
+    public void testReadOnlyViews() {
+
+        PacketPool pool = new PacketPool(16);
+        Packet packet = pool.allocate(4);
+
+        packet.getBuffer().put(new byte[] {1, 2, 3, 4});
+
+        ByteBuffer view1 = packet.getPayload();
+        ByteBuffer view2 = packet.getPayload();
+
+        assertTrue(view1.isReadOnly());
+
+        try {
+
+            view1.put(0, (byte)9);
+            fail("A receiver modified the payload.");
+        }
+        catch(ReadOnlyBufferException robe) {
+            // expected
+        }
+
+        // each receiver reads from its own position
+        assertEquals(1, view1.get());
+        assertEquals(2, view1.get());
+        assertEquals(1, view2.get());
+
+        byte[] copy = packet.toByteArray();
+
+        assertEquals(4, copy.length);
+        assertEquals(4, copy[3]);
+    }
+
+
+    public void testWrappedPackets() {
+
+        byte[] data = new byte[] {5, 6};
+        Packet packet = Packet.wrap(data);
+
+        assertSame("A wrapped array was copied.", data, packet.toByteArray());
+        assertTrue(packet.getPayload().isReadOnly());
+
+        // wrapped packets are not reference counted
+        packet.release();
+        packet.release();
+        assertFalse(packet.isReleased());
+    }
+}
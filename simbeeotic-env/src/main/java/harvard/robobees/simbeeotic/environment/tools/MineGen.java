@@ -98,14 +98,14 @@ public class MineGen {
         Text radiusValue = doc.createTextNode("2000");
         radius.appendChild(radiusValue);
         
+        // add people child element (the schema requires people before structures)
+        Element people = doc.createElement("people");
+        world.appendChild(people);
+        
         // add structures child element
         Element structures = doc.createElement("structures");
         world.appendChild(structures);
         
-        // add people child element
-        Element people = doc.createElement("people");
-        world.appendChild(people);
-        
 		// generate shaft and get tunnel positions
 		Vector3f[] tunnelPositions = new Vector3f[levels];
 		Shaft.gen(doc, tunnelPositions, shaftHeight, shaftDiameter, shaftNumberOfSides, tunnelProb, tunnelWidth, structures);
@@ -33,6 +33,7 @@ package harvard.robobees.simbeeotic.example;
 
 
 import org.apache.log4j.Logger;
+import harvard.robobees.simbeeotic.model.ConcurrentInitialization;
 import harvard.robobees.simbeeotic.model.SimpleBee;
 import harvard.robobees.simbeeotic.model.Timer;
 import harvard.robobees.simbeeotic.model.TimerCallback;
@@ -49,6 +50,7 @@ import java.util.concurrent.TimeUnit;
  * 
  * @author bkate
  */
+@ConcurrentInitialization
 public class BroadcastBee extends SimpleBee implements MessageListener {
 
     private static Logger logger = Logger.getLogger(BroadcastBee.class);
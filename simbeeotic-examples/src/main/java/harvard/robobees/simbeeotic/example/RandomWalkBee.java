@@ -32,6 +32,7 @@
 package harvard.robobees.simbeeotic.example;
 
 
+import harvard.robobees.simbeeotic.model.ConcurrentInitialization;
 import harvard.robobees.simbeeotic.model.SimpleBee;
 import harvard.robobees.simbeeotic.model.sensor.Accelerometer;
 import harvard.robobees.simbeeotic.model.sensor.Gyroscope;
@@ -52,6 +53,7 @@ import javax.vecmath.Vector3f;
  *
  * @author bkate
  */
+@ConcurrentInitialization
 public class RandomWalkBee extends SimpleBee {
 
     private Accelerometer accelerometer;
@@ -32,10 +32,8 @@
 package harvard.robobees.simbeeotic.model;
 
 
-import com.bulletphysics.collision.shapes.BoxShape;
 import com.bulletphysics.collision.shapes.CollisionShape;
 import com.bulletphysics.collision.shapes.CompoundShape;
-import com.bulletphysics.collision.shapes.CylinderShapeZ;
 import com.bulletphysics.linearmath.Transform;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -49,6 +47,7 @@ import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.Global
 import harvard.robobees.simbeeotic.configuration.heli.BehaviorConfig;
 import harvard.robobees.simbeeotic.configuration.heli.Behaviors;
 import harvard.robobees.simbeeotic.configuration.heli.ConfigProps;
+import harvard.robobees.simbeeotic.environment.ShapeRegistry;
 import harvard.robobees.simbeeotic.util.DocUtil;
 import harvard.robobees.simbeeotic.util.JaxbHelper;
 import org.w3c.dom.Document;
@@ -78,47 +77,53 @@ public abstract class AbstractHeli extends GenericModel implements HeliControl {
 
     protected static final CollisionShape HELI_SHAPE;
 
-    // make a helicopter shaped obejct for use in the simulation. by sharing the
-    // smae collision shape the sim may run a tiny bit faster (plus it is
-    // convenient to expose to other models so we do not cut and paste).
+    // make a helicopter shaped object for use in the simulation. by sharing the
+    // same collision shape (interned in the shape registry) the sim may run a tiny
+    // bit faster (plus it is convenient to expose to other models so we do not cut and paste).
     static {
 
-        CompoundShape cs = new CompoundShape();
-        Transform trans = new Transform();
+        HELI_SHAPE = ShapeRegistry.getShape("heli", new float[0], new ShapeRegistry.ShapeFactory() {
 
-        // main body
-        trans.origin.set(new Vector3f(0.0175f, 0, 0));
+            public CollisionShape createShape() {
 
-        cs.addChildShape(trans, new BoxShape(new Vector3f(0.045f, 0.02f, 0.025f)));
+                CompoundShape cs = new CompoundShape();
+                Transform trans = new Transform();
 
-        // tail
-        trans = new Transform();
-        trans.origin.set(new Vector3f(-0.055f, 0, 0));
+                // main body
+                trans.origin.set(new Vector3f(0.0175f, 0, 0));
 
-        cs.addChildShape(trans, new BoxShape(new Vector3f(0.055f, 0.0015f, 0.0015f)));
+                cs.addChildShape(trans, ShapeRegistry.getBox(new Vector3f(0.045f, 0.02f, 0.025f)));
 
-        trans = new Transform();
-        trans.origin.set(new Vector3f(-0.11f, 0, 0.01f));
+                // tail
+                trans = new Transform();
+                trans.origin.set(new Vector3f(-0.055f, 0, 0));
 
-        cs.addChildShape(trans, new BoxShape(new Vector3f(0.01f, 0.0015f, 0.03f)));
+                cs.addChildShape(trans, ShapeRegistry.getBox(new Vector3f(0.055f, 0.0015f, 0.0015f)));
 
-        // rotors
-        trans = new Transform();
-        trans.origin.set(0, 0, 0.025f);
+                trans = new Transform();
+                trans.origin.set(new Vector3f(-0.11f, 0, 0.01f));
 
-        cs.addChildShape(trans, new CylinderShapeZ(new Vector3f(0.002f, 0.002f, 0.05f)));
+                cs.addChildShape(trans, ShapeRegistry.getBox(new Vector3f(0.01f, 0.0015f, 0.03f)));
 
-        trans = new Transform();
-        trans.origin.set(0, 0, 0.03f);
+                // rotors
+                trans = new Transform();
+                trans.origin.set(0, 0, 0.025f);
 
-        cs.addChildShape(trans, new CylinderShapeZ(new Vector3f(0.0925f, 0.0925f, 0.0001f)));
+                cs.addChildShape(trans, ShapeRegistry.getCylinderZ(new Vector3f(0.002f, 0.002f, 0.05f)));
 
-        trans = new Transform();
-        trans.origin.set(0, 0, 0.045f);
+                trans = new Transform();
+                trans.origin.set(0, 0, 0.03f);
 
-        cs.addChildShape(trans, new CylinderShapeZ(new Vector3f(0.0925f, 0.0925f, 0.0001f)));
+                cs.addChildShape(trans, ShapeRegistry.getCylinderZ(new Vector3f(0.0925f, 0.0925f, 0.0001f)));
 
-        HELI_SHAPE = cs;
+                trans = new Transform();
+                trans.origin.set(0, 0, 0.045f);
+
+                cs.addChildShape(trans, ShapeRegistry.getCylinderZ(new Vector3f(0.0925f, 0.0925f, 0.0001f)));
+
+                return cs;
+            }
+        });
     }
 
 
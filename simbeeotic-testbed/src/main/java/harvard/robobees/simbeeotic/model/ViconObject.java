@@ -33,7 +33,6 @@ package harvard.robobees.simbeeotic.model;
 
 
 import com.bulletphysics.collision.shapes.CollisionShape;
-import com.bulletphysics.collision.shapes.SphereShape;
 import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
 import com.bulletphysics.dynamics.ExternalRigidBody;
 import com.bulletphysics.dynamics.RigidBody;
@@ -42,6 +41,7 @@ import com.bulletphysics.linearmath.MotionState;
 import com.bulletphysics.linearmath.Transform;
 import com.google.inject.Inject;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
+import harvard.robobees.simbeeotic.environment.ShapeRegistry;
 
 import javax.vecmath.Vector3f;
 import java.awt.Color;
@@ -68,7 +68,7 @@ public class ViconObject extends AbstractPhysicalEntity {
 
         float mass = 1;
         int id = getObjectId();
-        CollisionShape cs = new SphereShape(0.1f);
+        CollisionShape cs = ShapeRegistry.getSphere(0.1f);
 
         getMotionRecorder().updateShape(id, cs);
         getMotionRecorder().updateMetadata(id, Color.RED, null, getName());
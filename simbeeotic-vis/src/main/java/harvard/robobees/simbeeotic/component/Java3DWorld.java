@@ -51,6 +51,9 @@ import com.sun.j3d.utils.image.TextureLoader;
 import com.sun.j3d.utils.universe.SimpleUniverse;
 import com.sun.j3d.utils.universe.Viewer;
 import com.sun.j3d.utils.universe.ViewingPlatform;
+import harvard.robobees.simbeeotic.environment.FlowerPatchShape;
+import harvard.robobees.simbeeotic.environment.Heightfield;
+import harvard.robobees.simbeeotic.environment.HeightfieldShape;
 import harvard.robobees.simbeeotic.model.MotionListener;
 import harvard.robobees.simbeeotic.util.ImageLoader;
 import org.apache.log4j.Logger;
@@ -62,17 +65,22 @@ import javax.media.j3d.BoundingSphere;
 import javax.media.j3d.BranchGroup;
 import javax.media.j3d.Canvas3D;
 import javax.media.j3d.DirectionalLight;
+import javax.media.j3d.GeometryArray;
 import javax.media.j3d.Material;
+import javax.media.j3d.Shape3D;
 import javax.media.j3d.Texture;
 import javax.media.j3d.TextureAttributes;
 import javax.media.j3d.Transform3D;
 import javax.media.j3d.TransformGroup;
 import javax.media.j3d.TransparencyAttributes;
+import javax.media.j3d.TriangleArray;
 import javax.swing.JPanel;
 import javax.swing.JFrame;
 import javax.vecmath.Color3f;
 import javax.vecmath.Point3d;
+import javax.vecmath.Point3f;
 import javax.vecmath.Quat4f;
+import javax.vecmath.TexCoord2f;
 import javax.vecmath.Vector3d;
 import javax.vecmath.Vector3f;
 import java.awt.Image;
@@ -113,6 +121,7 @@ public class Java3DWorld extends JPanel implements ViewPanel, MotionListener {
     private static final int PRIM_FLAGS = Primitive.GENERATE_NORMALS | Primitive.GENERATE_TEXTURE_COORDS;
 
     private static final double BOUNDS = 3000;
+    private static final int MAX_TERRAIN_CELLS = 256;
 
     private static final Point3d ORIGIN = new Point3d(0, 0, 0);
     private static final Point3d DEFAULT_VIEW = new Point3d(-20, 12, 20);
@@ -267,6 +276,12 @@ public class Java3DWorld extends JPanel implements ViewPanel, MotionListener {
         else if (shape instanceof CompoundShape){
             tg = createCompoundShape(objectId, (CompoundShape)shape);
         }
+        else if (shape instanceof FlowerPatchShape) {
+            tg = createFlowerPatch(objectId, (FlowerPatchShape)shape);
+        }
+        else if (shape instanceof HeightfieldShape) {
+            tg = createTerrain(objectId, ((HeightfieldShape)shape).getHeightfield());
+        }
         else {
             logger.warn("Object not recognized!");
         }
@@ -563,6 +578,130 @@ public class Java3DWorld extends JPanel implements ViewPanel, MotionListener {
     }
 
 
+    private TransformGroup createFlowerPatch(int objectId, FlowerPatchShape shape) {
+
+        Appearance appear = createDefaultAppearance();
+
+        if (appearanceMap.containsKey(objectId)) {
+            appear = appearanceMap.get(objectId);
+        }
+
+        TransformGroup tg = new TransformGroup();
+
+        tg.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+        tg.setCapability(TransformGroup.ALLOW_TRANSFORM_READ);
+
+        // cylinders in Java3D are about a different axis than JBullet,
+        // so the flowers are laid out in a rotated group (x, -z, y)
+        Transform3D innerT3D = new Transform3D();
+        innerT3D.rotX(-Math.PI / 2);
+
+        TransformGroup innerTg = new TransformGroup(innerT3D);
+        Vector3f pos = new Vector3f();
+
+        for (int i = 0; i < shape.getNumFlowers(); i++) {
+
+            shape.getFlowerPosition(i, pos);
+
+            // stem
+            Transform3D t3d = new Transform3D();
+            t3d.setTranslation(new Vector3f(pos.x, -(pos.z + shape.getStemHeight() / 2), pos.y));
+
+            TransformGroup flowerTg = new TransformGroup(t3d);
+
+            flowerTg.addChild(new Cylinder(shape.getStemRadius(), shape.getStemHeight(), PRIM_FLAGS, appear));
+            innerTg.addChild(flowerTg);
+
+            // platform
+            t3d = new Transform3D();
+            t3d.setTranslation(new Vector3f(pos.x, -(pos.z + shape.getStemHeight()), pos.y));
+
+            flowerTg = new TransformGroup(t3d);
+
+            flowerTg.addChild(new Cylinder(shape.getFloraRadius(), shape.getFloraHeight(), PRIM_FLAGS, appear));
+            innerTg.addChild(flowerTg);
+        }
+
+        tg.addChild(innerTg);
+
+        transformMap.put(objectId, tg);
+        appearanceMap.put(objectId, appear);
+
+        return tg;
+    }
+
+
+    private TransformGroup createTerrain(int objectId, Heightfield field) {
+
+        Appearance appear = createDefaultAppearance();
+
+        if (appearanceMap.containsKey(objectId)) {
+            appear = appearanceMap.get(objectId);
+        }
+
+        TransformGroup tg = new TransformGroup();
+
+        tg.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+        tg.setCapability(TransformGroup.ALLOW_TRANSFORM_READ);
+
+        // large grids are decimated for display, collisions still use every sample
+        int step = Math.max(1, Math.max(field.getColumns(), field.getRows()) / MAX_TERRAIN_CELLS);
+        int cols = (field.getColumns() - 1) / step;
+        int rows = (field.getRows() - 1) / step;
+        float size = field.getSpacing() * step;
+
+        TriangleArray geom = new TriangleArray(cols * rows * 6, GeometryArray.COORDINATES |
+                                                                GeometryArray.NORMALS |
+                                                                GeometryArray.TEXTURE_COORDINATE_2);
+
+        // each cell is split the same way as the collision shape
+        int[][] tris = new int[][] {{0, 1, 2}, {0, 2, 3}};
+        Point3f[] corners = new Point3f[4];
+        Vector3f normal = new Vector3f();
+        Vector3f edge1 = new Vector3f();
+        Vector3f edge2 = new Vector3f();
+        int v = 0;
+
+        for (int row = 0; row < rows; row++) {
+
+            for (int col = 0; col < cols; col++) {
+
+                float x = field.getOriginX() + (col * size);
+                float y = field.getOriginY() + (row * size);
+
+                corners[0] = new Point3f(x, y, field.getSample(col * step, row * step));
+                corners[1] = new Point3f(x + size, y, field.getSample((col + 1) * step, row * step));
+                corners[2] = new Point3f(x + size, y + size, field.getSample((col + 1) * step, (row + 1) * step));
+                corners[3] = new Point3f(x, y + size, field.getSample(col * step, (row + 1) * step));
+
+                for (int[] tri : tris) {
+
+                    edge1.sub(corners[tri[1]], corners[tri[0]]);
+                    edge2.sub(corners[tri[2]], corners[tri[0]]);
+                    normal.cross(edge1, edge2);
+                    normal.normalize();
+
+                    for (int k : tri) {
+
+                        geom.setCoordinate(v, corners[k]);
+                        geom.setNormal(v, normal);
+                        geom.setTextureCoordinate(0, v, new TexCoord2f(((k == 1) || (k == 2)) ? col + 1 : col,
+                                                                       (k >= 2) ? row + 1 : row));
+                        v++;
+                    }
+                }
+            }
+        }
+
+        tg.addChild(new Shape3D(geom, appear));
+
+        transformMap.put(objectId, tg);
+        appearanceMap.put(objectId, appear);
+
+        return tg;
+    }
+
+
     private TransformGroup createLabel(Text2D message, Vector3f pos) {
 
         // todo: fix this - taken from old code
@@ -34,12 +34,16 @@ package harvard.robobees.simbeeotic.component;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import harvard.robobees.simbeeotic.InterestPoint;
+import harvard.robobees.simbeeotic.PhysicsLodManager;
 
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JSplitPane;
+import javax.media.j3d.Transform3D;
 import javax.vecmath.Point3d;
 import javax.vecmath.Vector3d;
+import javax.vecmath.Vector3f;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.awt.event.WindowEvent;
@@ -53,6 +57,7 @@ import java.awt.event.WindowEvent;
 public class VisComponent3D extends JFrame implements VariationComponent {
 
     private Java3DWorld world;
+    private InterestPoint cameraInterest;
 
     @Inject
     private VariationContext context;
@@ -81,6 +86,11 @@ public class VisComponent3D extends JFrame implements VariationComponent {
     @Named("second-screen")
     private boolean secondScreen = false;
 
+
+    @Inject(optional=true)
+    @Named("camera-interest-radius")
+    private float cameraInterestRadius = -1;   // m, defaults to the LOD manager's radius
+
     
     @Override
     public void initialize() {
@@ -117,6 +127,36 @@ public class VisComponent3D extends JFrame implements VariationComponent {
 
         context.getRecorder().addListener(world);
 
+        // keep the physics around the camera at full fidelity
+        final PhysicsLodManager lodManager = context.getPhysicsLodManager();
+
+        if (lodManager != null) {
+
+            cameraInterest = new InterestPoint() {
+
+                private Vector3d trans = new Vector3d();
+
+
+                public synchronized Vector3f getInterestPosition(Vector3f out) {
+
+                    Transform3D t3d = world.getMainViewTransform();
+                    t3d.get(trans);
+
+                    // the view is in Java3D coordinates (Y up), convert back to Z up
+                    out.set((float)trans.x, (float)-trans.z, (float)trans.y);
+
+                    return out;
+                }
+
+
+                public float getInterestRadius() {
+                    return cameraInterestRadius;
+                }
+            };
+
+            lodManager.addInterestPoint(cameraInterest);
+        }
+
         setTitle("3D Visualization");
         setContentPane(contentPane);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -143,6 +183,11 @@ public class VisComponent3D extends JFrame implements VariationComponent {
 
     @Override
     public void shutdown() {
+
+        if ((cameraInterest != null) && (context.getPhysicsLodManager() != null)) {
+            context.getPhysicsLodManager().removeInterestPoint(cameraInterest);
+        }
+
         Toolkit.getDefaultToolkit().getSystemEventQueue().postEvent(new WindowEvent(this, WindowEvent.WINDOW_CLOSING));
     }
 